@@ -0,0 +1,492 @@
+package com.github.codechapin.sxpj.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Generates, for every class annotated with <code>com.github.codechapin.sxpj.bind.XmlPath</code>, a
+ * <code>&lt;Type&gt;_XmlBinding</code> class in the same package building the same rules as
+ * <code>XmlBinding.of(Type.class)</code>:
+ * </p>
+ * <pre>
+ * final List&lt;Movie&gt; movies = new ArrayList&lt;&gt;();
+ * Movie_XmlBinding.newParser(factory).parse(in, new BindingContext&lt;&gt;(movies::add));
+ * </pre>
+ * <p>
+ * The generated rules call the constructor, the setters and the fields directly, so nothing is looked up by
+ * reflection at runtime. Because of that, the bound class, its no-argument constructor, setters and fields cannot
+ * be <code>private</code>; any other mistake <code>XmlBinding</code> would only find at runtime (missing
+ * constructor, unsupported property type, no property at all) is reported as a compilation error.
+ * </p>
+ * <p>
+ * Nested classes are generated as <code>Outer_Inner_XmlBinding</code>. A binding left by an earlier build and
+ * given back to javac as a source is kept as long as it is identical to the one that would be generated, otherwise
+ * it is deleted and the compilation fails, the next one generates it again.
+ * </p>
+ */
+public class XmlPathProcessor extends AbstractProcessor {
+    static final String XML_PATH = "com.github.codechapin.sxpj.bind.XmlPath";
+    static final String SUFFIX = "_XmlBinding";
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(XML_PATH);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    generate((TypeElement) element, roundEnv);
+                } else if (element.getKind() != ElementKind.METHOD && element.getKind() != ElementKind.FIELD) {
+                    error(element, "@XmlPath can only be used on classes, setters and fields");
+                }
+            }
+        }
+        return true;
+    }
+
+    private void generate(final TypeElement type, final RoundEnvironment roundEnv) {
+        final String path = pathOf(type);
+        if (path == null || path.isEmpty() || path.endsWith("/") || !path.startsWith("/")) {
+            error(type, "The @XmlPath of a class must be an absolute path, not ending with '/'");
+            return;
+        }
+        if (!checkType(type)) {
+            return;
+        }
+
+        final String typeName = type.getQualifiedName().toString();
+        final List<String> properties = new ArrayList<>();
+        boolean valid = true;
+
+        // an overriding method replaces the one of its superclass, whether it is annotated or not
+        final Set<String> overridden = new HashSet<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(members(type))) {
+            final Set<Modifier> modifiers = method.getModifiers();
+            if (!modifiers.contains(Modifier.PRIVATE) && !modifiers.contains(Modifier.STATIC)
+                    && !overridden.add(signature(method))) {
+                continue;
+            }
+
+            final String value = pathOf(method);
+            if (value != null) {
+                final String property = method(type, path, value, method);
+                valid &= property != null;
+                properties.add(property);
+            }
+        }
+
+        // a field hidden by one of a subclass is reached through a cast to its own class
+        final Set<String> hidden = new HashSet<>();
+        for (VariableElement field : ElementFilter.fieldsIn(members(type))) {
+            final boolean visible = hidden.add(field.getSimpleName().toString());
+            final String value = pathOf(field);
+            if (value != null) {
+                final String property = field(type, path, value, field, visible);
+                valid &= property != null;
+                properties.add(property);
+            }
+        }
+
+        if (!valid) {
+            return;
+        }
+        if (properties.isEmpty()) {
+            error(type, typeName + " has no setter or field annotated with @XmlPath");
+            return;
+        }
+
+        final PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+        final String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        final String className = binaryName(type) + SUFFIX;
+
+        final StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n")
+                .append(" * Rules of {@link ").append(typeName).append("}, generated from its @XmlPath annotations.\n")
+                .append(" */\n")
+                .append("public final class ").append(className).append(" {\n")
+                .append("    /**\n")
+                .append("     * The location path of the record elements.\n")
+                .append("     */\n")
+                .append("    public static final String PATH = ").append(literal(path)).append(";\n\n")
+                .append("    private ").append(className).append("() {\n")
+                .append("    }\n\n")
+                .append("    /**\n")
+                .append("     * @return new rules populating the records, they can be combined with other rules on the same parser.\n")
+                .append("     */\n")
+                .append("    @SuppressWarnings(\"unchecked\")\n")
+                .append("    public static com.github.codechapin.sxpj.Rule<com.github.codechapin.sxpj.bind.BindingContext<")
+                .append(typeName).append(">>[] rules() {\n")
+                .append("        return new com.github.codechapin.sxpj.Rule[]{\n")
+                .append("                com.github.codechapin.sxpj.bind.BindingContext.<").append(typeName)
+                .append(">records(PATH, ").append(typeName).append("::new)");
+        for (String property : properties) {
+            source.append(",\n                com.github.codechapin.sxpj.bind.BindingContext.<").append(typeName)
+                    .append('>').append(property);
+        }
+        source.append("\n        };\n")
+                .append("    }\n\n")
+                .append("    /**\n")
+                .append("     * @return a new parser using the rules of this binding.\n")
+                .append("     */\n")
+                .append("    public static com.github.codechapin.sxpj.XmlParser<com.github.codechapin.sxpj.bind.BindingContext<")
+                .append(typeName).append(">> newParser(final com.github.codechapin.sxpj.XmlParserFactory factory) {\n")
+                .append("        java.util.Objects.requireNonNull(factory, \"The XmlParserFactory cannot be null\");\n")
+                .append("        return factory.newParser(rules());\n")
+                .append("    }\n")
+                .append("}\n");
+
+        final String qualifiedName = packageName.isEmpty() ? className : packageName + '.' + className;
+        if (!generated.add(qualifiedName)) {
+            return;
+        }
+        final TypeElement existing = processingEnv.getElementUtils().getTypeElement(qualifiedName);
+        if (existing != null && roundEnv.getRootElements().contains(existing)) {
+            // generated by an earlier build and compiled again as a source, it cannot be created a second time
+            if (!source.toString().equals(read(packageName, className))) {
+                final boolean deleted = delete(packageName, className);
+                error(type, qualifiedName + (deleted ? " was out of date and has been deleted, compile again"
+                        : " is out of date, delete it and compile again"));
+            }
+            return;
+        }
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            error(type, "Could not write " + qualifiedName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the content of a source file in the generated sources, <code>null</code> if it cannot be read.
+     */
+    private String read(final String packageName, final String className) {
+        try {
+            return processingEnv.getFiler().getResource(StandardLocation.SOURCE_OUTPUT, packageName,
+                    className + ".java").getCharContent(true).toString();
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the source file was deleted from the generated sources.
+     */
+    private boolean delete(final String packageName, final String className) {
+        // the file objects of the Filer cannot be deleted, go through the file system
+        try {
+            return Files.deleteIfExists(Paths.get(processingEnv.getFiler().getResource(StandardLocation.SOURCE_OUTPUT,
+                    packageName, className + ".java").toUri()));
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the generated class can create instances of the type.
+     */
+    private boolean checkType(final TypeElement type) {
+        boolean valid = true;
+        for (Element e = type; e.getKind() == ElementKind.CLASS; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                error(type, type.getQualifiedName() + " cannot be private or nested in a private class");
+                valid = false;
+                break;
+            }
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(type, type.getQualifiedName() + " cannot be abstract");
+            valid = false;
+        }
+        if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            error(type, type.getQualifiedName() + " must be a static nested class");
+            valid = false;
+        }
+        if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            error(type, "Local and anonymous classes cannot be bound");
+            valid = false;
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            error(type, type.getQualifiedName() + " cannot be generic");
+            valid = false;
+        }
+
+        boolean constructor = false;
+        for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE)) {
+                constructor = true;
+            }
+        }
+        if (!constructor) {
+            error(type, type.getQualifiedName() + " must have a non-private no-argument constructor");
+            valid = false;
+        }
+        return valid;
+    }
+
+    /**
+     * @return the declared and inherited members of the type, the subclass' first.
+     */
+    private List<Element> members(final TypeElement type) {
+        final List<Element> members = new ArrayList<>();
+        for (TypeElement t = type; t != null; t = superclass(t)) {
+            if (t.getQualifiedName().contentEquals("java.lang.Object")) {
+                break;
+            }
+            members.addAll(t.getEnclosedElements());
+        }
+        return members;
+    }
+
+    private TypeElement superclass(final TypeElement type) {
+        final TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return (TypeElement) ((DeclaredType) superclass).asElement();
+    }
+
+    /**
+     * @return the name and erased parameter types of the method, equal for a method and the ones it overrides.
+     */
+    private String signature(final ExecutableElement method) {
+        final StringBuilder signature = new StringBuilder(method.getSimpleName()).append('(');
+        for (VariableElement parameter : method.getParameters()) {
+            signature.append(processingEnv.getTypeUtils().erasure(parameter.asType())).append(',');
+        }
+        return signature.append(')').toString();
+    }
+
+    /**
+     * @return <code>true</code> if the generated class, in the package of the type, can access the member. A member
+     * inherited from a superclass in another package must be public for that.
+     */
+    private boolean accessible(final TypeElement type, final Element member) {
+        final Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        final PackageElement declared = processingEnv.getElementUtils().getPackageOf(member);
+        return modifiers.contains(Modifier.PUBLIC)
+                || declared.equals(processingEnv.getElementUtils().getPackageOf(type));
+    }
+
+    private String method(final TypeElement type, final String path, final String value,
+                          final ExecutableElement method) {
+        if (method.getModifiers().contains(Modifier.PRIVATE) || method.getModifiers().contains(Modifier.STATIC)) {
+            error(method, "A setter annotated with @XmlPath cannot be private or static");
+            return null;
+        }
+        if (!accessible(type, method)) {
+            error(method, "A setter annotated with @XmlPath and inherited by " + type.getQualifiedName()
+                    + " from another package must be public");
+            return null;
+        }
+        if (method.getParameters().size() != 1) {
+            error(method, "A setter annotated with @XmlPath must have exactly one parameter");
+            return null;
+        }
+
+        final String conversion = conversion(method.getParameters().get(0).asType());
+        if (conversion == null) {
+            error(method, "Unsupported type " + method.getParameters().get(0).asType()
+                    + ", use String, boolean, int, long, double or their wrappers");
+            return null;
+        }
+        return property(path, value, "record." + method.getSimpleName() + '(' + conversion + ')');
+    }
+
+    private String field(final TypeElement type, final String path, final String value, final VariableElement field,
+                         final boolean visible) {
+        final Set<Modifier> modifiers = field.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)
+                || modifiers.contains(Modifier.FINAL)) {
+            error(field, "A field annotated with @XmlPath cannot be private, static or final");
+            return null;
+        }
+        if (!accessible(type, field)) {
+            error(field, "A field annotated with @XmlPath and inherited by " + type.getQualifiedName()
+                    + " from another package must be public");
+            return null;
+        }
+        final TypeElement declaring = (TypeElement) field.getEnclosingElement();
+        if (!visible && !accessible(type, declaring)) {
+            error(field, "A field annotated with @XmlPath and hidden by a field of " + type.getQualifiedName()
+                    + " must be declared by a class accessible from its package");
+            return null;
+        }
+
+        final String conversion = conversion(field.asType());
+        if (conversion == null) {
+            error(field, "Unsupported type " + field.asType()
+                    + ", use String, boolean, int, long, double or their wrappers");
+            return null;
+        }
+        final String record = visible ? "record" : "((" + declaring.getQualifiedName() + ") record)";
+        return property(path, value, record + '.' + field.getSimpleName() + " = " + conversion);
+    }
+
+    /**
+     * @return the call to the <code>BindingContext</code> factory, without the type witness.
+     */
+    private String property(final String path, final String value, final String statement) {
+        final String absolute = resolve(path, value);
+        final String lambda = "(record, value) -> " + statement;
+
+        final int attribute = absolute.lastIndexOf("/@");
+        if (attribute >= 0) {
+            final String elementPath = attribute == 0 ? path : absolute.substring(0, attribute);
+            return "attribute(" + literal(elementPath) + ", " + literal(absolute.substring(attribute + 2)) + ", "
+                    + lambda + ')';
+        }
+        return "text(" + literal(absolute) + ", " + lambda + ')';
+    }
+
+    /**
+     * @return the absolute path of a property, relative paths are resolved against the record path.
+     */
+    static String resolve(final String path, final String value) {
+        if (value.startsWith("/")) {
+            return value;
+        }
+        if (value.isEmpty() || value.equals(".")) {
+            return path;
+        }
+        return path + '/' + value;
+    }
+
+    /**
+     * @return the expression converting <code>value</code> to the type, <code>null</code> if not supported.
+     */
+    static String conversion(final TypeMirror type) {
+        switch (type.toString()) {
+            case "java.lang.String":
+                return "value";
+            case "boolean":
+                return "Boolean.parseBoolean(value)";
+            case "int":
+                return "Integer.parseInt(value)";
+            case "long":
+                return "Long.parseLong(value)";
+            case "double":
+                return "Double.parseDouble(value)";
+            case "java.lang.Boolean":
+                return "Boolean.valueOf(value)";
+            case "java.lang.Integer":
+                return "Integer.valueOf(value)";
+            case "java.lang.Long":
+                return "Long.valueOf(value)";
+            case "java.lang.Double":
+                return "Double.valueOf(value)";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the value of the @XmlPath annotation of the element, <code>null</code> if not annotated.
+     */
+    private static String pathOf(final Element element) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            final TypeElement annotation = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotation.getQualifiedName().contentEquals(XML_PATH)) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                        : mirror.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("value")) {
+                        return (String) entry.getValue().getValue();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the simple names of the type and its enclosing types joined with '_'.
+     */
+    private static String binaryName(final TypeElement type) {
+        final Element enclosing = type.getEnclosingElement();
+        if (enclosing.getKind() == ElementKind.CLASS || enclosing.getKind() == ElementKind.INTERFACE) {
+            return binaryName((TypeElement) enclosing) + '_' + type.getSimpleName();
+        }
+        return type.getSimpleName().toString();
+    }
+
+    /**
+     * @return the Java string literal of the value.
+     */
+    static String literal(final String value) {
+        final StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private void error(final Element element, final String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.codechapin.sxpj.processor;
+
+import com.github.codechapin.sxpj.bind.XmlPath;
+
+/**
+ *
+ */
+@XmlPath("/imdb/category/movie")
+public class GeneratedMovie {
+    @XmlPath("cast/actor/@charName")
+    String lastCharacter;
+
+    @XmlPath("year")
+    Integer year;
+
+    private String id;
+    private String name;
+    private long actors;
+
+    @XmlPath("@id")
+    public void setId(final String id) {
+        this.id = id;
+    }
+
+    @XmlPath("/imdb/category/movie/name")
+    void setName(final String name) {
+        this.name = name;
+    }
+
+    @XmlPath("cast/actor/@realName")
+    public void addActor(final String actor) {
+        actors++;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getActors() {
+        return actors;
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.codechapin.sxpj.processor;
+
+import com.github.codechapin.sxpj.XmlParserFactory;
+import com.github.codechapin.sxpj.bind.BindingContext;
+import com.github.codechapin.sxpj.bind.XmlPath;
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class XmlPathProcessorTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    @Test
+    public void testGeneratedRules() throws IOException {
+        final List<GeneratedMovie> movies = new ArrayList<>();
+        final BindingContext<GeneratedMovie> context = new BindingContext<>(movies::add);
+
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            GeneratedMovie_XmlBinding.newParser(factory).parse(in, context);
+        }
+
+        assertEquals(GeneratedMovie_XmlBinding.PATH, "/imdb/category/movie");
+        assertEquals(GeneratedMovie_XmlBinding.rules().length, 6);
+        assertEquals(context.getCount(), 2);
+
+        final GeneratedMovie terminator = movies.get(0);
+        assertEquals(terminator.getId(), "1234");
+        assertEquals(terminator.getName(), "Terminator 2");
+        assertEquals(terminator.year, Integer.valueOf(1991));
+        assertEquals(terminator.getActors(), 3);
+        assertEquals(terminator.lastCharacter, "John Connor");
+
+        final GeneratedMovie tommyBoy = movies.get(1);
+        assertEquals(tommyBoy.getId(), "5678");
+        assertEquals(tommyBoy.getName(), "Tommy Boy");
+        assertEquals(tommyBoy.year, Integer.valueOf(1995));
+        assertEquals(tommyBoy.lastCharacter, "Big Tom");
+    }
+
+    @Test
+    public void testNestedClass() throws IOException {
+        final List<String> names = new ArrayList<>();
+
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            XmlPathProcessorTest_Category_XmlBinding.newParser(factory)
+                    .parse(in, new BindingContext<Category>(category -> names.add(category.name)));
+        }
+
+        assertEquals(names.size(), 2);
+        assertEquals(names.get(0), "Action");
+        assertEquals(names.get(1), "Comedy");
+    }
+
+    @Test
+    public void testOverriddenSetter() throws IOException {
+        final List<Label> labels = new ArrayList<>();
+
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            XmlPathProcessorTest_Label_XmlBinding.newParser(factory).parse(in, new BindingContext<>(labels::add));
+        }
+
+        assertEquals(XmlPathProcessorTest_Label_XmlBinding.rules().length, 2);
+        assertEquals(labels.size(), 2);
+        assertEquals(labels.get(0).label, "Action");
+        assertNull(labels.get(0).name);
+    }
+
+    @Test
+    public void testLiteral() {
+        assertEquals(XmlPathProcessor.literal("/a/[urn:\"x\"]b\\cé"), "\"/a/[urn:\\\"x\\\"]b\\\\c\\u00e9\"");
+    }
+
+    @XmlPath("/imdb/category")
+    static class Category {
+        @XmlPath("@name")
+        String name;
+    }
+
+    static class Named {
+        String name;
+
+        @XmlPath("@name")
+        void setName(final String name) {
+            this.name = name;
+        }
+    }
+
+    @XmlPath("/imdb/category")
+    static class Label extends Named {
+        @XmlPath("@name")
+        String label;
+
+        @Override
+        void setName(final String name) {
+            throw new AssertionError("an overriding setter without @XmlPath is not bound");
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.github.codechapin.sxpj;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>
+ * {@link InputStream} over an {@link AsynchronousFileChannel}, read ahead of the consumer without a thread of its
+ * own: each read is issued from the completion of the previous one, as long as a buffer of the ring is free.
+ * </p>
+ * <p>
+ * Like {@link ReadAheadInputStream}, a buffer goes from the free ring to a pending read, then to the filled queue,
+ * is drained by the consumer and goes back to the free ring, which issues the next read if none is pending. Only
+ * one read is pending at a time so the buffers are filled in file order. The memory used is bounded by
+ * <code>depth * bufferSize</code>.
+ * </p>
+ * <p>
+ * {@link #ready()} completes once the first buffer is filled (or the read failed), so the consumer can be
+ * scheduled when there is something to parse instead of blocking a thread on the first read.
+ * </p>
+ */
+final class AsyncFileInputStream extends InputStream {
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final AsynchronousFileChannel channel;
+    private final BlockingQueue<ByteBuffer> filled;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final Handler handler = new Handler();
+
+    // guarded by free
+    private final Deque<ByteBuffer> free;
+    private boolean pending;
+    private boolean eof;
+
+    // only used by the pending read
+    private long position;
+
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    private ByteBuffer current;
+
+    AsyncFileInputStream(final AsynchronousFileChannel channel, final int bufferSize, final int depth) {
+        if (bufferSize <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("bufferSize and depth must be greater than 0");
+        }
+
+        this.channel = channel;
+        this.free = new ArrayDeque<>(depth);
+        this.filled = new ArrayBlockingQueue<>(depth + 1);   // every buffer plus the END marker
+
+        for (int i = 0; i < depth; i++) {
+            free.add(ByteBuffer.allocate(bufferSize));
+        }
+        readNext();
+    }
+
+    /**
+     * @return completes once the first bytes, the end of the file or a failure can be read without blocking.
+     */
+    CompletableFuture<Void> ready() {
+        return ready;
+    }
+
+    /**
+     * Issues the next read if none is pending and a buffer is free.
+     */
+    private void readNext() {
+        final ByteBuffer buffer;
+        synchronized (free) {
+            if (pending || eof || closed || free.isEmpty()) {
+                return;
+            }
+            buffer = free.poll();
+            pending = true;
+        }
+
+        buffer.clear();
+        try {
+            channel.read(buffer, position, buffer, handler);
+        } catch (RuntimeException e) {
+            handler.failed(e, buffer);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        final ByteBuffer buffer = next();
+        return buffer == END ? -1 : buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        final ByteBuffer buffer = next();
+        if (buffer == END) {
+            return -1;
+        }
+
+        final int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END ? 0 : current.remaining();
+    }
+
+    /**
+     * @return the current buffer with bytes remaining, or {@link #END}.
+     */
+    private ByteBuffer next() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (current == END) {
+            return END;
+        }
+        if (current != null && current.hasRemaining()) {
+            return current;
+        }
+
+        if (current != null) {
+            synchronized (free) {
+                free.add(current);
+            }
+            readNext();
+        }
+
+        try {
+            current = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the file to be read");
+        }
+        if (closed) {
+            // woken up by close()
+            throw new IOException("Stream closed");
+        }
+
+        if (current == END && failure != null) {
+            if (failure instanceof IOException) {
+                throw new IOException(failure.getMessage(), failure);
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw new XmlParserException("Failed to read the file: " + failure.getMessage(), (Exception) failure);
+        }
+        return current;
+    }
+
+    /**
+     * Closes the channel, a pending read is abandoned. A consumer waiting for a buffer on another thread is woken
+     * up and fails as if it had read after the close.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            // the queue holds every buffer plus one END, so there is room unless an END is already there
+            filled.offer(END);
+            ready.complete(null);
+        }
+    }
+
+    private final class Handler implements CompletionHandler<Integer, ByteBuffer> {
+        @Override
+        public void completed(final Integer n, final ByteBuffer buffer) {
+            if (n < 0) {
+                synchronized (free) {
+                    pending = false;
+                    eof = true;
+                    free.add(buffer);
+                }
+                filled.offer(END);
+                ready.complete(null);
+                return;
+            }
+
+            if (n == 0) {
+                synchronized (free) {
+                    pending = false;
+                    free.add(buffer);
+                }
+                readNext();
+                return;
+            }
+
+            position += n;
+            buffer.flip();
+            filled.offer(buffer);
+            ready.complete(null);
+
+            synchronized (free) {
+                pending = false;
+            }
+            readNext();
+        }
+
+        @Override
+        public void failed(final Throwable t, final ByteBuffer buffer) {
+            if (!closed) {
+                failure = t;
+            }
+            synchronized (free) {
+                pending = false;
+                eof = true;
+            }
+            filled.offer(END);
+            ready.complete(null);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.github.codechapin.sxpj;
+
+import com.github.codechapin.sxpj.handler.Element;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Collects the records completed by the handlers into batches and hands every batch to a consumer on an
+ * {@link Executor}, so slow bulk writes (database inserts, messages) overlap with the parsing:
+ * </p>
+ * <pre>
+ * try (BatchingSink&lt;Row&gt; sink = new BatchingSink&lt;&gt;(dao::insertAll, executor, 500)
+ *         .maxDelay(1, TimeUnit.SECONDS)) {
+ *     parser.parse(in, new BindingContext&lt;&gt;(sink));
+ * }
+ * </pre>
+ * <p>
+ * A batch is delivered when it holds <code>batchSize</code> records, when its oldest record has waited
+ * <code>maxDelay</code>, and on {@link #flush()}. At most <code>maxPending</code> batches are delivered or waiting
+ * for the executor at any time: once they are all taken {@link #accept(Object)} blocks, which slows the parsing
+ * down to the pace of the consumer and bounds the memory used.
+ * </p>
+ * <p>
+ * Batches are delivered in order with a single-threaded executor; with more threads they may be consumed
+ * concurrently. The first failure of the consumer is rethrown as an {@link XmlParserException} by the next call
+ * to {@link #accept(Object)} or {@link #flush()}, or as it is if it was an {@link Error}. A batch the executor
+ * rejects stays in the sink and is submitted again by the next full batch, timer tick or flush.
+ * </p>
+ */
+public class BatchingSink<T> implements Consumer<T>, AutoCloseable {
+    private final Consumer<? super List<T>> consumer;
+    private final Executor executor;
+    private final int batchSize;
+    private final AtomicReference<Throwable> failure;
+
+    private int maxPending;
+    private long maxDelayNanos;
+
+    private Semaphore pending;
+    private ScheduledExecutorService timer;
+
+    private List<T> batch;
+    private long batchStart;
+    private long records;
+    private long batches;
+    private boolean closed;
+
+    /**
+     * @param consumer  receives every batch, on a thread of the executor.
+     * @param executor  runs the consumer.
+     * @param batchSize the maximum number of records of a batch.
+     */
+    public BatchingSink(final Consumer<? super List<T>> consumer, final Executor executor, final int batchSize) {
+        Objects.requireNonNull(consumer, "The Consumer cannot be null");
+        Objects.requireNonNull(executor, "The Executor cannot be null");
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than 0");
+        }
+
+        this.consumer = consumer;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.failure = new AtomicReference<>();
+        this.maxPending = 2;
+    }
+
+    /**
+     * Must be called before the first record.
+     *
+     * @param maxPending the maximum number of batches being delivered or waiting for the executor, defaults to 2.
+     * @return this sink, to allow chaining.
+     */
+    public synchronized BatchingSink<T> maxPending(final int maxPending) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("maxPending must be greater than 0");
+        }
+        checkNotStarted();
+        this.maxPending = maxPending;
+        return this;
+    }
+
+    /**
+     * Must be called before the first record. Without it, batches are only delivered when full or flushed.
+     *
+     * @param maxDelay the maximum time a record waits for its batch to be full.
+     * @param unit     the unit of <code>maxDelay</code>.
+     * @return this sink, to allow chaining.
+     */
+    public synchronized BatchingSink<T> maxDelay(final long maxDelay, final TimeUnit unit) {
+        Objects.requireNonNull(unit, "The TimeUnit cannot be null");
+        if (maxDelay <= 0) {
+            throw new IllegalArgumentException("maxDelay must be greater than 0");
+        }
+        checkNotStarted();
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        return this;
+    }
+
+    /**
+     * Adds a record to the current batch, delivering the batch if it is full. Blocks while <code>maxPending</code>
+     * batches are being delivered.
+     *
+     * @param record a completed record.
+     */
+    @Override
+    public synchronized void accept(final T record) {
+        checkFailure();
+        if (closed) {
+            throw new IllegalStateException("the sink is closed");
+        }
+
+        if (batch == null) {
+            if (pending == null) {
+                start();
+            }
+            batch = new ArrayList<>(batchSize);
+            batchStart = System.nanoTime();
+        }
+
+        batch.add(record);
+        records++;
+        if (batch.size() == batchSize) {
+            submit();
+        }
+    }
+
+    /**
+     * @param path the location path of an element, usually the root element.
+     * @return a rule flushing this sink when the element ends, so the last records of a document are delivered as
+     * soon as it is parsed.
+     */
+    public <S> Rule<S> flushOn(final String path) {
+        return Rule.element(path, (element, state, parser) -> {
+            if (element == Element.END) {
+                flush();
+            }
+        });
+    }
+
+    /**
+     * Delivers the current batch, even if it is not full, and waits until every batch has been delivered.
+     */
+    public synchronized void flush() {
+        if (batch != null) {
+            submit();
+        }
+
+        if (pending != null) {
+            try {
+                // every permit is back once every batch has been delivered
+                pending.acquire(maxPending);
+                pending.release(maxPending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XmlParserException("interrupted while waiting for the batches to be delivered", e);
+            }
+        }
+        checkFailure();
+    }
+
+    /**
+     * Flushes this sink and stops its timer. The executor is not shut down.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        try {
+            flush();
+        } finally {
+            closed = true;
+            if (timer != null) {
+                timer.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @return the number of records accepted.
+     */
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return the number of batches handed to the executor.
+     */
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    private void start() {
+        pending = new Semaphore(maxPending);
+
+        if (maxDelayNanos > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "sxpj-batch-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long period = Math.max(TimeUnit.MILLISECONDS.toNanos(1), maxDelayNanos / 4);
+            timer.scheduleAtFixedRate(this::expire, period, period, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private synchronized void expire() {
+        if (batch != null && !closed && System.nanoTime() - batchStart >= maxDelayNanos) {
+            try {
+                submit();
+            } catch (XmlParserException e) {
+                // interrupted by close() or rejected by the executor: the batch is still here and the next tick or
+                // flush submits it again, the flush reports a rejection that persists
+            }
+        }
+    }
+
+    private void submit() {
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XmlParserException("interrupted while waiting for a batch to be delivered", e);
+        }
+
+        final List<T> full = batch;
+        batch = null;
+        batches++;
+
+        try {
+            executor.execute(() -> {
+                try {
+                    consumer.accept(full);
+                } catch (Throwable t) {
+                    // rethrown by the sink, not by the thread of the executor
+                    failure.compareAndSet(null, t);
+                } finally {
+                    pending.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            batch = full;
+            batches--;
+            pending.release();
+            throw new XmlParserException("failed to deliver a batch: " + e.getMessage(), e);
+        }
+    }
+
+    private void checkNotStarted() {
+        if (pending != null) {
+            throw new IllegalStateException("the sink has already received records");
+        }
+    }
+
+    private void checkFailure() {
+        final Throwable t = failure.get();
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t != null) {
+            // neither an Error nor an Exception, only possible with a custom Throwable
+            final Exception e = t instanceof Exception ? (Exception) t : new Exception(t);
+            throw new XmlParserException("failed to deliver a batch: " + t.getMessage(), e);
+        }
+    }
+}
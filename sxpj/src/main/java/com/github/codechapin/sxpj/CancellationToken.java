@@ -0,0 +1,105 @@
+package com.github.codechapin.sxpj;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * <p>
+ * Aborts a parse from any thread, or once a deadline has passed:
+ * </p>
+ * <pre>
+ * final CancellationToken token = CancellationToken.withTimeout(Duration.ofMillis(200));
+ * executor.submit(() -&gt; parser.parse(in, null, state, token));
+ * ...
+ * token.cancel();    // from a request thread that gave up, for example
+ * </pre>
+ * <p>
+ * A parser given a token checks it every {@value #CHECK_INTERVAL} events and throws a
+ * {@link ParseCancelledException} once it is cancelled or its deadline has passed. The check is a volatile read
+ * and a {@link System#nanoTime()} call, amortized over the events in between. It happens between events, so a
+ * parse blocked on a read that never returns is not aborted by the token; close the input to unblock it.
+ * </p>
+ * <p>
+ * A token can be shared by several parses, cancelling it aborts all of them. It cannot be reset.
+ * </p>
+ */
+public final class CancellationToken {
+    /**
+     * Number of events between two checks of the token by a parser.
+     */
+    public static final int CHECK_INTERVAL = 256;
+
+    /**
+     * Used by the parse methods without token, never checked.
+     */
+    static final CancellationToken NONE = new CancellationToken();
+
+    // far enough in the future to never be reached, without overflowing the difference with nanoTime()
+    private static final long NO_DEADLINE = Long.MAX_VALUE / 2;
+
+    private final long deadline;
+    private final boolean timed;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a token without deadline, only aborted by {@link #cancel()}.
+     */
+    public CancellationToken() {
+        this.deadline = 0;
+        this.timed = false;
+    }
+
+    private CancellationToken(final long deadline) {
+        this.deadline = deadline;
+        this.timed = true;
+    }
+
+    /**
+     * @param timeout how long the parses given this token may run, from now.
+     * @return a token that is also aborted once the timeout has elapsed.
+     */
+    public static CancellationToken withTimeout(final Duration timeout) {
+        Objects.requireNonNull(timeout, "The timeout cannot be null");
+        if (timeout.isNegative()) {
+            throw new IllegalArgumentException("the timeout cannot be negative");
+        }
+
+        final long nanos = timeout.compareTo(Duration.ofNanos(NO_DEADLINE)) >= 0 ? NO_DEADLINE : timeout.toNanos();
+        return new CancellationToken(System.nanoTime() + nanos);
+    }
+
+    /**
+     * Aborts the parses using this token, at their next check. Safe to call from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return <code>true</code> once {@link #cancel()} has been called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return <code>true</code> once the deadline of the token has passed, always <code>false</code> without one.
+     */
+    public boolean isDeadlineExceeded() {
+        return timed && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * @throws ParseCancelledException if the token is cancelled or its deadline has passed.
+     */
+    void check() {
+        if (cancelled) {
+            throw new ParseCancelledException(ParseCancelledException.Reason.CANCELLED, "the parse was cancelled");
+        }
+        if (isDeadlineExceeded()) {
+            throw new ParseCancelledException(ParseCancelledException.Reason.DEADLINE_EXCEEDED,
+                    "the deadline of the parse has passed");
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.codechapin.sxpj;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Report produced by {@link XmlProfiler}: the census of the location paths of a document.
+ */
+public class DocumentProfile {
+    private final List<PathProfile> paths;
+    private final long elementCount;
+    private final int maxDepth;
+    private final long untrackedElements;
+
+    /**
+     * @param paths the profiles by hash code of their path, chained by {@link PathProfile#next} when they collide.
+     */
+    DocumentProfile(final Map<Integer, PathProfile> paths, final long elementCount, final int maxDepth,
+                    final long untrackedElements) {
+        final List<PathProfile> sorted = new ArrayList<>(paths.size());
+        for (PathProfile profile : paths.values()) {
+            for (; profile != null; profile = profile.next) {
+                sorted.add(profile);
+            }
+        }
+        sorted.sort((a, b) -> a.getPath().compareTo(b.getPath()));
+
+        this.paths = Collections.unmodifiableList(sorted);
+        this.elementCount = elementCount;
+        this.maxDepth = maxDepth;
+        this.untrackedElements = untrackedElements;
+    }
+
+    /**
+     * @return the profile of every tracked path, sorted by path.
+     */
+    public Collection<PathProfile> getPaths() {
+        return paths;
+    }
+
+    /**
+     * @param path a location path, in the same format used by {@link Rule#getPath()}.
+     * @return the profile of the given path or <code>null</code> if it was not found or not tracked.
+     */
+    public PathProfile getPath(final String path) {
+        for (PathProfile profile : paths) {
+            if (profile.getPath().equals(path)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the total number of elements in the document.
+     */
+    public long getElementCount() {
+        return elementCount;
+    }
+
+    /**
+     * @return the deepest nesting level found in the document.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the number of elements whose path was not tracked because the limit of distinct paths was reached.
+     */
+    public long getUntrackedElements() {
+        return untrackedElements;
+    }
+
+    /**
+     * @return <code>true</code> if the document had more distinct paths than the profiler was allowed to track.
+     */
+    public boolean isTruncated() {
+        return untrackedElements > 0;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(64 + paths.size() * 96);
+        builder.append("elements=").append(elementCount)
+                .append(" paths=").append(paths.size())
+                .append(" maxDepth=").append(maxDepth);
+        if (isTruncated()) {
+            builder.append(" untracked=").append(untrackedElements);
+        }
+        for (PathProfile path : paths) {
+            builder.append('\n').append(path);
+        }
+        return builder.toString();
+    }
+}
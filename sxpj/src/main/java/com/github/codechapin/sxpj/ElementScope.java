@@ -0,0 +1,145 @@
+package com.github.codechapin.sxpj;
+
+import com.github.codechapin.sxpj.handler.Element;
+
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>
+ * Ties a record object to an element: the record is borrowed from a {@link RecordPool} when the element starts,
+ * populated by the attribute and characters rules of the scope while the element is open, handed to a consumer
+ * when the element ends and then released to the pool:
+ * </p>
+ * <pre>
+ * final ElementScope&lt;MovieDatabase, Movie&gt; movie = new ElementScope&lt;&gt;("/imdb/category/movie",
+ *         RecordPool.of(Movie::new, Movie::clear, 4), MovieDatabase::process);
+ *
+ * factory.newParser(movie.rule(),
+ *         movie.attribute("id", Movie::setId),
+ *         movie.text("/imdb/category/movie/name", Movie::setName))
+ *     .parse(in, database);
+ * </pre>
+ * <p>
+ * Once the pool holds as many records as there are scopes open at the same time, a parse allocates no record at
+ * all, instead of one per element with <code>setCurrentMovie(new Movie())</code> in an element handler. The
+ * consumer must therefore copy what it needs out of the record rather than keep it.
+ * </p>
+ * <p>
+ * A scope holds the record of the element being parsed, so it must only be used by one parser at a time. The
+ * scope's element must not be nested in itself.
+ * </p>
+ */
+public final class ElementScope<S, T> {
+    private final String path;
+    private final RecordPool<T> pool;
+    private final BiConsumer<? super S, ? super T> consumer;
+
+    private T current;
+    private long records;
+
+    /**
+     * @param path     the location path of the element the records are scoped to.
+     * @param pool     lends the records.
+     * @param consumer receives the state of the parser and each record when its element ends.
+     */
+    public ElementScope(final String path, final RecordPool<T> pool, final BiConsumer<? super S, ? super T> consumer) {
+        Rule.checkPath(path);
+        Objects.requireNonNull(pool, "The RecordPool cannot be null");
+        Objects.requireNonNull(consumer, "The consumer cannot be null");
+
+        this.path = path;
+        this.pool = pool;
+        this.consumer = consumer;
+    }
+
+    /**
+     * @return the record of the element being parsed, <code>null</code> outside of it.
+     */
+    public T current() {
+        return current;
+    }
+
+    /**
+     * @return the rule borrowing the records at the start of the element and consuming them at its end.
+     */
+    public Rule<S> rule() {
+        return Rule.element(path, (element, state, parser) -> {
+            if (element == Element.START) {
+                current = pool.borrow();
+                return;
+            }
+
+            final T record = current;
+            current = null;
+            if (record == null) {
+                return;
+            }
+            try {
+                records++;
+                consumer.accept(state, record);
+            } finally {
+                pool.release(record);
+            }
+        });
+    }
+
+    /**
+     * @param name   the attribute of the scope's element, <code>[namespace]name</code> for a namespaced one.
+     * @param setter called with the current record and the attribute value, missing attributes are ignored.
+     * @return the rule setting the property.
+     */
+    public Rule<S> attribute(final String name, final BiConsumer<? super T, String> setter) {
+        return attribute(path, name, setter);
+    }
+
+    /**
+     * @param elementPath the location path of the element holding the attribute, the scope's element or below.
+     * @param name        the attribute name, <code>[namespace]name</code> for a namespaced one.
+     * @param setter      called with the current record and the attribute value, missing attributes are ignored.
+     * @return the rule setting the property.
+     */
+    public Rule<S> attribute(final String elementPath, final String name, final BiConsumer<? super T, String> setter) {
+        Objects.requireNonNull(setter, "The setter cannot be null");
+        checkInside(elementPath);
+        return Rule.attributes(elementPath, (attributeName, value, state, parser) -> {
+            if (current != null && value != null) {
+                setter.accept(current, value);
+            }
+        }, name);
+    }
+
+    /**
+     * @param elementPath the location path of the element, the scope's element or below.
+     * @param setter      called with the current record and the text of the element, empty text is ignored.
+     * @return the rule setting the property.
+     */
+    public Rule<S> text(final String elementPath, final BiConsumer<? super T, String> setter) {
+        Objects.requireNonNull(setter, "The setter cannot be null");
+        checkInside(elementPath);
+        return Rule.characters(elementPath, (chars, state, parser) -> {
+            if (current != null && !chars.isEmpty()) {
+                setter.accept(current, chars);
+            }
+        });
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the number of records handed to the consumer.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    private void checkInside(final String elementPath) {
+        Rule.checkPath(elementPath);
+        if (!elementPath.equals(path) && !elementPath.startsWith(path + "/")) {
+            throw new IllegalArgumentException(
+                    "the path '" + elementPath + "' is not inside the scope '" + path + "'");
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.codechapin.sxpj;
+
+import com.github.codechapin.sxpj.handler.CharactersHandler;
+
+import java.util.Objects;
+
+/**
+ * <p>
+ * Maps a field of a record to a location path: the text of an element or, when the last step of the path starts
+ * with <code>@</code>, an attribute (<code>@[namespace]name</code> for a namespaced one). Shared by
+ * {@link com.github.codechapin.sxpj.column.Columns} and {@link com.github.codechapin.sxpj.convert.RecordWriter},
+ * which is why it is public; it is not meant to be used directly.
+ * </p>
+ */
+public final class FieldRule {
+    private FieldRule() {
+    }
+
+    /**
+     * @param recordPath the location path of the records.
+     * @param path       the path of the field, the record path or below it.
+     * @param kind       what the field is called in the error messages, e.g. <code>"column"</code>.
+     * @return the given path.
+     * @throws IllegalArgumentException if the path is outside of the record or misses its attribute name.
+     */
+    public static String check(final String recordPath, final String path, final String kind) {
+        Objects.requireNonNull(path, "The " + kind + " path cannot be null");
+
+        final int at = path.lastIndexOf("/@");
+        final String elementPath = at >= 0 ? path.substring(0, at) : path;
+        if (at >= 0 && at + 2 == path.length()) {
+            throw new IllegalArgumentException("the " + kind + " path '" + path + "' is missing the attribute name");
+        }
+        if (!elementPath.equals(recordPath) && !elementPath.startsWith(recordPath + "/")) {
+            throw new IllegalArgumentException(
+                    "the " + kind + " path '" + path + "' is not inside the record path '" + recordPath + "'");
+        }
+        return path;
+    }
+
+    /**
+     * @param path    a path accepted by {@link #check(String, String, String)}.
+     * @param handler receives the value of the field, never <code>null</code> nor empty.
+     * @return an ATTRIBUTE rule if the path ends with an attribute, a CHARACTERS rule otherwise.
+     */
+    public static <S> Rule<S> of(final String path, final CharactersHandler<S> handler) {
+        Objects.requireNonNull(handler, "The CharactersHandler cannot be null.");
+
+        final int at = path.lastIndexOf("/@");
+        if (at >= 0) {
+            return Rule.attributes(path.substring(0, at), (name, value, state, parser) -> {
+                if (value != null && !value.isEmpty()) {
+                    handler.handle(value, state, parser);
+                }
+            }, path.substring(at + 2));
+        }
+        return Rule.characters(path, (chars, state, parser) -> {
+            if (!chars.isEmpty()) {
+                handler.handle(chars, state, parser);
+            }
+        });
+    }
+}
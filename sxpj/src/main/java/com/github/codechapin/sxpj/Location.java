@@ -0,0 +1,278 @@
+package com.github.codechapin.sxpj;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Simple and fast class used to mock the behavior of a stack in the form of
+ * a string for the purposes of "pushing" and "popping" the parser's current
+ * location within an XML document as it processes START and END_TAG events.
+ * <p/>
+ * Performance is optimized by using a {@link StringBuilder} who's length is
+ * chopped (which just adjusts an <code>int</code> value) to simulate a
+ * "pop" off the top.
+ * <h3>Performance</h3>
+ * Instead of String object creation and char[] duplication (e.g.
+ * {@link System#arraycopy(Object, int, Object, int, int)}) this uses a simple
+ * integer hash codes.
+ * <p/>
+ * The performance improvement is huge over a toString-based
+ * method of matching <code>path</code>s against the
+ * parser's current location.
+ */
+final class Location {
+    private static final int HASH_CODE_CACHE_SIZE = 512;
+
+    private int hashCode;
+    private Integer[] hashCodeCache;
+
+    private StringBuilder path;
+
+    /*
+     * Per level, indexed by depth (0 is the document): the length of the path before the element was pushed, the
+     * index of the element among the children of its parent, the number of children it had so far and its
+     * position among the siblings of the same name (only set for the steps of positional rules).
+     */
+    private int depth;
+    private int[] lengths;
+    private int[] ordinals;
+    private int[] childCounts;
+    private int[] positions;
+
+    /**
+     * Creates a new empty location.
+     */
+    public Location() {
+        hashCode = 0;
+        hashCodeCache = new Integer[HASH_CODE_CACHE_SIZE];
+
+        path = new StringBuilder(256);
+        lengths = new int[16];
+        ordinals = new int[16];
+        childCounts = new int[16];
+        positions = new int[16];
+    }
+
+    /**
+     * Overridden to calculate the hash code of this location using the
+     * exact same hash code calculation that {@link String#hashCode()} uses.
+     * This allows us to say a <code>String</code> with the content
+     * "/library/book/title" is equal to an instance of this class
+     * representing the same location when doing lookups in a {@link Map}.
+     * <br />
+     * This method calculates the hash code and then caches it, followup
+     * calls to {@link #push(String, String)} or {@link #pop()} invalidate
+     * the cached hash code allowing it to be recalculated again on the next
+     * call.
+     */
+    @Override
+    public int hashCode() {
+        /*
+			 * If the hash code is already 0 and our path is empty, there is
+			 * nothing to compute so the hash code stays 0. Otherwise we drop
+			 * into the for-loop and calculate the String-equivalent hash code.
+			 */
+        if (hashCode == 0 && path.length() > 0) {
+            for (int i = 0, length = path.length(); i < length; i++) {
+                hashCode = 31 * hashCode + path.charAt(i);
+            }
+        }
+
+        return hashCode;
+    }
+
+    /**
+     * Used to get a cached {@link Integer} version of the <code>int</code>
+     * {@link #hashCode()} return value.
+     * <br />
+     * To avoid unnecessary {@link Integer} allocations, this method caches
+     * up to a certain number of {@link Integer} instances, re-using them
+     * every time the same hash code value comes back up and creating new
+     * instances when it doesn't.
+     * <br />
+     * If a larger number of {@link Integer} instances are created than the
+     * underlying cache can hold, then a new instance will be created and
+     * returned like normal.
+     * <h3>Design</h3>
+     * The reason this works so well for parsing XML is because of the
+     * nested, tag-matching structure of XML. When considering unique paths
+     * inside of an XML doc (e.g. "/library", "/library/book", etc.) there
+     * are typically not that many; maybe 20, 50 or less than a 100 in most
+     * cases.
+     * <br />
+     * Once the hash code {@link Integer} values for these unique paths is
+     * created and cached, once we re-encounter that path again and again,
+     * we don't need to recreate that hash code {@link Integer}, we can just
+     * use the one from the previous occurrence.
+     *
+     * @return a cached {@link Integer} version of the <code>int</code>
+     * {@link #hashCode()} return value.
+     */
+    public Integer getCachedHashCode() {
+        // Recalculate the hash code
+        hashCode();
+
+        // Figure out the index, in our cache, where this value WOULD be.
+        int index = hashCode % hashCodeCache.length;
+
+        // Absolute value only
+        if (index < 0) {
+            index = -index;
+        }
+
+        // Get the Integer we think represents our value.
+        Integer value = hashCodeCache[index];
+
+        // If we haven't created an Integer for this value yet, do it now.
+        if (value == null) {
+            hashCodeCache[index] = (value = hashCode);
+        } else if (hashCode != value) {
+            /*
+             * If a collision has occurred and we have filled up our cache
+             * already and the Integer we grabbed doesn't represent our int
+             * value, forget the cache and just create a new Integer the old
+             * fashion way and return it.
+             *
+             * The hope is that the cache is always large enough that we only
+             * ever hit it and have no misses like this.
+             */
+            value = hashCode;
+        }
+
+        return value;
+    }
+
+    /**
+     * Used to clear all the internal state of the location.
+     */
+    public void clear() {
+        hashCode = 0;
+        hashCodeCache = new Integer[HASH_CODE_CACHE_SIZE];
+
+        path.setLength(0);
+        depth = 0;
+        childCounts[0] = 0;
+    }
+
+    /**
+     * "Pushes" a new local name and optional namespace URI onto the "stack"
+     * by appending it to the current location path that represents the
+     * parser's location inside of the XML doc.
+     *
+     * @param localName    The local name of the tag (e.g. "title").
+     * @param namespaceURI Optionally, the full qualifying namespace URI for this
+     *                     tag.
+     */
+    public void push(String localName, String namespaceURI) {
+        // Clear the hash code cache first to be safe.
+        hashCode = 0;
+
+        if (depth + 1 == lengths.length) {
+            final int capacity = lengths.length * 2;
+            lengths = Arrays.copyOf(lengths, capacity);
+            ordinals = Arrays.copyOf(ordinals, capacity);
+            childCounts = Arrays.copyOf(childCounts, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+
+        final int ordinal = ++childCounts[depth];
+        depth++;
+
+        // Remember the length before we inserted this last entry
+        lengths[depth] = path.length();
+        ordinals[depth] = ordinal;
+        childCounts[depth] = 0;
+        positions[depth] = 0;
+
+        // Add separator
+        path.append('/');
+
+        // Add the namespace URI if there is one.
+        if (namespaceURI != null && namespaceURI.length() > 0) {
+            path.append('[').append(namespaceURI).append(']');
+        }
+
+        // Append the local name
+        path.append(localName);
+    }
+
+    /**
+     * "Pops" the last pushed path element off the "stack" by re-adjusting
+     * the {@link StringBuilder}'s length to what it was before the last
+     * element was appended.
+     * <br />
+     * This effectively chops the last element off the path without doing a
+     * more costly {@link StringBuilder#delete(int, int)} operation that
+     * would incur a call to
+     * {@link System#arraycopy(Object, int, Object, int, int)} by simply
+     * adjusting a single <code>int</code> counter inside of
+     * {@link StringBuilder}.
+     */
+    public void pop() {
+        // Clear the hash code cache first to be safe.
+        hashCode = 0;
+
+        // 'Pop' the last insertion by cropping the length to the one before it.
+        path.setLength(lengths[depth]);
+        depth--;
+    }
+
+    /**
+     * @return the number of elements currently pushed, 0 when outside of the root element.
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * @param level the depth of the element, 1 for the root element.
+     * @return the 1-based index of the element among the element children of its parent, whatever their name.
+     */
+    public int ordinal(final int level) {
+        return ordinals[level];
+    }
+
+    /**
+     * @param level the depth of the element, 1 for the root element.
+     * @return the position set by {@link #setPosition(int)} when the element was pushed, 0 if none was.
+     */
+    public int position(final int level) {
+        return positions[level];
+    }
+
+    /**
+     * Sets the position of the current element among its siblings of the same name.
+     */
+    public void setPosition(final int position) {
+        positions[depth] = position;
+    }
+
+    /**
+     * Compares the current location path with the given one without creating a <code>String</code>, to tell
+     * apart the paths whose hash codes collide.
+     *
+     * @param other a location path, in the same format used by {@link Rule#getPath()}.
+     * @return <code>true</code> if the current location path is the given one.
+     */
+    public boolean matches(final CharSequence other) {
+        final int length = path.length();
+        if (other.length() != length) {
+            return false;
+        }
+        for (int i = length - 1; i >= 0; i--) {
+            if (path.charAt(i) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the current location path, in the same format used by {@link Rule#getPath()}
+     * (e.g. "/library/book/title").
+     */
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
@@ -0,0 +1,357 @@
+package com.github.codechapin.sxpj;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * <p>
+ * Caches the state built by a rule set from files that are parsed again and again, such as configuration or
+ * reference data read by every request:
+ * </p>
+ * <pre>
+ * final ParseCache&lt;CurrencyTable&gt; currencies = factory.newCache(CurrencyTable::new, currencyRules)
+ *         .maximumWeight(64 &lt;&lt; 20, CurrencyTable::estimatedBytes);
+ * ...
+ * final CurrencyTable table = currencies.get(path);
+ * </pre>
+ * <p>
+ * A result is identified by the file and its version: by default its size, modification time and file key (the
+ * inode on most file systems), read with one {@link Files#readAttributes} call per lookup. When a file can be
+ * rewritten with the same size within the time resolution of the file system, use
+ * {@link Identity#CONTENT_DIGEST} instead, which hashes the content on every lookup; still much cheaper than
+ * parsing it. A file that changed is parsed again and its previous result dropped. A cache holds the results of
+ * one rule set, use one cache per rule set.
+ * </p>
+ * <p>
+ * Concurrent lookups of a file that is not cached parse it only once: the first thread parses, the others wait
+ * for its result (single flight). A failed parse is not cached, its exception is thrown to every waiting thread.
+ * The results are kept in least-recently-used order and evicted once their total weight exceeds the maximum,
+ * 100 results by default.
+ * </p>
+ * <p>
+ * The results are shared by every caller, they must not be modified once parsed. This class is thread-safe; it
+ * keeps one idle parser per thread that parsed concurrently.
+ * </p>
+ */
+public final class ParseCache<S> {
+    /**
+     * How the version of a file is identified.
+     */
+    public enum Identity {
+        /**
+         * Size, modification time and file key.
+         */
+        FILE_ATTRIBUTES,
+        /**
+         * SHA-256 digest of the content.
+         */
+        CONTENT_DIGEST
+    }
+
+    private static final int DEFAULT_MAXIMUM_SIZE = 100;
+
+    private final XmlParserFactory factory;
+    private final Rule<S>[] rules;
+    private final Supplier<? extends S> newState;
+    private final Queue<XmlParser<S>> parsers = new ConcurrentLinkedQueue<>();
+    private final ParseCacheStats stats = new ParseCacheStats();
+
+    // guarded by this
+    private final LinkedHashMap<Path, Entry<S>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, CompletableFuture<S>> loading = new HashMap<>();
+    private Identity identity = Identity.FILE_ATTRIBUTES;
+    private long maxWeight = DEFAULT_MAXIMUM_SIZE;
+    private ToLongFunction<? super S> weigher = state -> 1;
+    private long weight;
+    private long loads;
+
+    ParseCache(final XmlParserFactory factory, final Supplier<? extends S> newState, final Rule<S>[] rules) {
+        Objects.requireNonNull(factory, "The XmlParserFactory cannot be null");
+        Objects.requireNonNull(newState, "The state Supplier cannot be null");
+
+        this.factory = factory;
+        this.newState = newState;
+        this.rules = rules.clone();
+        parsers.add(factory.newParser(this.rules));
+    }
+
+    /**
+     * @param maximumSize the maximum number of results kept.
+     * @return this cache.
+     */
+    public ParseCache<S> maximumSize(final long maximumSize) {
+        return maximumWeight(maximumSize, state -> 1);
+    }
+
+    /**
+     * @param maximumWeight the maximum total weight of the results kept.
+     * @param weigher       the weight of a result, e.g. an estimate of its size in bytes. Called once per parse.
+     * @return this cache.
+     */
+    public synchronized ParseCache<S> maximumWeight(final long maximumWeight, final ToLongFunction<? super S> weigher) {
+        Objects.requireNonNull(weigher, "The weigher cannot be null");
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("the maximum weight cannot be negative");
+        }
+
+        this.maxWeight = maximumWeight;
+        this.weigher = weigher;
+        evict();
+        return this;
+    }
+
+    /**
+     * @param identity how the version of a file is identified, {@link Identity#FILE_ATTRIBUTES} by default.
+     * @return this cache.
+     */
+    public synchronized ParseCache<S> identity(final Identity identity) {
+        Objects.requireNonNull(identity, "The Identity cannot be null");
+        this.identity = identity;
+        return this;
+    }
+
+    /**
+     * @param path the XML file, compressed or not, see {@link XmlParser#parse(Path, Object)}.
+     * @return the state built by the rules from the current version of the file, parsed if it is not cached.
+     */
+    public S get(final Path path) {
+        Objects.requireNonNull(path, "The Path cannot be null");
+
+        final Path file = path.toAbsolutePath().normalize();
+        final Identity identity;
+        synchronized (this) {
+            identity = this.identity;
+        }
+        final Key key = new Key(file, version(file, identity));
+
+        final CompletableFuture<S> future;
+        final boolean loader;
+        final long sequence;
+        synchronized (this) {
+            final Entry<S> entry = entries.get(file);
+            if (entry != null && entry.version.equals(key.version)) {
+                stats.hit();
+                return entry.state;
+            }
+
+            stats.miss();
+            final CompletableFuture<S> pending = loading.get(key);
+            loader = pending == null;
+            sequence = loader ? ++loads : 0;
+            if (loader) {
+                future = new CompletableFuture<>();
+                loading.put(key, future);
+            } else {
+                stats.waited();
+                future = pending;
+            }
+        }
+
+        return loader ? load(key, sequence, future) : await(future);
+    }
+
+    /**
+     * Drops the result of a file.
+     */
+    public synchronized void invalidate(final Path path) {
+        final Entry<S> entry = entries.remove(path.toAbsolutePath().normalize());
+        if (entry != null) {
+            weight -= entry.weight;
+        }
+    }
+
+    /**
+     * Drops every result.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return the number of results kept.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total weight of the results kept.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public ParseCacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @param sequence the order in which the loads started, a load that started before the one of the cached
+     *                 result, of an older version of the file, does not replace it.
+     */
+    private S load(final Key key, final long sequence, final CompletableFuture<S> future) {
+        final long start = System.nanoTime();
+        try {
+            final S state = parse(key.path);
+            final ToLongFunction<? super S> weigher;
+            synchronized (this) {
+                weigher = this.weigher;
+            }
+            final long stateWeight = weigher.applyAsLong(state);
+            stats.load(System.nanoTime() - start, false);
+
+            synchronized (this) {
+                loading.remove(key);
+                final Entry<S> previous = entries.get(key.path);
+                if (previous == null || previous.version.equals(key.version) || previous.sequence < sequence) {
+                    entries.put(key.path, new Entry<>(key.version, state, stateWeight, sequence));
+                    if (previous != null) {
+                        weight -= previous.weight;
+                    }
+                    weight += stateWeight;
+                    evict();
+                }
+            }
+            future.complete(state);
+            return state;
+        } catch (RuntimeException | Error e) {
+            stats.load(System.nanoTime() - start, true);
+            synchronized (this) {
+                loading.remove(key);
+            }
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private S parse(final Path path) {
+        XmlParser<S> parser = parsers.poll();
+        if (parser == null) {
+            parser = factory.newParser(rules);
+        }
+
+        final S state = newState.get();
+        parser.parse(path, state);
+        parsers.offer(parser);
+        return state;
+    }
+
+    private S await(final CompletableFuture<S> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Evicts the least recently used results until the total weight is within the maximum.
+     */
+    private void evict() {
+        final Iterator<Entry<S>> iterator = entries.values().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            weight -= iterator.next().weight;
+            iterator.remove();
+            stats.evicted();
+        }
+    }
+
+    private static Object version(final Path path, final Identity identity) {
+        try {
+            if (identity == Identity.FILE_ATTRIBUTES) {
+                final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return Arrays.asList(attributes.size(), attributes.lastModifiedTime(), attributes.fileKey());
+            }
+            return ByteBuffer.wrap(digest(path));
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    private static byte[] digest(final Path path) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    private static final class Key {
+        private final Path path;
+        private final Object version;
+
+        private Key(final Path path, final Object version) {
+            this.path = path;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return path.equals(key.path) && version.equals(key.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + version.hashCode();
+        }
+    }
+
+    private static final class Entry<S> {
+        private final Object version;
+        private final S state;
+        private final long weight;
+        private final long sequence;
+
+        private Entry(final Object version, final S state, final long weight, final long sequence) {
+            this.version = version;
+            this.state = state;
+            this.weight = weight;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.codechapin.sxpj;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a {@link ParseCache}, since it was created.
+ */
+public final class ParseCacheStats {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ParseCacheStats() {
+    }
+
+    void hit() {
+        hits.increment();
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    void waited() {
+        waits.increment();
+    }
+
+    void load(final long nanos, final boolean failed) {
+        loads.increment();
+        loadNanos.add(nanos);
+        if (failed) {
+            loadFailures.increment();
+        }
+    }
+
+    void evicted() {
+        evictions.increment();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that did not find a parsed result, including those that waited for the parse
+     * of another thread.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of misses that waited for the same file being parsed by another thread instead of
+     * parsing it again.
+     */
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    /**
+     * @return the number of parses.
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /**
+     * @return the number of parses that failed.
+     */
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * @return the total time spent parsing.
+     */
+    public long getLoadTime(final TimeUnit unit) {
+        return unit.convert(loadNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of results evicted to stay within the maximum weight.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the ratio of hits to lookups, 0 before the first lookup.
+     */
+    public double getHitRate() {
+        final long hits = getHits();
+        final long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "ParseCacheStats{" +
+                "hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", waits=" + getWaits() +
+                ", loads=" + getLoads() +
+                ", loadFailures=" + getLoadFailures() +
+                ", loadMillis=" + getLoadTime(TimeUnit.MILLISECONDS) +
+                ", evictions=" + getEvictions() +
+                '}';
+    }
+}
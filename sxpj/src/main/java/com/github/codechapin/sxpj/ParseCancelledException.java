@@ -0,0 +1,35 @@
+package com.github.codechapin.sxpj;
+
+/**
+ * Thrown when a parse is aborted by its {@link CancellationToken}. The state given to the parser holds whatever the
+ * handlers built until then.
+ */
+public class ParseCancelledException extends XmlParserException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Why the parse was aborted, see {@link #getReason()}.
+     */
+    public enum Reason {
+        CANCELLED, DEADLINE_EXCEEDED
+    }
+
+    private final Reason reason;
+
+    /**
+     * @param reason  why the parse was aborted.
+     * @param message The explanation of why the exception was thrown.
+     */
+    public ParseCancelledException(final Reason reason, final String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    /**
+     * @return {@link Reason#CANCELLED} if {@link CancellationToken#cancel()} was called,
+     * {@link Reason#DEADLINE_EXCEEDED} if the deadline of the token has passed.
+     */
+    public Reason getReason() {
+        return reason;
+    }
+}
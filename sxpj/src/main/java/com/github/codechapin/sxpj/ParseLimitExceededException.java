@@ -0,0 +1,37 @@
+package com.github.codechapin.sxpj;
+
+/**
+ * Thrown as soon as a document exceeds one of the {@link ParseLimits} of the {@link XmlParserFactory} that created
+ * the parser. The parse is aborted, the state given to the parser holds whatever the handlers built until then.
+ */
+public class ParseLimitExceededException extends XmlParserException {
+    private static final long serialVersionUID = 1L;
+
+    private final ParseLimits.Limit limit;
+    private final long max;
+
+    /**
+     * @param limit   the limit that was exceeded.
+     * @param max     the configured value of the limit.
+     * @param message The explanation of why the exception was thrown.
+     */
+    public ParseLimitExceededException(final ParseLimits.Limit limit, final long max, final String message) {
+        super(message);
+        this.limit = limit;
+        this.max = max;
+    }
+
+    /**
+     * @return the limit that was exceeded.
+     */
+    public ParseLimits.Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the configured value of the limit.
+     */
+    public long getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,342 @@
+package com.github.codechapin.sxpj;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * <p>
+ * Immutable set of limits applied by the parsers of an {@link XmlParserFactory} to protect the process from
+ * hostile or runaway documents. Every limit is checked while the document is read and a
+ * {@link ParseLimitExceededException} is thrown as soon as one is exceeded:
+ * </p>
+ * <pre>
+ * final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory(),
+ *         ParseLimits.DEFAULT.withMaxDepth(64).withMaxInputBytes(1L &lt;&lt; 30));
+ * </pre>
+ * <p>
+ * {@link #DEFAULT} disables DTDs and external entities (so entity expansion attacks and external fetches are not
+ * possible), and bounds the nesting depth, attributes per element, name lengths and text length. The size of the
+ * whole input is not bounded by default.
+ * </p>
+ * <h3>Performance</h3>
+ * <p>
+ * The checks are a few <code>int</code> comparisons per event on values the StAX reader already knows, no string
+ * is created for them. The input size is counted by a thin wrapper of the {@link InputStream} or {@link Reader},
+ * only installed when {@link #getMaxInputBytes()} is set.
+ * </p>
+ * <p>
+ * Note that the text length is checked once the StAX reader reports the text, so it bounds what reaches the
+ * handlers. Use {@link #withMaxInputBytes(long)} to bound the memory used by the reader itself.
+ * </p>
+ */
+public final class ParseLimits {
+    /**
+     * The limits that can be exceeded, see {@link ParseLimitExceededException#getLimit()}.
+     */
+    public enum Limit {
+        DEPTH, ATTRIBUTES, NAME_LENGTH, TEXT_LENGTH, INPUT_BYTES
+    }
+
+    /**
+     * No DTD, no external entities, depth of 256, 256 attributes per element, names of 1024 characters, text of
+     * 16M characters and no limit on the input size.
+     */
+    public static final ParseLimits DEFAULT = new ParseLimits(256, 256, 1024, 16 * 1024 * 1024, Long.MAX_VALUE,
+            false, false);
+
+    /**
+     * No limits and the DTD and external entity support of the underlying StAX implementation. Only use it with
+     * trusted documents.
+     */
+    public static final ParseLimits UNLIMITED = new ParseLimits(Integer.MAX_VALUE, Integer.MAX_VALUE,
+            Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, true, true);
+
+    private final int maxDepth;
+    private final int maxAttributes;
+    private final int maxNameLength;
+    private final int maxTextLength;
+    private final long maxInputBytes;
+    private final boolean dtdSupported;
+    private final boolean externalEntitiesSupported;
+
+    private ParseLimits(final int maxDepth, final int maxAttributes, final int maxNameLength,
+                        final int maxTextLength, final long maxInputBytes, final boolean dtdSupported,
+                        final boolean externalEntitiesSupported) {
+        this.maxDepth = maxDepth;
+        this.maxAttributes = maxAttributes;
+        this.maxNameLength = maxNameLength;
+        this.maxTextLength = maxTextLength;
+        this.maxInputBytes = maxInputBytes;
+        this.dtdSupported = dtdSupported;
+        this.externalEntitiesSupported = externalEntitiesSupported;
+    }
+
+    /**
+     * @param maxDepth the maximum nesting depth of elements, the root element is at depth 1.
+     * @return a copy of these limits with the given depth.
+     */
+    public ParseLimits withMaxDepth(final int maxDepth) {
+        return new ParseLimits(positive(maxDepth, "maxDepth"), maxAttributes, maxNameLength, maxTextLength,
+                maxInputBytes, dtdSupported, externalEntitiesSupported);
+    }
+
+    /**
+     * @param maxAttributes the maximum number of attributes of one element.
+     * @return a copy of these limits with the given number of attributes.
+     */
+    public ParseLimits withMaxAttributes(final int maxAttributes) {
+        if (maxAttributes < 0) {
+            throw new IllegalArgumentException("maxAttributes cannot be negative: " + maxAttributes);
+        }
+        return new ParseLimits(maxDepth, maxAttributes, maxNameLength, maxTextLength, maxInputBytes, dtdSupported,
+                externalEntitiesSupported);
+    }
+
+    /**
+     * @param maxNameLength the maximum length of the local names and namespace URIs of elements and attributes.
+     * @return a copy of these limits with the given name length.
+     */
+    public ParseLimits withMaxNameLength(final int maxNameLength) {
+        return new ParseLimits(maxDepth, maxAttributes, positive(maxNameLength, "maxNameLength"), maxTextLength,
+                maxInputBytes, dtdSupported, externalEntitiesSupported);
+    }
+
+    /**
+     * @param maxTextLength the maximum number of characters of one text node.
+     * @return a copy of these limits with the given text length.
+     */
+    public ParseLimits withMaxTextLength(final int maxTextLength) {
+        return new ParseLimits(maxDepth, maxAttributes, maxNameLength, positive(maxTextLength, "maxTextLength"),
+                maxInputBytes, dtdSupported, externalEntitiesSupported);
+    }
+
+    /**
+     * @param maxInputBytes the maximum number of bytes read from an {@link InputStream}, or characters read from a
+     *                      {@link Reader}, per document. {@link Long#MAX_VALUE} for no limit.
+     * @return a copy of these limits with the given input size.
+     */
+    public ParseLimits withMaxInputBytes(final long maxInputBytes) {
+        if (maxInputBytes <= 0) {
+            throw new IllegalArgumentException("maxInputBytes must be positive: " + maxInputBytes);
+        }
+        return new ParseLimits(maxDepth, maxAttributes, maxNameLength, maxTextLength, maxInputBytes, dtdSupported,
+                externalEntitiesSupported);
+    }
+
+    /**
+     * @param dtdSupported <code>true</code> to process DTDs, including their internal entities.
+     * @return a copy of these limits with the given DTD support.
+     */
+    public ParseLimits withDtdSupported(final boolean dtdSupported) {
+        return new ParseLimits(maxDepth, maxAttributes, maxNameLength, maxTextLength, maxInputBytes, dtdSupported,
+                externalEntitiesSupported);
+    }
+
+    /**
+     * @param externalEntitiesSupported <code>true</code> to resolve external entities, which may read files or
+     *                                  open network connections.
+     * @return a copy of these limits with the given external entity support.
+     */
+    public ParseLimits withExternalEntitiesSupported(final boolean externalEntitiesSupported) {
+        return new ParseLimits(maxDepth, maxAttributes, maxNameLength, maxTextLength, maxInputBytes, dtdSupported,
+                externalEntitiesSupported);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxAttributes() {
+        return maxAttributes;
+    }
+
+    public int getMaxNameLength() {
+        return maxNameLength;
+    }
+
+    public int getMaxTextLength() {
+        return maxTextLength;
+    }
+
+    public long getMaxInputBytes() {
+        return maxInputBytes;
+    }
+
+    public boolean isDtdSupported() {
+        return dtdSupported;
+    }
+
+    public boolean isExternalEntitiesSupported() {
+        return externalEntitiesSupported;
+    }
+
+    /**
+     * Checks the element the reader is positioned on.
+     *
+     * @param reader a reader on a START_ELEMENT event.
+     * @param depth  the depth of the element, the root element is at depth 1.
+     */
+    void checkStartElement(final XMLStreamReader reader, final int depth) {
+        if (depth > maxDepth) {
+            throw new ParseLimitExceededException(Limit.DEPTH, maxDepth,
+                    "Element " + reader.getLocalName() + " is nested deeper than " + maxDepth + " levels");
+        }
+
+        checkName(reader.getLocalName(), reader.getNamespaceURI());
+
+        final int count = reader.getAttributeCount();
+        if (count > maxAttributes) {
+            throw new ParseLimitExceededException(Limit.ATTRIBUTES, maxAttributes,
+                    "Element " + reader.getLocalName() + " has " + count + " attributes, more than " + maxAttributes);
+        }
+        for (int i = 0; i < count; i++) {
+            checkName(reader.getAttributeLocalName(i), reader.getAttributeNamespace(i));
+        }
+    }
+
+    /**
+     * Checks the text the reader is positioned on.
+     *
+     * @param reader a reader on a CHARACTERS event.
+     */
+    void checkCharacters(final XMLStreamReader reader) {
+        if (reader.getTextLength() > maxTextLength) {
+            throw new ParseLimitExceededException(Limit.TEXT_LENGTH, maxTextLength,
+                    "Text of " + reader.getTextLength() + " characters is longer than " + maxTextLength);
+        }
+    }
+
+    /**
+     * @return the stream, counting the bytes read when the input size is bounded.
+     */
+    InputStream limit(final InputStream in) {
+        return maxInputBytes == Long.MAX_VALUE ? in : new LimitedInputStream(in, maxInputBytes);
+    }
+
+    /**
+     * @return the reader, counting the characters read when the input size is bounded.
+     */
+    Reader limit(final Reader in) {
+        return maxInputBytes == Long.MAX_VALUE ? in : new LimitedReader(in, maxInputBytes);
+    }
+
+    private void checkName(final String localName, final String namespaceURI) {
+        if (localName.length() > maxNameLength
+                || (namespaceURI != null && namespaceURI.length() > maxNameLength)) {
+            throw new ParseLimitExceededException(Limit.NAME_LENGTH, maxNameLength,
+                    "Name or namespace URI longer than " + maxNameLength + " characters");
+        }
+    }
+
+    private static int positive(final int value, final String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+        return value;
+    }
+
+    private static ParseLimitExceededException inputExceeded(final long max) {
+        return new ParseLimitExceededException(Limit.INPUT_BYTES, max, "Input is larger than " + max);
+    }
+
+    @Override
+    public String toString() {
+        return "ParseLimits{" +
+                "maxDepth=" + maxDepth +
+                ", maxAttributes=" + maxAttributes +
+                ", maxNameLength=" + maxNameLength +
+                ", maxTextLength=" + maxTextLength +
+                ", maxInputBytes=" + maxInputBytes +
+                ", dtdSupported=" + dtdSupported +
+                ", externalEntitiesSupported=" + externalEntitiesSupported +
+                '}';
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long max;
+        private long count;
+
+        LimitedInputStream(final InputStream in, final long max) {
+            super(in);
+            this.max = max;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0 && ++count > max) {
+                throw inputExceeded(max);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0 && (count += n) > max) {
+                throw inputExceeded(max);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            if ((count += skipped) > max) {
+                throw inputExceeded(max);
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    private static final class LimitedReader extends FilterReader {
+        private final long max;
+        private long count;
+
+        LimitedReader(final Reader in, final long max) {
+            super(in);
+            this.max = max;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int c = super.read();
+            if (c >= 0 && ++count > max) {
+                throw inputExceeded(max);
+            }
+            return c;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) throws IOException {
+            final int n = super.read(cbuf, off, len);
+            if (n > 0 && (count += n) > max) {
+                throw inputExceeded(max);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            if ((count += skipped) > max) {
+                throw inputExceeded(max);
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
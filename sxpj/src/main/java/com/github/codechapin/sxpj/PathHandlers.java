@@ -0,0 +1,188 @@
+package com.github.codechapin.sxpj;
+
+import com.github.codechapin.sxpj.handler.AttributeHandler;
+import com.github.codechapin.sxpj.handler.CharactersHandler;
+import com.github.codechapin.sxpj.handler.Element;
+import com.github.codechapin.sxpj.handler.ElementHandler;
+import com.github.codechapin.sxpj.handler.SubtreeHandler;
+
+import java.util.List;
+
+/**
+ * <p>
+ * The handlers of every rule on one path, compiled by {@link RuleTable} so that an event costs one map lookup and
+ * a handful of field reads before the handlers are called.
+ * </p>
+ * <p>
+ * Each type of handler is held in an array, in the order the rules were given. When a path has a single ELEMENT
+ * or CHARACTERS rule, which is the common case, its handler is kept as is and called directly; several handlers
+ * are combined into one that calls them in turn, so the parser makes a single call whatever their number. The
+ * attribute names of the ATTRIBUTE rules are split into namespace and local name once, here, instead of on every
+ * element.
+ * </p>
+ * <p>
+ * These are precompiled handler arrays, not specialized call sites: the parser calls every handler through the
+ * same interface calls whatever the path.
+ * </p>
+ * <p>
+ * The rules with positional predicates on a path are compiled apart, one {@link PathHandlers} per distinct set of
+ * predicates, in {@link #positional}; the parser calls them after the handlers of the rules without predicates,
+ * when the positions of the current location satisfy their predicates.
+ * </p>
+ */
+final class PathHandlers<S> {
+    /**
+     * The handler of the ELEMENT rules, <code>null</code> if there is none.
+     */
+    final ElementHandler<S> element;
+    /**
+     * The handler of the CHARACTERS rules, <code>null</code> if there is none.
+     */
+    final CharactersHandler<S> characters;
+    /**
+     * One entry per attribute name of each ATTRIBUTE rule, <code>null</code> if there is no ATTRIBUTE rule.
+     */
+    final AttributeHandler<S>[] attributes;
+    final String[] attributeNamespaces;
+    final String[] attributeLocalNames;
+    /**
+     * The handlers of the SUBTREE rules, <code>null</code> if there is none.
+     */
+    final SubtreeHandler<S>[] subtrees;
+    /**
+     * The handlers of the rules with positional predicates on this path, <code>null</code> if there is none.
+     */
+    final PathHandlers<S>[] positional;
+
+    private final PositionalPath predicates;
+
+    /**
+     * @param predicates the predicates shared by the rules, <code>null</code> for rules without predicates.
+     * @param positional the handlers of the rules with predicates on the same path, <code>null</code> if none.
+     */
+    @SuppressWarnings("unchecked")
+    PathHandlers(final PositionalPath predicates,
+                 final List<Rule<S>> elementRules, final List<Rule<S>> attributeRules,
+                 final List<Rule<S>> charactersRules, final List<Rule<S>> subtreeRules,
+                 final PathHandlers<S>[] positional) {
+        this.predicates = predicates;
+        this.positional = positional;
+        this.element = elementRules == null ? null : element(elementRules);
+        this.characters = charactersRules == null ? null : characters(charactersRules);
+
+        if (subtreeRules == null) {
+            this.subtrees = null;
+        } else {
+            this.subtrees = new SubtreeHandler[subtreeRules.size()];
+            for (int i = 0; i < subtrees.length; i++) {
+                subtrees[i] = subtreeRules.get(i).getSubtreeHandler();
+            }
+        }
+
+        if (attributeRules == null) {
+            this.attributes = null;
+            this.attributeNamespaces = null;
+            this.attributeLocalNames = null;
+            return;
+        }
+
+        int count = 0;
+        for (Rule<S> rule : attributeRules) {
+            // rules without names are never called
+            count += rule.getAttributeNames() == null ? 0 : rule.getAttributeNames().length;
+        }
+        this.attributes = new AttributeHandler[count];
+        this.attributeNamespaces = new String[count];
+        this.attributeLocalNames = new String[count];
+
+        int i = 0;
+        for (Rule<S> rule : attributeRules) {
+            if (rule.getAttributeNames() == null) {
+                continue;
+            }
+            for (String name : rule.getAttributeNames()) {
+                String namespaceURI = null;
+
+                // Parse the namespaceURI out of the name if necessary
+                if (name.charAt(0) == '[') {
+                    final int endIndex = name.indexOf(']');
+
+                    // fail fast, the rule can never match
+                    if (endIndex <= 2) {
+                        throw new XmlParserException(
+                                "namespace URI for rule looks to be incomplete or empty for Rule: " + rule);
+                    }
+                    namespaceURI = name.substring(1, endIndex);
+                }
+
+                final int startIndex = (namespaceURI == null ? 0 : namespaceURI.length() + 2);
+                if (name.length() - startIndex < 1) {
+                    throw new XmlParserException("local name for rule looks to be missing for Rule: " + rule);
+                }
+
+                attributes[i] = rule.getAttributeHandler();
+                attributeNamespaces[i] = namespaceURI;
+                attributeLocalNames[i] = name.substring(startIndex);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if these handlers apply to the current location of the parser.
+     */
+    boolean matches(final Location location) {
+        return predicates == null || predicates.matches(location);
+    }
+
+    /**
+     * @return <code>true</code> if these handlers, or the positional ones matching the location, capture subtrees.
+     */
+    boolean capturesSubtree(final Location location) {
+        if (subtrees != null) {
+            return true;
+        }
+        if (positional != null) {
+            for (PathHandlers<S> handlers : positional) {
+                if (handlers.subtrees != null && handlers.matches(location)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S> ElementHandler<S> element(final List<Rule<S>> rules) {
+        if (rules.size() == 1) {
+            return rules.get(0).getElementHandler();
+        }
+
+        final ElementHandler<S>[] handlers = new ElementHandler[rules.size()];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = rules.get(i).getElementHandler();
+        }
+        return (Element element, S state, XmlParser parser) -> {
+            for (ElementHandler<S> handler : handlers) {
+                handler.handle(element, state, parser);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S> CharactersHandler<S> characters(final List<Rule<S>> rules) {
+        if (rules.size() == 1) {
+            return rules.get(0).getCharactersHandler();
+        }
+
+        final CharactersHandler<S>[] handlers = new CharactersHandler[rules.size()];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = rules.get(i).getCharactersHandler();
+        }
+        return (String chars, S state, XmlParser parser) -> {
+            for (CharactersHandler<S> handler : handlers) {
+                handler.handle(chars, state, parser);
+            }
+        };
+    }
+}
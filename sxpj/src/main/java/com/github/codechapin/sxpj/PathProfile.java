@@ -0,0 +1,126 @@
+package com.github.codechapin.sxpj;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Statistics gathered by {@link XmlProfiler} for one distinct location path of a document.
+ */
+public class PathProfile {
+    private final String path;
+    private final int depth;
+    private final Set<String> attributeNames;
+
+    private long count;
+    private int maxSubtreeDepth;
+    private long totalTextLength;
+    private long maxTextLength;
+    private boolean attributeNamesTruncated;
+
+    /**
+     * The next profile whose path has the same hash code, see {@link XmlProfiler}.
+     */
+    PathProfile next;
+
+    PathProfile(final String path, final int depth) {
+        this.path = path;
+        this.depth = depth;
+        this.attributeNames = new LinkedHashSet<>();
+    }
+
+    /**
+     * @return the location path, in the same format used by {@link Rule#getPath()}.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the nesting level of the path, 1 for the root element.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return how many elements were found at this path.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the deepest subtree found under this path, 1 when the elements never have child elements.
+     */
+    public int getMaxSubtreeDepth() {
+        return maxSubtreeDepth;
+    }
+
+    /**
+     * @return the number of characters of non-whitespace text found directly inside the elements of this path.
+     */
+    public long getTotalTextLength() {
+        return totalTextLength;
+    }
+
+    /**
+     * @return the largest number of text characters found directly inside a single element of this path.
+     */
+    public long getMaxTextLength() {
+        return maxTextLength;
+    }
+
+    /**
+     * @return the attribute names seen on this path, using the same format as
+     * {@link Rule#attributes(String, com.github.codechapin.sxpj.handler.AttributeHandler, String...)}
+     * (e.g. "id" or "[http://namespace.uri]id").
+     */
+    public Set<String> getAttributeNames() {
+        return Collections.unmodifiableSet(attributeNames);
+    }
+
+    /**
+     * @return <code>true</code> if more distinct attribute names were seen than the profiler keeps.
+     */
+    public boolean isAttributeNamesTruncated() {
+        return attributeNamesTruncated;
+    }
+
+    void element() {
+        count++;
+    }
+
+    void subtree(final int subtreeDepth) {
+        if (subtreeDepth > maxSubtreeDepth) {
+            maxSubtreeDepth = subtreeDepth;
+        }
+    }
+
+    void text(final long length) {
+        totalTextLength += length;
+        if (length > maxTextLength) {
+            maxTextLength = length;
+        }
+    }
+
+    void attribute(final String name, final int maxNames) {
+        if (attributeNames.size() < maxNames) {
+            attributeNames.add(name);
+        } else if (!attributeNames.contains(name)) {
+            attributeNamesTruncated = true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path +
+                " count=" + count +
+                " depth=" + depth +
+                " maxSubtreeDepth=" + maxSubtreeDepth +
+                " totalText=" + totalTextLength +
+                " maxText=" + maxTextLength +
+                " attributes=" + attributeNames +
+                (attributeNamesTruncated ? "..." : "");
+    }
+}
@@ -0,0 +1,201 @@
+package com.github.codechapin.sxpj;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * A rule path split into the location path it matches and the positional predicates of its steps, e.g.
+ * <code>/rss/channel/item[position()&lt;=10]</code> is the path <code>/rss/channel/item</code> with the window
+ * <code>[1, 10]</code> on its third step. Like in XPath, the position of an element is its 1-based index among
+ * the children of its parent that have the same name and namespace.
+ * </p>
+ * <p>
+ * A predicate follows the local name of a step, after a namespace between brackets if any. The supported
+ * predicates are <code>[n]</code> and <code>[position() op n]</code> with <code>op</code> one of
+ * <code>=</code>, <code>&lt;</code>, <code>&lt;=</code>, <code>&gt;</code> and <code>&gt;=</code>.
+ * </p>
+ */
+final class PositionalPath {
+    private final String base;
+    private final int[] depths;
+    private final int[] mins;
+    private final int[] maxs;
+    private final String[] prefixes;
+
+    private PositionalPath(final String base, final int[] depths, final int[] mins, final int[] maxs,
+                           final String[] prefixes) {
+        this.base = base;
+        this.depths = depths;
+        this.mins = mins;
+        this.maxs = maxs;
+        this.prefixes = prefixes;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a predicate is not supported or selects no element.
+     */
+    static PositionalPath parse(final String path) {
+        if (path.indexOf('[') < 0) {
+            return new PositionalPath(path, new int[0], new int[0], new int[0], new String[0]);
+        }
+
+        final StringBuilder base = new StringBuilder(path.length());
+        final List<int[]> predicates = new ArrayList<>(2);
+        final List<String> prefixes = new ArrayList<>(2);
+
+        int depth = 0;
+        int stepStart = 0;
+        for (int i = 0; i < path.length(); i++) {
+            final char c = path.charAt(i);
+            if (c == '/') {
+                depth++;
+                stepStart = base.length() + 1;
+                base.append(c);
+            } else if (c == '[' && base.length() == stepStart) {
+                // a namespace URI, which may hold slashes
+                final int end = path.indexOf(']', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("the namespace of '" + path + "' is not closed");
+                }
+                base.append(path, i, end + 1);
+                i = end;
+            } else if (c == '[') {
+                final int end = path.indexOf(']', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("the predicate of '" + path + "' is not closed");
+                }
+                final int[] window = window(path, path.substring(i + 1, end).trim());
+                predicates.add(new int[]{depth, window[0], window[1]});
+                prefixes.add(base.toString());
+                i = end;
+            } else {
+                base.append(c);
+            }
+        }
+
+        final int count = predicates.size();
+        final int[] depths = new int[count];
+        final int[] mins = new int[count];
+        final int[] maxs = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && predicates.get(i)[0] == depths[i - 1]) {
+                throw new IllegalArgumentException("'" + path + "' has more than one predicate on a step");
+            }
+            depths[i] = predicates.get(i)[0];
+            mins[i] = predicates.get(i)[1];
+            maxs[i] = predicates.get(i)[2];
+        }
+        return new PositionalPath(base.toString(), depths, mins, maxs, prefixes.toArray(new String[count]));
+    }
+
+    /**
+     * @return the first and last positions selected by the predicate.
+     */
+    private static int[] window(final String path, final String predicate) {
+        final int min;
+        final int max;
+        if (!predicate.startsWith("position()")) {
+            final int n = number(path, predicate);
+            min = n;
+            max = n;
+        } else {
+            final String comparison = predicate.substring("position()".length()).trim();
+            if (comparison.startsWith("<=")) {
+                min = 1;
+                max = number(path, comparison.substring(2));
+            } else if (comparison.startsWith(">=")) {
+                min = number(path, comparison.substring(2));
+                max = Integer.MAX_VALUE;
+            } else if (comparison.startsWith("<")) {
+                min = 1;
+                max = number(path, comparison.substring(1)) - 1;
+            } else if (comparison.startsWith(">")) {
+                final int n = number(path, comparison.substring(1));
+                min = n == Integer.MAX_VALUE ? n : n + 1;
+                max = Integer.MAX_VALUE;
+            } else if (comparison.startsWith("=")) {
+                min = number(path, comparison.substring(1));
+                max = min;
+            } else {
+                throw new IllegalArgumentException("the predicate [" + predicate + "] of '" + path
+                        + "' is not supported, only [n] and [position() op n] are");
+            }
+        }
+
+        if (max < Math.max(min, 1)) {
+            throw new IllegalArgumentException("the predicate [" + predicate + "] of '" + path + "' selects no element");
+        }
+        return new int[]{Math.max(min, 1), max};
+    }
+
+    private static int number(final String path, final String s) {
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("the predicate of '" + path + "' is not supported, only [n] and "
+                    + "[position() op n] are", e);
+        }
+    }
+
+    /**
+     * @return the path without its predicates, as the parser's {@link Location} spells it.
+     */
+    String getBase() {
+        return base;
+    }
+
+    boolean isPositional() {
+        return depths.length > 0;
+    }
+
+    /**
+     * @return the number of predicates.
+     */
+    int size() {
+        return depths.length;
+    }
+
+    /**
+     * @return the depth of the step holding the given predicate, 1 for the root element.
+     */
+    int depth(final int predicate) {
+        return depths[predicate];
+    }
+
+    int min(final int predicate) {
+        return mins[predicate];
+    }
+
+    int max(final int predicate) {
+        return maxs[predicate];
+    }
+
+    /**
+     * @return the path, without predicates, of the step holding the given predicate.
+     */
+    String prefix(final int predicate) {
+        return prefixes[predicate];
+    }
+
+    /**
+     * @return the same string for paths with the same predicates, whatever their spelling.
+     */
+    String predicateKey() {
+        return Arrays.toString(depths) + Arrays.toString(mins) + Arrays.toString(maxs);
+    }
+
+    /**
+     * @return <code>true</code> if the positions of the elements on the current location satisfy every predicate.
+     */
+    boolean matches(final Location location) {
+        for (int i = 0; i < depths.length; i++) {
+            final int position = location.position(depths[i]);
+            if (position < mins[i] || position > maxs[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,283 @@
+package com.github.codechapin.sxpj;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>
+ * {@link InputStream} filled by a dedicated thread reading a source ahead of the consumer, so the work done by
+ * the source (decompression, slow I/O) overlaps with the parsing done by the consumer.
+ * </p>
+ * <p>
+ * The thread fills a ring of <code>depth</code> reusable buffers of <code>bufferSize</code> bytes: a buffer
+ * goes from the free queue to the reading thread, then to the filled queue, is drained by the consumer and goes
+ * back to the free queue. The memory used per stream is bounded by <code>depth * bufferSize</code> and nothing is
+ * allocated once the ring is built. When every buffer is filled the reading thread waits for the consumer.
+ * </p>
+ * <p>
+ * Channels are read into direct buffers, so a {@link java.nio.channels.FileChannel} is read without going through
+ * the Java heap. Streams are read into heap buffers, a direct buffer would only add a copy.
+ * </p>
+ * <p>
+ * A failure of the source is rethrown to the consumer once it has read everything before it. {@link #stop()}
+ * stops the thread, {@link #close()} also closes the source when this stream owns it. The thread is never
+ * interrupted while it reads a source this stream does not own: the source may be an interruptible channel, which
+ * an interrupt would close under the caller.
+ * </p>
+ */
+final class ReadAheadInputStream extends InputStream {
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    static final int DEFAULT_DEPTH = 4;
+
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final ReadableByteChannel channel;
+    private final InputStream stream;
+    private final boolean ownsSource;
+    private final ReadAheadStats stats;
+    private final BlockingQueue<ByteBuffer> free;
+    private final BlockingQueue<ByteBuffer> filled;
+    private final Thread thread;
+
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    private ByteBuffer current;
+
+    /**
+     * Reads a channel into direct buffers, the channel is closed with this stream.
+     */
+    ReadAheadInputStream(final ReadableByteChannel channel, final int bufferSize, final int depth,
+                         final ReadAheadStats stats, final String threadName) {
+        this(channel, null, true, bufferSize, depth, stats, threadName);
+    }
+
+    /**
+     * Reads a stream into heap buffers.
+     *
+     * @param ownsSource <code>true</code> to close the stream with this stream.
+     */
+    ReadAheadInputStream(final InputStream stream, final boolean ownsSource, final int bufferSize, final int depth,
+                         final ReadAheadStats stats, final String threadName) {
+        this(null, stream, ownsSource, bufferSize, depth, stats, threadName);
+    }
+
+    private ReadAheadInputStream(final ReadableByteChannel channel, final InputStream stream,
+                                 final boolean ownsSource, final int bufferSize, final int depth,
+                                 final ReadAheadStats stats, final String threadName) {
+        if (bufferSize <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("bufferSize and depth must be greater than 0");
+        }
+
+        this.channel = channel;
+        this.stream = stream;
+        this.ownsSource = ownsSource;
+        this.stats = stats;
+        this.free = new ArrayBlockingQueue<>(depth);
+        this.filled = new ArrayBlockingQueue<>(depth + 1);   // every buffer plus the END marker
+
+        for (int i = 0; i < depth; i++) {
+            free.add(channel != null ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize));
+        }
+
+        stats.stream();
+
+        thread = new Thread(this::fill, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void fill() {
+        try {
+            while (!closed) {
+                ByteBuffer buffer = free.poll();
+                if (buffer == null) {
+                    final long start = System.nanoTime();
+                    buffer = free.take();
+                    stats.producerStall(System.nanoTime() - start);
+                }
+                if (closed) {
+                    break;
+                }
+                buffer.clear();
+
+                int n;
+                do {
+                    n = readSource(buffer);
+                } while (n == 0 && buffer.hasRemaining());
+
+                if (n < 0 && buffer.position() == 0) {
+                    break;
+                }
+
+                buffer.flip();
+                stats.buffer(buffer.remaining());
+                filled.put(buffer);
+
+                if (n < 0) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped by the consumer
+        } catch (Throwable t) {
+            if (!closed) {
+                failure = t;
+            }
+        } finally {
+            filled.offer(END);
+        }
+    }
+
+    private int readSource(final ByteBuffer buffer) throws IOException {
+        if (channel != null) {
+            return channel.read(buffer);
+        }
+
+        final int n = stream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (n > 0) {
+            buffer.position(buffer.position() + n);
+        }
+        return n;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final ByteBuffer buffer = next();
+        return buffer == END ? -1 : buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        final ByteBuffer buffer = next();
+        if (buffer == END) {
+            return -1;
+        }
+
+        final int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END ? 0 : current.remaining();
+    }
+
+    /**
+     * @return the current buffer with bytes remaining, or {@link #END}.
+     */
+    private ByteBuffer next() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (current == END) {
+            return END;
+        }
+        if (current != null && current.hasRemaining()) {
+            return current;
+        }
+
+        if (current != null) {
+            // forgotten before waiting, a take interrupted below must not leave it to be given back twice
+            free.offer(current);
+            current = null;
+        }
+
+        current = filled.poll();
+        if (current == null) {
+            final long start = System.nanoTime();
+            try {
+                current = filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + thread.getName());
+            } finally {
+                stats.consumerStall(System.nanoTime() - start);
+            }
+        }
+
+        if (current == END && failure != null) {
+            if (failure instanceof IOException) {
+                throw new IOException(failure.getMessage(), failure);
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw new XmlParserException("Failed to read ahead: " + failure.getMessage(), (Exception) failure);
+        }
+        return current;
+    }
+
+    /**
+     * Stops the reading thread without closing a source this stream does not own. The bytes already read from the
+     * source are discarded. Returns once the thread has stopped, a read in progress is waited for.
+     * <p>
+     * When the source is not owned, the thread is woken instead of interrupted, so the source is no longer read
+     * when the caller gets it back.
+     * </p>
+     */
+    void stop() {
+        closed = true;
+        if (ownsSource) {
+            thread.interrupt();
+            join();
+            return;
+        }
+
+        // give the buffers back so that a thread waiting for a free one wakes up and sees it is closed
+        if (current != null && current != END) {
+            free.offer(current);
+            current = null;
+        }
+        ByteBuffer buffer;
+        while ((buffer = filled.poll()) != null) {
+            if (buffer != END) {
+                free.offer(buffer);
+            }
+        }
+        join();
+    }
+
+    /**
+     * Waits for the reading thread to stop, keeping the interrupt status of the caller.
+     */
+    private void join() {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        stop();
+        if (ownsSource) {
+            if (channel != null) {
+                channel.close();
+            } else {
+                stream.close();
+            }
+        }
+    }
+}
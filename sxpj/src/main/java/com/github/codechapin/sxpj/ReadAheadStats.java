@@ -0,0 +1,108 @@
+package com.github.codechapin.sxpj;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Counters of the read-ahead streams of an {@link XmlParserFactory}, shared by every parse of the factory.
+ * </p>
+ * <p>
+ * A consumer stall is the parser waiting for the background reader: the input is slower than the parsing, a
+ * deeper ring will not help. A producer stall is the background reader waiting for a free buffer: the parsing is
+ * slower than the input, which is the expected steady state when the ring hides the I/O latency.
+ * </p>
+ */
+public final class ReadAheadStats {
+    private final LongAdder streams = new LongAdder();
+    private final LongAdder buffers = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder consumerStalls = new LongAdder();
+    private final LongAdder consumerStallNanos = new LongAdder();
+    private final LongAdder producerStalls = new LongAdder();
+    private final LongAdder producerStallNanos = new LongAdder();
+
+    ReadAheadStats() {
+    }
+
+    void stream() {
+        streams.increment();
+    }
+
+    void buffer(final int size) {
+        buffers.increment();
+        bytes.add(size);
+    }
+
+    void consumerStall(final long nanos) {
+        consumerStalls.increment();
+        consumerStallNanos.add(nanos);
+    }
+
+    void producerStall(final long nanos) {
+        producerStalls.increment();
+        producerStallNanos.add(nanos);
+    }
+
+    /**
+     * @return the number of streams read ahead.
+     */
+    public long getStreams() {
+        return streams.sum();
+    }
+
+    /**
+     * @return the number of buffers filled by the background readers.
+     */
+    public long getBuffers() {
+        return buffers.sum();
+    }
+
+    /**
+     * @return the number of bytes read by the background readers.
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return how many times a parser had to wait for a buffer to be filled.
+     */
+    public long getConsumerStalls() {
+        return consumerStalls.sum();
+    }
+
+    /**
+     * @return the total time parsers waited for a buffer to be filled.
+     */
+    public long getConsumerStallTime(final TimeUnit unit) {
+        return unit.convert(consumerStallNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return how many times a background reader had to wait for a buffer to be drained.
+     */
+    public long getProducerStalls() {
+        return producerStalls.sum();
+    }
+
+    /**
+     * @return the total time background readers waited for a buffer to be drained.
+     */
+    public long getProducerStallTime(final TimeUnit unit) {
+        return unit.convert(producerStallNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "ReadAheadStats{" +
+                "streams=" + getStreams() +
+                ", buffers=" + getBuffers() +
+                ", bytes=" + getBytes() +
+                ", consumerStalls=" + getConsumerStalls() +
+                ", consumerStallMillis=" + getConsumerStallTime(TimeUnit.MILLISECONDS) +
+                ", producerStalls=" + getProducerStalls() +
+                ", producerStallMillis=" + getProducerStallTime(TimeUnit.MILLISECONDS) +
+                '}';
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.codechapin.sxpj;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Source of reusable record objects for an {@link ElementScope}: a record is borrowed when its element starts and
+ * released once it has been handed to the consumer.
+ */
+public interface RecordPool<T> {
+    /**
+     * @return a record ready to be populated, either recycled or new.
+     */
+    T borrow();
+
+    /**
+     * Gives back a record borrowed from this pool, it must not be used afterwards.
+     */
+    void release(T record);
+
+    /**
+     * Creates a pool keeping released records on a stack, for a single parser (it is not thread-safe).
+     *
+     * @param factory creates a record when no released one is left.
+     * @param reset   clears a released record before it is borrowed again.
+     * @param maxIdle the maximum number of released records kept, the others are left to the garbage collector.
+     * @return the pool.
+     */
+    static <T> RecordPool<T> of(final Supplier<? extends T> factory, final Consumer<? super T> reset,
+                                final int maxIdle) {
+        return new StackRecordPool<>(factory, reset, maxIdle);
+    }
+}
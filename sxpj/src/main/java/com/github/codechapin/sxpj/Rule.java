@@ -3,6 +3,7 @@ package com.github.codechapin.sxpj;
 import com.github.codechapin.sxpj.handler.AttributeHandler;
 import com.github.codechapin.sxpj.handler.CharactersHandler;
 import com.github.codechapin.sxpj.handler.ElementHandler;
+import com.github.codechapin.sxpj.handler.SubtreeHandler;
 
 import java.util.Objects;
 
@@ -16,28 +17,15 @@ public class Rule<S> {
     private ElementHandler<S> elementHandler;
     private AttributeHandler<S> attributeHandler;
     private CharactersHandler<S> charactersHandler;
+    private SubtreeHandler<S> subtreeHandler;
 
     private String[] attributeNames;
 
     private Rule(final RuleType type, final String path) {
         Objects.requireNonNull(type, "the RuleType cannot be null");
-        Objects.requireNonNull(path, "the path to match this rule cannot be null");
-
-        if (path.length() == 0) {
-            throw new IllegalArgumentException("the path to match this rule cannot be empty");
-        }
-
-        /*
-         * Pedantic, while we could remove a single trailing slash easily
-		 * enough, there is the very-small-chance the users has multiple
-		 * trailing slashes... again easy to remove, but at this point they are
-		 * being really sloppy and we are letting it slide. Instead, fire an
-		 * exception up-front and teach people how the API behaves immediately
-		 * and what is required. Makes everyone's lives easier.
-		 */
-        if (path.charAt(path.length() - 1) == '/') {
-            throw new IllegalArgumentException("path cannot end in a trailing slash (/), please remove it.");
-        }
+        checkPath(path);
+        // fail fast on an unsupported positional predicate
+        PositionalPath.parse(path);
 
         this.type = type;
         this.path = path;
@@ -73,6 +61,72 @@ public class Rule<S> {
         this.charactersHandler = handler;
     }
 
+    private Rule(final String path, final SubtreeHandler<S> handler) {
+        this(RuleType.SUBTREE, path);
+
+        Objects.requireNonNull(handler, "The SubtreeHandler cannot be null.");
+
+        this.subtreeHandler = handler;
+    }
+
+    /**
+     * Validates a location path, shared by everything that matches paths the same way rules do.
+     *
+     * @param path the path to validate.
+     */
+    static void checkPath(final String path) {
+        Objects.requireNonNull(path, "the path to match this rule cannot be null");
+
+        if (path.length() == 0) {
+            throw new IllegalArgumentException("the path to match this rule cannot be empty");
+        }
+
+        /*
+         * Pedantic, while we could remove a single trailing slash easily
+		 * enough, there is the very-small-chance the users has multiple
+		 * trailing slashes... again easy to remove, but at this point they are
+		 * being really sloppy and we are letting it slide. Instead, fire an
+		 * exception up-front and teach people how the API behaves immediately
+		 * and what is required. Makes everyone's lives easier.
+		 */
+        if (path.charAt(path.length() - 1) == '/') {
+            throw new IllegalArgumentException("path cannot end in a trailing slash (/), please remove it.");
+        }
+    }
+
+    /**
+     * Validates a location path matched as it is spelled, by everything but the rules: positional predicates are
+     * rejected.
+     *
+     * @param path the path to validate.
+     */
+    static void checkLocationPath(final String path) {
+        checkPath(path);
+        if (PositionalPath.parse(path).isPositional()) {
+            throw new IllegalArgumentException("the path '" + path + "' has a positional predicate, only the paths "
+                    + "of rules can have one");
+        }
+    }
+
+    /**
+     * @return the number of elements in the path, ignoring the slashes inside namespace URIs.
+     */
+    static int depthOf(final String path) {
+        int depth = 0;
+        boolean namespace = false;
+        for (int i = 0; i < path.length(); i++) {
+            final char c = path.charAt(i);
+            if (c == '[') {
+                namespace = true;
+            } else if (c == ']') {
+                namespace = false;
+            } else if (c == '/' && !namespace) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
     public static <S> Rule<S> element(final String path, final ElementHandler<S> handler) {
         return new Rule<>(path, handler);
     }
@@ -85,6 +139,17 @@ public class Rule<S> {
         return new Rule<>(path, handler, names);
     }
 
+    /**
+     * Captures every element matching the path, with its descendants, into a {@link Subtree} handed to the
+     * handler when the element is closed. The rules matching the descendants are still called while the element
+     * is captured.
+     * <p/>
+     * Only {@link XmlParser} runs subtree rules, {@link XmlMultiplexer} rejects them.
+     */
+    public static <S> Rule<S> subtree(final String path, final SubtreeHandler<S> handler) {
+        return new Rule<>(path, handler);
+    }
+
     public RuleType getType() {
         return type;
     }
@@ -109,6 +174,10 @@ public class Rule<S> {
         return charactersHandler;
     }
 
+    public SubtreeHandler<S> getSubtreeHandler() {
+        return subtreeHandler;
+    }
+
     @Override
     public String toString() {
         return "Rule{" +
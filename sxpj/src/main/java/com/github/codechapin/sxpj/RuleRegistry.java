@@ -0,0 +1,100 @@
+package com.github.codechapin.sxpj;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * A mutable set of {@link Rule}s that can be changed while parsers built from it are running, see
+ * {@link XmlParserFactory#newParser(RuleRegistry)}.
+ * </p>
+ * <p>
+ * Every change builds a new compiled rule table on the calling thread and publishes it with a single atomic
+ * reference swap. Parsers pick up the latest table when a parse begins and keep using that table until the end
+ * of the document, so parses already in flight are never affected and the per-event lookup never takes a lock.
+ * </p>
+ * <p>
+ * Changes are serialized between themselves, it is safe to call {@link #add(Rule[])} and {@link #remove(Rule[])}
+ * from any thread.
+ * </p>
+ */
+public class RuleRegistry<S> {
+    private final AtomicReference<RuleTable<S>> table;
+
+    /**
+     * Creates a new registry holding the given rules.
+     *
+     * @param rules the initial rules, can be empty.
+     */
+    @SafeVarargs
+    public RuleRegistry(final Rule<S>... rules) {
+        Objects.requireNonNull(rules, "rules cannot be null");
+        this.table = new AtomicReference<>(new RuleTable<>(rules));
+    }
+
+    /**
+     * Adds the given rules, they are used by every parse that begins after this method returns.
+     *
+     * @param rules the rules to add.
+     */
+    @SafeVarargs
+    public final synchronized void add(final Rule<S>... rules) {
+        Objects.requireNonNull(rules, "rules cannot be null");
+
+        final List<Rule<S>> updated = new ArrayList<>(Arrays.asList(table.get().rules()));
+        updated.addAll(Arrays.asList(rules));
+        publish(updated);
+    }
+
+    /**
+     * Removes the given rules, they are no longer used by any parse that begins after this method returns.
+     * Rules are compared by identity.
+     *
+     * @param rules the rules to remove.
+     * @return <code>true</code> if at least one of the rules was registered.
+     */
+    @SafeVarargs
+    public final synchronized boolean remove(final Rule<S>... rules) {
+        Objects.requireNonNull(rules, "rules cannot be null");
+
+        final List<Rule<S>> updated = new ArrayList<>(Arrays.asList(table.get().rules()));
+        boolean removed = false;
+        for (Rule<S> rule : rules) {
+            for (int i = updated.size() - 1; i >= 0; i--) {
+                if (updated.get(i) == rule) {
+                    updated.remove(i);
+                    removed = true;
+                }
+            }
+        }
+
+        if (removed) {
+            publish(updated);
+        }
+        return removed;
+    }
+
+    /**
+     * @return a snapshot of the rules currently registered.
+     */
+    public List<Rule<S>> getRules() {
+        return Collections.unmodifiableList(Arrays.asList(table.get().rules()));
+    }
+
+    /**
+     * @return the table to be used by a parse that begins now.
+     */
+    RuleTable<S> table() {
+        return table.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void publish(final List<Rule<S>> rules) {
+        // Compiling happens here, on the caller's thread, parsers only ever see complete tables.
+        table.set(new RuleTable<>(rules.toArray(new Rule[rules.size()])));
+    }
+}
@@ -0,0 +1,293 @@
+package com.github.codechapin.sxpj;
+
+import java.util.*;
+
+/**
+ * Immutable, compiled form of a set of {@link Rule}s: the handlers of the rules on each path, compiled into
+ * {@link PathHandlers} and indexed by the hash code of the path so that they can be matched against the parser's
+ * {@link Location} with a single lookup.
+ * <p/>
+ * Once built a table is never modified, which allows it to be shared between threads and swapped atomically
+ * by a {@link RuleRegistry} while parses that already picked it up keep using it.
+ */
+final class RuleTable<S> {
+    private final Rule<S>[] rules;
+
+    private final Map<Integer, PathHandlers<S>> handlers;
+    private final boolean hasSubtreeRules;
+
+    // positional predicates: the counter slot of each step holding one, the slots restarted by each parent and
+    // the last position any rule can match in each slot
+    private final Map<Integer, Integer> positionSlots;
+    private final Map<Integer, int[]> positionResets;
+    private final int[] positionWindows;
+
+    RuleTable(final Rule<S>[] rules) {
+        Objects.requireNonNull(rules, "rules cannot be null");
+
+        // calculate a rough optimal size for the rule maps
+        final int optSize = (rules.length > 64 ? rules.length * 2 : 64);
+
+        final Map<Integer, Group<S>> groups = new HashMap<>(optSize);
+        final List<PositionalPath> paths = new ArrayList<>(rules.length);
+        boolean subtrees = false;
+
+        for (Rule<S> rule : rules) {
+            Objects.requireNonNull(rule, "a Rule cannot be null");
+
+            switch (rule.getType()) {
+                case ELEMENT:
+                    if (rule.getElementHandler() == null) {
+                        throw new IllegalStateException(String.format("The TagHandler for Rule '%s' is null.", rule));
+                    }
+                    break;
+                case ATTRIBUTE:
+                    if (rule.getAttributeHandler() == null) {
+                        throw new IllegalStateException(String.format("The AttributeHandler for Rule '%s' is null.", rule));
+                    }
+                    break;
+                case CHARACTERS:
+                    if (rule.getCharactersHandler() == null) {
+                        throw new IllegalStateException(String.format("The CharactersHandler for Rule '%s' is null.", rule));
+                    }
+                    break;
+                case SUBTREE:
+                    if (rule.getSubtreeHandler() == null) {
+                        throw new IllegalStateException(String.format("The SubtreeHandler for Rule '%s' is null.", rule));
+                    }
+                    subtrees = true;
+                    break;
+                default:
+                    throw new IllegalStateException(String.format("The RuleType '%s' is not recognized.", rule.getType()));
+            }
+
+            final PositionalPath path = PositionalPath.parse(rule.getPath());
+            paths.add(path);
+
+            Group<S> group = groups.computeIfAbsent(path.getBase().hashCode(), hash -> new Group<>(null));
+            if (path.isPositional()) {
+                group = group.positional.computeIfAbsent(path.predicateKey(), key -> new Group<>(path));
+            }
+            group.add(rule);
+        }
+
+        final Map<Integer, PathHandlers<S>> handlers = new HashMap<>(optSize);
+        for (Map.Entry<Integer, Group<S>> entry : groups.entrySet()) {
+            handlers.put(entry.getKey(), entry.getValue().compile());
+        }
+
+        this.rules = rules.clone();
+        this.handlers = handlers;
+        this.hasSubtreeRules = subtrees;
+
+        this.positionSlots = new HashMap<>();
+        final Map<Integer, List<Integer>> resets = new HashMap<>();
+        final List<Integer> windows = new ArrayList<>();
+        for (PositionalPath path : paths) {
+            for (int i = 0; i < path.size(); i++) {
+                final String prefix = path.prefix(i);
+                if (positionSlots.containsKey(prefix.hashCode())) {
+                    continue;
+                }
+
+                final int slot = windows.size();
+                positionSlots.put(prefix.hashCode(), slot);
+                windows.add(window(paths, prefix, path.depth(i)));
+
+                final String parent = prefix.substring(0, lastSeparator(prefix));
+                resets.computeIfAbsent(parent.hashCode(), hash -> new ArrayList<>(2)).add(slot);
+            }
+        }
+
+        this.positionResets = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> entry : resets.entrySet()) {
+            final int[] slots = new int[entry.getValue().size()];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = entry.getValue().get(i);
+            }
+            positionResets.put(entry.getKey(), slots);
+        }
+        this.positionWindows = new int[windows.size()];
+        for (int i = 0; i < positionWindows.length; i++) {
+            positionWindows[i] = windows.get(i);
+        }
+    }
+
+    /**
+     * @return the last position of a step any rule can match: the largest maximum of the predicates on that step,
+     * or {@link Integer#MAX_VALUE} when a rule on the step or below it has no predicate on the step.
+     */
+    private static int window(final List<PositionalPath> paths, final String prefix, final int depth) {
+        int window = 0;
+        for (PositionalPath path : paths) {
+            final String base = path.getBase();
+            if (!base.equals(prefix) && !base.startsWith(prefix + "/")) {
+                continue;
+            }
+
+            int max = Integer.MAX_VALUE;
+            for (int i = 0; i < path.size(); i++) {
+                if (path.depth(i) == depth) {
+                    max = path.max(i);
+                }
+            }
+            window = Math.max(window, max);
+        }
+        return window;
+    }
+
+    /**
+     * @return the index of the slash starting the last step of the path, skipping the slashes of its namespace.
+     */
+    private static int lastSeparator(final String path) {
+        int separator = 0;
+        boolean namespace = false;
+        for (int i = 0; i < path.length(); i++) {
+            final char c = path.charAt(i);
+            if (c == '[') {
+                namespace = true;
+            } else if (c == ']') {
+                namespace = false;
+            } else if (c == '/' && !namespace) {
+                separator = i;
+            }
+        }
+        return separator;
+    }
+
+    Rule<S>[] rules() {
+        return rules.clone();
+    }
+
+    int size() {
+        return rules.length;
+    }
+
+    /**
+     * @return the handlers of the rules on the given path hash, <code>null</code> if there is no rule on it.
+     */
+    PathHandlers<S> handlers(final Integer hash) {
+        return handlers.get(hash);
+    }
+
+    /**
+     * @return <code>true</code> if the table has SUBTREE rules, which need to see every event of the elements
+     * they capture.
+     */
+    boolean hasSubtreeRules() {
+        return hasSubtreeRules;
+    }
+
+    /**
+     * @return <code>true</code> if the table has rules with positional predicates, the parser then numbers the
+     * elements of their steps.
+     */
+    boolean hasPositionalRules() {
+        return positionWindows.length > 0;
+    }
+
+    /**
+     * @return the number of position counters the parser needs.
+     */
+    int positionSlots() {
+        return positionWindows.length;
+    }
+
+    /**
+     * @return the counter of the elements on the given path hash, -1 if no positional predicate is on that step.
+     */
+    int positionSlot(final Integer hash) {
+        final Integer slot = positionSlots.get(hash);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @return the counters restarted when an element on the given path hash starts, as they number its children;
+     * <code>null</code> if there is none.
+     */
+    int[] positionResets(final Integer hash) {
+        return positionResets.get(hash);
+    }
+
+    /**
+     * @return the last position any rule can match in the given counter, the elements after it can be skipped.
+     */
+    int positionWindow(final int slot) {
+        return positionWindows[slot];
+    }
+
+    /**
+     * @return <code>true</code> if any ELEMENT or ATTRIBUTE rule is registered for the given path hash.
+     */
+    boolean hasElementRules(final Integer hash) {
+        final PathHandlers<S> path = handlers.get(hash);
+        return path != null && (path.element != null || path.attributes != null || path.positional != null);
+    }
+
+    /**
+     * @return <code>true</code> if any CHARACTERS rule is registered for the given path hash.
+     */
+    boolean hasCharactersRules(final Integer hash) {
+        final PathHandlers<S> path = handlers.get(hash);
+        return path != null && (path.characters != null || path.positional != null);
+    }
+
+    /**
+     * @return the hashes of every path this table has a rule for.
+     */
+    Set<Integer> paths() {
+        return Collections.unmodifiableSet(handlers.keySet());
+    }
+
+    /**
+     * The rules on one path, or with one set of predicates on that path, before they are compiled.
+     */
+    private static final class Group<S> {
+        private final PositionalPath predicates;
+        private final Map<String, Group<S>> positional = new LinkedHashMap<>();
+
+        private List<Rule<S>> element;
+        private List<Rule<S>> attributes;
+        private List<Rule<S>> characters;
+        private List<Rule<S>> subtrees;
+
+        private Group(final PositionalPath predicates) {
+            this.predicates = predicates;
+        }
+
+        private void add(final Rule<S> rule) {
+            switch (rule.getType()) {
+                case ELEMENT:
+                    element = add(element, rule);
+                    break;
+                case ATTRIBUTE:
+                    attributes = add(attributes, rule);
+                    break;
+                case CHARACTERS:
+                    characters = add(characters, rule);
+                    break;
+                default:
+                    subtrees = add(subtrees, rule);
+            }
+        }
+
+        private static <S> List<Rule<S>> add(final List<Rule<S>> list, final Rule<S> rule) {
+            final List<Rule<S>> rules = list == null ? new ArrayList<>(3) : list;
+            rules.add(rule);
+            return rules;
+        }
+
+        @SuppressWarnings("unchecked")
+        private PathHandlers<S> compile() {
+            PathHandlers<S>[] compiled = null;
+            if (!positional.isEmpty()) {
+                compiled = new PathHandlers[positional.size()];
+                int i = 0;
+                for (Group<S> group : positional.values()) {
+                    compiled[i++] = group.compile();
+                }
+            }
+            return new PathHandlers<>(predicates, element, attributes, characters, subtrees, compiled);
+        }
+    }
+}
@@ -30,5 +30,10 @@ public enum RuleType {
      * between an open and close tag that the caller wants parsed.
      * </p>
      */
-    CHARACTERS;
+    CHARACTERS,
+    /**
+     * Type used to indicate that this rule wants the whole content of the matching element (its descendants,
+     * attributes and text) as a {@link Subtree} once the element is closed.
+     */
+    SUBTREE;
 }
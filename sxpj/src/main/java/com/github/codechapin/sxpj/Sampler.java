@@ -0,0 +1,233 @@
+package com.github.codechapin.sxpj;
+
+import java.util.SplittableRandom;
+
+/**
+ * <p>
+ * Selects which records of a document an {@link XmlParser} dispatches to its rules, for previews and data
+ * quality checks on feeds too large to parse whole:
+ * </p>
+ * <pre>
+ * // the first 100 items, the parse stops right after the 100th
+ * parser.sampler(Sampler.range("/feed/item", 0, 100)).parse(path, state);
+ *
+ * // every 1000th item
+ * parser.sampler(Sampler.every("/feed/item", 1000)).parse(path, state);
+ * </pre>
+ * <p>
+ * The records are the elements matching the record path, numbered from 0 in document order. A record that is
+ * not selected is skipped: its events are read without updating the location or looking up any rule, so no
+ * handler sees it, including the rules on its descendants and the subtree rules of its ancestors. A
+ * {@link #range(String, long, long) range} stops the parse once its last record has ended.
+ * </p>
+ * <p>
+ * A {@link #reservoir(String, int, long) reservoir} keeps a uniform random sample of a fixed size without knowing
+ * the number of records in advance. A selected record can later be replaced by another one, so the handlers
+ * must store each selected record in the slot given by {@link #getSlot()}, overwriting what it held. With
+ * Algorithm L, only about <code>size * (1 + ln(records / size))</code> records are dispatched, the others are
+ * skipped.
+ * </p>
+ * <p>
+ * A sampler holds the counters of the parse using it, so it must only be given to one parser; the counters are
+ * reset at the start of each parse.
+ * </p>
+ */
+public final class Sampler {
+    private enum Mode {
+        EVERY, RANGE, RESERVOIR
+    }
+
+    private final Mode mode;
+    private final String recordPath;
+    private final int recordHash;
+    private final long a;
+    private final long b;
+    private final long seed;
+
+    private long seen;
+    private long selected;
+    private int slot;
+
+    // reservoir: the random source, the W of Algorithm L and the index of the next record to select
+    private SplittableRandom random;
+    private double w;
+    private long next;
+
+    private Sampler(final Mode mode, final String recordPath, final long a, final long b, final long seed) {
+        Rule.checkLocationPath(recordPath);
+
+        this.mode = mode;
+        this.recordPath = recordPath;
+        this.recordHash = recordPath.hashCode();
+        this.a = a;
+        this.b = b;
+        this.seed = seed;
+        reset();
+    }
+
+    /**
+     * @param recordPath the location path of the records.
+     * @param k          selects records 0, k, 2k...
+     * @return the sampler.
+     */
+    public static Sampler every(final String recordPath, final long k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be greater than 0");
+        }
+        return new Sampler(Mode.EVERY, recordPath, k, 0, 0);
+    }
+
+    /**
+     * @param recordPath the location path of the records.
+     * @param from       the index of the first record to select.
+     * @param to         the index after the last record to select, the parse stops once that record has ended.
+     * @return the sampler.
+     */
+    public static Sampler range(final String recordPath, final long from, final long to) {
+        if (from < 0 || to < from) {
+            throw new IllegalArgumentException("the range [" + from + ", " + to + ") is not valid");
+        }
+        return new Sampler(Mode.RANGE, recordPath, from, to, 0);
+    }
+
+    /**
+     * @param recordPath the location path of the records.
+     * @param size       the number of records in the sample.
+     * @param seed       seeds the random choices, the same seed selects the same records of the same document.
+     * @return the sampler.
+     */
+    public static Sampler reservoir(final String recordPath, final int size, final long seed) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be greater than 0");
+        }
+        return new Sampler(Mode.RESERVOIR, recordPath, size, 0, seed);
+    }
+
+    public String getRecordPath() {
+        return recordPath;
+    }
+
+    /**
+     * @return the number of records met by the current (or last) parse, selected or not.
+     */
+    public long getSeen() {
+        return seen;
+    }
+
+    /**
+     * @return the number of records dispatched by the current (or last) parse. For a reservoir, this includes the
+     * records that were later replaced.
+     */
+    public long getSelected() {
+        return selected;
+    }
+
+    /**
+     * @return for a reservoir, the slot in <code>[0, size)</code> the current record must be stored into; for the
+     * other samplers, the index of the current record in the sample.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Resets the counters, called at the start of each parse.
+     */
+    void reset() {
+        seen = 0;
+        selected = 0;
+        slot = -1;
+        if (mode == Mode.RESERVOIR) {
+            random = new SplittableRandom(seed);
+            w = Math.exp(Math.log(uniform()) / a);
+            next = a - 1;
+            advance();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the given path hash is the one of the records.
+     */
+    boolean matches(final Integer hash) {
+        return hash == recordHash;
+    }
+
+    /**
+     * Numbers the record that starts.
+     *
+     * @return <code>true</code> if it is selected, <code>false</code> if it must be skipped.
+     */
+    boolean select() {
+        final long index = seen++;
+        final boolean select;
+        switch (mode) {
+            case EVERY:
+                select = index % a == 0;
+                break;
+            case RANGE:
+                select = index >= a && index < b;
+                break;
+            default:
+                select = selectReservoir(index);
+        }
+
+        if (select) {
+            if (mode != Mode.RESERVOIR) {
+                slot = (int) Math.min(selected, Integer.MAX_VALUE);
+            }
+            selected++;
+        }
+        return select;
+    }
+
+    /**
+     * @return <code>true</code> once no further record can be selected.
+     */
+    boolean isDone() {
+        return mode == Mode.RANGE && seen >= b;
+    }
+
+    private boolean selectReservoir(final long index) {
+        if (index < a) {
+            slot = (int) index;
+            return true;
+        }
+        if (index < next) {
+            return false;
+        }
+
+        slot = random.nextInt((int) a);
+        w *= Math.exp(Math.log(uniform()) / a);
+        advance();
+        return true;
+    }
+
+    /**
+     * Computes the index of the next record to select, skipping a geometrically distributed number of records.
+     */
+    private void advance() {
+        final double skip = Math.floor(Math.log(uniform()) / Math.log(1 - w));
+        next = skip >= Long.MAX_VALUE - next ? Long.MAX_VALUE : next + (long) skip + 1;
+    }
+
+    /**
+     * @return a random number in (0, 1), never 0 so its logarithm is finite.
+     */
+    private double uniform() {
+        double u;
+        do {
+            u = random.nextDouble();
+        } while (u == 0);
+        return u;
+    }
+
+    @Override
+    public String toString() {
+        return "Sampler{" +
+                "mode=" + mode +
+                ", recordPath='" + recordPath + '\'' +
+                ", seen=" + seen +
+                ", selected=" + selected +
+                '}';
+    }
+}
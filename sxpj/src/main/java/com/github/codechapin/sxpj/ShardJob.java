@@ -0,0 +1,36 @@
+package com.github.codechapin.sxpj;
+
+import java.io.Serializable;
+
+/**
+ * <p>
+ * The parse a {@link ShardedRunner} runs in each worker JVM: the rules, the empty state they fill and how two
+ * partial states are combined.
+ * </p>
+ * <p>
+ * Handlers are lambdas that cannot be sent to another JVM, so each worker creates the job itself from its class
+ * name: the class must be public, have a public constructor without arguments and be on the classpath of the
+ * workers. The states travel between the JVMs with Java serialization.
+ * </p>
+ *
+ * @param <S> the state built by the rules.
+ */
+public interface ShardJob<S extends Serializable> {
+    /**
+     * @return the rules of a parse, called once per worker.
+     */
+    Rule<S>[] rules();
+
+    /**
+     * @return a new empty state, for each file or range parsed.
+     */
+    S newState();
+
+    /**
+     * Combines two partial results. The left one always comes from records before the right one in the input,
+     * so a merge that appends keeps the records in document order.
+     *
+     * @return the combined state, which may be one of the arguments.
+     */
+    S merge(S left, S right);
+}
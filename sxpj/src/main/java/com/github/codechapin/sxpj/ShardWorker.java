@@ -0,0 +1,147 @@
+package com.github.codechapin.sxpj;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * <p>
+ * Main class of the worker JVMs started by a {@link ShardedRunner}. The protocol runs over the standard streams
+ * of the worker with Java serialization:
+ * </p>
+ * <ol>
+ * <li>the runner writes a {@link Task} to the standard input of the worker and closes it;</li>
+ * <li>the worker parses the units of the task in order and writes the state of each one as soon as it is
+ * complete;</li>
+ * <li>on success, the worker closes its standard output and exits with 0; on failure, it writes a
+ * {@link Failure} and exits with 1.</li>
+ * </ol>
+ * <p>
+ * {@link System#out} is redirected to the standard error of the worker so that handlers printing to it do not
+ * corrupt the results; the runner forwards the standard error of its workers to its own.
+ * </p>
+ */
+final class ShardWorker {
+    private ShardWorker() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final ObjectOutputStream out = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        System.setOut(System.err);
+
+        int status = 0;
+        try {
+            final Task task;
+            try (ObjectInputStream in = new ObjectInputStream(
+                    new BufferedInputStream(new FileInputStream(FileDescriptor.in)))) {
+                task = (Task) in.readObject();
+            }
+            run(task, out);
+        } catch (Throwable t) {
+            out.writeObject(new Failure(t));
+            status = 1;
+        }
+        out.close();
+        System.exit(status);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S extends Serializable> void run(final Task task, final ObjectOutputStream out) throws Exception {
+        final ShardJob<S> job = (ShardJob<S>) ShardedRunner.newJob(Class.forName(task.job));
+        final XmlParser<S> parser = new XmlParserFactory().newParser(job.rules());
+        final Charset charset = task.charset == null ? null : Charset.forName(task.charset);
+
+        for (Unit unit : task.units) {
+            final S state = job.newState();
+            final Path path = Paths.get(unit.path);
+            if (unit.offset < 0 && charset == null) {
+                parser.parse(path, state);
+            } else if (unit.offset < 0) {
+                parser.parse(path, charset, state);
+            } else {
+                parser.parseRange(path, charset, unit.before, unit.offset, unit.length, unit.after, state);
+            }
+
+            out.writeObject(state);
+            // the states are independent, do not let the stream keep references to them
+            out.reset();
+            out.flush();
+        }
+    }
+
+    /**
+     * The work of one worker: the units are parsed in order and each of them gives one state.
+     */
+    static final class Task implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String job;
+        /**
+         * <code>null</code> to detect the encoding of whole files.
+         */
+        final String charset;
+        final List<Unit> units;
+
+        Task(final String job, final String charset, final List<Unit> units) {
+            this.job = job;
+            this.charset = charset;
+            this.units = units;
+        }
+    }
+
+    /**
+     * A whole file, or a byte range of a file as parsed by
+     * {@link XmlParser#parseRange(Path, Charset, long[], long, long, long[], Object)}.
+     */
+    static final class Unit implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String path;
+        final long[] before;
+        final long offset;
+        final long length;
+        final long[] after;
+
+        Unit(final String path) {
+            this(path, new long[0], -1, -1, new long[0]);
+        }
+
+        Unit(final String path, final long[] before, final long offset, final long length, final long[] after) {
+            this.path = path;
+            this.before = before;
+            this.offset = offset;
+            this.length = length;
+            this.after = after;
+        }
+    }
+
+    /**
+     * The failure of a worker, sent as text as the exception itself may not be serializable.
+     */
+    static final class Failure implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String message;
+        final String stackTrace;
+
+        Failure(final Throwable t) {
+            this.message = t.toString();
+
+            final StringWriter trace = new StringWriter();
+            t.printStackTrace(new PrintWriter(trace));
+            this.stackTrace = trace.toString();
+        }
+    }
+}
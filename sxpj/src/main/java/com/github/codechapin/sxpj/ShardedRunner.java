@@ -0,0 +1,356 @@
+package com.github.codechapin.sxpj;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ * Parses a large file, or many files, with several worker JVMs on the local machine and merges their results,
+ * for inputs whose state or garbage outgrows the heap of a single JVM:
+ * </p>
+ * <pre>
+ * final Totals totals = new ShardedRunner&lt;&gt;(TotalsJob.class)
+ *         .workers(8)
+ *         .jvmOptions("-Xmx2g")
+ *         .parseFile(export, "/export/items/item");
+ * </pre>
+ * <p>
+ * A single file is split at record boundaries: it is scanned once by an {@link XmlIndex} and its records are cut
+ * into one contiguous byte range per worker, of about the same size. Each worker parses its range with
+ * {@link XmlParser#parseRange(Path, XmlIndex, int, Object) the start tags of the ancestors} copied in front of it,
+ * so its rules see the same location paths as in a full parse; the content of the ancestors that is not inside a
+ * record (a header before the first record, for example) is not parsed. Files are split into contiguous groups of
+ * about the same total size, one per worker, and parsed whole.
+ * </p>
+ * <p>
+ * The workers are started with {@link ProcessBuilder}, from the same Java installation and classpath as this JVM
+ * unless {@link #classpath(String)} is set. Each one creates the {@link ShardJob} from its class name, parses its
+ * share and streams the state of every range or file back over its standard output as soon as it is complete,
+ * while its standard error goes to the one of this JVM. The states are merged in input order: first by each
+ * worker, then across the workers, so {@link ShardJob#merge(Serializable, Serializable)} may be called by several
+ * threads at once, on different states.
+ * </p>
+ * <p>
+ * If a worker fails, the others are destroyed and an {@link XmlParserException} with the error of the worker is
+ * thrown.
+ * </p>
+ *
+ * @param <S> the state built by the rules of the job.
+ */
+public final class ShardedRunner<S extends Serializable> {
+    private final Class<? extends ShardJob<S>> jobClass;
+    private final ShardJob<S> job;
+
+    private int workers;
+    private String classpath;
+    private List<String> jvmOptions = Collections.emptyList();
+    private Charset charset;
+
+    /**
+     * @param job the job run by the workers, with a public constructor without arguments.
+     */
+    public ShardedRunner(final Class<? extends ShardJob<S>> job) {
+        Objects.requireNonNull(job, "The ShardJob class cannot be null");
+
+        this.jobClass = job;
+        this.job = job.cast(newJob(job));
+        this.workers = Runtime.getRuntime().availableProcessors();
+        this.classpath = System.getProperty("java.class.path");
+    }
+
+    /**
+     * @param workers the maximum number of worker JVMs, defaults to the available processors.
+     * @return this runner, to allow chaining.
+     */
+    public ShardedRunner<S> workers(final int workers) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers must be greater than 0");
+        }
+        this.workers = workers;
+        return this;
+    }
+
+    /**
+     * @param classpath the classpath of the workers, which must hold this library and the job; defaults to the
+     *                  classpath of this JVM.
+     * @return this runner, to allow chaining.
+     */
+    public ShardedRunner<S> classpath(final String classpath) {
+        Objects.requireNonNull(classpath, "The classpath cannot be null");
+        this.classpath = classpath;
+        return this;
+    }
+
+    /**
+     * @param options the options of the worker JVMs, such as <code>-Xmx2g</code>.
+     * @return this runner, to allow chaining.
+     */
+    public ShardedRunner<S> jvmOptions(final String... options) {
+        this.jvmOptions = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(options)));
+        return this;
+    }
+
+    /**
+     * @param charset the encoding of the input, <code>null</code> (the default) to detect the encoding of whole
+     *                files and read a split file as UTF-8.
+     * @return this runner, to allow chaining.
+     */
+    public ShardedRunner<S> charset(final Charset charset) {
+        this.charset = charset;
+        return this;
+    }
+
+    /**
+     * Splits a file at the boundaries of its records and parses one range per worker.
+     *
+     * @param file       the XML file, not compressed as it is read at random offsets.
+     * @param recordPath the location path of the records.
+     * @return the merged state of the records.
+     */
+    public S parseFile(final Path file, final String recordPath) {
+        Objects.requireNonNull(file, "The Path cannot be null for ShardedRunner.parseFile");
+
+        final Charset charset = this.charset == null ? StandardCharsets.UTF_8 : this.charset;
+        final XmlIndex index = XmlIndex.build(file, charset, recordPath);
+        if (index.size() == 0) {
+            return job.newState();
+        }
+
+        final int shards = Math.min(workers, index.size());
+        final long first = index.getStart(0);
+        final long total = index.getEnd(index.size() - 1) - first;
+        final String path = file.toAbsolutePath().toString();
+
+        final List<List<ShardWorker.Unit>> tasks = new ArrayList<>(shards);
+        int from = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            // cut after the record crossing the shard's share of the bytes, leaving a record to every next shard
+            int to = from + 1;
+            final long target = first + total * (shard + 1) / shards;
+            while (to < index.size() - (shards - shard - 1) && index.getEnd(to - 1) < target) {
+                to++;
+            }
+            if (shard == shards - 1) {
+                to = index.size();
+            }
+
+            final long start = index.getStart(from);
+            tasks.add(Collections.singletonList(new ShardWorker.Unit(path, index.getAncestors(from), start,
+                    index.getEnd(to - 1) - start, index.getAncestors(to - 1))));
+            from = to;
+        }
+        return run(tasks, charset);
+    }
+
+    /**
+     * Parses the regular files of a directory, in the order of their names.
+     *
+     * @param directory the directory, its sub-directories are ignored.
+     * @return the merged state of the files.
+     */
+    public S parseDirectory(final Path directory) {
+        Objects.requireNonNull(directory, "The directory cannot be null for ShardedRunner.parseDirectory");
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return parseFiles(files.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses files in contiguous groups of about the same total size, one group per worker.
+     *
+     * @param files the XML files, compressed or not, see {@link XmlParser#parse(Path, Object)}.
+     * @return the merged state of the files, in the given order.
+     */
+    public S parseFiles(final Collection<Path> files) {
+        Objects.requireNonNull(files, "The files cannot be null for ShardedRunner.parseFiles");
+        if (files.isEmpty()) {
+            return job.newState();
+        }
+
+        final List<Path> paths = new ArrayList<>(files);
+        final long[] sizes = new long[paths.size()];
+        long total = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            try {
+                sizes[i] = Files.size(paths.get(i));
+            } catch (IOException e) {
+                throw new XmlParserException(e.getMessage(), e);
+            }
+            total += sizes[i];
+        }
+
+        final int shards = Math.min(workers, paths.size());
+        final List<List<ShardWorker.Unit>> tasks = new ArrayList<>(shards);
+        int from = 0;
+        long done = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            final List<ShardWorker.Unit> units = new ArrayList<>();
+            final long target = total * (shard + 1) / shards;
+            do {
+                units.add(new ShardWorker.Unit(paths.get(from).toAbsolutePath().toString()));
+                done += sizes[from++];
+            } while (from < paths.size() - (shards - shard - 1) && (done < target || shard == shards - 1));
+            tasks.add(units);
+        }
+        return run(tasks, charset);
+    }
+
+    private S run(final List<List<ShardWorker.Unit>> tasks, final Charset charset) {
+        final String charsetName = charset == null ? null : charset.name();
+        final List<Process> processes = Collections.synchronizedList(new ArrayList<>(tasks.size()));
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        final ExecutorService readers = Executors.newFixedThreadPool(tasks.size(), runnable -> {
+            final Thread thread = new Thread(runnable, "sxpj-shard");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            final List<CompletableFuture<S>> results = new ArrayList<>(tasks.size());
+            for (int i = 0; i < tasks.size(); i++) {
+                final int shard = i;
+                final Process process = start();
+                processes.add(process);
+
+                final ShardWorker.Task task = new ShardWorker.Task(jobClass.getName(), charsetName, tasks.get(i));
+                results.add(CompletableFuture.supplyAsync(() -> collect(shard, process, task), readers)
+                        .whenComplete((state, t) -> {
+                            if (t != null && failure.compareAndSet(null, unwrap(t))) {
+                                // the other workers are useless now, their readers see them end
+                                synchronized (processes) {
+                                    processes.forEach(Process::destroyForcibly);
+                                }
+                            }
+                        }));
+            }
+
+            S merged = null;
+            for (CompletableFuture<S> result : results) {
+                final S state;
+                try {
+                    state = result.join();
+                } catch (CompletionException e) {
+                    throw failure.get();
+                }
+                merged = merged == null ? state : job.merge(merged, state);
+            }
+            return merged;
+        } finally {
+            readers.shutdownNow();
+            synchronized (processes) {
+                processes.forEach(Process::destroyForcibly);
+            }
+        }
+    }
+
+    private Process start() {
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(classpath);
+        command.add(ShardWorker.class.getName());
+
+        try {
+            return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        } catch (IOException e) {
+            throw new XmlParserException("cannot start a worker JVM: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sends its task to a worker and merges the states it streams back.
+     */
+    @SuppressWarnings("unchecked")
+    private S collect(final int shard, final Process process, final ShardWorker.Task task) {
+        try {
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(process.getOutputStream()))) {
+                out.writeObject(task);
+            }
+
+            S merged = null;
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(process.getInputStream()))) {
+                while (true) {
+                    final Object result;
+                    try {
+                        result = in.readObject();
+                    } catch (EOFException e) {
+                        break;
+                    }
+
+                    if (result instanceof ShardWorker.Failure) {
+                        final ShardWorker.Failure failure = (ShardWorker.Failure) result;
+                        throw new XmlParserException("shard " + shard + " failed: " + failure.message
+                                + System.lineSeparator() + failure.stackTrace);
+                    }
+                    merged = merged == null ? (S) result : job.merge(merged, (S) result);
+                }
+            }
+
+            final int status = process.waitFor();
+            if (status != 0) {
+                throw new XmlParserException("the worker of shard " + shard + " exited with status " + status);
+            }
+            return merged;
+        } catch (IOException | ClassNotFoundException e) {
+            throw new XmlParserException("cannot read the results of shard " + shard + ": " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XmlParserException("interrupted while waiting for shard " + shard, e);
+        }
+    }
+
+    private static RuntimeException unwrap(final Throwable t) {
+        final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new XmlParserException(cause.getMessage(), (Exception) cause);
+    }
+
+    static ShardJob<?> newJob(final Class<?> type) {
+        if (!ShardJob.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException(type.getName() + " is not a ShardJob");
+        }
+
+        try {
+            return (ShardJob<?>) type.getConstructor().newInstance();
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException e) {
+            throw new IllegalArgumentException("the ShardJob " + type.getName()
+                    + " needs a public constructor without arguments", e);
+        } catch (InvocationTargetException e) {
+            throw new XmlParserException("cannot create the ShardJob " + type.getName() + ": "
+                    + e.getCause().getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.codechapin.sxpj;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * {@link RecordPool} keeping the released records on an array stack, see {@link RecordPool#of}.
+ */
+final class StackRecordPool<T> implements RecordPool<T> {
+    private final Supplier<? extends T> factory;
+    private final Consumer<? super T> reset;
+    private final Object[] idle;
+
+    private int size;
+    private long created;
+
+    StackRecordPool(final Supplier<? extends T> factory, final Consumer<? super T> reset, final int maxIdle) {
+        Objects.requireNonNull(factory, "The factory cannot be null");
+        Objects.requireNonNull(reset, "The reset cannot be null");
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("maxIdle cannot be negative");
+        }
+
+        this.factory = factory;
+        this.reset = reset;
+        this.idle = new Object[maxIdle];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T borrow() {
+        if (size == 0) {
+            created++;
+            return factory.get();
+        }
+
+        final T record = (T) idle[--size];
+        idle[size] = null;
+        return record;
+    }
+
+    @Override
+    public void release(final T record) {
+        if (size < idle.length) {
+            reset.accept(record);
+            idle[size++] = record;
+        }
+    }
+
+    /**
+     * @return the number of records created by the factory.
+     */
+    long getCreated() {
+        return created;
+    }
+
+    @Override
+    public String toString() {
+        return "StackRecordPool{" +
+                "idle=" + size +
+                ", maxIdle=" + idle.length +
+                ", created=" + created +
+                '}';
+    }
+}
@@ -0,0 +1,363 @@
+package com.github.codechapin.sxpj;
+
+import javax.xml.stream.XMLStreamReader;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Read-only tree of the elements, attributes and text of an element captured by a
+ * {@link Rule#subtree(String, com.github.codechapin.sxpj.handler.SubtreeHandler) subtree rule}. Elements are
+ * identified by an <code>int</code>, {@link #root()} is the captured element and -1 stands for "no element":
+ * </p>
+ * <pre>
+ * Rule.subtree("/imdb/category/movie/cast", (cast, state, parser) -&gt; {
+ *     for (int actor = cast.firstChild(cast.root(), "actor"); actor != -1; actor = cast.nextSibling(actor, "actor")) {
+ *         state.addActor(cast.getAttribute(actor, "realName"), cast.getAttribute(actor, "charName"));
+ *     }
+ * });
+ * </pre>
+ * <p>
+ * The tree is not made of objects: elements, attributes and text chunks are rows of <code>int[]</code> arenas
+ * pointing into a <code>char[]</code> arena holding the names and values. The arenas are reused for the next
+ * matching element once the handler returns, so a tree costs no allocation once they are as large as the largest
+ * record; only the <code>String</code>s returned by the getters are created on demand. The handler must therefore
+ * not keep a reference to the tree.
+ * </p>
+ */
+public final class Subtree {
+    // element rows
+    private static final int PARENT = 0;
+    private static final int FIRST_CHILD = 1;
+    private static final int LAST_CHILD = 2;
+    private static final int NEXT_SIBLING = 3;
+    private static final int NAME = 4;
+    private static final int NAMESPACE = 6;
+    private static final int FIRST_ATTRIBUTE = 8;
+    private static final int ATTRIBUTE_COUNT = 9;
+    private static final int FIRST_TEXT = 10;
+    private static final int LAST_TEXT = 11;
+    private static final int ELEMENT_SIZE = 12;
+
+    // attribute rows
+    private static final int ATTRIBUTE_NAME = 0;
+    private static final int ATTRIBUTE_NAMESPACE = 2;
+    private static final int ATTRIBUTE_VALUE = 4;
+    private static final int ATTRIBUTE_SIZE = 6;
+
+    // text rows
+    private static final int TEXT = 0;
+    private static final int NEXT_TEXT = 2;
+    private static final int TEXT_SIZE = 3;
+
+    private int[] elements = new int[16 * ELEMENT_SIZE];
+    private int[] attributes = new int[16 * ATTRIBUTE_SIZE];
+    private int[] texts = new int[16 * TEXT_SIZE];
+    private char[] chars = new char[1024];
+
+    private int elementCount;
+    private int attributeCount;
+    private int textCount;
+    private int charCount;
+
+    // element being captured, -1 once the root is closed
+    private int current = -1;
+
+    Subtree() {
+    }
+
+    /**
+     * @return the captured element, always 0.
+     */
+    public int root() {
+        return 0;
+    }
+
+    /**
+     * @return the number of elements in the tree.
+     */
+    public int size() {
+        return elementCount;
+    }
+
+    /**
+     * @return the parent element, -1 for the root.
+     */
+    public int getParent(final int element) {
+        return elements[row(element) + PARENT];
+    }
+
+    /**
+     * @return the first child element, -1 if there is none.
+     */
+    public int firstChild(final int element) {
+        return elements[row(element) + FIRST_CHILD];
+    }
+
+    /**
+     * @return the next sibling element, -1 if there is none.
+     */
+    public int nextSibling(final int element) {
+        return elements[row(element) + NEXT_SIBLING];
+    }
+
+    /**
+     * @return the first child element with the given local name, -1 if there is none.
+     */
+    public int firstChild(final int element, final String localName) {
+        final int child = firstChild(element);
+        return child == -1 || isNamed(child, localName) ? child : nextSibling(child, localName);
+    }
+
+    /**
+     * @return the next sibling element with the given local name, -1 if there is none.
+     */
+    public int nextSibling(final int element, final String localName) {
+        int sibling = nextSibling(element);
+        while (sibling != -1 && !isNamed(sibling, localName)) {
+            sibling = nextSibling(sibling);
+        }
+        return sibling;
+    }
+
+    public String getLocalName(final int element) {
+        return string(elements, row(element) + NAME);
+    }
+
+    /**
+     * @return the namespace URI of the element, <code>null</code> if it has none.
+     */
+    public String getNamespaceURI(final int element) {
+        return string(elements, row(element) + NAMESPACE);
+    }
+
+    /**
+     * @return the number of attributes of the element.
+     */
+    public int getAttributeCount(final int element) {
+        return elements[row(element) + ATTRIBUTE_COUNT];
+    }
+
+    public String getAttributeLocalName(final int element, final int index) {
+        return string(attributes, attributeRow(element, index) + ATTRIBUTE_NAME);
+    }
+
+    public String getAttributeNamespaceURI(final int element, final int index) {
+        return string(attributes, attributeRow(element, index) + ATTRIBUTE_NAMESPACE);
+    }
+
+    public String getAttributeValue(final int element, final int index) {
+        return string(attributes, attributeRow(element, index) + ATTRIBUTE_VALUE);
+    }
+
+    /**
+     * @return the value of the attribute without namespace, <code>null</code> if the element does not have it.
+     */
+    public String getAttribute(final int element, final String localName) {
+        return getAttribute(element, null, localName);
+    }
+
+    /**
+     * @return the value of the attribute, <code>null</code> if the element does not have it.
+     */
+    public String getAttribute(final int element, final String namespaceURI, final String localName) {
+        final int first = elements[row(element) + FIRST_ATTRIBUTE];
+        final int count = elements[row(element) + ATTRIBUTE_COUNT];
+        for (int i = first; i < first + count; i++) {
+            final int row = i * ATTRIBUTE_SIZE;
+            if (equals(attributes, row + ATTRIBUTE_NAME, localName)
+                    && equals(attributes, row + ATTRIBUTE_NAMESPACE, namespaceURI)) {
+                return string(attributes, row + ATTRIBUTE_VALUE);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the text directly inside the element (not the text of its children), trimmed like the text given
+     * to a {@link com.github.codechapin.sxpj.handler.CharactersHandler}.
+     */
+    public String getText(final int element) {
+        int text = elements[row(element) + FIRST_TEXT];
+        if (text == -1) {
+            return "";
+        }
+        if (texts[text * TEXT_SIZE + NEXT_TEXT] == -1) {
+            return string(texts, text * TEXT_SIZE + TEXT).trim();
+        }
+
+        final StringBuilder builder = new StringBuilder();
+        for (; text != -1; text = texts[text * TEXT_SIZE + NEXT_TEXT]) {
+            final int row = text * TEXT_SIZE + TEXT;
+            builder.append(chars, texts[row], texts[row + 1]);
+        }
+        return builder.toString().trim();
+    }
+
+    /**
+     * @return the text of the first child element with the given local name, <code>null</code> if there is none.
+     */
+    public String getChildText(final int element, final String localName) {
+        final int child = firstChild(element, localName);
+        return child == -1 ? null : getText(child);
+    }
+
+    /**
+     * Empties the tree and starts it with the element the reader is on.
+     */
+    void begin(final XMLStreamReader reader) {
+        elementCount = 0;
+        attributeCount = 0;
+        textCount = 0;
+        charCount = 0;
+        current = -1;
+        startElement(reader);
+    }
+
+    void startElement(final XMLStreamReader reader) {
+        if ((elementCount + 1) * ELEMENT_SIZE > elements.length) {
+            elements = Arrays.copyOf(elements, elements.length * 2);
+        }
+
+        final int element = elementCount++;
+        final int row = element * ELEMENT_SIZE;
+        elements[row + PARENT] = current;
+        elements[row + FIRST_CHILD] = -1;
+        elements[row + LAST_CHILD] = -1;
+        elements[row + NEXT_SIBLING] = -1;
+        elements[row + FIRST_TEXT] = -1;
+        elements[row + LAST_TEXT] = -1;
+        if (current != -1) {
+            final int parentRow = current * ELEMENT_SIZE;
+            final int last = elements[parentRow + LAST_CHILD];
+            if (last == -1) {
+                elements[parentRow + FIRST_CHILD] = element;
+            } else {
+                elements[last * ELEMENT_SIZE + NEXT_SIBLING] = element;
+            }
+            elements[parentRow + LAST_CHILD] = element;
+        }
+
+        store(elements, row + NAME, reader.getLocalName());
+        store(elements, row + NAMESPACE, emptyToNull(reader.getNamespaceURI()));
+
+        final int count = reader.getAttributeCount();
+        if ((attributeCount + count) * ATTRIBUTE_SIZE > attributes.length) {
+            attributes = Arrays.copyOf(attributes, Math.max(attributes.length * 2, (attributeCount + count) * ATTRIBUTE_SIZE));
+        }
+        elements[row + FIRST_ATTRIBUTE] = attributeCount;
+        elements[row + ATTRIBUTE_COUNT] = count;
+        for (int i = 0; i < count; i++) {
+            final int attributeRow = attributeCount++ * ATTRIBUTE_SIZE;
+            store(attributes, attributeRow + ATTRIBUTE_NAME, reader.getAttributeLocalName(i));
+            store(attributes, attributeRow + ATTRIBUTE_NAMESPACE, emptyToNull(reader.getAttributeNamespace(i)));
+            store(attributes, attributeRow + ATTRIBUTE_VALUE, reader.getAttributeValue(i));
+        }
+
+        current = element;
+    }
+
+    void characters(final XMLStreamReader reader) {
+        final int length = reader.getTextLength();
+        if (length == 0) {
+            return;
+        }
+        if ((textCount + 1) * TEXT_SIZE > texts.length) {
+            texts = Arrays.copyOf(texts, texts.length * 2);
+        }
+
+        final int text = textCount++;
+        final int row = text * TEXT_SIZE;
+        ensureChars(length);
+        System.arraycopy(reader.getTextCharacters(), reader.getTextStart(), chars, charCount, length);
+        texts[row + TEXT] = charCount;
+        texts[row + TEXT + 1] = length;
+        texts[row + NEXT_TEXT] = -1;
+        charCount += length;
+
+        final int elementRow = current * ELEMENT_SIZE;
+        final int last = elements[elementRow + LAST_TEXT];
+        if (last == -1) {
+            elements[elementRow + FIRST_TEXT] = text;
+        } else {
+            texts[last * TEXT_SIZE + NEXT_TEXT] = text;
+        }
+        elements[elementRow + LAST_TEXT] = text;
+    }
+
+    /**
+     * @return <code>true</code> when the closed element is the root, the tree is then complete.
+     */
+    boolean endElement() {
+        current = elements[current * ELEMENT_SIZE + PARENT];
+        return current == -1;
+    }
+
+    private int row(final int element) {
+        if (element < 0 || element >= elementCount) {
+            throw new IndexOutOfBoundsException("element " + element + " is not in [0, " + elementCount + ")");
+        }
+        return element * ELEMENT_SIZE;
+    }
+
+    private int attributeRow(final int element, final int index) {
+        final int row = row(element);
+        if (index < 0 || index >= elements[row + ATTRIBUTE_COUNT]) {
+            throw new IndexOutOfBoundsException("attribute " + index + " is not in [0, "
+                    + elements[row + ATTRIBUTE_COUNT] + ")");
+        }
+        return (elements[row + FIRST_ATTRIBUTE] + index) * ATTRIBUTE_SIZE;
+    }
+
+    private boolean isNamed(final int element, final String localName) {
+        return equals(elements, element * ELEMENT_SIZE + NAME, localName);
+    }
+
+    /**
+     * Copies a string into the char arena, stores its offset and length (-1 for <code>null</code>) at the given
+     * index of the arena.
+     */
+    private void store(final int[] arena, final int index, final String s) {
+        if (s == null) {
+            arena[index] = 0;
+            arena[index + 1] = -1;
+            return;
+        }
+        ensureChars(s.length());
+        s.getChars(0, s.length(), chars, charCount);
+        arena[index] = charCount;
+        arena[index + 1] = s.length();
+        charCount += s.length();
+    }
+
+    private String string(final int[] arena, final int index) {
+        final int length = arena[index + 1];
+        return length == -1 ? null : new String(chars, arena[index], length);
+    }
+
+    private boolean equals(final int[] arena, final int index, final String s) {
+        final int length = arena[index + 1];
+        if (s == null || length == -1) {
+            return s == null && length == -1;
+        }
+        if (length != s.length()) {
+            return false;
+        }
+        final int offset = arena[index];
+        for (int i = 0; i < length; i++) {
+            if (chars[offset + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureChars(final int length) {
+        if (charCount + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+        }
+    }
+
+    private static String emptyToNull(final String s) {
+        return s == null || s.isEmpty() ? null : s;
+    }
+}
@@ -0,0 +1,416 @@
+package com.github.codechapin.sxpj;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>
+ * Byte offsets of every element matching a location path in a file, so a single record can be parsed again with
+ * {@link XmlParser#parseRange(Path, XmlIndex, int, Object)} without reading the file from the start:
+ * </p>
+ * <pre>
+ * final XmlIndex index = XmlIndex.build(archive, "/imdb/category/movie");
+ * index.write(sidecar);
+ * ...
+ * parser.parseRange(archive, XmlIndex.read(sidecar), 42, state);
+ * </pre>
+ * <p>
+ * The index is built with one sequential scan of the file by an {@link XmlScanner}, the content is not decoded.
+ * For every record it keeps the offset of its start tag, the offset just past its end tag and its context: the
+ * offsets of the start tags of its ancestors. Records sharing the same ancestors share the same context. The
+ * ancestor start tags are copied in front of the record when it is parsed, so the rules see the same location
+ * paths and namespace declarations as in a full parse.
+ * </p>
+ * <h3>Sidecar file</h3>
+ * <p>
+ * {@link #write(Path)} stores the index as big-endian primitives: a header (magic, version, record path,
+ * charset), the contexts (a count, then for each the number of ancestors and their start and end offsets) and the
+ * records as a flat <code>long[]</code> of <code>start, end, context</code> triplets.
+ * </p>
+ */
+public final class XmlIndex {
+    private static final int MAGIC = 0x53585049;   // "SXPI"
+    private static final int VERSION = 1;
+
+    private final String recordPath;
+    private final Charset charset;
+    private final long[][] contexts;
+    private final long[] records;
+
+    private XmlIndex(final String recordPath, final Charset charset, final long[][] contexts, final long[] records) {
+        this.recordPath = recordPath;
+        this.charset = charset;
+        this.contexts = contexts;
+        this.records = records;
+    }
+
+    /**
+     * Same as {@link #build(Path, Charset, String)} for a UTF-8 file.
+     */
+    public static XmlIndex build(final Path path, final String recordPath) {
+        return build(path, StandardCharsets.UTF_8, recordPath);
+    }
+
+    /**
+     * Scans a file and indexes the elements matching the path. Elements nested in a matching element are not
+     * indexed on their own.
+     *
+     * @param path       the file to index.
+     * @param charset    the ASCII-compatible encoding of the file, see {@link XmlScanner}.
+     * @param recordPath the location path of the records (e.g. "/imdb/category/movie").
+     * @return the index of the file.
+     */
+    public static XmlIndex build(final Path path, final Charset charset, final String recordPath) {
+        Objects.requireNonNull(path, "The Path cannot be null for XmlIndex.build");
+        Objects.requireNonNull(charset, "The Charset cannot be null for XmlIndex.build");
+        Rule.checkLocationPath(recordPath);
+
+        final List<long[]> contexts = new ArrayList<>();
+        final long[] ancestors = new long[2 * (Rule.depthOf(recordPath) - 1)];
+        boolean changed = true;
+
+        long[] records = new long[3 * 1024];
+        int size = 0;
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 64 * 1024)) {
+            final XmlScanner scanner = new XmlScanner(in, charset);
+            final Location location = new Location();
+            final Integer recordHash = recordPath.hashCode();
+
+            // offset where the current record began, -1 when not inside a record
+            long recordStart = -1;
+            int recordDepth = 0;
+
+            int event;
+            while ((event = scanner.next()) != XmlScanner.END_DOCUMENT) {
+                final int depth = scanner.getDepth();
+                if (event == XmlScanner.START_ELEMENT) {
+                    if (recordStart >= 0) {
+                        continue;
+                    }
+
+                    location.push(scanner.getLocalName(), scanner.getNamespaceURI());
+                    if (location.getCachedHashCode().equals(recordHash)) {
+                        recordStart = scanner.getTagStart();
+                        recordDepth = depth;
+                    } else if (2 * depth <= ancestors.length) {
+                        ancestors[2 * depth - 2] = scanner.getTagStart();
+                        ancestors[2 * depth - 1] = scanner.getTagEnd();
+                        changed = true;
+                    }
+                } else {
+                    if (recordStart >= 0 && depth + 1 != recordDepth) {
+                        continue;
+                    }
+
+                    if (recordStart >= 0) {
+                        if (changed) {
+                            contexts.add(Arrays.copyOf(ancestors, 2 * (recordDepth - 1)));
+                            changed = false;
+                        }
+                        if (size == records.length) {
+                            records = Arrays.copyOf(records, 2 * records.length);
+                        }
+                        records[size++] = recordStart;
+                        records[size++] = scanner.getTagEnd();
+                        records[size++] = contexts.size() - 1;
+                        recordStart = -1;
+                    }
+                    location.pop();
+                }
+            }
+
+            if (scanner.isTruncated()) {
+                throw new XmlParserException("the document ended before all of its elements were closed");
+            }
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+
+        return new XmlIndex(recordPath, charset, contexts.toArray(new long[contexts.size()][]),
+                Arrays.copyOf(records, size));
+    }
+
+    /**
+     * Reads an index written by {@link #write(Path)}.
+     *
+     * @param sidecar the index file.
+     * @return the index.
+     */
+    public static XmlIndex read(final Path sidecar) {
+        Objects.requireNonNull(sidecar, "The Path cannot be null for XmlIndex.read");
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC) {
+                throw new XmlParserException(sidecar + " is not an index file");
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new XmlParserException(sidecar + " has an unsupported version: " + version);
+            }
+
+            final String recordPath = in.readUTF();
+            final Charset charset = Charset.forName(in.readUTF());
+
+            final long[][] contexts = new long[in.readInt()][];
+            for (int i = 0; i < contexts.length; i++) {
+                contexts[i] = new long[in.readInt()];
+                for (int j = 0; j < contexts[i].length; j++) {
+                    contexts[i][j] = in.readLong();
+                }
+            }
+
+            final long[] records = new long[Math.toIntExact(3 * in.readLong())];
+            for (int i = 0; i < records.length; i++) {
+                records[i] = in.readLong();
+            }
+
+            return new XmlIndex(recordPath, charset, contexts, records);
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes this index to a sidecar file, replacing it if it exists.
+     *
+     * @param sidecar the index file.
+     */
+    public void write(final Path sidecar) {
+        Objects.requireNonNull(sidecar, "The Path cannot be null for XmlIndex.write");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(sidecar)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(recordPath);
+            out.writeUTF(charset.name());
+
+            out.writeInt(contexts.length);
+            for (long[] context : contexts) {
+                out.writeInt(context.length);
+                for (long offset : context) {
+                    out.writeLong(offset);
+                }
+            }
+
+            out.writeLong(size());
+            for (long value : records) {
+                out.writeLong(value);
+            }
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the location path of the indexed records.
+     */
+    public String getRecordPath() {
+        return recordPath;
+    }
+
+    /**
+     * @return the encoding of the indexed file.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return the number of indexed records.
+     */
+    public int size() {
+        return records.length / 3;
+    }
+
+    /**
+     * @param record the index of a record, in document order.
+     * @return the offset of the first byte of the record's start tag.
+     */
+    public long getStart(final int record) {
+        return records[3 * checkIndex(record)];
+    }
+
+    /**
+     * @param record the index of a record, in document order.
+     * @return the offset just past the record's end tag.
+     */
+    public long getEnd(final int record) {
+        return records[3 * checkIndex(record) + 1];
+    }
+
+    /**
+     * @param record the index of a record, in document order.
+     * @return the start and end offsets of the start tags of the record's ancestors, the root element first.
+     */
+    long[] getAncestors(final int record) {
+        return contexts[(int) records[3 * checkIndex(record) + 2]];
+    }
+
+    private int checkIndex(final int record) {
+        if (record < 0 || record >= size()) {
+            throw new IndexOutOfBoundsException("record " + record + " out of " + size());
+        }
+        return record;
+    }
+
+    /**
+     * Opens a byte range of a file, surrounded by the given ancestor start tags (copied from the same file) and
+     * their end tags, as a complete document.
+     *
+     * @param channel   the file.
+     * @param charset   the encoding of the file.
+     * @param ancestors the start and end offsets of the ancestor start tags, the root element first.
+     * @param offset    the first byte of the range.
+     * @param length    the number of bytes of the range.
+     * @return the document.
+     */
+    static InputStream open(final FileChannel channel, final Charset charset, final long[] ancestors,
+                            final long offset, final long length) throws IOException {
+        return open(channel, charset, ancestors, offset, length, ancestors);
+    }
+
+    /**
+     * Opens a byte range of a file that may close some of the elements open where it starts and open new ones,
+     * as a complete document.
+     *
+     * @param channel the file.
+     * @param charset the encoding of the file.
+     * @param before  the start and end offsets of the start tags of the elements open where the range starts.
+     * @param offset  the first byte of the range.
+     * @param length  the number of bytes of the range.
+     * @param after   the start and end offsets of the start tags of the elements open where the range ends.
+     * @return the document.
+     */
+    static InputStream open(final FileChannel channel, final Charset charset, final long[] before,
+                            final long offset, final long length, final long[] after) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > channel.size()) {
+            throw new IllegalArgumentException("range [" + offset + ", " + (offset + length) + ") is outside of "
+                    + "a file of " + channel.size() + " bytes");
+        }
+
+        final byte[][] starts = new byte[before.length / 2][];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = read(channel, before[2 * i], before[2 * i + 1]);
+        }
+
+        final StringBuilder ends = new StringBuilder();
+        for (int i = after.length / 2 - 1; i >= 0; i--) {
+            final byte[] start = after == before ? starts[i] : read(channel, after[2 * i], after[2 * i + 1]);
+            ends.append("</").append(qName(start, charset)).append('>');
+        }
+
+        return new RangeInputStream(channel, starts, offset, length, ends.toString().getBytes(charset));
+    }
+
+    /**
+     * @return the qualified name of a start tag.
+     */
+    private static String qName(final byte[] tag, final Charset charset) {
+        int end = 1;
+        while (end < tag.length && tag[end] != '>' && tag[end] != '/' && tag[end] > ' ') {
+            end++;
+        }
+        return new String(tag, 1, end - 1, charset);
+    }
+
+    static byte[] read(final FileChannel channel, final long start, final long end) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+            // keep reading
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public String toString() {
+        return "XmlIndex{" +
+                "recordPath='" + recordPath + '\'' +
+                ", charset=" + charset +
+                ", records=" + size() +
+                ", contexts=" + contexts.length +
+                '}';
+    }
+
+    /**
+     * Reads a prefix, a byte range of a file with positional reads (so the channel can be shared between threads)
+     * and a suffix.
+     */
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final byte[][] prefix;
+        private final byte[] suffix;
+        private final long end;
+
+        private int part;
+        private int offset;
+        private long position;
+
+        RangeInputStream(final FileChannel channel, final byte[][] prefix, final long start, final long length,
+                         final byte[] suffix) {
+            this.channel = channel;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.position = start;
+            this.end = start + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            while (part < prefix.length && offset == prefix[part].length) {
+                part++;
+                offset = 0;
+            }
+            if (part < prefix.length) {
+                return copy(prefix[part], b, off, len);
+            }
+
+            if (position < end) {
+                final ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, end - position));
+                final int n = channel.read(buffer, position);
+                if (n < 0) {
+                    throw new IOException("the file ended before the end of the range");
+                }
+                position += n;
+                return n;
+            }
+
+            if (offset < suffix.length) {
+                return copy(suffix, b, off, len);
+            }
+            return -1;
+        }
+
+        private int copy(final byte[] source, final byte[] b, final int off, final int len) {
+            final int n = Math.min(len, source.length - offset);
+            System.arraycopy(source, offset, b, off, n);
+            offset += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.github.codechapin.sxpj;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>
+ * Runs several independent rule sets, each one with its own state object, in a single pass over the same
+ * document. The document is read and tokenized only once no matter how many consumers are registered.
+ * </p>
+ * <p>
+ * The paths of every consumer are merged into one combined matcher, so each event costs a single lookup, which
+ * finds the consumers that have a rule for the current path together with their handlers for it.
+ * </p>
+ * <p>
+ * Subtree rules, positional rules and parsers with a {@link Sampler} cannot be multiplexed.
+ * </p>
+ * <h3>Stopping Parsing</h3>
+ * <p>
+ * Every consumer is backed by its own {@link XmlParser}, which is the instance handed to its handlers. Calling
+ * {@link XmlParser#stop()} from a handler stops only that consumer, the others keep receiving events. The
+ * document is abandoned as soon as every consumer has stopped.
+ * </p>
+ * <p>
+ * Like {@link XmlParser}, instances of this class are not thread-safe.
+ * </p>
+ */
+public class XmlMultiplexer {
+    private final XmlParserFactory factory;
+    private final ParseLimits limits;
+    private final List<Consumer<?>> consumers;
+    private final Location location;
+
+    private Map<Integer, Target<?>[]> elementTargets;
+    private Map<Integer, Target<?>[]> charactersTargets;
+
+    XmlMultiplexer(final XmlParserFactory factory) {
+        Objects.requireNonNull(factory, "The XmlParserFactory cannot be null");
+
+        this.factory = factory;
+        this.limits = factory.getLimits();
+        this.consumers = new ArrayList<>();
+        this.location = new Location();
+    }
+
+    /**
+     * Registers a new consumer made of the given rules and the state object their handlers will receive.
+     *
+     * @param state object that stores data constructed by the handlers.
+     * @param rules the rules of this consumer.
+     * @return this multiplexer, to allow chaining.
+     */
+    @SafeVarargs
+    public final <S> XmlMultiplexer add(final S state, final Rule<S>... rules) {
+        return add(factory.newParser(rules), state);
+    }
+
+    /**
+     * Registers an already built parser as a consumer. Only the rules of the parser are used, its
+     * <code>parse</code> methods are not called.
+     *
+     * @param parser the parser holding the rules of this consumer.
+     * @param state  object that stores data constructed by the handlers.
+     * @return this multiplexer, to allow chaining.
+     * @throws XmlParserException if the parser has a {@link Sampler}.
+     */
+    public <S> XmlMultiplexer add(final XmlParser<S> parser, final S state) {
+        Objects.requireNonNull(parser, "The XmlParser cannot be null");
+        checkSampler(parser);
+
+        consumers.add(new Consumer<>(parser, state));
+        elementTargets = null;
+        charactersTargets = null;
+        return this;
+    }
+
+    /**
+     * <p>
+     * Parse the XML out of the given input, dispatching every event to the consumers whose rules match it.
+     * </p>
+     * <p>
+     * This class will make no attempt at closing the given {@link Reader},
+     * the caller must take care to clean up that resource.
+     * </p>
+     *
+     * @param in the XML content to be read.
+     */
+    public void parse(final Reader in) {
+        Objects.requireNonNull(in, "The Reader cannot be null for XmlMultiplexer.parse");
+
+        try {
+            doParse(factory.createXMLStreamReader(in));
+        } catch (XMLStreamException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * <p>
+     * Parse the XML out of the given input, dispatching every event to the consumers whose rules match it.
+     * </p>
+     * <p>
+     * This class will make no attempt at closing the given {@link InputStream},
+     * the caller must take care to clean up that resource.
+     * </p>
+     *
+     * @param in the XML content to be read.
+     */
+    public void parse(final InputStream in) {
+        parse(in, null);
+    }
+
+    /**
+     * <p>
+     * Parse the XML out of the given input, dispatching every event to the consumers whose rules match it.
+     * </p>
+     * <p>
+     * This class will make no attempt at closing the given {@link InputStream},
+     * the caller must take care to clean up that resource.
+     * </p>
+     *
+     * @param in      the XML content to be read.
+     * @param charset the character encoding of the given XML. If not known pass null to let the underlying
+     *                {@link javax.xml.stream.XMLInputFactory} auto-detect the encoding.
+     */
+    public void parse(final InputStream in, final Charset charset) {
+        Objects.requireNonNull(in, "The InputStream cannot be null for XmlMultiplexer.parse");
+
+        final ReadAheadInputStream readAhead = factory.readAhead(in);
+        try {
+            doParse(factory.createXMLStreamReader((readAhead == null ? in : readAhead), charset));
+        } catch (XMLStreamException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        } finally {
+            if (readAhead != null) {
+                readAhead.stop();
+            }
+        }
+    }
+
+    private void doParse(final XMLStreamReader reader) throws XMLStreamException {
+        if (consumers.isEmpty()) {
+            throw new IllegalStateException("no consumers were added, parsing would do nothing.");
+        }
+
+        location.clear();
+        for (Consumer<?> consumer : consumers) {
+            consumer.begin();
+            if (consumer.changed) {
+                elementTargets = null;
+            }
+        }
+
+        if (elementTargets == null) {
+            combine();
+        }
+
+        int active = consumers.size();
+        while (active > 0) {
+            Target<?>[] targets;
+            switch (reader.next()) {
+                case XMLEvent.START_ELEMENT:
+                    limits.checkStartElement(reader, location.depth() + 1);
+                    location.push(reader.getLocalName(), reader.getNamespaceURI());
+                    targets = elementTargets.get(location.getCachedHashCode());
+                    if (targets != null) {
+                        for (Target<?> target : targets) {
+                            if (target.parser.isParsing()) {
+                                target.startElement(reader);
+                                active -= target.parser.isParsing() ? 0 : 1;
+                            }
+                        }
+                    }
+                    break;
+                case XMLEvent.CHARACTERS:
+                    limits.checkCharacters(reader);
+                    targets = charactersTargets.get(location.getCachedHashCode());
+                    if (targets != null) {
+                        for (Target<?> target : targets) {
+                            if (target.parser.isParsing()) {
+                                target.characters(reader);
+                                active -= target.parser.isParsing() ? 0 : 1;
+                            }
+                        }
+                    }
+                    break;
+                case XMLEvent.END_ELEMENT:
+                    targets = elementTargets.get(location.getCachedHashCode());
+                    if (targets != null) {
+                        for (Target<?> target : targets) {
+                            if (target.parser.isParsing()) {
+                                target.endElement();
+                                active -= target.parser.isParsing() ? 0 : 1;
+                            }
+                        }
+                    }
+                    location.pop();
+                    break;
+                case XMLEvent.END_DOCUMENT:
+                    for (Consumer<?> consumer : consumers) {
+                        consumer.parser.stop();
+                    }
+                    active = 0;
+                    break;
+            }
+        }
+    }
+
+    private static void checkSampler(final XmlParser<?> parser) {
+        if (parser.getSampler() != null) {
+            throw new XmlParserException("parsers with a Sampler cannot be multiplexed, parse them on their own");
+        }
+    }
+
+    /**
+     * Builds the combined matcher: for every path any consumer is interested in, the array of the consumers
+     * that must see its events, each one with its handlers for the path.
+     */
+    private void combine() {
+        final Map<Integer, List<Target<?>>> elements = new HashMap<>();
+        final Map<Integer, List<Target<?>>> characters = new HashMap<>();
+
+        for (Consumer<?> consumer : consumers) {
+            addTargets(consumer, elements, characters);
+        }
+
+        elementTargets = toArrays(elements);
+        charactersTargets = toArrays(characters);
+    }
+
+    private static <S> void addTargets(final Consumer<S> consumer, final Map<Integer, List<Target<?>>> elements,
+                                       final Map<Integer, List<Target<?>>> characters) {
+        final RuleTable<S> table = consumer.table;
+        if (table.hasSubtreeRules()) {
+                throw new XmlParserException("subtree rules cannot be multiplexed, parse them with their own XmlParser");
+        }
+        if (table.hasPositionalRules()) {
+            throw new XmlParserException("positional rules cannot be multiplexed, parse them with their own XmlParser");
+        }
+        for (Integer hash : table.paths()) {
+            if (table.hasElementRules(hash) || table.hasCharactersRules(hash)) {
+                final Target<S> target = new Target<>(consumer, table.handlers(hash));
+                if (table.hasElementRules(hash)) {
+                    elements.computeIfAbsent(hash, k -> new ArrayList<>(3)).add(target);
+                }
+                if (table.hasCharactersRules(hash)) {
+                    characters.computeIfAbsent(hash, k -> new ArrayList<>(3)).add(target);
+                }
+            }
+        }
+    }
+
+    private static Map<Integer, Target<?>[]> toArrays(final Map<Integer, List<Target<?>>> lists) {
+        final Map<Integer, Target<?>[]> arrays = new HashMap<>(lists.size() > 32 ? lists.size() * 2 : 64);
+        for (Map.Entry<Integer, List<Target<?>>> entry : lists.entrySet()) {
+            arrays.put(entry.getKey(), entry.getValue().toArray(new Target<?>[entry.getValue().size()]));
+        }
+        return arrays;
+    }
+
+    private static final class Consumer<S> {
+        private final XmlParser<S> parser;
+        private final S state;
+
+        private RuleTable<S> table;
+        private boolean changed;
+
+        private Consumer(final XmlParser<S> parser, final S state) {
+            this.parser = parser;
+            this.state = state;
+        }
+
+        /**
+         * Begins a new document on the parser and remembers whether it picked up a different rule table, in
+         * which case the combined matcher must be rebuilt.
+         */
+        private void begin() {
+            checkSampler(parser);
+            parser.begin();
+            changed = table != parser.table();
+            table = parser.table();
+        }
+
+    }
+
+    /**
+     * A consumer and its handlers for one path of the combined matcher.
+     */
+    private static final class Target<S> {
+        private final XmlParser<S> parser;
+        private final S state;
+        private final PathHandlers<S> handlers;
+
+        private Target(final Consumer<S> consumer, final PathHandlers<S> handlers) {
+            this.parser = consumer.parser;
+            this.state = consumer.state;
+            this.handlers = handlers;
+        }
+
+        private void startElement(final XMLStreamReader reader) {
+            parser.doStartElement(handlers, reader, state);
+        }
+
+        private void characters(final XMLStreamReader reader) {
+            parser.doCharacters(handlers, reader, state);
+        }
+
+        private void endElement() {
+            parser.doEndElement(handlers, state);
+        }
+    }
+}
@@ -0,0 +1,860 @@
+package com.github.codechapin.sxpj;
+
+import com.github.codechapin.sxpj.handler.AttributeHandler;
+import com.github.codechapin.sxpj.handler.Element;
+import com.github.codechapin.sxpj.handler.SubtreeHandler;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ */
+public class XmlParser<S> {
+    private final RuleRegistry<S> registry;
+
+    private final Location location;
+    private final XmlParserFactory factory;
+    private final ParseLimits limits;
+
+    private RuleTable<S> table;
+    private volatile boolean continueParsing;
+    private Sampler sampler;
+
+    // subtrees being captured, innermost last, and the ones to reuse
+    private final List<Subtree> captures = new ArrayList<>();
+    private final Deque<Subtree> freeSubtrees = new ArrayDeque<>();
+
+    // the number of elements met so far on each step with a positional predicate, see RuleTable#positionSlot
+    private int[] positionCounters = new int[0];
+
+    // see parseTail: the parse stops once that many elements on that path have ended
+    private Integer lastRecordHash;
+    private int recordsLeft;
+
+    XmlParser(final XmlParserFactory factory, final Rule<S>... rules) {
+        Objects.requireNonNull(factory, "The XmlParserFactory cannot be null");
+        if (rules == null || rules.length == 0) {
+            throw new IllegalArgumentException(
+                    "rules cannot be null or empty, you must provide at least 1 rule to execute otherwise parsing will do nothing.");
+        }
+
+        registry = null;
+        table = new RuleTable<>(rules);
+
+        location = new Location();
+
+        this.factory = factory;
+        limits = factory.getLimits();
+    }
+
+    XmlParser(final XmlParserFactory factory, final RuleRegistry<S> registry) {
+        Objects.requireNonNull(factory, "The XmlParserFactory cannot be null");
+        Objects.requireNonNull(registry, "The RuleRegistry cannot be null");
+
+        this.registry = registry;
+        table = registry.table();
+
+        location = new Location();
+
+        this.factory = factory;
+        limits = factory.getLimits();
+    }
+
+    /**
+     * <p>
+     * Parse the XML out of the given input (producing content matching the
+     * given charset) matching the handlers provided with the
+     * different register methods.
+     * </p>
+     * <p>
+     * This class will make no attempt at closing the given {@link Reader},
+     * the caller must take care to clean up that resource.
+     * </p>
+     * <h3>Stopping Parsing</h3>
+     * <p>
+     * Parsing can be safely stopped by calling {@link #stop()}. This allows
+     * handlers control over stopping parsing, for example,
+     * if an arbitrary threshold is hit. A followup call to any of the
+     * <code>parse</code> methods will reset the stopped state.
+     *</p>
+     * @param in    the XML content to be read.
+     * @param state object that stores data constructed by the handlers.
+     */
+    public void parse(final Reader in, final S state) {
+        parse(in, state, CancellationToken.NONE);
+    }
+
+    /**
+     * Same as {@link #parse(Reader, Object)}, aborted with a {@link ParseCancelledException} once the given token
+     * is cancelled or its deadline has passed.
+     *
+     * @param in    the XML content to be read.
+     * @param state object that stores data constructed by the handlers.
+     * @param token checked every {@value CancellationToken#CHECK_INTERVAL} events.
+     */
+    public void parse(final Reader in, final S state, final CancellationToken token) {
+        Objects.requireNonNull(in, "The Reader cannot be null for XmlParser.parse");
+        Objects.requireNonNull(token, "The CancellationToken cannot be null for XmlParser.parse");
+
+        try {
+            doParse(factory.createXMLStreamReader(in), state, token);
+        } catch (XMLStreamException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Same as {@link #parse(Reader, Object)}, aborted with a {@link ParseCancelledException} once the deadline
+     * has passed.
+     *
+     * @param in       the XML content to be read.
+     * @param state    object that stores data constructed by the handlers.
+     * @param deadline how long the parse may run, from now.
+     */
+    public void parse(final Reader in, final S state, final Duration deadline) {
+        parse(in, state, CancellationToken.withTimeout(deadline));
+    }
+
+    /**
+     * <p>
+     * Parse the XML out of the given input (producing content matching the
+     * given charset) matching the handlers provided with the
+     * different register methods.
+     * </p>
+     * <p>
+     * This class will make no attempt at closing the given {@link InputStream},
+     * the caller must take care to clean up that resource.
+     * </p>
+     * <h3>Stopping Parsing</h3>
+     * <p>
+     * Parsing can be safely stopped by calling {@link #stop()}. This allows
+     * handlers control over stopping parsing, for example,
+     * if an arbitrary threshold is hit. A followup call to any of the
+     * <code>parse</code> methods will reset the stopped state.
+     * </p>
+     *
+     * @param in    the XML content to be read.
+     * @param state object that stores data constructed by the handlers.
+     */
+    public void parse(final InputStream in, final S state) {
+        parse(in, null, state);
+    }
+
+    /**
+     * <p>
+     * Parse the XML out of the given input (producing content matching the
+     * given charset) matching the handlers provided with the
+     * different register methods.
+     * </p>
+     * <p>
+     * This class will make no attempt at closing the given {@link InputStream},
+     * the caller must take care to clean up that resource.
+     * </p>
+     * <h3>Stopping Parsing</h3>
+     * <p>
+     * Parsing can be safely stopped by calling {@link #stop()}. This allows
+     * handlers control over stopping parsing, for example,
+     * if an arbitrary threshold is hit. A followup call to any of the
+     * <code>parse</code> methods will reset the stopped state.
+     * </p>
+     *
+     * @param in      the XML content to be read.
+     * @param charset the character encoding of the given XML. If not known pass null or use
+     *                {@link XmlParser#parse(InputStream, Object)} to let the underlying
+     *                {@link XMLInputFactory} auto-detect the encoding.
+     * @param state   object that stores data constructed by the handlers.
+     */
+    public void parse(final InputStream in, final Charset charset, final S state) {
+        parse(in, charset, state, CancellationToken.NONE);
+    }
+
+    /**
+     * Same as {@link #parse(InputStream, Charset, Object)}, aborted with a {@link ParseCancelledException} once
+     * the given token is cancelled or its deadline has passed.
+     *
+     * @param in      the XML content to be read.
+     * @param charset the character encoding of the given XML, or null to auto-detect it.
+     * @param state   object that stores data constructed by the handlers.
+     * @param token   checked every {@value CancellationToken#CHECK_INTERVAL} events.
+     */
+    public void parse(final InputStream in, final Charset charset, final S state, final CancellationToken token) {
+        Objects.requireNonNull(in, "The InputStream cannot be null for XmlParser.parse");
+        Objects.requireNonNull(token, "The CancellationToken cannot be null for XmlParser.parse");
+
+        final ReadAheadInputStream readAhead = factory.readAhead(in);
+        try {
+            doParse(factory.createXMLStreamReader((readAhead == null ? in : readAhead), charset), state, token);
+        } catch (XMLStreamException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        } finally {
+            if (readAhead != null) {
+                readAhead.stop();
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #parse(InputStream, Charset, Object)}, aborted with a {@link ParseCancelledException} once
+     * the deadline has passed.
+     *
+     * @param in       the XML content to be read.
+     * @param charset  the character encoding of the given XML, or null to auto-detect it.
+     * @param state    object that stores data constructed by the handlers.
+     * @param deadline how long the parse may run, from now.
+     */
+    public void parse(final InputStream in, final Charset charset, final S state, final Duration deadline) {
+        parse(in, charset, state, CancellationToken.withTimeout(deadline));
+    }
+
+    /**
+     * <p>
+     * Parse the XML out of the given file matching the handlers provided with the
+     * different register methods, letting the underlying {@link XMLInputFactory}
+     * auto-detect the encoding.
+     * </p>
+     * <p>
+     * Files compressed with gzip (<code>.xml.gz</code>) or zlib are detected from
+     * their first bytes. They are decompressed on a dedicated thread into a small
+     * ring of reusable buffers while this thread parses, so inflating and parsing
+     * overlap instead of running one after the other.
+     * </p>
+     *
+     * @param path  the XML file to be read, compressed or not.
+     * @param state object that stores data constructed by the handlers.
+     */
+    public void parse(final Path path, final S state) {
+        parse(path, null, state);
+    }
+
+    /**
+     * Same as {@link #parse(Path, Object)} with the character encoding of the
+     * uncompressed XML.
+     *
+     * @param path    the XML file to be read, compressed or not.
+     * @param charset the character encoding of the given XML, or null to auto-detect it.
+     * @param state   object that stores data constructed by the handlers.
+     */
+    public void parse(final Path path, final Charset charset, final S state) {
+        parse(path, charset, state, CancellationToken.NONE);
+    }
+
+    /**
+     * Same as {@link #parse(Path, Charset, Object)}, aborted with a {@link ParseCancelledException} once the
+     * given token is cancelled or its deadline has passed.
+     *
+     * @param path    the XML file to be read, compressed or not.
+     * @param charset the character encoding of the given XML, or null to auto-detect it.
+     * @param state   object that stores data constructed by the handlers.
+     * @param token   checked every {@value CancellationToken#CHECK_INTERVAL} events.
+     */
+    public void parse(final Path path, final Charset charset, final S state, final CancellationToken token) {
+        Objects.requireNonNull(token, "The CancellationToken cannot be null for XmlParser.parse");
+
+        try (InputStream in = factory.newInputStream(path)) {
+            doParse(factory.createXMLStreamReader(in, charset), state, token);
+        } catch (XMLStreamException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Same as {@link #parse(Path, Charset, Object)}, aborted with a {@link ParseCancelledException} once the
+     * deadline has passed.
+     *
+     * @param path     the XML file to be read, compressed or not.
+     * @param charset  the character encoding of the given XML, or null to auto-detect it.
+     * @param state    object that stores data constructed by the handlers.
+     * @param deadline how long the parse may run, from now.
+     */
+    public void parse(final Path path, final Charset charset, final S state, final Duration deadline) {
+        parse(path, charset, state, CancellationToken.withTimeout(deadline));
+    }
+
+    /**
+     * Same as {@link #parseAsync(Path, Charset, Object, Executor)}, letting the underlying {@link XMLInputFactory}
+     * auto-detect the encoding and parsing on the {@link ForkJoinPool#commonPool() common pool}.
+     */
+    public CompletableFuture<S> parseAsync(final Path path, final S state) {
+        return parseAsync(path, null, state, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * <p>
+     * Parses a file without blocking the calling thread. The file is read with an
+     * {@link java.nio.channels.AsynchronousFileChannel} into a ring of reusable buffers, each read issued when the
+     * previous one completes, and the parse is submitted to the executor once the first bytes are read. Files
+     * compressed with gzip or zlib are decompressed by the parsing task.
+     * </p>
+     * <p>
+     * StAX pulls its input, so the parsing task still waits when it gets ahead of the reads; the ring keeps up to
+     * {@link XmlParserFactory#withReadAhead(int, int) depth} buffers read ahead to make that rare. Cancelling the
+     * returned future aborts the parse at its next {@link CancellationToken} check and closes the file.
+     * </p>
+     * <p>
+     * This parser must not be used for another parse until the returned future is complete; use one parser per
+     * file to parse several files at once.
+     * </p>
+     *
+     * @param path     the XML file to be read, compressed or not.
+     * @param charset  the character encoding of the given XML, or null to auto-detect it.
+     * @param state    object that stores data constructed by the handlers.
+     * @param executor runs the parse.
+     * @return completes with the given state once the file is parsed, or with the failure of the parse.
+     */
+    public CompletableFuture<S> parseAsync(final Path path, final Charset charset, final S state,
+                                           final Executor executor) {
+        Objects.requireNonNull(path, "The Path cannot be null for XmlParser.parseAsync");
+        Objects.requireNonNull(executor, "The Executor cannot be null for XmlParser.parseAsync");
+
+        final CompletableFuture<S> result = new CompletableFuture<>();
+        final AsyncFileInputStream file;
+        try {
+            file = factory.openAsync(path);
+        } catch (IOException e) {
+            result.completeExceptionally(new XmlParserException(e.getMessage(), e));
+            return result;
+        }
+
+        final CancellationToken token = new CancellationToken();
+        result.whenComplete((parsed, failure) -> {
+            if (result.isCancelled()) {
+                token.cancel();
+                closeQuietly(file);
+            }
+        });
+
+        file.ready().thenRunAsync(() -> {
+            if (result.isDone()) {
+                closeQuietly(file);
+                return;
+            }
+
+            try (InputStream in = factory.newInputStream(file)) {
+                doParse(factory.createXMLStreamReader(in, charset), state, token);
+                result.complete(state);
+            } catch (XMLStreamException | IOException e) {
+                result.completeExceptionally(new XmlParserException(e.getMessage(), e));
+            } catch (RuntimeException | Error e) {
+                result.completeExceptionally(e);
+            }
+        }, executor).exceptionally(e -> {
+            // the executor rejected the task
+            closeQuietly(file);
+            result.completeExceptionally(e);
+            return null;
+        });
+        return result;
+    }
+
+    private static void closeQuietly(final InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // nothing left to read from it
+        }
+    }
+
+    /**
+     * Same as {@link #parseRange(Path, Charset, long, long, Object)} for a UTF-8 file.
+     */
+    public void parseRange(final Path path, final long offset, final long length, final S state) {
+        parseRange(path, StandardCharsets.UTF_8, offset, length, state);
+    }
+
+    /**
+     * <p>
+     * Parse a byte range of a file as if it was a whole document: the range must
+     * hold one element, usually found by an {@link XmlIndex}. Location paths start
+     * at that element and any namespace prefix it uses must be declared inside the
+     * range, see {@link #parseRange(Path, XmlIndex, int, Object)} to parse a record
+     * with its ancestors instead.
+     * </p>
+     *
+     * @param path    the XML file to be read.
+     * @param charset the character encoding of the file.
+     * @param offset  the offset of the first byte of the range.
+     * @param length  the number of bytes of the range.
+     * @param state   object that stores data constructed by the handlers.
+     */
+    public void parseRange(final Path path, final Charset charset, final long offset, final long length,
+                           final S state) {
+        parseRange(path, charset, new long[0], offset, length, state);
+    }
+
+    /**
+     * <p>
+     * Parse one record of an indexed file. The start tags of the record's
+     * ancestors are copied from the file in front of the record, so the handlers
+     * see the same location paths, namespace declarations and ancestor attributes
+     * as when parsing the whole file, while only the record itself is read.
+     * </p>
+     * <p>
+     * The file is opened for each call, so records can be parsed in parallel by
+     * parsers on different threads.
+     * </p>
+     *
+     * @param path   the indexed XML file.
+     * @param index  the index of the file.
+     * @param record the index of the record, in document order.
+     * @param state  object that stores data constructed by the handlers.
+     */
+    public void parseRange(final Path path, final XmlIndex index, final int record, final S state) {
+        Objects.requireNonNull(index, "The XmlIndex cannot be null for XmlParser.parseRange");
+
+        final long start = index.getStart(record);
+        parseRange(path, index.getCharset(), index.getAncestors(record), start, index.getEnd(record) - start,
+                state);
+    }
+
+    void parseRange(final Path path, final Charset charset, final long[] ancestors, final long offset,
+                    final long length, final S state) {
+        parseRange(path, charset, ancestors, offset, length, ancestors, state);
+    }
+
+    /**
+     * Parses a byte range, see {@link XmlIndex#open(FileChannel, Charset, long[], long, long, long[])}.
+     */
+    void parseRange(final Path path, final Charset charset, final long[] before, final long offset,
+                    final long length, final long[] after, final S state) {
+        Objects.requireNonNull(path, "The Path cannot be null for XmlParser.parseRange");
+        Objects.requireNonNull(charset, "The Charset cannot be null for XmlParser.parseRange");
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            doParse(factory.createXMLStreamReader(XmlIndex.open(channel, charset, before, offset, length, after),
+                    charset), state, CancellationToken.NONE);
+        } catch (XMLStreamException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses the records appended to a file followed by an {@link XmlTailer}. Like
+     * {@link #parseRange(Path, Charset, long[], long, long, long[], Object)}, the start tags of the elements open
+     * where the range starts are replayed in front of it, but they only set the location: no rule is run for them.
+     * The parse stops at the end of the last record of the range, so the end tags closing the elements open there
+     * are not dispatched either.
+     *
+     * @param recordHash the hash code of the location path of the records.
+     * @param records    the number of records ending in the range, at least 1.
+     */
+    void parseTail(final Path path, final Charset charset, final long[] before, final long offset,
+                   final long length, final long[] after, final Integer recordHash, final int records,
+                   final S state) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final XMLStreamReader reader = factory.createXMLStreamReader(
+                    XmlIndex.open(channel, charset, before, offset, length, after), charset);
+
+            begin();
+            for (int i = 0; i < before.length / 2; i++) {
+                reader.nextTag();
+                limits.checkStartElement(reader, location.depth() + 1);
+                location.push(reader.getLocalName(), reader.getNamespaceURI());
+                if (table.hasPositionalRules()) {
+                    enterPosition(location.getCachedHashCode());
+                }
+            }
+
+            lastRecordHash = recordHash;
+            recordsLeft = records;
+            try {
+                dispatch(reader, state, CancellationToken.NONE);
+            } finally {
+                lastRecordHash = null;
+            }
+        } catch (XMLStreamException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Samples the records of the following parses: the records the sampler does not select are skipped without
+     * any rule being looked up, and a parse stops once the sampler cannot select any further record.
+     *
+     * @param sampler selects the records to dispatch, <code>null</code> to dispatch every record again.
+     * @return this parser.
+     */
+    public XmlParser<S> sampler(final Sampler sampler) {
+        this.sampler = sampler;
+        return this;
+    }
+
+    /**
+     * @return the sampler of this parser, <code>null</code> if it dispatches every record.
+     */
+    public Sampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * @return the 1-based index of the current element among the element children of its parent, whatever their
+     * name: 3 for the third child. In a CHARACTERS handler, the current element is the one holding the text.
+     * @throws IllegalStateException outside of the handlers run by the parse methods of this parser, in particular
+     *                               in the handlers run by an {@link XmlMultiplexer}, which does not count the
+     *                               elements for its consumers.
+     */
+    public int getChildIndex() {
+        checkInsideElement();
+        return location.ordinal(location.depth());
+    }
+
+    /**
+     * @return the 1-based position of the current element among the children of its parent with the same name,
+     * the position tested by the predicates of positional rules such as <code>/rss/channel/item[position()&lt;=10]</code>.
+     * Only counted for the elements on a step with a predicate, 0 for the others.
+     * @throws IllegalStateException outside of the handlers run by the parse methods of this parser, like
+     *                               {@link #getChildIndex()}.
+     */
+    public int getPosition() {
+        checkInsideElement();
+        return location.position(location.depth());
+    }
+
+    private void checkInsideElement() {
+        if (location.depth() == 0) {
+            throw new IllegalStateException("the current element is only known to the handlers run by the parse "
+                    + "methods of this parser, not to the handlers run by an XmlMultiplexer");
+        }
+    }
+
+    /**
+     * Stops the current parse after the event being handled. Meant to be called by handlers; it may be called
+     * from another thread, but a call made before the parse has started is then lost. Use a
+     * {@link CancellationToken} to abort a parse from another thread reliably.
+     */
+    public void stop() {
+        continueParsing = false;
+    }
+
+    private void doParse(final XMLStreamReader reader, final S state, final CancellationToken token)
+            throws XMLStreamException {
+        begin();
+        dispatch(reader, state, token);
+    }
+
+    /**
+     * Runs the rules over the events of the reader, from its current event up to the end of the document or until
+     * the parse is stopped.
+     */
+    private void dispatch(final XMLStreamReader reader, final S state, final CancellationToken token)
+            throws XMLStreamException {
+        final boolean checked = token != CancellationToken.NONE;
+        if (checked) {
+            token.check();
+        }
+
+        int events = 0;
+        while (continueParsing) {
+            if (checked && ++events == CancellationToken.CHECK_INTERVAL) {
+                events = 0;
+                token.check();
+            }
+
+            switch (reader.next()) {
+                case XMLEvent.START_ELEMENT:
+                    limits.checkStartElement(reader, location.depth() + 1);
+                    location.push(reader.getLocalName(), reader.getNamespaceURI());
+                    if (sampler != null && sampler.matches(location.getCachedHashCode()) && !sampler.select()) {
+                        skipElement(reader, token);
+                        location.pop();
+                        if (sampler.isDone()) {
+                            continueParsing = false;
+                        }
+                        break;
+                    }
+                    if (table.hasPositionalRules() && !enterPosition(location.getCachedHashCode())) {
+                        // past the window of every positional rule on this step
+                        skipElement(reader, token);
+                        location.pop();
+                        break;
+                    }
+                    doStartElement(location.getCachedHashCode(), reader, state);
+                    break;
+                case XMLEvent.CHARACTERS:
+                    limits.checkCharacters(reader);
+                    doCharacters(location.getCachedHashCode(), reader, state);
+                    break;
+                case XMLEvent.END_ELEMENT:
+                    doEndElement(location.getCachedHashCode(), state);
+                    if (sampler != null && sampler.matches(location.getCachedHashCode()) && sampler.isDone()) {
+                        continueParsing = false;
+                    }
+                    if (lastRecordHash != null && lastRecordHash.equals(location.getCachedHashCode())
+                            && --recordsLeft == 0) {
+                        continueParsing = false;
+                    }
+                    location.pop();
+                    break;
+                case XMLEvent.END_DOCUMENT:
+                    continueParsing = false;
+                    break;
+            }
+        }
+    }
+
+
+    /**
+     * Numbers the element that starts if its step has a positional predicate, and restarts the numbering of its
+     * children.
+     *
+     * @return <code>false</code> if no rule can match the element or its descendants, it can then be skipped.
+     */
+    private boolean enterPosition(final Integer hash) {
+        final int slot = table.positionSlot(hash);
+        if (slot >= 0) {
+            if (positionCounters[slot] < Integer.MAX_VALUE) {
+                positionCounters[slot]++;
+            }
+            location.setPosition(positionCounters[slot]);
+
+            // an ancestor being captured must see every element
+            if (positionCounters[slot] > table.positionWindow(slot) && captures.isEmpty()) {
+                return false;
+            }
+        }
+
+        final int[] children = table.positionResets(hash);
+        if (children != null) {
+            for (int child : children) {
+                positionCounters[child] = 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads up to the end of the element the reader is on, without updating the location or dispatching anything.
+     * The limits and the cancellation token are still checked.
+     */
+    private void skipElement(final XMLStreamReader reader, final CancellationToken token) throws XMLStreamException {
+        final boolean checked = token != CancellationToken.NONE;
+        final int base = location.depth();
+
+        int depth = 1;
+        int events = 0;
+        while (depth > 0) {
+            if (checked && ++events == CancellationToken.CHECK_INTERVAL) {
+                events = 0;
+                token.check();
+            }
+
+            switch (reader.next()) {
+                case XMLEvent.START_ELEMENT:
+                    limits.checkStartElement(reader, base + depth);
+                    depth++;
+                    break;
+                case XMLEvent.CHARACTERS:
+                    limits.checkCharacters(reader);
+                    break;
+                case XMLEvent.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLEvent.END_DOCUMENT:
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Resets the stopped state and the location before a new document is processed and, when the rules come from
+     * a {@link RuleRegistry}, picks up its latest table. The table is then used until the end of that document
+     * even if the registry is changed in the meantime.
+     */
+    void begin() {
+        location.clear();
+        if (registry != null) {
+            table = registry.table();
+        }
+        continueParsing = true;
+        if (sampler != null) {
+            sampler.reset();
+        }
+
+        if (positionCounters.length < table.positionSlots()) {
+            positionCounters = new int[table.positionSlots()];
+        }
+        Arrays.fill(positionCounters, 0);
+
+        // a stopped or failed parse may have left subtrees open
+        while (!captures.isEmpty()) {
+            freeSubtrees.push(captures.remove(captures.size() - 1));
+        }
+    }
+
+    /**
+     * @return <code>false</code> once {@link #stop()} has been called or the end of the document was reached.
+     */
+    boolean isParsing() {
+        return continueParsing;
+    }
+
+    /**
+     * @return the rule table used by the current (or last) parse.
+     */
+    RuleTable<S> table() {
+        return table;
+    }
+
+    private void doStartElement(final Integer hash, final XMLStreamReader reader, final S state) {
+        doStartElement(table.handlers(hash), reader, state);
+    }
+
+    /**
+     * @param handlers the handlers of the current path, <code>null</code> if it has none.
+     */
+    void doStartElement(final PathHandlers<S> handlers, final XMLStreamReader reader, final S state) {
+        if (!captures.isEmpty()) {
+            for (int i = 0; i < captures.size(); i++) {
+                captures.get(i).startElement(reader);
+            }
+        }
+
+        if (handlers == null) {
+            return;
+        }
+
+        if (handlers.capturesSubtree(location)) {
+            final Subtree subtree = freeSubtrees.isEmpty() ? new Subtree() : freeSubtrees.pop();
+            subtree.begin(reader);
+            captures.add(subtree);
+        }
+
+        startElement(handlers, reader, state);
+        if (handlers.positional != null) {
+            for (PathHandlers<S> positional : handlers.positional) {
+                if (positional.matches(location)) {
+                    startElement(positional, reader, state);
+                }
+            }
+        }
+    }
+
+    private void startElement(final PathHandlers<S> handlers, final XMLStreamReader reader, final S state) {
+        if (handlers.element != null) {
+            handlers.element.handle(Element.START, state, this);
+        }
+
+        final AttributeHandler<S>[] attributes = handlers.attributes;
+        if (attributes != null) {
+            for (int i = 0; i < attributes.length; i++) {
+                // the names were split into namespace and local name when the rules were compiled
+                final String localName = handlers.attributeLocalNames[i];
+                attributes[i].handle(localName,
+                        reader.getAttributeValue(handlers.attributeNamespaces[i], localName),
+                        state,
+                        this);
+            }
+        }
+    }
+
+    private void doCharacters(final Integer hash, final XMLStreamReader reader, final S state) {
+        doCharacters(table.handlers(hash), reader, state);
+    }
+
+    /**
+     * @param handlers the handlers of the current path, <code>null</code> if it has none.
+     */
+    void doCharacters(final PathHandlers<S> handlers, final XMLStreamReader reader, final S state) {
+        if (!captures.isEmpty()) {
+            for (int i = 0; i < captures.size(); i++) {
+                captures.get(i).characters(reader);
+            }
+        }
+
+        // If there are no rules for the current path, then we are done.
+        if (handlers == null) {
+            return;
+        }
+
+        String chars = null;
+        if (handlers.characters != null) {
+            chars = reader.getText().trim();
+            handlers.characters.handle(chars, state, this);
+        }
+        if (handlers.positional != null) {
+            for (PathHandlers<S> positional : handlers.positional) {
+                if (positional.characters != null && positional.matches(location)) {
+                    if (chars == null) {
+                        chars = reader.getText().trim();
+                    }
+                    positional.characters.handle(chars, state, this);
+                }
+            }
+        }
+    }
+
+    private void doEndElement(final Integer hash, final S state) {
+        doEndElement(table.handlers(hash), state);
+    }
+
+    /**
+     * @param handlers the handlers of the current path, <code>null</code> if it has none.
+     */
+    void doEndElement(final PathHandlers<S> handlers, final S state) {
+        if (!captures.isEmpty()) {
+            // only the innermost subtree can be complete, its element is the one being closed
+            boolean complete = false;
+            for (int i = 0; i < captures.size(); i++) {
+                complete = captures.get(i).endElement();
+            }
+            if (complete) {
+                final Subtree subtree = captures.remove(captures.size() - 1);
+                try {
+                    endSubtree(handlers, subtree, state);
+                    if (handlers.positional != null) {
+                        for (PathHandlers<S> positional : handlers.positional) {
+                            if (positional.matches(location)) {
+                                endSubtree(positional, subtree, state);
+                            }
+                        }
+                    }
+                } finally {
+                    freeSubtrees.push(subtree);
+                }
+            }
+        }
+
+        if (handlers == null) {
+            return;
+        }
+        if (handlers.element != null) {
+            handlers.element.handle(Element.END, state, this);
+        }
+        if (handlers.positional != null) {
+            for (PathHandlers<S> positional : handlers.positional) {
+                if (positional.element != null && positional.matches(location)) {
+                    positional.element.handle(Element.END, state, this);
+                }
+            }
+        }
+    }
+
+    private void endSubtree(final PathHandlers<S> handlers, final Subtree subtree, final S state) {
+        if (handlers.subtrees != null) {
+            for (SubtreeHandler<S> handler : handlers.subtrees) {
+                handler.handle(subtree, state, this);
+            }
+        }
+    }
+}
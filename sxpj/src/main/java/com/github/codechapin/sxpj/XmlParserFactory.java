@@ -0,0 +1,326 @@
+package com.github.codechapin.sxpj;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * It is recommended to shared an instance of this class between multiple threads.
+ * The underlying {@link XMLInputFactory} is expensive to create so it is better to share it.
+ * <p/>
+ * The parsers created by a factory enforce its {@link ParseLimits}, {@link ParseLimits#DEFAULT} unless
+ * configured otherwise.
+ * <p/>
+ * For slow or high-latency inputs (network file systems, pipes) use {@link #withReadAhead(int, int)} to read the
+ * input on a background thread while the parser works.
+ */
+public class XmlParserFactory {
+    private final XMLInputFactory factory;
+    private final ParseLimits limits;
+    private final int readAheadBufferSize;
+    private final int readAheadDepth;
+    private final ReadAheadStats readAheadStats;
+
+    /**
+     * Uses a standard configured XMLInputFactory instance. Use other constructor if you
+     * need to configure a XMLInputFactory.
+     */
+    public XmlParserFactory() {
+        this(XMLInputFactory.newFactory());
+    }
+
+    /**
+     * Use this method to passed a custom configured XMLInputFactory
+     *
+     * @param factory the configured XMLInputFactory to use for this instance.
+     */
+    public XmlParserFactory(final XMLInputFactory factory) {
+        this(factory, ParseLimits.DEFAULT);
+    }
+
+    /**
+     * Use this method to passed a custom configured XMLInputFactory and limits. The DTD and external entity
+     * support of the XMLInputFactory are overridden by the limits.
+     *
+     * @param factory the configured XMLInputFactory to use for this instance.
+     * @param limits  the limits enforced by the parsers of this instance.
+     */
+    public XmlParserFactory(final XMLInputFactory factory, final ParseLimits limits) {
+        Objects.requireNonNull(factory, "The XMLInputFactory cannot be null.");
+        Objects.requireNonNull(limits, "The ParseLimits cannot be null.");
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);  // decode entities into one string
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, limits.isDtdSupported());
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, limits.isExternalEntitiesSupported());
+        this.factory = factory;
+        this.limits = limits;
+        this.readAheadBufferSize = 0;
+        this.readAheadDepth = 0;
+        this.readAheadStats = new ReadAheadStats();
+    }
+
+    private XmlParserFactory(final XmlParserFactory parent, final int readAheadBufferSize, final int readAheadDepth) {
+        this.factory = parent.factory;
+        this.limits = parent.limits;
+        this.readAheadBufferSize = readAheadBufferSize;
+        this.readAheadDepth = readAheadDepth;
+        this.readAheadStats = new ReadAheadStats();
+    }
+
+    /**
+     * Same as {@link #withReadAhead(int, int)} with four buffers of 64 KiB.
+     */
+    public XmlParserFactory withReadAhead() {
+        return withReadAhead(ReadAheadInputStream.DEFAULT_BUFFER_SIZE, ReadAheadInputStream.DEFAULT_DEPTH);
+    }
+
+    /**
+     * <p>
+     * Creates a factory sharing the XMLInputFactory and limits of this one, whose parsers read their
+     * {@link InputStream}s and files ahead on a background thread, into a ring of <code>depth</code> buffers of
+     * <code>bufferSize</code> bytes. The parser drains a buffer while the next ones are being filled, so the I/O
+     * latency overlaps with the parsing instead of adding to it. Files are read into direct buffers.
+     * </p>
+     * <p>
+     * Each parse uses one thread and <code>depth * bufferSize</code> bytes. Bytes read ahead past the end of the
+     * document are discarded, so do not use it to parse a document followed by other data in the same stream.
+     * The background thread never reads an {@link InputStream} given by the caller once the parse has returned;
+     * to ensure that, the parse waits for the read in progress, if any, before returning.
+     * </p>
+     *
+     * @param bufferSize the size of each buffer.
+     * @param depth      the number of buffers, 2 for double buffering.
+     * @return a new factory reading ahead.
+     * @see #getReadAheadStats()
+     */
+    public XmlParserFactory withReadAhead(final int bufferSize, final int depth) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be greater than 0");
+        }
+        if (depth <= 0) {
+            throw new IllegalArgumentException("depth must be greater than 0");
+        }
+        return new XmlParserFactory(this, bufferSize, depth);
+    }
+
+    /**
+     * @return <code>true</code> if the parsers of this instance read their input ahead.
+     */
+    public boolean isReadAhead() {
+        return readAheadBufferSize > 0;
+    }
+
+    /**
+     * @return the counters of the read-ahead (and decompression) threads of the parsers of this instance.
+     */
+    public ReadAheadStats getReadAheadStats() {
+        return readAheadStats;
+    }
+
+    /**
+     * @return the limits enforced by the parsers of this instance.
+     */
+    public ParseLimits getLimits() {
+        return limits;
+    }
+
+    XMLStreamReader createXMLStreamReader(final Reader in) {
+        try {
+            return factory.createXMLStreamReader(limits.limit(in));
+        } catch (XMLStreamException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    XMLStreamReader createXMLStreamReader(final InputStream in, final Charset charset) {
+        try {
+            if (charset != null) {
+                return factory.createXMLStreamReader(limits.limit(in), charset.name());
+            } else {
+                return factory.createXMLStreamReader(limits.limit(in));
+            }
+        } catch (XMLStreamException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Opens a file for parsing. Files compressed with gzip or zlib (deflate) are detected from their first bytes
+     * and decompressed on a dedicated thread into a bounded ring of buffers, so decompression overlaps with
+     * parsing. Other files are read ahead into direct buffers if {@link #isReadAhead()}, as they are otherwise.
+     *
+     * @param path the file to read.
+     * @return the uncompressed content of the file, the caller must close it.
+     */
+    InputStream newInputStream(final Path path) throws IOException {
+        Objects.requireNonNull(path, "The Path cannot be null");
+
+        final InputStream in = new BufferedInputStream(Files.newInputStream(path),
+                ReadAheadInputStream.DEFAULT_BUFFER_SIZE);
+        try {
+            final InputStream inflater = inflate(in);
+            if (inflater != in) {
+                return new ReadAheadInputStream(inflater, true,
+                        isReadAhead() ? readAheadBufferSize : ReadAheadInputStream.DEFAULT_BUFFER_SIZE,
+                        isReadAhead() ? readAheadDepth : ReadAheadInputStream.DEFAULT_DEPTH,
+                        readAheadStats, "sxpj-inflate-" + path.getFileName());
+            }
+            if (isReadAhead()) {
+                in.close();
+                return new ReadAheadInputStream(FileChannel.open(path), readAheadBufferSize, readAheadDepth,
+                        readAheadStats, "sxpj-read-ahead-" + path.getFileName());
+            }
+            return in;
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a file for an asynchronous parse: the file is read with an
+     * {@link java.nio.channels.AsynchronousFileChannel} into a ring of buffers, and decompressed by the thread that
+     * parses it when it is compressed with gzip or zlib.
+     *
+     * @param file the file being read.
+     * @return the uncompressed content of the file, the caller must close it.
+     */
+    InputStream newInputStream(final AsyncFileInputStream file) throws IOException {
+        final InputStream in = new BufferedInputStream(file, ReadAheadInputStream.DEFAULT_BUFFER_SIZE);
+        try {
+            return inflate(in);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts reading a file with an {@link AsynchronousFileChannel}, into the ring of buffers configured by
+     * {@link #withReadAhead(int, int)} or a default one.
+     *
+     * @param path the file to read.
+     * @return the stream of the raw content of the file, the caller must close it.
+     */
+    AsyncFileInputStream openAsync(final Path path) throws IOException {
+        Objects.requireNonNull(path, "The Path cannot be null");
+
+        return new AsyncFileInputStream(AsynchronousFileChannel.open(path, StandardOpenOption.READ),
+                isReadAhead() ? readAheadBufferSize : ReadAheadInputStream.DEFAULT_BUFFER_SIZE,
+                isReadAhead() ? readAheadDepth : ReadAheadInputStream.DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param in a stream supporting {@link InputStream#mark(int)}.
+     * @return a stream decompressing the given one if it starts with a gzip or zlib header, the given stream
+     * otherwise.
+     */
+    private static InputStream inflate(final InputStream in) throws IOException {
+        in.mark(2);
+        final int b0 = in.read();
+        final int b1 = in.read();
+        in.reset();
+
+        if (b0 == 0x1F && b1 == 0x8B) {
+            return new GZIPInputStream(in, ReadAheadInputStream.DEFAULT_BUFFER_SIZE);
+        }
+        if (isZlibHeader(b0, b1)) {
+            return new InflaterInputStream(in, new Inflater(), ReadAheadInputStream.DEFAULT_BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+        }
+        return in;
+    }
+
+    /**
+     * @param in a stream given by the caller.
+     * @return a stream reading the given one ahead, which must be stopped but not closed once parsed, or
+     * <code>null</code> when read-ahead is not enabled. Stopping it waits for the read of the given stream in
+     * progress, if any, and never interrupts it.
+     */
+    ReadAheadInputStream readAhead(final InputStream in) {
+        if (!isReadAhead()) {
+            return null;
+        }
+        return new ReadAheadInputStream(in, false, readAheadBufferSize, readAheadDepth, readAheadStats,
+                "sxpj-read-ahead");
+    }
+
+    /**
+     * @return <code>true</code> if the bytes are a zlib header (RFC 1950) using deflate.
+     */
+    private static boolean isZlibHeader(final int cmf, final int flg) {
+        return cmf >= 0 && flg >= 0 && (cmf & 0x0F) == 8 && (cmf >> 4) <= 7 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    public <S> XmlParser<S> newParser(final Rule<S>... rules) {
+        return new XmlParser<>(this, rules);
+    }
+
+    /**
+     * Creates a parser whose rules can be changed at runtime through the given registry. Each parse uses the
+     * rules registered when it begins.
+     *
+     * @param registry the registry holding the rules.
+     * @return a new parser backed by the registry.
+     */
+    public <S> XmlParser<S> newParser(final RuleRegistry<S> registry) {
+        return new XmlParser<>(this, registry);
+    }
+
+    /**
+     * @param newState creates the state object given to the rules for each parse.
+     * @param rules    the rules building the cached state.
+     * @return a new {@link ParseCache} parsing files with the given rules.
+     */
+    @SafeVarargs
+    public final <S> ParseCache<S> newCache(final Supplier<? extends S> newState, final Rule<S>... rules) {
+        if (rules == null || rules.length == 0) {
+            throw new IllegalArgumentException("rules cannot be null or empty, you must provide at least 1 rule");
+        }
+        return new ParseCache<>(this, newState, rules);
+    }
+
+    /**
+     * @return a new {@link XmlMultiplexer} that runs several rule sets in a single pass over a document.
+     */
+    public XmlMultiplexer newMultiplexer() {
+        return new XmlMultiplexer(this);
+    }
+
+    /**
+     * @return a new {@link XmlProfiler} tracking up to {@link XmlProfiler#DEFAULT_MAX_PATHS} distinct paths.
+     */
+    public XmlProfiler newProfiler() {
+        return newProfiler(XmlProfiler.DEFAULT_MAX_PATHS);
+    }
+
+    /**
+     * @param maxPaths the maximum number of distinct paths to track, bounding the memory used by the profiler.
+     * @return a new {@link XmlProfiler}.
+     */
+    public XmlProfiler newProfiler(final int maxPaths) {
+        return new XmlProfiler(this, maxPaths, XmlProfiler.DEFAULT_MAX_ATTRIBUTE_NAMES);
+    }
+}
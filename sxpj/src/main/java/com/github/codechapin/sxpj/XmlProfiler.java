@@ -0,0 +1,215 @@
+package com.github.codechapin.sxpj;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>
+ * Runs a single streaming pass over a document and reports which location paths exist, how often they occur,
+ * how deep their subtrees go, how much text they hold and which attributes they carry. Useful to decide which
+ * rules to write for an unknown document, and which subtrees are worth skipping.
+ * </p>
+ * <p>
+ * Memory is bounded: at most <code>maxPaths</code> distinct paths, and <code>maxAttributeNames</code> attribute
+ * names per path, are tracked. Elements found after the limit is reached are only counted, see
+ * {@link DocumentProfile#getUntrackedElements()}.
+ * </p>
+ * <p>
+ * Instances of this class are not thread-safe.
+ * </p>
+ */
+public class XmlProfiler {
+    public static final int DEFAULT_MAX_PATHS = 10000;
+    public static final int DEFAULT_MAX_ATTRIBUTE_NAMES = 64;
+
+    private final XmlParserFactory factory;
+    private final ParseLimits limits;
+    private final int maxPaths;
+    private final int maxAttributeNames;
+
+    private final Location location;
+
+    private PathProfile[] profiles;
+    private int[] subtreeDepths;
+    private long[] textLengths;
+
+    XmlProfiler(final XmlParserFactory factory, final int maxPaths, final int maxAttributeNames) {
+        Objects.requireNonNull(factory, "The XmlParserFactory cannot be null");
+        if (maxPaths <= 0) {
+            throw new IllegalArgumentException("maxPaths must be greater than 0");
+        }
+        if (maxAttributeNames < 0) {
+            throw new IllegalArgumentException("maxAttributeNames cannot be negative");
+        }
+
+        this.factory = factory;
+        this.limits = factory.getLimits();
+        this.maxPaths = maxPaths;
+        this.maxAttributeNames = maxAttributeNames;
+
+        location = new Location();
+
+        profiles = new PathProfile[16];
+        subtreeDepths = new int[16];
+        textLengths = new long[16];
+    }
+
+    /**
+     * Profiles the XML out of the given input. This class will make no attempt at closing the given
+     * {@link Reader}, the caller must take care to clean up that resource.
+     *
+     * @param in the XML content to be read.
+     * @return the census of the document.
+     */
+    public DocumentProfile profile(final Reader in) {
+        Objects.requireNonNull(in, "The Reader cannot be null for XmlProfiler.profile");
+
+        try {
+            return doProfile(factory.createXMLStreamReader(in));
+        } catch (XMLStreamException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Profiles the XML out of the given input. This class will make no attempt at closing the given
+     * {@link InputStream}, the caller must take care to clean up that resource.
+     *
+     * @param in the XML content to be read.
+     * @return the census of the document.
+     */
+    public DocumentProfile profile(final InputStream in) {
+        return profile(in, null);
+    }
+
+    /**
+     * Profiles the XML out of the given input. This class will make no attempt at closing the given
+     * {@link InputStream}, the caller must take care to clean up that resource.
+     *
+     * @param in      the XML content to be read.
+     * @param charset the character encoding of the given XML. If not known pass null to let the underlying
+     *                {@link javax.xml.stream.XMLInputFactory} auto-detect the encoding.
+     * @return the census of the document.
+     */
+    public DocumentProfile profile(final InputStream in, final Charset charset) {
+        Objects.requireNonNull(in, "The InputStream cannot be null for XmlProfiler.profile");
+
+        final ReadAheadInputStream readAhead = factory.readAhead(in);
+        try {
+            return doProfile(factory.createXMLStreamReader((readAhead == null ? in : readAhead), charset));
+        } catch (XMLStreamException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        } finally {
+            if (readAhead != null) {
+                readAhead.stop();
+            }
+        }
+    }
+
+    private DocumentProfile doProfile(final XMLStreamReader reader) throws XMLStreamException {
+        final Map<Integer, PathProfile> paths = new HashMap<>(maxPaths > 64 ? 128 : 64);
+
+        long elementCount = 0;
+        long untrackedElements = 0;
+        int maxDepth = 0;
+        int tracked = 0;
+
+        location.clear();
+
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLEvent.START_ELEMENT: {
+                    limits.checkStartElement(reader, location.depth() + 1);
+                    location.push(reader.getLocalName(), reader.getNamespaceURI());
+                    final int depth = location.depth();
+                    if (depth == profiles.length) {
+                        grow();
+                    }
+
+                    // paths with the same hash code are chained, the first one stays in the map
+                    final Integer hash = location.getCachedHashCode();
+                    final PathProfile first = paths.get(hash);
+                    PathProfile profile = first;
+                    while (profile != null && !location.matches(profile.getPath())) {
+                        profile = profile.next;
+                    }
+                    if (profile == null && tracked < maxPaths) {
+                        profile = new PathProfile(location.toString(), depth);
+                        if (first == null) {
+                            paths.put(hash, profile);
+                        } else {
+                            profile.next = first.next;
+                            first.next = profile;
+                        }
+                        tracked++;
+                    }
+
+                    elementCount++;
+                    maxDepth = Math.max(maxDepth, depth);
+
+                    profiles[depth] = profile;
+                    subtreeDepths[depth] = 0;
+                    textLengths[depth] = 0;
+
+                    if (profile == null) {
+                        untrackedElements++;
+                        break;
+                    }
+
+                    profile.element();
+                    for (int i = 0, count = reader.getAttributeCount(); i < count; i++) {
+                        final String namespaceURI = reader.getAttributeNamespace(i);
+                        final String localName = reader.getAttributeLocalName(i);
+                        profile.attribute(namespaceURI == null || namespaceURI.isEmpty()
+                                        ? localName
+                                        : '[' + namespaceURI + ']' + localName,
+                                maxAttributeNames);
+                    }
+                    break;
+                }
+                case XMLEvent.CHARACTERS:
+                case XMLEvent.CDATA:
+                    limits.checkCharacters(reader);
+                    if (location.depth() > 0 && !reader.isWhiteSpace()) {
+                        textLengths[location.depth()] += reader.getTextLength();
+                    }
+                    break;
+                case XMLEvent.END_ELEMENT: {
+                    final int depth = location.depth();
+                    final int subtreeDepth = subtreeDepths[depth] + 1;
+
+                    final PathProfile profile = profiles[depth];
+                    if (profile != null) {
+                        profile.subtree(subtreeDepth);
+                        profile.text(textLengths[depth]);
+                    }
+
+                    if (subtreeDepth > subtreeDepths[depth - 1]) {
+                        subtreeDepths[depth - 1] = subtreeDepth;
+                    }
+
+                    profiles[depth] = null;
+                    location.pop();
+                    break;
+                }
+            }
+        }
+
+        return new DocumentProfile(paths, elementCount, maxDepth, untrackedElements);
+    }
+
+    private void grow() {
+        final int length = profiles.length * 2;
+        profiles = Arrays.copyOf(profiles, length);
+        subtreeDepths = Arrays.copyOf(subtreeDepths, length);
+        textLengths = Arrays.copyOf(textLengths, length);
+    }
+}
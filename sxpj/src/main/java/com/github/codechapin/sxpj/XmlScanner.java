@@ -0,0 +1,849 @@
+package com.github.codechapin.sxpj;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * <p>
+ * Byte-level scanner that only understands the structure of an XML document: start tags (with their attributes
+ * and namespace declarations) and end tags, reported together with their exact byte offsets in the input.
+ * Text, comments, CDATA sections, processing instructions and the DOCTYPE are skipped without being decoded.
+ * </p>
+ * <p>
+ * This exists because the character offsets reported by {@link javax.xml.stream.XMLStreamReader#getLocation()}
+ * are not reliable (the underlying implementation reads ahead) and are not byte offsets anyway. Byte offsets
+ * are what the splitting, indexing, tailing and pass-through features need to copy or seek within a file.
+ * </p>
+ * <h3>Encodings</h3>
+ * Only ASCII-compatible encodings (UTF-8, US-ASCII, the ISO-8859 family...) are supported: every markup
+ * delimiter is then a single byte that can never appear inside a multi-byte character. UTF-16 input is rejected.
+ * <h3>Pass-through</h3>
+ * When created with an {@link OutputStream}, the bytes that were scanned can be copied to it with
+ * {@link #copyTo(long)} or discarded with {@link #skipTo(long)} without ever being buffered twice, see
+ * {@link XmlTransformer}.
+ */
+final class XmlScanner {
+    static final int START_ELEMENT = 1;
+    static final int END_ELEMENT = 2;
+    static final int END_DOCUMENT = 8;
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int NAME_CACHE_SIZE = 256;
+
+    private static final String XML_NS_URI = "http://www.w3.org/XML/1998/namespace";
+
+    private final InputStream in;
+    private final Charset charset;
+    private final OutputStream passthrough;
+
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    private long bufOffset;
+    private int mark;
+
+    private long emitFrom;
+    private boolean eof;
+    private boolean truncated;
+
+    // current tag, positions are relative to the start of the tag so they survive buffer compaction
+    private long tagStart;
+    private long tagEnd;
+    private int tagLength;
+    private boolean emptyElement;
+    private boolean pendingEnd;
+    private String qName;
+    private String localName;
+    private String namespaceURI;
+
+    private int attributeCount;
+    private String[] attributeQNames;
+    private String[] attributeLocalNames;
+    private String[] attributeNamespaces;
+    private int[] attributeStarts;
+    private int[] attributeValueStarts;
+    private int[] attributeValueEnds;
+
+    // element and namespace stacks
+    private int depth;
+    private String[] qNames;
+    private int[] nsCounts;
+    private String[] nsPrefixes;
+    private String[] nsURIs;
+    private int nsCount;
+
+    private final String[] nameCache;
+    private final byte[][] nameCacheBytes;
+
+    XmlScanner(final InputStream in, final Charset charset) {
+        this(in, charset, null, 0L);
+    }
+
+    /**
+     * @param in          the input, positioned at the beginning of the document (or at <code>offset</code>).
+     * @param charset     an ASCII-compatible charset, <code>null</code> for UTF-8.
+     * @param passthrough optional output for {@link #copyTo(long)}.
+     * @param offset      the absolute offset of the first byte of <code>in</code>, reported offsets start there.
+     */
+    XmlScanner(final InputStream in, final Charset charset, final OutputStream passthrough, final long offset) {
+        Objects.requireNonNull(in, "The InputStream cannot be null");
+
+        this.in = in;
+        this.charset = charset == null ? StandardCharsets.UTF_8 : charset;
+        this.passthrough = passthrough;
+
+        if (!this.charset.newEncoder().canEncode('<') || "<".getBytes(this.charset).length != 1) {
+            throw new XmlParserException("byte-level scanning requires an ASCII-compatible charset, found " + charset);
+        }
+
+        buf = new byte[DEFAULT_BUFFER_SIZE];
+        bufOffset = offset;
+        emitFrom = offset;
+        mark = -1;
+
+        attributeQNames = new String[8];
+        attributeLocalNames = new String[8];
+        attributeNamespaces = new String[8];
+        attributeStarts = new int[8];
+        attributeValueStarts = new int[8];
+        attributeValueEnds = new int[8];
+
+        qNames = new String[16];
+        nsCounts = new int[16];
+        nsPrefixes = new String[16];
+        nsURIs = new String[16];
+
+        nameCache = new String[NAME_CACHE_SIZE];
+        nameCacheBytes = new byte[NAME_CACHE_SIZE][];
+    }
+
+    /**
+     * Moves to the next start or end tag.
+     *
+     * @return {@link #START_ELEMENT}, {@link #END_ELEMENT} or {@link #END_DOCUMENT} once the input is exhausted.
+     */
+    int next() throws IOException {
+        if (pendingEnd) {
+            // the END_ELEMENT of an empty element: <a/>
+            pendingEnd = false;
+            tagStart = tagEnd;
+            tagLength = 0;
+            attributeCount = 0;
+            popElement();
+            return END_ELEMENT;
+        }
+
+        if (depth == 0 && bufOffset + pos == 0) {
+            checkEncoding();
+        }
+
+        while (true) {
+            // skip text
+            mark = -1;
+            int b;
+            do {
+                b = read();
+            } while (b != '<' && b != -1);
+
+            if (b == -1) {
+                return END_DOCUMENT;
+            }
+
+            mark = pos - 1;
+            tagStart = bufOffset + mark;
+
+            b = read();
+            if (b == '/') {
+                if (scanEndTag()) {
+                    return END_ELEMENT;
+                }
+            } else if (b == '?') {
+                skipUntil("?>");
+            } else if (b == '!') {
+                skipDeclaration();
+            } else if (b == -1) {
+                truncated = true;
+                return END_DOCUMENT;
+            } else {
+                pos--;
+                if (scanStartTag()) {
+                    return START_ELEMENT;
+                }
+            }
+
+            if (eof) {
+                truncated = true;
+                return END_DOCUMENT;
+            }
+        }
+    }
+
+    /**
+     * @return the number of currently open elements. After a START_ELEMENT it includes that element, after an
+     * END_ELEMENT it no longer includes the element being closed.
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return <code>true</code> if the input ended in the middle of a tag or while elements were still open.
+     */
+    boolean isTruncated() {
+        return truncated || (eof && depth > 0);
+    }
+
+    /**
+     * @return the absolute offset of the '&lt;' of the current tag. For the END_ELEMENT of an empty element this
+     * is the same value as {@link #getTagEnd()}.
+     */
+    long getTagStart() {
+        return tagStart;
+    }
+
+    /**
+     * @return the absolute offset right after the '&gt;' of the current tag.
+     */
+    long getTagEnd() {
+        return tagEnd;
+    }
+
+    /**
+     * @return <code>true</code> if the current START_ELEMENT is an empty element (e.g. "&lt;a/&gt;"), its
+     * END_ELEMENT will be reported by the next call to {@link #next()}.
+     */
+    boolean isEmptyElement() {
+        return emptyElement;
+    }
+
+    String getQName() {
+        return qName;
+    }
+
+    String getLocalName() {
+        return localName;
+    }
+
+    /**
+     * @return the namespace URI of the current element or an empty string if it has none.
+     */
+    String getNamespaceURI() {
+        return namespaceURI;
+    }
+
+    /**
+     * @return a copy of the bytes of the current tag.
+     */
+    byte[] getTagBytes() {
+        return Arrays.copyOfRange(buf, mark, mark + tagLength);
+    }
+
+    /**
+     * Writes the bytes of the current tag to the given output.
+     */
+    void writeTag(final OutputStream out) throws IOException {
+        out.write(buf, mark, tagLength);
+    }
+
+    int getAttributeCount() {
+        return attributeCount;
+    }
+
+    String getAttributeQName(final int index) {
+        return attributeQNames[index];
+    }
+
+    String getAttributeLocalName(final int index) {
+        return attributeLocalNames[index];
+    }
+
+    /**
+     * @return the namespace URI of the attribute or an empty string if it has none.
+     */
+    String getAttributeNamespace(final int index) {
+        return attributeNamespaces[index];
+    }
+
+    /**
+     * @return the value of the attribute with its entity and character references resolved.
+     */
+    String getAttributeValue(final int index) {
+        final int start = mark + attributeValueStarts[index];
+        return unescape(new String(buf, start, attributeValueEnds[index] - attributeValueStarts[index], charset));
+    }
+
+    /**
+     * @return the value of the attribute with the given local name and namespace or <code>null</code>.
+     */
+    String getAttributeValue(final String namespaceURI, final String localName) {
+        final int index = getAttributeIndex(namespaceURI, localName);
+        return index < 0 ? null : getAttributeValue(index);
+    }
+
+    int getAttributeIndex(final String namespaceURI, final String localName) {
+        final String ns = namespaceURI == null ? "" : namespaceURI;
+        for (int i = 0; i < attributeCount; i++) {
+            if (attributeLocalNames[i].equals(localName) && attributeNamespaces[i].equals(ns)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the absolute offset of the whitespace preceding the attribute, removing the range
+     * [{@link #getAttributeStart(int)}, {@link #getAttributeValueEnd(int)} + 1) removes the attribute cleanly.
+     */
+    long getAttributeStart(final int index) {
+        return tagStart + attributeStarts[index];
+    }
+
+    /**
+     * @return the absolute offset of the first byte of the value, right after the opening quote.
+     */
+    long getAttributeValueStart(final int index) {
+        return tagStart + attributeValueStarts[index];
+    }
+
+    /**
+     * @return the absolute offset of the closing quote of the value.
+     */
+    long getAttributeValueEnd(final int index) {
+        return tagStart + attributeValueEnds[index];
+    }
+
+    /**
+     * @return the qualified name of the open element at the given depth, 1 being the root element.
+     */
+    String getQName(final int depth) {
+        return qNames[depth - 1];
+    }
+
+    /**
+     * @return the namespace URI bound to the given prefix ("" for the default namespace) in the current scope or
+     * <code>null</code> if it is not bound.
+     */
+    String getNamespaceURI(final String prefix) {
+        for (int i = nsCount - 1; i >= 0; i--) {
+            if (nsPrefixes[i].equals(prefix)) {
+                return nsURIs[i];
+            }
+        }
+        return "xml".equals(prefix) ? XML_NS_URI : (prefix.isEmpty() ? "" : null);
+    }
+
+    /**
+     * Pass-through: writes every byte from the last copied position up to the given absolute offset.
+     */
+    void copyTo(final long offset) throws IOException {
+        if (offset > emitFrom) {
+            final int from = (int) (emitFrom - bufOffset);
+            passthrough.write(buf, from, (int) (offset - emitFrom));
+            emitFrom = offset;
+        }
+    }
+
+    /**
+     * Pass-through: discards every byte up to the given absolute offset. Passing {@link Long#MAX_VALUE}
+     * suspends copying until the next call to this method.
+     */
+    void skipTo(final long offset) {
+        emitFrom = offset;
+    }
+
+    /**
+     * Pass-through: copies every remaining byte of the input.
+     */
+    void copyRemaining() throws IOException {
+        while (!eof) {
+            pos = limit;
+            mark = -1;
+            if (!fill()) {
+                eof = true;
+            }
+        }
+        copyTo(bufOffset + limit);
+    }
+
+    private void checkEncoding() throws IOException {
+        if (limit - pos < 2 && !fill()) {
+            return;
+        }
+        if (limit - pos < 2) {
+            return;
+        }
+        final int b0 = buf[pos] & 0xFF;
+        final int b1 = buf[pos + 1] & 0xFF;
+        if ((b0 == 0xFE && b1 == 0xFF) || (b0 == 0xFF && b1 == 0xFE) || b0 == 0 || b1 == 0) {
+            throw new XmlParserException("byte-level scanning does not support UTF-16 or UTF-32 input");
+        }
+    }
+
+    private boolean scanStartTag() throws IOException {
+        attributeCount = 0;
+        emptyElement = false;
+
+        final String name = readName();
+        if (name == null) {
+            // not a tag (e.g. '<' followed by garbage), leave it to the text scanner
+            return false;
+        }
+
+        final int nsMark = nsCount;
+        int b;
+        while (true) {
+            final int wsStart = pos - mark;
+            b = skipWhitespace();
+            if (b == '>') {
+                break;
+            }
+            if (b == '/') {
+                b = read();
+                if (b == -1) {
+                    return truncated();
+                }
+                if (b != '>') {
+                    throw error("expected '>' after '/' in tag " + name);
+                }
+                emptyElement = true;
+                break;
+            }
+            if (b == -1) {
+                return truncated();
+            }
+
+            pos--;
+            final String attributeName = readName();
+            if (attributeName == null) {
+                if (eof) {
+                    return truncated();
+                }
+                throw error("invalid attribute in tag " + name);
+            }
+            b = skipWhitespace();
+            if (b == -1) {
+                return truncated();
+            }
+            if (b != '=') {
+                throw error("expected '=' after attribute " + attributeName);
+            }
+            final int quote = skipWhitespace();
+            if (quote != '"' && quote != '\'') {
+                if (quote == -1) {
+                    return truncated();
+                }
+                throw error("expected a quoted value for attribute " + attributeName);
+            }
+            final int valueStart = pos - mark;
+            do {
+                b = read();
+            } while (b != quote && b != -1);
+            if (b == -1) {
+                return truncated();
+            }
+
+            addAttribute(attributeName, wsStart, valueStart, pos - 1 - mark);
+        }
+
+        tagLength = pos - mark;
+        tagEnd = tagStart + tagLength;
+
+        pushElement(name, nsMark);
+        resolveNames(name);
+
+        pendingEnd = emptyElement;
+        return true;
+    }
+
+    private boolean scanEndTag() throws IOException {
+        final String name = readName();
+        if (name == null) {
+            if (eof) {
+                return truncated();
+            }
+            throw error("invalid end tag");
+        }
+
+        final int b = skipWhitespace();
+        if (b == -1) {
+            return truncated();
+        }
+        if (b != '>') {
+            throw error("expected '>' in end tag " + name);
+        }
+        if (depth == 0 || !qNames[depth - 1].equals(name)) {
+            throw error("end tag " + name + " does not match start tag " + (depth == 0 ? null : qNames[depth - 1]));
+        }
+
+        tagLength = pos - mark;
+        tagEnd = tagStart + tagLength;
+        emptyElement = false;
+        attributeCount = 0;
+
+        resolveNames(name);
+        popElement();
+        return true;
+    }
+
+    private boolean truncated() {
+        truncated = true;
+        eof = true;
+        return false;
+    }
+
+    private void pushElement(final String name, final int nsMark) {
+        if (depth == qNames.length) {
+            qNames = Arrays.copyOf(qNames, depth * 2);
+            nsCounts = Arrays.copyOf(nsCounts, depth * 2);
+        }
+
+        // namespace declarations of this element, nsCount was already advanced by addAttribute
+        nsCounts[depth] = nsMark;
+        qNames[depth] = name;
+        depth++;
+
+        for (int i = 0; i < attributeCount; i++) {
+            final String prefix = prefixOf(attributeQNames[i]);
+            if (prefix.isEmpty()) {
+                attributeNamespaces[i] = "";
+            } else {
+                final String uri = getNamespaceURI(prefix);
+                if (uri == null) {
+                    throw error("unbound namespace prefix " + prefix);
+                }
+                attributeNamespaces[i] = uri;
+            }
+        }
+    }
+
+    private void popElement() {
+        depth--;
+        nsCount = nsCounts[depth];
+        qNames[depth] = null;
+    }
+
+    private void resolveNames(final String name) {
+        qName = name;
+
+        final int colon = name.indexOf(':');
+        localName = colon < 0 ? name : name.substring(colon + 1);
+
+        final String uri = getNamespaceURI(colon < 0 ? "" : name.substring(0, colon));
+        if (uri == null) {
+            throw error("unbound namespace prefix in " + name);
+        }
+        namespaceURI = uri;
+    }
+
+    private void addAttribute(final String name, final int start, final int valueStart, final int valueEnd) {
+        if (attributeCount == attributeQNames.length) {
+            final int length = attributeCount * 2;
+            attributeQNames = Arrays.copyOf(attributeQNames, length);
+            attributeLocalNames = Arrays.copyOf(attributeLocalNames, length);
+            attributeNamespaces = Arrays.copyOf(attributeNamespaces, length);
+            attributeStarts = Arrays.copyOf(attributeStarts, length);
+            attributeValueStarts = Arrays.copyOf(attributeValueStarts, length);
+            attributeValueEnds = Arrays.copyOf(attributeValueEnds, length);
+        }
+
+        final int colon = name.indexOf(':');
+        attributeQNames[attributeCount] = name;
+        attributeLocalNames[attributeCount] = colon < 0 ? name : name.substring(colon + 1);
+        attributeStarts[attributeCount] = start;
+        attributeValueStarts[attributeCount] = valueStart;
+        attributeValueEnds[attributeCount] = valueEnd;
+        attributeCount++;
+
+        // namespace declarations are in scope for the element itself
+        if (name.equals("xmlns") || name.startsWith("xmlns:")) {
+            if (nsCount == nsPrefixes.length) {
+                nsPrefixes = Arrays.copyOf(nsPrefixes, nsCount * 2);
+                nsURIs = Arrays.copyOf(nsURIs, nsCount * 2);
+            }
+            nsPrefixes[nsCount] = colon < 0 ? "" : name.substring(colon + 1);
+            nsURIs[nsCount] = unescape(new String(buf, mark + valueStart, valueEnd - valueStart, charset));
+            nsCount++;
+        }
+    }
+
+    private static String prefixOf(final String name) {
+        final int colon = name.indexOf(':');
+        // namespace declarations themselves are reported without a namespace
+        if (colon < 0 || name.startsWith("xmlns:")) {
+            return "";
+        }
+        return name.substring(0, colon);
+    }
+
+    /**
+     * Reads an XML name starting at the current position, stopping before the first whitespace, '/', '&gt;'
+     * or '='. Names are decoded through a small cache, documents usually have only a handful of distinct names.
+     */
+    private String readName() throws IOException {
+        final int start = pos - mark;
+        int b = read();
+        if (b == -1 || b == '>' || b == '/' || b == '=' || isWhitespace(b) || b == '<') {
+            if (b != -1) {
+                pos--;
+            }
+            return null;
+        }
+
+        int hash = b;
+        while (true) {
+            b = read();
+            if (b == -1) {
+                return null;
+            }
+            if (b == '>' || b == '/' || b == '=' || isWhitespace(b)) {
+                pos--;
+                break;
+            }
+            hash = 31 * hash + b;
+        }
+
+        final int from = mark + start;
+        final int length = pos - from;
+        final int slot = hash & (NAME_CACHE_SIZE - 1);
+        final byte[] cached = nameCacheBytes[slot];
+        if (cached != null && cached.length == length && equals(cached, buf, from)) {
+            return nameCache[slot];
+        }
+
+        final String name = new String(buf, from, length, charset);
+        nameCache[slot] = name;
+        nameCacheBytes[slot] = Arrays.copyOfRange(buf, from, from + length);
+        return name;
+    }
+
+    private static boolean equals(final byte[] cached, final byte[] bytes, final int from) {
+        for (int i = 0; i < cached.length; i++) {
+            if (cached[i] != bytes[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipWhitespace() throws IOException {
+        int b;
+        do {
+            b = read();
+        } while (isWhitespace(b));
+        return b;
+    }
+
+    private void skipDeclaration() throws IOException {
+        final int b = read();
+        if (b == '-') {
+            read();
+            skipUntil("-->");
+        } else if (b == '[') {
+            skipUntil("]]>");
+        } else {
+            // <!DOCTYPE ...> with an optional internal subset, which can contain quoted '>'s
+            int nesting = 0;
+            int quote = 0;
+            int c = b;
+            while (c != -1) {
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '[') {
+                    nesting++;
+                } else if (c == ']') {
+                    nesting--;
+                } else if (c == '>' && nesting <= 0) {
+                    return;
+                }
+                c = read();
+            }
+        }
+    }
+
+    /**
+     * Skips up to and including the given terminator, which must be at most 4 bytes long.
+     */
+    private void skipUntil(final String terminator) throws IOException {
+        int expected = 0;
+        for (int i = 0; i < terminator.length(); i++) {
+            expected = (expected << 8) | terminator.charAt(i);
+        }
+        final int mask = terminator.length() == 4 ? -1 : (1 << (8 * terminator.length())) - 1;
+
+        int window = 0;
+        int b;
+        while ((b = read()) != -1) {
+            window = ((window << 8) | b) & mask;
+            if (window == expected) {
+                return;
+            }
+        }
+    }
+
+    private static boolean isWhitespace(final int b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            eof = true;
+            return -1;
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    /**
+     * Reads more bytes, discarding everything before the current tag (or everything, when scanning text). Bytes
+     * pending for the pass-through output are written before they are discarded.
+     */
+    private boolean fill() throws IOException {
+        final int keep = mark >= 0 ? mark : pos;
+        if (passthrough != null && emitFrom < bufOffset + keep) {
+            copyTo(bufOffset + keep);
+        }
+
+        if (keep > 0) {
+            System.arraycopy(buf, keep, buf, 0, limit - keep);
+            bufOffset += keep;
+            limit -= keep;
+            pos -= keep;
+            if (mark >= 0) {
+                mark -= keep;
+            }
+        }
+
+        if (limit == buf.length) {
+            // a single tag larger than the buffer
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+
+        final int n = in.read(buf, limit, buf.length - limit);
+        if (n <= 0) {
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    private XmlParserException error(final String message) {
+        return new XmlParserException(message + " at byte offset " + (bufOffset + pos));
+    }
+
+    /**
+     * Resolves the predefined entities and the character references of an attribute value.
+     *
+     * @throws XmlParserException if a character reference is malformed or not a character.
+     */
+    private String unescape(final String value) {
+        final int amp = value.indexOf('&');
+        if (amp < 0) {
+            return value;
+        }
+
+        final StringBuilder builder = new StringBuilder(value.length());
+        builder.append(value, 0, amp);
+        for (int i = amp; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            final int end = c == '&' ? value.indexOf(';', i) : -1;
+            if (end < 0) {
+                builder.append(c);
+                continue;
+            }
+
+            final String entity = value.substring(i + 1, end);
+            switch (entity) {
+                case "lt":
+                    builder.append('<');
+                    break;
+                case "gt":
+                    builder.append('>');
+                    break;
+                case "amp":
+                    builder.append('&');
+                    break;
+                case "quot":
+                    builder.append('"');
+                    break;
+                case "apos":
+                    builder.append('\'');
+                    break;
+                default:
+                    if (entity.startsWith("#x")) {
+                        builder.appendCodePoint(codePoint(entity, 2, 16));
+                    } else if (entity.startsWith("#")) {
+                        builder.appendCodePoint(codePoint(entity, 1, 10));
+                    } else {
+                        builder.append('&').append(entity).append(';');
+                    }
+            }
+            i = end;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param entity the character reference without its <code>&amp;</code> and <code>;</code>, e.g.
+     *               <code>#x20</code>.
+     * @param start  the index of its first digit.
+     */
+    private int codePoint(final String entity, final int start, final int radix) {
+        if (entity.length() > start && Character.digit(entity.charAt(start), radix) >= 0) {
+            try {
+                final int codePoint = Integer.parseInt(entity.substring(start), radix);
+                if (codePoint > 0 && Character.isValidCodePoint(codePoint)
+                        && (codePoint < Character.MIN_SURROGATE || codePoint > Character.MAX_SURROGATE)) {
+                    return codePoint;
+                }
+            } catch (NumberFormatException e) {
+                // not a number, or too large for an int
+            }
+        }
+        throw error("invalid character reference &" + entity + ";");
+    }
+
+    /**
+     * Escapes the given text so it can be written as element content or as a double-quoted attribute value.
+     */
+    static String escape(final String value) {
+        StringBuilder builder = null;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            final String replacement;
+            switch (c) {
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '"':
+                    replacement = "&quot;";
+                    break;
+                default:
+                    replacement = null;
+            }
+            if (replacement != null) {
+                if (builder == null) {
+                    builder = new StringBuilder(value.length() + 16);
+                    builder.append(value, 0, i);
+                }
+                builder.append(replacement);
+            } else if (builder != null) {
+                builder.append(c);
+            }
+        }
+        return builder == null ? value : builder.toString();
+    }
+}
@@ -0,0 +1,377 @@
+package com.github.codechapin.sxpj;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+
+/**
+ * <p>
+ * Splits a large document into shards of <code>recordsPerShard</code> records each. Every shard is a complete
+ * document: the prolog of the original (XML declaration, DOCTYPE...) followed by verbatim copies of the start
+ * tags of the record's ancestors, so every namespace declaration stays in scope, then the records and the
+ * matching end tags.
+ * </p>
+ * <p>
+ * Records are found by their byte offsets with a single sequential scan of the input. The shards are written on
+ * a pool of writer threads that copy the records straight from the input file with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, so the records are never
+ * decoded nor buffered. The scan waits when <code>maxInFlight</code> shards are waiting to be written.
+ * </p>
+ * <p>
+ * A shard never mixes records with different ancestors: a new shard is started whenever an ancestor of the
+ * records changes. The input must use an ASCII-compatible encoding such as UTF-8, see {@link XmlScanner}.
+ * </p>
+ */
+public class XmlSplitter {
+    private final String recordPath;
+    private final int recordsPerShard;
+
+    private int threads;
+    private int maxInFlight;
+
+    /**
+     * @param recordPath      the location path of the records (e.g. "/export/items/item").
+     * @param recordsPerShard the maximum number of records written to each shard.
+     */
+    public XmlSplitter(final String recordPath, final int recordsPerShard) {
+        Rule.checkLocationPath(recordPath);
+        if (recordsPerShard <= 0) {
+            throw new IllegalArgumentException("recordsPerShard must be greater than 0");
+        }
+
+        this.recordPath = recordPath;
+        this.recordsPerShard = recordsPerShard;
+        this.threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.maxInFlight = 2 * threads;
+    }
+
+    /**
+     * @param threads the number of writer threads, defaults to half the available processors.
+     * @return this splitter, to allow chaining.
+     */
+    public XmlSplitter threads(final int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be greater than 0");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param maxInFlight the maximum number of shards found but not yet written, defaults to twice the threads.
+     * @return this splitter, to allow chaining.
+     */
+    public XmlSplitter maxInFlight(final int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be greater than 0");
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Splits a UTF-8 file into shards named after it (e.g. "items-00000.xml") in the given directory.
+     *
+     * @param in        the file to split.
+     * @param directory where the shards are written.
+     * @return the shards, in document order.
+     */
+    public List<Path> split(final Path in, final Path directory) {
+        Objects.requireNonNull(directory, "The directory cannot be null for XmlSplitter.split");
+
+        final String name = in.getFileName().toString();
+        final String base = name.endsWith(".xml") ? name.substring(0, name.length() - 4) : name;
+        return split(in, StandardCharsets.UTF_8, i -> directory.resolve(String.format("%s-%05d.xml", base, i)));
+    }
+
+    /**
+     * Splits a file into shards.
+     *
+     * @param in      the file to split.
+     * @param charset the ASCII-compatible encoding of the file.
+     * @param shards  gives the path of the shard with the given index, starting at 0.
+     * @return the shards, in document order.
+     */
+    public List<Path> split(final Path in, final Charset charset, final IntFunction<Path> shards) {
+        Objects.requireNonNull(in, "The input Path cannot be null for XmlSplitter.split");
+        Objects.requireNonNull(shards, "The shard names cannot be null for XmlSplitter.split");
+
+        final ExecutorService writers = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "sxpj-splitter");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ)) {
+            final Split split = new Split(source, charset, shards, writers);
+            split.run();
+            return split.paths;
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        } finally {
+            writers.shutdownNow();
+        }
+    }
+
+    /**
+     * State of one split: the scan runs on the calling thread and submits a {@link Shard} every time one is
+     * complete.
+     */
+    private final class Split {
+        private final FileChannel source;
+        private final Charset charset;
+        private final IntFunction<Path> shards;
+        private final ExecutorService writers;
+
+        private final Semaphore inFlight;
+        private final AtomicReference<Exception> failure;
+        private final List<Path> paths;
+
+        private byte[] prolog;
+        private byte[][] ancestors;
+        private int context;
+
+        private Shard current;
+
+        private Split(final FileChannel source, final Charset charset, final IntFunction<Path> shards,
+                      final ExecutorService writers) {
+            this.source = source;
+            this.charset = charset == null ? StandardCharsets.UTF_8 : charset;
+            this.shards = shards;
+            this.writers = writers;
+
+            inFlight = new Semaphore(maxInFlight);
+            failure = new AtomicReference<>();
+            paths = new ArrayList<>();
+            ancestors = new byte[Rule.depthOf(recordPath)][];
+        }
+
+        private void run() throws IOException {
+            final XmlScanner scanner = new XmlScanner(Channels.newInputStream(source), charset);
+            final Location location = new Location();
+            final Integer recordHash = recordPath.hashCode();
+
+            // offset where the current record began, -1 when not inside a record
+            long recordStart = -1;
+            int recordDepth = 0;
+            // a non-record element seen since the last record, ranges cannot be merged across it
+            boolean interrupted = true;
+
+            int event;
+            while ((event = scanner.next()) != XmlScanner.END_DOCUMENT) {
+                final int depth = scanner.getDepth();
+                if (event == XmlScanner.START_ELEMENT) {
+                    if (recordStart >= 0) {
+                        continue;
+                    }
+
+                    location.push(scanner.getLocalName(), scanner.getNamespaceURI());
+                    if (prolog == null) {
+                        prolog = read(0, scanner.getTagStart());
+                    }
+
+                    if (location.getCachedHashCode().equals(recordHash)) {
+                        recordStart = scanner.getTagStart();
+                        recordDepth = depth;
+                    } else {
+                        if (depth < ancestors.length) {
+                            // a new ancestor: records found from now on go to a new shard
+                            ancestors[depth - 1] = scanner.getTagBytes();
+                            context++;
+                        }
+                        interrupted = true;
+                    }
+                } else {
+                    if (recordStart >= 0 && depth + 1 != recordDepth) {
+                        continue;
+                    }
+
+                    if (recordStart >= 0) {
+                        record(recordStart, scanner.getTagEnd(), recordDepth, scanner, interrupted);
+                        recordStart = -1;
+                        interrupted = false;
+                    } else {
+                        interrupted = true;
+                    }
+                    location.pop();
+                }
+
+                checkFailure();
+            }
+
+            if (scanner.isTruncated()) {
+                throw new XmlParserException("the document ended before all of its elements were closed");
+            }
+
+            if (current != null) {
+                submit(current);
+            }
+
+            try {
+                // every permit is back once every shard has been written
+                inFlight.acquire(maxInFlight);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XmlParserException("interrupted while waiting for the shards to be written", e);
+            }
+            checkFailure();
+        }
+
+        private void record(final long start, final long end, final int depth, final XmlScanner scanner,
+                            final boolean interrupted) {
+            if (current != null && current.context != context) {
+                submit(current);
+                current = null;
+            }
+
+            if (current == null) {
+                current = new Shard(paths.size(), context, header(depth), footer(depth, scanner));
+                paths.add(shards.apply(current.index));
+            }
+
+            current.add(start, end, interrupted);
+            if (current.records == recordsPerShard) {
+                submit(current);
+                current = null;
+            }
+        }
+
+        private byte[] header(final int depth) {
+            int length = prolog.length;
+            for (int i = 0; i < depth - 1; i++) {
+                length += ancestors[i].length;
+            }
+
+            final byte[] header = Arrays.copyOf(prolog, length);
+            int offset = prolog.length;
+            for (int i = 0; i < depth - 1; i++) {
+                System.arraycopy(ancestors[i], 0, header, offset, ancestors[i].length);
+                offset += ancestors[i].length;
+            }
+            return header;
+        }
+
+        private byte[] footer(final int depth, final XmlScanner scanner) {
+            final StringBuilder footer = new StringBuilder(16 * depth);
+            for (int i = depth - 1; i >= 1; i--) {
+                footer.append("\n</").append(scanner.getQName(i)).append('>');
+            }
+            return footer.append('\n').toString().getBytes(charset);
+        }
+
+        private void submit(final Shard shard) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XmlParserException("interrupted while waiting for a shard to be written", e);
+            }
+
+            final Path path = paths.get(shard.index);
+            writers.execute(() -> {
+                try {
+                    shard.write(source, path);
+                } catch (IOException | RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+
+        private void checkFailure() {
+            final Exception e = failure.get();
+            if (e != null) {
+                throw new XmlParserException("failed to write a shard: " + e.getMessage(), e);
+            }
+        }
+
+        private byte[] read(final long position, final long end) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.allocate((int) (end - position));
+            while (buffer.hasRemaining() && source.read(buffer, position + buffer.position()) >= 0) {
+                // keep reading
+            }
+            return buffer.array();
+        }
+    }
+
+    /**
+     * A shard waiting to be written: its header and footer plus the byte ranges of its records in the input.
+     * Consecutive records are merged into a single range when nothing but text separates them.
+     */
+    private static final class Shard {
+        private static final byte[] NEW_LINE = {'\n'};
+
+        private final int index;
+        private final int context;
+        private final byte[] header;
+        private final byte[] footer;
+
+        private long[] ranges;
+        private int rangeCount;
+        private int records;
+
+        private Shard(final int index, final int context, final byte[] header, final byte[] footer) {
+            this.index = index;
+            this.context = context;
+            this.header = header;
+            this.footer = footer;
+            this.ranges = new long[16];
+        }
+
+        private void add(final long start, final long end, final boolean interrupted) {
+            records++;
+            if (rangeCount > 0 && !interrupted) {
+                ranges[rangeCount * 2 - 1] = end;
+                return;
+            }
+
+            if (rangeCount * 2 == ranges.length) {
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            }
+            ranges[rangeCount * 2] = start;
+            ranges[rangeCount * 2 + 1] = end;
+            rangeCount++;
+        }
+
+        private void write(final FileChannel source, final Path path) throws IOException {
+            try (FileChannel target = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+
+                write(target, header);
+                for (int i = 0; i < rangeCount; i++) {
+                    long position = ranges[i * 2];
+                    final long end = ranges[i * 2 + 1];
+                    while (position < end) {
+                        position += source.transferTo(position, end - position, target);
+                    }
+                    if (i + 1 < rangeCount) {
+                        write(target, NEW_LINE);
+                    }
+                }
+                write(target, footer);
+            }
+        }
+
+        private static void write(final FileChannel target, final byte[] bytes) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+        }
+    }
+}
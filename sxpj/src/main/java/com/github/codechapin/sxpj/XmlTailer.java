@@ -0,0 +1,197 @@
+package com.github.codechapin.sxpj;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * <p>
+ * Follows an XML file that keeps growing, such as a log whose root element is never closed, and runs the rules
+ * of a parser over the records appended since the previous poll:
+ * </p>
+ * <pre>
+ * final XmlTailer&lt;Events&gt; tailer = new XmlTailer&lt;&gt;(parser, log, "/log/event");
+ * while (running) {
+ *     tailer.poll(events);
+ *     Thread.sleep(1000);
+ * }
+ * </pre>
+ * <p>
+ * The tailer remembers the offset just past the last complete record and the start tags of the elements open
+ * there (the record's ancestors). A poll scans the bytes appended since that offset with an {@link XmlScanner},
+ * finds the last complete record, then parses that range with the remembered start tags in front of it and the
+ * end tags of the elements open at its end after it. The work per poll is proportional to the appended bytes, a
+ * record still being written is left for the next poll.
+ * </p>
+ * <p>
+ * The rules see the same location paths and namespace declarations as when parsing the whole file. The start
+ * tags replayed in front of a poll and the end tags added after it are not dispatched, so the rules on the
+ * ancestors only fire for the tags read from the file: the start of the root element once, on the first poll, and
+ * its end never while the file is open. If the file shrinks (rotated or truncated), the tailer starts again from
+ * its beginning.
+ * </p>
+ * <p>
+ * The file must use an ASCII-compatible encoding such as UTF-8, see {@link XmlScanner}. Like {@link XmlParser},
+ * instances of this class are not thread-safe.
+ * </p>
+ */
+public class XmlTailer<S> {
+    private static final long[] NO_ANCESTORS = new long[0];
+
+    private final XmlParser<S> parser;
+    private final Path path;
+    private final Charset charset;
+    private final String recordPath;
+    private final Integer recordHash;
+    private final int recordDepth;
+
+    private long offset;
+    private long[] ancestors;
+    private long records;
+
+    /**
+     * Same as {@link #XmlTailer(XmlParser, Path, Charset, String)} for a UTF-8 file.
+     */
+    public XmlTailer(final XmlParser<S> parser, final Path path, final String recordPath) {
+        this(parser, path, StandardCharsets.UTF_8, recordPath);
+    }
+
+    /**
+     * @param parser     runs its rules over the new records.
+     * @param path       the file to follow.
+     * @param charset    the ASCII-compatible encoding of the file.
+     * @param recordPath the location path of the records (e.g. "/log/event"), a poll stops after the last complete
+     *                   one.
+     */
+    public XmlTailer(final XmlParser<S> parser, final Path path, final Charset charset, final String recordPath) {
+        Objects.requireNonNull(parser, "The XmlParser cannot be null");
+        Objects.requireNonNull(path, "The Path cannot be null");
+        Objects.requireNonNull(charset, "The Charset cannot be null");
+        Rule.checkLocationPath(recordPath);
+
+        this.parser = parser;
+        this.path = path;
+        this.charset = charset;
+        this.recordPath = recordPath;
+        this.recordHash = recordPath.hashCode();
+        this.recordDepth = Rule.depthOf(recordPath);
+        this.ancestors = NO_ANCESTORS;
+    }
+
+    /**
+     * Parses the records appended since the previous poll.
+     *
+     * @param state object that stores data constructed by the handlers.
+     * @return the number of new records, 0 if no record was completed since the previous poll.
+     */
+    public int poll(final S state) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < offset) {
+                offset = 0;
+                ancestors = NO_ANCESTORS;
+            }
+            if (size == offset) {
+                return 0;
+            }
+
+            final Scan scan = scan(channel, size);
+            if (scan.count == 0) {
+                return 0;
+            }
+
+            parser.parseTail(path, charset, ancestors, offset, scan.end - offset, scan.ancestors, recordHash,
+                    scan.count, state);
+
+            offset = scan.end;
+            ancestors = scan.ancestors;
+            records += scan.count;
+            return scan.count;
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finds the last record completed between the current offset and the given size.
+     */
+    private Scan scan(final FileChannel channel, final long size) throws IOException {
+        // replay the open elements so the scanner knows their names and namespaces
+        long prefixLength = 0;
+        for (int i = 0; i < ancestors.length; i += 2) {
+            prefixLength += ancestors[i + 1] - ancestors[i];
+        }
+
+        final Scan scan = new Scan();
+        final long[] open = Arrays.copyOf(ancestors, 2 * (recordDepth - 1));
+
+        try (InputStream in = XmlIndex.open(channel, charset, ancestors, offset, size - offset, NO_ANCESTORS)) {
+            final XmlScanner scanner = new XmlScanner(in, charset, null, offset - prefixLength);
+            final Location location = new Location();
+
+            // offset where the current record began, -1 when not inside a record
+            long recordStart = -1;
+
+            int event;
+            while ((event = scanner.next()) != XmlScanner.END_DOCUMENT) {
+                final int depth = scanner.getDepth();
+                if (event == XmlScanner.START_ELEMENT) {
+                    if (recordStart >= 0) {
+                        continue;
+                    }
+
+                    location.push(scanner.getLocalName(), scanner.getNamespaceURI());
+                    if (depth == recordDepth && location.getCachedHashCode().equals(recordHash)) {
+                        recordStart = scanner.getTagStart();
+                    } else if (depth < recordDepth && scanner.getTagStart() >= offset) {
+                        open[2 * depth - 2] = scanner.getTagStart();
+                        open[2 * depth - 1] = scanner.getTagEnd();
+                    }
+                } else {
+                    if (recordStart >= 0 && depth + 1 != recordDepth) {
+                        continue;
+                    }
+
+                    if (recordStart >= 0) {
+                        scan.count++;
+                        scan.end = scanner.getTagEnd();
+                        scan.ancestors = open.clone();
+                        recordStart = -1;
+                    }
+                    location.pop();
+                }
+            }
+        }
+        return scan;
+    }
+
+    /**
+     * @return the offset just past the last record parsed, where the next poll starts.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of records parsed by all the polls.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    public String getRecordPath() {
+        return recordPath;
+    }
+
+    private static final class Scan {
+        private int count;
+        private long end;
+        private long[] ancestors;
+    }
+}
@@ -0,0 +1,413 @@
+package com.github.codechapin.sxpj;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/**
+ * <p>
+ * Rewrites a document with a few targeted changes: dropping subtrees, replacing or removing attribute values and
+ * replacing the text of elements. Paths use the same format as {@link Rule#getPath()} and are matched the same
+ * way the parser does.
+ * </p>
+ * <p>
+ * The document is never re-serialized: every byte that is not changed is copied as-is from the input, and when
+ * transforming a file into a file those ranges are copied with {@link FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)}. The cost of writing the output scales with what changes, not with
+ * the size of the document, and the output keeps the original formatting byte for byte.
+ * </p>
+ * <p>
+ * The input must use an ASCII-compatible encoding such as UTF-8, see {@link XmlScanner}. Instances are
+ * thread-safe once configured.
+ * </p>
+ */
+public class XmlTransformer {
+    private final Map<Integer, List<Edit>> edits;
+
+    public XmlTransformer() {
+        edits = new HashMap<>();
+    }
+
+    /**
+     * Removes every element matching the path, including its subtree.
+     *
+     * @param path the location path of the elements to remove.
+     * @return this transformer, to allow chaining.
+     */
+    public XmlTransformer drop(final String path) {
+        return add(path, new Edit(Edit.DROP, null, null));
+    }
+
+    /**
+     * Replaces the whole content of every element matching the path with the given text.
+     *
+     * @param path the location path of the elements to change.
+     * @param text the new content, it will be escaped.
+     * @return this transformer, to allow chaining.
+     */
+    public XmlTransformer replaceText(final String path, final String text) {
+        Objects.requireNonNull(text, "the replacement text cannot be null");
+        return add(path, new Edit(Edit.TEXT, null, v -> text));
+    }
+
+    /**
+     * Replaces the value of an attribute of every element matching the path, the function receives the current
+     * value. Elements that do not have the attribute are left untouched.
+     *
+     * @param path          the location path of the elements to change.
+     * @param attributeName the attribute name, in the same format as
+     *                      {@link Rule#attributes(String, com.github.codechapin.sxpj.handler.AttributeHandler, String...)}
+     *                      (e.g. "id" or "[http://namespace.uri]id").
+     * @param replacement   computes the new value, it will be escaped.
+     * @return this transformer, to allow chaining.
+     */
+    public XmlTransformer replaceAttribute(final String path, final String attributeName,
+                                          final UnaryOperator<String> replacement) {
+        Objects.requireNonNull(replacement, "the replacement function cannot be null");
+        return add(path, new Edit(Edit.ATTRIBUTE, attributeName, replacement));
+    }
+
+    /**
+     * Removes an attribute from every element matching the path.
+     *
+     * @param path          the location path of the elements to change.
+     * @param attributeName the attribute name, see {@link #replaceAttribute(String, String, UnaryOperator)}.
+     * @return this transformer, to allow chaining.
+     */
+    public XmlTransformer removeAttribute(final String path, final String attributeName) {
+        return add(path, new Edit(Edit.ATTRIBUTE, attributeName, null));
+    }
+
+    /**
+     * Transforms a file into another file, unchanged ranges are copied with
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+     *
+     * @param in  the file to read, encoded in UTF-8.
+     * @param out the file to write, it is created or truncated.
+     */
+    public void transform(final Path in, final Path out) {
+        transform(in, StandardCharsets.UTF_8, out);
+    }
+
+    /**
+     * Transforms a file into another file, unchanged ranges are copied with
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+     *
+     * @param in      the file to read.
+     * @param charset the ASCII-compatible encoding of the file.
+     * @param out     the file to write, it is created or truncated.
+     */
+    public void transform(final Path in, final Charset charset, final Path out) {
+        Objects.requireNonNull(in, "The input Path cannot be null for XmlTransformer.transform");
+        Objects.requireNonNull(out, "The output Path cannot be null for XmlTransformer.transform");
+
+        try (FileChannel source = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(out, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            final XmlScanner scanner = new XmlScanner(Channels.newInputStream(source), charset);
+            doTransform(scanner, charset, new ChannelOutput(source, target));
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Transforms a UTF-8 stream. This class will make no attempt at closing the given streams, the caller must
+     * take care to clean up those resources.
+     *
+     * @param in  the XML content to be read.
+     * @param out where the transformed XML is written.
+     */
+    public void transform(final InputStream in, final OutputStream out) {
+        transform(in, StandardCharsets.UTF_8, out);
+    }
+
+    /**
+     * Transforms a stream. This class will make no attempt at closing the given streams, the caller must take
+     * care to clean up those resources.
+     *
+     * @param in      the XML content to be read.
+     * @param charset the ASCII-compatible encoding of the content.
+     * @param out     where the transformed XML is written.
+     */
+    public void transform(final InputStream in, final Charset charset, final OutputStream out) {
+        Objects.requireNonNull(in, "The InputStream cannot be null for XmlTransformer.transform");
+        Objects.requireNonNull(out, "The OutputStream cannot be null for XmlTransformer.transform");
+
+        try {
+            final OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+            final XmlScanner scanner = new XmlScanner(in, charset, buffered, 0L);
+            doTransform(scanner, charset, new StreamOutput(scanner, buffered));
+            buffered.flush();
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    private XmlTransformer add(final String path, final Edit edit) {
+        Rule.checkLocationPath(path);
+        edits.computeIfAbsent(path.hashCode(), k -> new ArrayList<>(2)).add(edit);
+        return this;
+    }
+
+    private void doTransform(final XmlScanner scanner, final Charset charset, final Output out) throws IOException {
+        final Location location = new Location();
+        final Charset encoding = charset == null ? StandardCharsets.UTF_8 : charset;
+
+        // depth of the element being dropped or whose content is replaced, 0 when none
+        int suppressDepth = 0;
+        boolean suppressContent = false;
+
+        int event;
+        while ((event = scanner.next()) != XmlScanner.END_DOCUMENT) {
+            if (event == XmlScanner.START_ELEMENT) {
+                if (suppressDepth > 0) {
+                    continue;
+                }
+
+                location.push(scanner.getLocalName(), scanner.getNamespaceURI());
+                final List<Edit> matching = edits.get(location.getCachedHashCode());
+                if (matching == null) {
+                    continue;
+                }
+
+                if (contains(matching, Edit.DROP)) {
+                    out.copy(scanner.getTagStart());
+                    out.suspend();
+                    suppressDepth = scanner.getDepth();
+                    suppressContent = false;
+                    continue;
+                }
+
+                applyAttributeEdits(scanner, matching, encoding, out);
+
+                final Edit text = find(matching, Edit.TEXT);
+                if (text != null) {
+                    final byte[] replacement = XmlScanner.escape(text.replacement.apply(null)).getBytes(encoding);
+                    if (scanner.isEmptyElement()) {
+                        // <a/> becomes <a>text</a>, the '/' is the second to last byte of the tag
+                        out.copy(scanner.getTagEnd() - 2);
+                        out.write(">".getBytes(encoding));
+                        out.write(replacement);
+                        out.write(("</" + scanner.getQName() + ">").getBytes(encoding));
+                        out.skip(scanner.getTagEnd());
+                    } else {
+                        out.copy(scanner.getTagEnd());
+                        out.write(replacement);
+                        out.suspend();
+                        suppressDepth = scanner.getDepth();
+                        suppressContent = true;
+                    }
+                }
+            } else {
+                if (suppressDepth > 0) {
+                    if (scanner.getDepth() + 1 != suppressDepth) {
+                        continue;
+                    }
+                    // the element being dropped or replaced is closed
+                    out.skip(suppressContent ? scanner.getTagStart() : scanner.getTagEnd());
+                    suppressDepth = 0;
+                }
+                location.pop();
+            }
+        }
+
+        if (scanner.isTruncated()) {
+            throw new XmlParserException("the document ended before all of its elements were closed");
+        }
+
+        out.finish();
+    }
+
+    private void applyAttributeEdits(final XmlScanner scanner, final List<Edit> matching, final Charset charset,
+                                     final Output out) throws IOException {
+        // edits must be applied in the order the attributes appear in the tag
+        for (int i = 0, count = scanner.getAttributeCount(); i < count; i++) {
+            for (Edit edit : matching) {
+                if (edit.type != Edit.ATTRIBUTE
+                        || !edit.localName.equals(scanner.getAttributeLocalName(i))
+                        || !edit.namespaceURI.equals(scanner.getAttributeNamespace(i))) {
+                    continue;
+                }
+
+                if (edit.replacement == null) {
+                    out.copy(scanner.getAttributeStart(i));
+                    out.skip(scanner.getAttributeValueEnd(i) + 1);
+                } else {
+                    final String value = edit.replacement.apply(scanner.getAttributeValue(i));
+                    out.copy(scanner.getAttributeValueStart(i));
+                    out.write(XmlScanner.escape(value).replace("'", "&apos;").getBytes(charset));
+                    out.skip(scanner.getAttributeValueEnd(i));
+                }
+                break;
+            }
+        }
+    }
+
+    private static boolean contains(final List<Edit> edits, final int type) {
+        return find(edits, type) != null;
+    }
+
+    private static Edit find(final List<Edit> edits, final int type) {
+        for (Edit edit : edits) {
+            if (edit.type == type) {
+                return edit;
+            }
+        }
+        return null;
+    }
+
+    private static final class Edit {
+        private static final int DROP = 0;
+        private static final int TEXT = 1;
+        private static final int ATTRIBUTE = 2;
+
+        private final int type;
+        private final String localName;
+        private final String namespaceURI;
+        private final UnaryOperator<String> replacement;
+
+        private Edit(final int type, final String attributeName, final UnaryOperator<String> replacement) {
+            this.type = type;
+            this.replacement = replacement;
+
+            if (type != ATTRIBUTE) {
+                localName = null;
+                namespaceURI = null;
+                return;
+            }
+
+            if (attributeName == null || attributeName.isEmpty()) {
+                throw new IllegalArgumentException("the attribute name cannot be null or empty");
+            }
+            if (attributeName.charAt(0) == '[') {
+                final int endIndex = attributeName.indexOf(']');
+                if (endIndex <= 1 || endIndex == attributeName.length() - 1) {
+                    throw new IllegalArgumentException("the attribute name looks to be incomplete: " + attributeName);
+                }
+                namespaceURI = attributeName.substring(1, endIndex);
+                localName = attributeName.substring(endIndex + 1);
+            } else {
+                namespaceURI = "";
+                localName = attributeName;
+            }
+        }
+    }
+
+    /**
+     * Where the transformed document goes. Offsets are absolute offsets in the input, the bytes between the
+     * last copied or skipped offset and the given one are copied from the input.
+     */
+    private interface Output {
+        void copy(long offset) throws IOException;
+
+        void skip(long offset) throws IOException;
+
+        /**
+         * Stops copying until the next call to {@link #skip(long)}.
+         */
+        void suspend() throws IOException;
+
+        void write(byte[] bytes) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static final class StreamOutput implements Output {
+        private final XmlScanner scanner;
+        private final OutputStream out;
+
+        private StreamOutput(final XmlScanner scanner, final OutputStream out) {
+            this.scanner = scanner;
+            this.out = out;
+        }
+
+        @Override
+        public void copy(final long offset) throws IOException {
+            scanner.copyTo(offset);
+        }
+
+        @Override
+        public void skip(final long offset) {
+            scanner.skipTo(offset);
+        }
+
+        @Override
+        public void suspend() {
+            scanner.skipTo(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void write(final byte[] bytes) throws IOException {
+            out.write(bytes);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            scanner.copyRemaining();
+        }
+    }
+
+    private static final class ChannelOutput implements Output {
+        private final FileChannel source;
+        private final FileChannel target;
+
+        private long copied;
+
+        private ChannelOutput(final FileChannel source, final FileChannel target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        public void copy(final long offset) throws IOException {
+            while (copied < offset) {
+                final long transferred = source.transferTo(copied, offset - copied, target);
+                if (transferred == 0 && copied >= source.size()) {
+                    throw new EOFException("the source ended at byte " + copied + " before byte " + offset
+                            + ", it was truncated while being transformed");
+                }
+                copied += transferred;
+            }
+        }
+
+        @Override
+        public void skip(final long offset) {
+            copied = offset;
+        }
+
+        @Override
+        public void suspend() {
+            // nothing is copied implicitly, there is nothing to suspend
+        }
+
+        @Override
+        public void write(final byte[] bytes) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            copy(source.size());
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.github.codechapin.sxpj.bind;
+
+import com.github.codechapin.sxpj.XmlParserException;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Builds the functions used by {@link XmlBinding} to create records and set their properties.
+ * </p>
+ * <p>
+ * Public constructors and setters are linked with {@link LambdaMetafactory}, so calling them costs the same as
+ * calling a hand-written lambda: a direct, inlinable call with no reflection and no boxing of primitive
+ * values. Fields, and members that cannot be linked that way, go through a {@link MethodHandle} obtained once.
+ * The classes spun by {@link LambdaMetafactory} belong to the class loader of this class, so the members of a
+ * class it cannot see (e.g. loaded by a plugin or web application class loader) go through a
+ * {@link MethodHandle} as well.
+ * </p>
+ */
+final class Accessors {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /**
+     * Sets a property of a record from the text of an attribute or an element.
+     */
+    interface Setter<T> {
+        void set(T record, String value);
+    }
+
+    private Accessors() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Supplier<T> constructor(final Class<T> type) {
+        final MethodHandle handle;
+        try {
+            handle = LOOKUP.findConstructor(type, MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException(type.getName() + " must have a public no-argument constructor", e);
+        }
+        if (!linkable(type)) {
+            return () -> (T) invoke(handle);
+        }
+
+        try {
+            final CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    handle,
+                    MethodType.methodType(type));
+            return (Supplier<T>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            return () -> (T) invoke(handle);
+        }
+    }
+
+    static <T> Setter<T> setter(final Class<T> type, final Method method) {
+        if (method.getParameterCount() != 1 || Modifier.isStatic(method.getModifiers())) {
+            throw new IllegalArgumentException("@XmlPath can only be used on setters taking one argument: " + method);
+        }
+
+        final MethodHandle handle;
+        try {
+            // like for fields, reflection is only used once, here, to allow binding non-public setters
+            if (!Modifier.isPublic(method.getModifiers())
+                    || !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                method.setAccessible(true);
+            }
+            handle = LOOKUP.unreflect(method);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException("cannot access setter " + method, e);
+        }
+
+        final Class<?> parameter = method.getParameterTypes()[0];
+        if (!linkable(type)) {
+            return invoker(parameter, handle);
+        }
+        try {
+            return link(type, parameter, handle);
+        } catch (Throwable e) {
+            return invoker(parameter, handle);
+        }
+    }
+
+    static <T> Setter<T> setter(final Field field) {
+        if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+            throw new IllegalArgumentException("@XmlPath cannot be used on static or final fields: " + field);
+        }
+
+        final MethodHandle handle;
+        try {
+            // reflection is only used once, here, to allow binding non-public fields
+            field.setAccessible(true);
+            handle = LOOKUP.unreflectSetter(field);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException("cannot access field " + field, e);
+        }
+
+        return invoker(field.getType(), handle);
+    }
+
+    /**
+     * @return <code>true</code> if the class is visible from the class loader of this class, which the classes
+     * spun by {@link LambdaMetafactory} refer to it from. Otherwise linking succeeds but the calls resolve another
+     * class of the same name, or none, and fail with a {@link ClassCastException} or a {@link NoClassDefFoundError}.
+     */
+    private static boolean linkable(final Class<?> type) {
+        try {
+            return Class.forName(type.getName(), false, Accessors.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Setter<T> link(final Class<T> type, final Class<?> parameter, final MethodHandle handle)
+            throws Throwable {
+        if (parameter == int.class) {
+            final ObjIntConsumer<T> consumer = (ObjIntConsumer<T>) metafactory(ObjIntConsumer.class,
+                    int.class, handle, MethodType.methodType(void.class, type, int.class));
+            return (record, value) -> consumer.accept(record, Integer.parseInt(value));
+        }
+        if (parameter == long.class) {
+            final ObjLongConsumer<T> consumer = (ObjLongConsumer<T>) metafactory(ObjLongConsumer.class,
+                    long.class, handle, MethodType.methodType(void.class, type, long.class));
+            return (record, value) -> consumer.accept(record, Long.parseLong(value));
+        }
+        if (parameter == double.class) {
+            final ObjDoubleConsumer<T> consumer = (ObjDoubleConsumer<T>) metafactory(ObjDoubleConsumer.class,
+                    double.class, handle, MethodType.methodType(void.class, type, double.class));
+            return (record, value) -> consumer.accept(record, Double.parseDouble(value));
+        }
+
+        final Class<?> boxed = box(parameter);
+        final BiConsumer<T, Object> consumer = (BiConsumer<T, Object>) metafactory(BiConsumer.class,
+                Object.class, handle, MethodType.methodType(void.class, type, boxed));
+
+        if (boxed == String.class) {
+            return consumer::accept;
+        }
+        if (boxed == Boolean.class) {
+            return (record, value) -> consumer.accept(record, Boolean.valueOf(value));
+        }
+        if (boxed == Integer.class) {
+            return (record, value) -> consumer.accept(record, Integer.valueOf(value));
+        }
+        if (boxed == Long.class) {
+            return (record, value) -> consumer.accept(record, Long.valueOf(value));
+        }
+        if (boxed == Double.class) {
+            return (record, value) -> consumer.accept(record, Double.valueOf(value));
+        }
+        throw unsupported(parameter);
+    }
+
+    private static Object metafactory(final Class<?> functionalInterface, final Class<?> valueType,
+                                      final MethodHandle handle, final MethodType instantiated) throws Throwable {
+        final CallSite site = LambdaMetafactory.metafactory(LOOKUP, "accept",
+                MethodType.methodType(functionalInterface),
+                MethodType.methodType(void.class, Object.class, valueType),
+                handle,
+                instantiated);
+        return site.getTarget().invoke();
+    }
+
+    /**
+     * Fallback for fields and for members {@link LambdaMetafactory} cannot link.
+     */
+    private static <T> Setter<T> invoker(final Class<?> parameter, final MethodHandle handle) {
+        final MethodHandle generic = handle.asType(MethodType.methodType(void.class, Object.class, parameter));
+
+        if (parameter == int.class) {
+            return (record, value) -> invoke(generic, record, Integer.parseInt(value));
+        }
+        if (parameter == long.class) {
+            return (record, value) -> invoke(generic, record, Long.parseLong(value));
+        }
+        if (parameter == double.class) {
+            return (record, value) -> invoke(generic, record, Double.parseDouble(value));
+        }
+        if (parameter == boolean.class) {
+            return (record, value) -> invoke(generic, record, Boolean.parseBoolean(value));
+        }
+
+        final MethodHandle boxed = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        final Class<?> type = box(parameter);
+        if (type == String.class) {
+            return (record, value) -> invoke(boxed, record, value);
+        }
+        if (type == Integer.class) {
+            return (record, value) -> invoke(boxed, record, Integer.valueOf(value));
+        }
+        if (type == Long.class) {
+            return (record, value) -> invoke(boxed, record, Long.valueOf(value));
+        }
+        if (type == Double.class) {
+            return (record, value) -> invoke(boxed, record, Double.valueOf(value));
+        }
+        if (type == Boolean.class) {
+            return (record, value) -> invoke(boxed, record, Boolean.valueOf(value));
+        }
+        throw unsupported(parameter);
+    }
+
+    private static Class<?> box(final Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.class;
+        }
+        if (type == int.class) {
+            return Integer.class;
+        }
+        if (type == long.class) {
+            return Long.class;
+        }
+        if (type == double.class) {
+            return Double.class;
+        }
+        return type;
+    }
+
+    private static IllegalArgumentException unsupported(final Class<?> type) {
+        return new IllegalArgumentException("unsupported @XmlPath property type " + type.getName()
+                + ", supported types are String, boolean, int, long, double and their wrappers");
+    }
+
+    private static Object invoke(final MethodHandle handle) {
+        try {
+            return handle.invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new XmlParserException(e.getMessage(), (Exception) e);
+        }
+    }
+
+    private static void invoke(final MethodHandle handle, final Object record, final Object value) {
+        try {
+            handle.invokeExact(record, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new XmlParserException(e.getMessage(), (Exception) e);
+        }
+    }
+
+    private static void invoke(final MethodHandle handle, final Object record, final int value) {
+        try {
+            handle.invokeExact(record, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new XmlParserException(e.getMessage(), (Exception) e);
+        }
+    }
+
+    private static void invoke(final MethodHandle handle, final Object record, final long value) {
+        try {
+            handle.invokeExact(record, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new XmlParserException(e.getMessage(), (Exception) e);
+        }
+    }
+
+    private static void invoke(final MethodHandle handle, final Object record, final double value) {
+        try {
+            handle.invokeExact(record, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new XmlParserException(e.getMessage(), (Exception) e);
+        }
+    }
+
+    private static void invoke(final MethodHandle handle, final Object record, final boolean value) {
+        try {
+            handle.invokeExact(record, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new XmlParserException(e.getMessage(), (Exception) e);
+        }
+    }
+}
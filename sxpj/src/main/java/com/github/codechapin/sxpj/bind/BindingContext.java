@@ -0,0 +1,133 @@
+package com.github.codechapin.sxpj.bind;
+
+import com.github.codechapin.sxpj.RecordPool;
+import com.github.codechapin.sxpj.Rule;
+import com.github.codechapin.sxpj.handler.Element;
+
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * State object of the rules built by {@link XmlBinding}: holds the record being populated and hands every
+ * completed record to a consumer.
+ * </p>
+ * <p>
+ * The static factories build the same rules from plain functions, they are used by {@link XmlBinding} and by the
+ * classes generated at build time by the <code>sxpj-processor</code> module.
+ * </p>
+ */
+public class BindingContext<T> {
+    private final Consumer<? super T> consumer;
+
+    private T current;
+    private long count;
+
+    /**
+     * @param consumer receives every record once its element is closed.
+     */
+    public BindingContext(final Consumer<? super T> consumer) {
+        Objects.requireNonNull(consumer, "The Consumer cannot be null");
+        this.consumer = consumer;
+    }
+
+    /**
+     * @return the record being populated or <code>null</code> when outside of a record element.
+     */
+    public T current() {
+        return current;
+    }
+
+    /**
+     * @return how many records were handed to the consumer.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param path        the location path of the record elements.
+     * @param constructor creates a record when its element starts.
+     * @return the rule creating the records and handing them to the consumer when their element ends.
+     */
+    public static <T> Rule<BindingContext<T>> records(final String path, final Supplier<? extends T> constructor) {
+        Objects.requireNonNull(constructor, "The constructor cannot be null");
+        return Rule.element(path, (element, context, parser) -> {
+            if (element == Element.START) {
+                context.begin(constructor.get());
+            } else {
+                context.end();
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #records(String, Supplier)} with records borrowed from a pool, and released to it once the
+     * consumer has returned. The consumer must not keep the records.
+     *
+     * @param path the location path of the record elements.
+     * @param pool lends a record when its element starts.
+     * @return the rule borrowing the records and handing them to the consumer when their element ends.
+     */
+    public static <T> Rule<BindingContext<T>> records(final String path, final RecordPool<T> pool) {
+        Objects.requireNonNull(pool, "The RecordPool cannot be null");
+        return Rule.element(path, (element, context, parser) -> {
+            if (element == Element.START) {
+                context.begin(pool.borrow());
+                return;
+            }
+
+            final T record = context.current();
+            try {
+                context.end();
+            } finally {
+                pool.release(record);
+            }
+        });
+    }
+
+    /**
+     * @param path   the location path of the element holding the attribute.
+     * @param name   the attribute name, <code>[namespace]name</code> for a namespaced attribute.
+     * @param setter called with the current record and the attribute value, missing attributes are ignored.
+     * @return the rule setting the property.
+     */
+    public static <T> Rule<BindingContext<T>> attribute(final String path, final String name,
+                                                        final BiConsumer<? super T, String> setter) {
+        Objects.requireNonNull(setter, "The setter cannot be null");
+        return Rule.attributes(path, (attributeName, value, context, parser) -> {
+            final T record = context.current();
+            if (record != null && value != null) {
+                setter.accept(record, value);
+            }
+        }, name);
+    }
+
+    /**
+     * @param path   the location path of the element.
+     * @param setter called with the current record and the text of the element, empty text is ignored.
+     * @return the rule setting the property.
+     */
+    public static <T> Rule<BindingContext<T>> text(final String path, final BiConsumer<? super T, String> setter) {
+        Objects.requireNonNull(setter, "The setter cannot be null");
+        return Rule.characters(path, (chars, context, parser) -> {
+            final T record = context.current();
+            if (record != null && !chars.isEmpty()) {
+                setter.accept(record, chars);
+            }
+        });
+    }
+
+    void begin(final T record) {
+        current = record;
+    }
+
+    void end() {
+        final T record = current;
+        current = null;
+        count++;
+        consumer.accept(record);
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.codechapin.sxpj.bind;
+
+import com.github.codechapin.sxpj.Rule;
+import com.github.codechapin.sxpj.XmlParser;
+import com.github.codechapin.sxpj.XmlParserFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Compiles a class annotated with {@link XmlPath} into the {@link Rule}s that populate it, replacing the
+ * element, attribute and characters rules that would otherwise be written by hand:
+ * </p>
+ * <pre>
+ * final List&lt;Movie&gt; movies = new ArrayList&lt;&gt;();
+ * XmlBinding.of(Movie.class).newParser(factory).parse(in, new BindingContext&lt;&gt;(movies::add));
+ * </pre>
+ * <p>
+ * A new record is created when its element starts, its properties are set as their attributes and text are
+ * parsed, and it is handed to the {@link BindingContext}'s consumer when its element ends.
+ * </p>
+ * <h3>Performance</h3>
+ * <p>
+ * The annotations are only read once per class, the result is cached. Every bound property gets its own rule
+ * calling a setter generated with {@link java.lang.invoke.LambdaMetafactory}, so there is no reflection and no
+ * per-field <code>switch</code> while parsing. Empty text and missing attributes are ignored.
+ * </p>
+ * <p>
+ * When even the one-time reflection matters (short-lived processes, ahead-of-time compilation), the
+ * <code>sxpj-processor</code> annotation processor generates the same rules at build time in a
+ * <code>&lt;Type&gt;_XmlBinding</code> class.
+ * </p>
+ */
+public final class XmlBinding<T> {
+    private static final ClassValue<XmlBinding<?>> BINDINGS = new ClassValue<XmlBinding<?>>() {
+        @Override
+        protected XmlBinding<?> computeValue(final Class<?> type) {
+            return new XmlBinding<>(type);
+        }
+    };
+
+    private final Class<T> type;
+    private final String path;
+    private final Rule<BindingContext<T>>[] rules;
+
+    @SuppressWarnings("unchecked")
+    private XmlBinding(final Class<T> type) {
+        final XmlPath annotation = type.getAnnotation(XmlPath.class);
+        if (annotation == null) {
+            throw new IllegalArgumentException(type.getName() + " must be annotated with @XmlPath");
+        }
+
+        this.type = type;
+        this.path = annotation.value();
+
+        final Supplier<T> constructor = Accessors.constructor(type);
+        final List<Rule<BindingContext<T>>> list = new ArrayList<>();
+
+        list.add(BindingContext.records(path, constructor));
+
+        // an overriding method replaces the one of its superclass, whether it is annotated or not
+        final Set<String> overridden = new HashSet<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (method.isBridge() || method.isSynthetic()) {
+                    continue;
+                }
+                if (!Modifier.isPrivate(method.getModifiers()) && !Modifier.isStatic(method.getModifiers())
+                        && !overridden.add(method.getName() + Arrays.toString(method.getParameterTypes()))) {
+                    continue;
+                }
+
+                final XmlPath property = method.getAnnotation(XmlPath.class);
+                if (property != null) {
+                    list.add(rule(property.value(), Accessors.setter(type, method)));
+                }
+            }
+        }
+
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                final XmlPath property = field.getAnnotation(XmlPath.class);
+                if (property != null) {
+                    list.add(rule(property.value(), Accessors.<T>setter(field)));
+                }
+            }
+        }
+
+        if (list.size() == 1) {
+            throw new IllegalArgumentException(type.getName() + " has no setter or field annotated with @XmlPath");
+        }
+
+        this.rules = list.toArray(new Rule[list.size()]);
+    }
+
+    /**
+     * @param type a class annotated with {@link XmlPath}, with a public no-argument constructor.
+     * @return the binding of the class, compiled on the first call and cached.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> XmlBinding<T> of(final Class<T> type) {
+        Objects.requireNonNull(type, "The type cannot be null");
+        return (XmlBinding<T>) BINDINGS.get(type);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return the location path of the record elements.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the rules populating the records, they can be combined with other rules on the same parser.
+     */
+    public Rule<BindingContext<T>>[] getRules() {
+        return rules.clone();
+    }
+
+    /**
+     * @return a new parser using the rules of this binding.
+     */
+    public XmlParser<BindingContext<T>> newParser(final XmlParserFactory factory) {
+        Objects.requireNonNull(factory, "The XmlParserFactory cannot be null");
+        return factory.newParser(rules);
+    }
+
+    private Rule<BindingContext<T>> rule(final String value, final Accessors.Setter<T> setter) {
+        final String absolute = resolve(value);
+
+        final int attribute = absolute.lastIndexOf("/@");
+        if (attribute >= 0) {
+            final String elementPath = attribute == 0 ? path : absolute.substring(0, attribute);
+            return BindingContext.attribute(elementPath, absolute.substring(attribute + 2), setter::set);
+        }
+
+        return BindingContext.text(absolute, setter::set);
+    }
+
+    /**
+     * @return the absolute path of a property, relative paths are resolved against the record path.
+     */
+    private String resolve(final String value) {
+        if (value.startsWith("/")) {
+            return value;
+        }
+        if (value.isEmpty() || value.equals(".")) {
+            return path;
+        }
+        return path + '/' + value;
+    }
+
+    @Override
+    public String toString() {
+        return "XmlBinding{" +
+                "type=" + type.getName() +
+                ", path='" + path + '\'' +
+                ", rules=" + rules.length +
+                '}';
+    }
+}
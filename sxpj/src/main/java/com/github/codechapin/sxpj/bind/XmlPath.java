@@ -0,0 +1,32 @@
+package com.github.codechapin.sxpj.bind;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Binds a class, a setter or a field to a location path, see {@link XmlBinding}.
+ * </p>
+ * <p>
+ * On a class, the value is the path of the element that makes one record (e.g. "/imdb/category/movie"). On a
+ * setter or a field, the value is either absolute or relative to the record path, and ends with
+ * <code>@name</code> (or <code>@[namespace]name</code>) to bind an attribute instead of the element's text:
+ * </p>
+ * <pre>
+ * &#64;XmlPath("/imdb/category/movie")
+ * public class Movie {
+ *     &#64;XmlPath("@id")      public void setId(String id)
+ *     &#64;XmlPath("name")     public void setName(String name)
+ *     &#64;XmlPath("year")     public void setYear(int year)
+ * }
+ * </pre>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD, ElementType.FIELD})
+public @interface XmlPath {
+    String value();
+}
@@ -0,0 +1,136 @@
+package com.github.codechapin.sxpj.column;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A typed column of a {@link Columns} set: one value per record, appended into a growable primitive array, and a
+ * bitmap of the records the value was missing from.
+ * </p>
+ * <p>
+ * Bit <code>row % 64</code> of word <code>row / 64</code> of {@link #getMissing()} is set when the record had no
+ * value for this column, the value stored for such a row is the column's default (0, or -1 for the codes of a
+ * {@link StringColumn}).
+ * </p>
+ */
+public abstract class Column {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String path;
+
+    private long[] missing = new long[0];
+    private int missingCount;
+    private int capacity;
+    private int size;
+
+    // row of the last value set, -1 when the current record has none yet
+    private int lastRow = -1;
+
+    Column(final String path) {
+        this.path = path;
+    }
+
+    /**
+     * @return the location path the column is bound to, e.g. <code>/rows/row/@id</code>.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the number of rows, which is the number of records completed by the parses.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return <code>true</code> if the record of the given row had no value for this column.
+     */
+    public boolean isMissing(final int row) {
+        checkRow(row);
+        return (missing[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * @return the number of rows with a missing value.
+     */
+    public int getMissingCount() {
+        return missingCount;
+    }
+
+    /**
+     * @return a copy of the missing-value bitmap, <code>(size() + 63) / 64</code> words long.
+     */
+    public long[] getMissing() {
+        return Arrays.copyOf(missing, (size + 63) >>> 6);
+    }
+
+    /**
+     * Parses the text of a value and stores it at the given row, the last value wins if the record has several.
+     *
+     * @param row  the row of the current record.
+     * @param text the attribute value or element text, <code>null</code> or empty when missing.
+     */
+    void set(final int row, final String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        ensureCapacity(row + 1);
+        store(row, text);
+        lastRow = row;
+    }
+
+    /**
+     * Completes the row of a record, marking it missing if no value was set.
+     */
+    void endRow(final int row) {
+        ensureCapacity(row + 1);
+        if (lastRow != row) {
+            storeDefault(row);
+            missing[row >>> 6] |= 1L << row;
+            missingCount++;
+        }
+        lastRow = -1;
+        size = row + 1;
+    }
+
+    /**
+     * Removes every row, keeping the arrays for the next parse.
+     */
+    void clear() {
+        Arrays.fill(missing, 0, (size + 63) >>> 6, 0L);
+        missingCount = 0;
+        lastRow = -1;
+        size = 0;
+    }
+
+    void checkRow(final int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " is not in [0, " + size + ")");
+        }
+    }
+
+    private void ensureCapacity(final int rows) {
+        if (rows <= capacity) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, INITIAL_CAPACITY);
+        while (newCapacity < rows) {
+            newCapacity += newCapacity >>> 1;
+        }
+        resize(newCapacity);
+        missing = Arrays.copyOf(missing, (newCapacity + 63) >>> 6);
+        capacity = newCapacity;
+    }
+
+    /**
+     * Grows the value array of the column to the given number of rows.
+     */
+    abstract void resize(int capacity);
+
+    abstract void store(int row, String text);
+
+    abstract void storeDefault(int row);
+}
@@ -0,0 +1,139 @@
+package com.github.codechapin.sxpj.column;
+
+import com.github.codechapin.sxpj.FieldRule;
+import com.github.codechapin.sxpj.Rule;
+import com.github.codechapin.sxpj.handler.Element;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>
+ * Extracts fields of records into typed columns instead of one object per record:
+ * </p>
+ * <pre>
+ * final Columns columns = new Columns("/rows/row");
+ * final LongColumn id = columns.longColumn("/rows/row/@id");
+ * final DoubleColumn price = columns.doubleColumn("/rows/row/price");
+ * final StringColumn category = columns.stringColumn("/rows/row/category");
+ *
+ * factory.newParser(columns.rules()).parse(in, columns);
+ * final double[] prices = price.toArray();
+ * </pre>
+ * <p>
+ * A column is bound to the text of an element or, when the last step of its path starts with <code>@</code>, to
+ * an attribute (<code>@[namespace]name</code> for a namespaced one). Its path must be the record path or below
+ * it. Every record element that ends adds a row to all the columns, fields the record did not have are flagged in
+ * the missing-value bitmap of their column.
+ * </p>
+ * <p>
+ * The values are appended into primitive arrays that grow by half when full, so extracting a field costs no
+ * object per record beyond the <code>String</code> the parser hands to the rules. {@link #clear()} keeps the
+ * arrays, parsing the next document into the same columns allocates nothing once they are large enough.
+ * </p>
+ * <p>
+ * Like {@link com.github.codechapin.sxpj.XmlParser}, instances of this class are not thread-safe.
+ * </p>
+ */
+public class Columns {
+    private final String recordPath;
+    private final List<Column> columns = new ArrayList<>();
+
+    private int rows;
+    private boolean inRecord;
+
+    /**
+     * @param recordPath the location path of the record elements, e.g. <code>/rows/row</code>.
+     */
+    public Columns(final String recordPath) {
+        Objects.requireNonNull(recordPath, "The record path cannot be null");
+        if (recordPath.isEmpty() || recordPath.endsWith("/")) {
+            throw new IllegalArgumentException("'" + recordPath + "' is not a valid record path");
+        }
+        this.recordPath = recordPath;
+    }
+
+    public LongColumn longColumn(final String path) {
+        return add(new LongColumn(FieldRule.check(recordPath, path, "column")));
+    }
+
+    public DoubleColumn doubleColumn(final String path) {
+        return add(new DoubleColumn(FieldRule.check(recordPath, path, "column")));
+    }
+
+    public StringColumn stringColumn(final String path) {
+        return add(new StringColumn(FieldRule.check(recordPath, path, "column")));
+    }
+
+    /**
+     * @return the rules filling the columns declared so far, a column declared later is not filled by them.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Rule<Columns>[] rules() {
+        final Rule<Columns>[] rules = new Rule[columns.size() + 1];
+        rules[0] = Rule.element(recordPath, (element, state, parser) -> {
+            if (element == Element.START) {
+                state.inRecord = true;
+            } else {
+                state.endRecord();
+            }
+        });
+
+        for (int i = 0; i < columns.size(); i++) {
+            final Column column = columns.get(i);
+            rules[i + 1] = FieldRule.of(column.getPath(), (value, state, parser) -> {
+                if (state.inRecord) {
+                    column.set(state.rows, value);
+                }
+            });
+        }
+        return rules;
+    }
+
+    /**
+     * @return the number of rows, the records completed by the parses since the last {@link #clear()}.
+     */
+    public int size() {
+        return rows;
+    }
+
+    public String getRecordPath() {
+        return recordPath;
+    }
+
+    /**
+     * @return the columns in the order they were declared.
+     */
+    public List<Column> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Removes every row and dictionary entry, keeping the arrays of the columns for the next parse.
+     */
+    public void clear() {
+        for (Column column : columns) {
+            column.clear();
+        }
+        rows = 0;
+        inRecord = false;
+    }
+
+    private void endRecord() {
+        for (Column column : columns) {
+            column.endRow(rows);
+        }
+        rows++;
+        inRecord = false;
+    }
+
+    private <C extends Column> C add(final C column) {
+        if (rows > 0) {
+            throw new IllegalStateException("columns cannot be added once rows were extracted");
+        }
+        columns.add(column);
+        return column;
+    }
+}
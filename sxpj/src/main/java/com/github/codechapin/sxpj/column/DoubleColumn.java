@@ -0,0 +1,50 @@
+package com.github.codechapin.sxpj.column;
+
+import com.github.codechapin.sxpj.XmlParserException;
+
+import java.util.Arrays;
+
+/**
+ * Column of <code>double</code> values, parsed with {@link Double#parseDouble(String)}.
+ */
+public final class DoubleColumn extends Column {
+    private double[] values = new double[0];
+
+    DoubleColumn(final String path) {
+        super(path);
+    }
+
+    /**
+     * @return the value of the given row, 0 if it is {@link #isMissing(int) missing}.
+     */
+    public double get(final int row) {
+        checkRow(row);
+        return values[row];
+    }
+
+    /**
+     * @return a copy of the values, {@link #size()} long.
+     */
+    public double[] toArray() {
+        return Arrays.copyOf(values, size());
+    }
+
+    @Override
+    void resize(final int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    void store(final int row, final String text) {
+        try {
+            values[row] = Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new XmlParserException("'" + text + "' at " + getPath() + " is not a double", e);
+        }
+    }
+
+    @Override
+    void storeDefault(final int row) {
+        values[row] = 0d;
+    }
+}
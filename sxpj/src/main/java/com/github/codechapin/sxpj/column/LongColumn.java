@@ -0,0 +1,50 @@
+package com.github.codechapin.sxpj.column;
+
+import com.github.codechapin.sxpj.XmlParserException;
+
+import java.util.Arrays;
+
+/**
+ * Column of <code>long</code> values, parsed with {@link Long#parseLong(String)}.
+ */
+public final class LongColumn extends Column {
+    private long[] values = new long[0];
+
+    LongColumn(final String path) {
+        super(path);
+    }
+
+    /**
+     * @return the value of the given row, 0 if it is {@link #isMissing(int) missing}.
+     */
+    public long get(final int row) {
+        checkRow(row);
+        return values[row];
+    }
+
+    /**
+     * @return a copy of the values, {@link #size()} long.
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(values, size());
+    }
+
+    @Override
+    void resize(final int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    void store(final int row, final String text) {
+        try {
+            values[row] = Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new XmlParserException("'" + text + "' at " + getPath() + " is not a long", e);
+        }
+    }
+
+    @Override
+    void storeDefault(final int row) {
+        values[row] = 0L;
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.codechapin.sxpj.column;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Dictionary-encoded column of strings: every distinct value is stored once in the dictionary and each row holds
+ * the <code>int</code> code of its value, its index in {@link #getDictionary()}.
+ * </p>
+ * <p>
+ * Meant for low-cardinality fields such as categories or country codes, a column of mostly distinct values grows
+ * a dictionary as large as the data.
+ * </p>
+ */
+public final class StringColumn extends Column {
+    private static final int MISSING = -1;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+
+    private int[] values = new int[0];
+
+    StringColumn(final String path) {
+        super(path);
+    }
+
+    /**
+     * @return the value of the given row, <code>null</code> if it is {@link #isMissing(int) missing}.
+     */
+    public String get(final int row) {
+        final int code = getCode(row);
+        return code == MISSING ? null : dictionary.get(code);
+    }
+
+    /**
+     * @return the dictionary code of the value of the given row, -1 if it is {@link #isMissing(int) missing}.
+     */
+    public int getCode(final int row) {
+        checkRow(row);
+        return values[row];
+    }
+
+    /**
+     * @return a copy of the codes, {@link #size()} long.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size());
+    }
+
+    /**
+     * @return the distinct values in the order they were first seen, indexed by their code.
+     */
+    public List<String> getDictionary() {
+        return Collections.unmodifiableList(dictionary);
+    }
+
+    @Override
+    void resize(final int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    void store(final int row, final String text) {
+        Integer code = codes.get(text);
+        if (code == null) {
+            code = dictionary.size();
+            codes.put(text, code);
+            dictionary.add(text);
+        }
+        values[row] = code;
+    }
+
+    @Override
+    void storeDefault(final int row) {
+        values[row] = MISSING;
+    }
+
+    @Override
+    void clear() {
+        super.clear();
+        codes.clear();
+        dictionary.clear();
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.codechapin.sxpj.convert;
+
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * <p>
+ * Writes every record as a CSV line (RFC 4180), preceded by a header line with the field names when the first
+ * record is written. A value containing the delimiter, a quote or a line break is quoted, its quotes doubled; a
+ * missing value is written as an empty field. Lines end with <code>\n</code>.
+ * </p>
+ * <p>
+ * See {@link RecordWriter} for how fields are mapped.
+ * </p>
+ */
+public class CsvWriter extends RecordWriter {
+    private final char delimiter;
+    private final boolean header;
+
+    /**
+     * Same as {@link #CsvWriter(Writer, String, char, boolean)} with a comma delimiter and a header line.
+     */
+    public CsvWriter(final Writer out, final String recordPath) {
+        this(out, recordPath, ',', true);
+    }
+
+    /**
+     * @param out        receives the lines.
+     * @param recordPath the location path of the record elements.
+     * @param delimiter  separates the fields of a line.
+     * @param header     <code>true</code> to start with a line of field names.
+     */
+    public CsvWriter(final Writer out, final String recordPath, final char delimiter, final boolean header) {
+        super(out, recordPath);
+        if (delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+            throw new IllegalArgumentException("a quote or a line break cannot be the delimiter");
+        }
+        this.delimiter = delimiter;
+        this.header = header;
+    }
+
+    @Override
+    public CsvWriter field(final String name, final String path) {
+        super.field(name, path);
+        return this;
+    }
+
+    @Override
+    public CsvWriter numberField(final String name, final String path) {
+        super.numberField(name, path);
+        return this;
+    }
+
+    @Override
+    void writeRecord(final String[] values) {
+        if (header && getRecords() == 0) {
+            final List<String> names = names();
+            for (int i = 0; i < names.size(); i++) {
+                if (i > 0) {
+                    append(delimiter);
+                }
+                appendValue(names.get(i));
+            }
+            writeLine();
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                append(delimiter);
+            }
+            if (values[i] != null) {
+                appendValue(values[i]);
+            }
+        }
+    }
+
+    private void appendValue(final String value) {
+        if (!needsQuotes(value)) {
+            append(value);
+            return;
+        }
+
+        append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"') {
+                append('"');
+            }
+            append(c);
+        }
+        append('"');
+    }
+
+    private boolean needsQuotes(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == delimiter || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
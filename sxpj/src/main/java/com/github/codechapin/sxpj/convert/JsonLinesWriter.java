@@ -0,0 +1,159 @@
+package com.github.codechapin.sxpj.convert;
+
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * <p>
+ * Writes every record as a JSON object on its own line (JSON Lines). Values are strings, except those of
+ * {@link #numberField(String, String) number fields} that are valid JSON numbers; missing values are left out of
+ * the object.
+ * </p>
+ * <p>
+ * See {@link RecordWriter} for how fields are mapped.
+ * </p>
+ */
+public class JsonLinesWriter extends RecordWriter {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * @param out        receives the lines.
+     * @param recordPath the location path of the record elements.
+     */
+    public JsonLinesWriter(final Writer out, final String recordPath) {
+        super(out, recordPath);
+    }
+
+    @Override
+    public JsonLinesWriter field(final String name, final String path) {
+        super.field(name, path);
+        return this;
+    }
+
+    @Override
+    public JsonLinesWriter numberField(final String name, final String path) {
+        super.numberField(name, path);
+        return this;
+    }
+
+    @Override
+    void writeRecord(final String[] values) {
+        final List<String> names = names();
+
+        append('{');
+        boolean first = true;
+        for (int i = 0; i < values.length; i++) {
+            final String value = values[i];
+            if (value == null) {
+                continue;
+            }
+            if (!first) {
+                append(',');
+            }
+            first = false;
+
+            appendString(names.get(i));
+            append(':');
+            if (isNumber(i) && isJsonNumber(value)) {
+                append(value);
+            } else {
+                appendString(value);
+            }
+        }
+        append('}');
+    }
+
+    private void appendString(final String s) {
+        append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    append('\\');
+                    append('"');
+                    break;
+                case '\\':
+                    append('\\');
+                    append('\\');
+                    break;
+                case '\n':
+                    append('\\');
+                    append('n');
+                    break;
+                case '\r':
+                    append('\\');
+                    append('r');
+                    break;
+                case '\t':
+                    append('\\');
+                    append('t');
+                    break;
+                default:
+                    if (c < 0x20) {
+                        append('\\');
+                        append('u');
+                        append('0');
+                        append('0');
+                        append(HEX[c >> 4]);
+                        append(HEX[c & 0xF]);
+                    } else {
+                        append(c);
+                    }
+            }
+        }
+        append('"');
+    }
+
+    /**
+     * @return <code>true</code> if the value matches the number grammar of RFC 8259.
+     */
+    static boolean isJsonNumber(final String s) {
+        final int length = s.length();
+        int i = 0;
+        if (i < length && s.charAt(i) == '-') {
+            i++;
+        }
+
+        // int: 0 or a non-zero digit followed by digits
+        if (i == length) {
+            return false;
+        }
+        if (s.charAt(i) == '0') {
+            i++;
+        } else {
+            final int start = i;
+            i = digits(s, i);
+            if (i == start) {
+                return false;
+            }
+        }
+
+        if (i < length && s.charAt(i) == '.') {
+            final int start = ++i;
+            i = digits(s, i);
+            if (i == start) {
+                return false;
+            }
+        }
+
+        if (i < length && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+                i++;
+            }
+            final int start = i;
+            i = digits(s, i);
+            if (i == start) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+
+    private static int digits(final String s, int i) {
+        while (i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,211 @@
+package com.github.codechapin.sxpj.convert;
+
+import com.github.codechapin.sxpj.FieldRule;
+import com.github.codechapin.sxpj.Rule;
+import com.github.codechapin.sxpj.XmlParserException;
+import com.github.codechapin.sxpj.handler.Element;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>
+ * Base of the converters writing every record of a document as one line of text, such as {@link CsvWriter} and
+ * {@link JsonLinesWriter}. Each output field is mapped to a location path, the text of an element or, when the
+ * last step of the path starts with <code>@</code>, an attribute (<code>@[namespace]name</code> for a namespaced
+ * one):
+ * </p>
+ * <pre>
+ * final JsonLinesWriter json = new JsonLinesWriter(out, "/rows/row")
+ *         .field("id", "/rows/row/@id")
+ *         .field("category", "/rows/row/category");
+ * factory.newParser(json.rules()).parse(in, json);
+ * json.flush();
+ * </pre>
+ * <p>
+ * The values of the current record are kept until its element ends, then the line is escaped into a single
+ * reused buffer and written to the {@link Writer}. Memory use depends on the largest record, not on the size of
+ * the document. If a record has a field more than once, the last value wins.
+ * </p>
+ * <p>
+ * The writer is not closed, the caller must take care to flush and close it. A writer that is not already
+ * buffered should be wrapped in a {@link java.io.BufferedWriter}, a channel can be written to through
+ * {@link java.nio.channels.Channels#newWriter}. Instances of this class are not thread-safe.
+ * </p>
+ */
+public abstract class RecordWriter implements Flushable {
+    private final Writer out;
+    private final String recordPath;
+
+    private final List<String> names = new ArrayList<>();
+    private final List<String> paths = new ArrayList<>();
+    private boolean[] numbers = new boolean[0];
+
+    private String[] values = new String[0];
+    private char[] buffer = new char[256];
+    private int length;
+
+    private boolean inRecord;
+    private long records;
+
+    /**
+     * @param out        receives the lines.
+     * @param recordPath the location path of the record elements, e.g. <code>/rows/row</code>.
+     */
+    RecordWriter(final Writer out, final String recordPath) {
+        Objects.requireNonNull(out, "The Writer cannot be null");
+        Objects.requireNonNull(recordPath, "The record path cannot be null");
+        if (recordPath.isEmpty() || recordPath.endsWith("/")) {
+            throw new IllegalArgumentException("'" + recordPath + "' is not a valid record path");
+        }
+        this.out = out;
+        this.recordPath = recordPath;
+    }
+
+    /**
+     * Adds a text field.
+     *
+     * @param name the name of the field in the output.
+     * @param path the location path of its value.
+     * @return this writer.
+     */
+    public RecordWriter field(final String name, final String path) {
+        return add(name, path, false);
+    }
+
+    /**
+     * Adds a numeric field, written as a number by the formats that tell numbers and text apart. A value that is
+     * not a number is written as text.
+     *
+     * @param name the name of the field in the output.
+     * @param path the location path of its value.
+     * @return this writer.
+     */
+    public RecordWriter numberField(final String name, final String path) {
+        return add(name, path, true);
+    }
+
+    /**
+     * @return the rules writing the records with the fields added so far.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Rule<RecordWriter>[] rules() {
+        final Rule<RecordWriter>[] rules = new Rule[paths.size() + 1];
+        rules[0] = Rule.element(recordPath, (element, state, parser) -> {
+            if (element == Element.START) {
+                state.inRecord = true;
+            } else {
+                state.endRecord();
+            }
+        });
+
+        for (int i = 0; i < paths.size(); i++) {
+            final int field = i;
+            rules[i + 1] = FieldRule.of(paths.get(i), (value, state, parser) -> {
+                if (state.inRecord) {
+                    state.values[field] = value;
+                }
+            });
+        }
+        return rules;
+    }
+
+    /**
+     * @return the number of records written.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    public String getRecordPath() {
+        return recordPath;
+    }
+
+    /**
+     * Flushes the underlying {@link Writer}.
+     */
+    @Override
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Appends the line of a record, without its line separator, to the buffer.
+     *
+     * @param values the value of each field, <code>null</code> when missing from the record.
+     */
+    abstract void writeRecord(String[] values);
+
+    /**
+     * @return the field names, in the order they were added.
+     */
+    List<String> names() {
+        return names;
+    }
+
+    boolean isNumber(final int field) {
+        return numbers[field];
+    }
+
+    void append(final char c) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = c;
+    }
+
+    void append(final String s) {
+        final int end = length + s.length();
+        if (end > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, end));
+        }
+        s.getChars(0, s.length(), buffer, length);
+        length = end;
+    }
+
+    /**
+     * Writes the buffer as one line and empties it.
+     */
+    void writeLine() {
+        append('\n');
+        try {
+            out.write(buffer, 0, length);
+        } catch (IOException e) {
+            throw new XmlParserException(e.getMessage(), e);
+        } finally {
+            length = 0;
+        }
+    }
+
+    private void endRecord() {
+        writeRecord(values);
+        writeLine();
+        Arrays.fill(values, null);
+        records++;
+        inRecord = false;
+    }
+
+    private RecordWriter add(final String name, final String path, final boolean number) {
+        Objects.requireNonNull(name, "The field name cannot be null");
+        FieldRule.check(recordPath, path, "field");
+        if (records > 0) {
+            throw new IllegalStateException("fields cannot be added once records were written");
+        }
+
+        names.add(name);
+        paths.add(path);
+        numbers = Arrays.copyOf(numbers, paths.size());
+        numbers[paths.size() - 1] = number;
+        values = new String[paths.size()];
+        return this;
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.codechapin.sxpj.handler;
+
+import com.github.codechapin.sxpj.Subtree;
+import com.github.codechapin.sxpj.XmlParser;
+
+/**
+ * Receives the whole content of a matching element once it is closed.
+ */
+public interface SubtreeHandler<S> {
+    /**
+     * @param subtree the elements, attributes and text of the matching element. It is recycled once this method
+     *                returns, do not keep a reference to it.
+     * @param state   Supplied object that contains the data/state stored as handlers are called.
+     * @param parser  The parser executing the current XML document. Use {@link XmlParser#stop()}
+     *                to stop the parsing.
+     */
+    void handle(final Subtree subtree, final S state, final XmlParser parser);
+}
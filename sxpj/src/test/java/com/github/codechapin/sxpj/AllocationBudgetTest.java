@@ -0,0 +1,190 @@
+package com.github.codechapin.sxpj;
+
+import com.github.codechapin.sxpj.SyntheticCorpus.Shape;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.lang.management.ManagementFactory;
+
+import static org.testng.Assert.*;
+
+/**
+ * Fails the build when a change makes the parser allocate more per element, or stop scaling linearly with the
+ * size of the document. The corpus size defaults to a few MiB, the <code>large-corpus</code> profile raises it
+ * to 1 GiB (<code>mvn test -P large-corpus</code>) and also checks the parsing time; set
+ * <code>sxpj.corpus.size</code> to choose another size.
+ */
+public class AllocationBudgetTest {
+    private static final long CORPUS_SIZE = Long.getLong("sxpj.corpus.size", 4L << 20);
+    private static final long SEED = 0x5eed;
+
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @BeforeClass
+    public void setUp() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            throw new SkipException("this JVM does not measure the bytes allocated by a thread");
+        }
+        threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new SkipException("this JVM does not measure the bytes allocated by a thread");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * The budgets are the bytes allocated per element by the parser and the StAX implementation of the JDK with
+     * some headroom; the <code>String</code>s handed to the rules are part of them.
+     */
+    @DataProvider
+    public Object[][] budgets() {
+        return new Object[][]{
+                {Shape.FLAT, 128},
+                {Shape.DEEP, 32},
+                {Shape.WIDE_ATTRIBUTES, 512},
+                {Shape.LONG_TEXT, 40 * 1024},
+                {Shape.NAMESPACES, 64},
+        };
+    }
+
+    @Test(dataProvider = "budgets")
+    public void testAllocationPerElement(final Shape shape, final long budget) {
+        final XmlParser<long[]> parser = factory.newParser(rules(shape));
+        parse(parser, shape, CORPUS_SIZE / 4);    // warm up
+
+        final Measure measure = measure(parser, shape, CORPUS_SIZE);
+        assertTrue(measure.bytesPerElement() <= budget, shape + " allocates " + measure.bytesPerElement()
+                + " bytes per element, over its budget of " + budget);
+    }
+
+    @Test(dataProvider = "budgets")
+    public void testLinearScaling(final Shape shape, final long budget) {
+        final XmlParser<long[]> parser = factory.newParser(rules(shape));
+        parse(parser, shape, CORPUS_SIZE / 4);    // warm up
+
+        final Measure small = measure(parser, shape, CORPUS_SIZE / 4);
+        final Measure large = measure(parser, shape, CORPUS_SIZE);
+        assertTrue(large.bytesPerElement() <= small.bytesPerElement() * 1.1 + 16, shape + " allocates "
+                + large.bytesPerElement() + " bytes per element for 4 times the size, " + small.bytesPerElement()
+                + " before");
+    }
+
+    /**
+     * The time is too noisy on a shared machine for the default build, only the <code>large-corpus</code> profile
+     * runs the <code>timing</code> group. Only a change of complexity is caught.
+     */
+    @Test(dataProvider = "budgets", groups = "timing")
+    public void testLinearTime(final Shape shape, final long budget) {
+        final XmlParser<long[]> parser = factory.newParser(rules(shape));
+        parse(parser, shape, CORPUS_SIZE / 4);    // warm up
+
+        final Measure small = measure(parser, shape, CORPUS_SIZE / 4);
+        final Measure large = measure(parser, shape, CORPUS_SIZE);
+        assertTrue(large.nanosPerElement() <= small.nanosPerElement() * 3, shape + " takes "
+                + large.nanosPerElement() + " ns per element for 4 times the size, " + small.nanosPerElement()
+                + " before");
+    }
+
+    /**
+     * Parses the corpus three times (once for a large corpus) and keeps the best run, the allocation of the
+     * generator is subtracted.
+     */
+    private Measure measure(final XmlParser<long[]> parser, final Shape shape, final long size) {
+        final long thread = Thread.currentThread().getId();
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        new SyntheticCorpus(shape, size, SEED).drain();
+        final long generated = threads.getThreadAllocatedBytes(thread) - before;
+
+        long bytes = Long.MAX_VALUE;
+        long nanos = Long.MAX_VALUE;
+        long elements = 0;
+        final int runs = size > 64L << 20 ? 1 : 3;
+        for (int run = 0; run < runs; run++) {
+            before = threads.getThreadAllocatedBytes(thread);
+            final long start = System.nanoTime();
+            elements = parse(parser, shape, size);
+            nanos = Math.min(nanos, System.nanoTime() - start);
+            bytes = Math.min(bytes, threads.getThreadAllocatedBytes(thread) - before - generated);
+        }
+        return new Measure(elements, Math.max(bytes, 0), nanos);
+    }
+
+    private static long parse(final XmlParser<long[]> parser, final Shape shape, final long size) {
+        final SyntheticCorpus corpus = new SyntheticCorpus(shape, size, SEED);
+        final long[] matches = new long[parser.table().size()];
+        parser.parse(corpus, matches);
+        for (int i = 0; i < matches.length; i++) {
+            assertTrue(matches[i] >= corpus.getRecords(), "rule " + i + " of " + shape + " should match every record");
+        }
+        return corpus.getElements();
+    }
+
+    /**
+     * Each rule counts its calls in its own slot of the state, so a rule matching nothing fails the test.
+     */
+    @SuppressWarnings("unchecked")
+    private static Rule<long[]>[] rules(final Shape shape) {
+        switch (shape) {
+            case FLAT:
+                return new Rule[]{
+                        Rule.<long[]>attributes("/corpus/record", (name, value, count, parser) -> count[0]++, "id"),
+                        Rule.<long[]>characters("/corpus/record/name", (text, count, parser) -> count[1]++),
+                        Rule.<long[]>characters("/corpus/record/price", (text, count, parser) -> count[2]++),
+                        Rule.<long[]>characters("/corpus/record/category", (text, count, parser) -> count[3]++)
+                };
+            case DEEP:
+                final StringBuilder path = new StringBuilder("/corpus/record");
+                for (int i = 1; i < SyntheticCorpus.DEPTH; i++) {
+                    path.append("/level");
+                }
+                return new Rule[]{
+                        Rule.<long[]>element("/corpus/record", (element, count, parser) -> count[0]++),
+                        Rule.<long[]>characters(path.toString(), (text, count, parser) -> count[1]++)
+                };
+            case WIDE_ATTRIBUTES:
+                return new Rule[]{
+                        Rule.<long[]>attributes("/corpus/record", (name, value, count, parser) -> count[0]++,
+                                "a0", "a9", "a19", "a29", "a39")
+                };
+            case LONG_TEXT:
+                return new Rule[]{
+                        Rule.<long[]>element("/corpus/record", (element, count, parser) -> count[0]++),
+                        Rule.<long[]>characters("/corpus/record/text", (text, count, parser) -> count[1]++)
+                };
+            default:
+                return new Rule[]{
+                        Rule.<long[]>attributes("/corpus/[urn:sxpj:a]record", (name, value, count, parser) -> count[0]++,
+                                "[urn:sxpj:b]id"),
+                        Rule.<long[]>characters("/corpus/[urn:sxpj:a]record/[urn:sxpj:b]name", (text, count, parser) -> count[1]++),
+                        Rule.<long[]>characters("/corpus/[urn:sxpj:a]record/[urn:sxpj:default]value", (text, count, parser) -> count[2]++)
+                };
+        }
+    }
+
+    private static final class Measure {
+        private final long elements;
+        private final long bytes;
+        private final long nanos;
+
+        private Measure(final long elements, final long bytes, final long nanos) {
+            this.elements = elements;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        private double bytesPerElement() {
+            return (double) bytes / elements;
+        }
+
+        private double nanosPerElement() {
+            return (double) nanos / elements;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.github.codechapin.sxpj;
+
+import com.github.codechapin.sxpj.handler.Element;
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class AsyncParseTest {
+    private static final int ITEMS = 20000;
+
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    private final Rule<AtomicLong> countRule = Rule.element("/feed/item", (element, count, parser) -> {
+        if (element == Element.END) {
+            count.incrementAndGet();
+        }
+    });
+
+    @Test
+    public void testParseFile() throws Exception {
+        final Path file = Files.createTempFile("sxpj-async", ".xml");
+        try {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                writeFeed(out);
+            }
+
+            final AtomicLong count = new AtomicLong();
+            final CompletableFuture<AtomicLong> future = factory.newParser(countRule).parseAsync(file, count);
+            assertSame(future.get(30, TimeUnit.SECONDS), count);
+            assertEquals(count.get(), ITEMS);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testParseSmallBuffers() throws Exception {
+        final Path file = Files.createTempFile("sxpj-async", ".xml");
+        try {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                writeFeed(out);
+            }
+
+            final AtomicLong count = new AtomicLong();
+            final XmlParserFactory readAhead = new XmlParserFactory(XMLInputFactory.newFactory()).withReadAhead(512, 2);
+            readAhead.newParser(countRule).parseAsync(file, count).get(30, TimeUnit.SECONDS);
+            assertEquals(count.get(), ITEMS);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testParseGzipFile() throws Exception {
+        final Path file = Files.createTempFile("sxpj-async", ".xml.gz");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+                writeFeed(out);
+            }
+
+            final AtomicLong count = new AtomicLong();
+            final ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                factory.newParser(countRule).parseAsync(file, StandardCharsets.UTF_8, count, executor)
+                        .get(30, TimeUnit.SECONDS);
+            } finally {
+                executor.shutdown();
+            }
+            assertEquals(count.get(), ITEMS);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final Path file = Files.createTempFile("sxpj-async", ".xml");
+        try {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                writeFeed(out);
+            }
+
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final Rule<AtomicLong> blockingRule = Rule.element("/feed/item", (element, count, parser) -> {
+                if (count.incrementAndGet() == 1) {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+
+            final AtomicLong count = new AtomicLong();
+            final ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                final CompletableFuture<AtomicLong> future =
+                        factory.newParser(blockingRule).parseAsync(file, null, count, executor);
+                assertTrue(started.await(30, TimeUnit.SECONDS));
+                assertTrue(future.cancel(true));
+                release.countDown();
+                assertTrue(future.isCancelled());
+            } finally {
+                executor.shutdown();
+                assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            }
+            assertTrue(count.get() < 2 * ITEMS, "the parse should stop soon after the cancellation");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMalformedFile() throws Exception {
+        final Path file = Files.createTempFile("sxpj-async", ".xml");
+        try {
+            Files.write(file, "<feed><item></feed>".getBytes(StandardCharsets.UTF_8));
+
+            try {
+                factory.newParser(countRule).parseAsync(file, new AtomicLong()).get(30, TimeUnit.SECONDS);
+                fail("a malformed file should fail the future");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof XmlParserException);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMissingFile() throws Exception {
+        final Path file = Files.createTempFile("sxpj-async", ".xml");
+        Files.delete(file);
+
+        final CompletableFuture<AtomicLong> future = factory.newParser(countRule).parseAsync(file, new AtomicLong());
+        assertTrue(future.isCompletedExceptionally());
+    }
+
+    @Test(timeOut = 10000)
+    public void testCloseWakesReader() throws Exception {
+        final AsyncFileInputStream in = new AsyncFileInputStream(new StalledChannel(), 64, 2);
+        final CompletableFuture<Integer> read = CompletableFuture.supplyAsync(() -> {
+            try {
+                return in.read();
+            } catch (IOException e) {
+                return -2;
+            }
+        });
+
+        // the read waits for a buffer that never comes
+        Thread.sleep(100);
+        assertFalse(read.isDone());
+
+        in.close();
+        assertEquals(read.get(5, TimeUnit.SECONDS).intValue(), -2);
+        assertTrue(in.ready().isDone());
+    }
+
+    private static void writeFeed(final OutputStream out) throws IOException {
+        final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<feed>\n");
+        for (int i = 0; i < ITEMS; i++) {
+            writer.write("  <item id=\"" + i + "\"><title>Item " + i + "</title></item>\n");
+        }
+        writer.write("</feed>\n");
+        writer.flush();
+    }
+
+    /**
+     * A channel whose reads never complete.
+     */
+    private static final class StalledChannel extends AsynchronousFileChannel {
+        private volatile boolean open = true;
+
+        @Override
+        public long size() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public AsynchronousFileChannel truncate(final long size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void force(final boolean metaData) {
+        }
+
+        @Override
+        public <A> void lock(final long position, final long size, final boolean shared, final A attachment,
+                             final CompletionHandler<FileLock, ? super A> handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<FileLock> lock(final long position, final long size, final boolean shared) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileLock tryLock(final long position, final long size, final boolean shared) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <A> void read(final ByteBuffer dst, final long position, final A attachment,
+                             final CompletionHandler<Integer, ? super A> handler) {
+            // never completes
+        }
+
+        @Override
+        public Future<Integer> read(final ByteBuffer dst, final long position) {
+            return new CompletableFuture<>();
+        }
+
+        @Override
+        public <A> void write(final ByteBuffer src, final long position, final A attachment,
+                              final CompletionHandler<Integer, ? super A> handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Future<Integer> write(final ByteBuffer src, final long position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
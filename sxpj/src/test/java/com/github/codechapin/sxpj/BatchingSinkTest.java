@@ -0,0 +1,171 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class BatchingSinkTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testBatchesAndFlushAtEndOfDocument() {
+        final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        final StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < 25; i++) {
+            xml.append("<item>").append(i).append("</item>");
+        }
+        xml.append("</items>");
+
+        try (BatchingSink<String> sink = new BatchingSink<>(batches::add, executor, 10)) {
+            final Rule<BatchingSink<String>> itemRule = Rule.characters("/items/item",
+                    (chars, state, parser) -> state.accept(chars));
+            factory.newParser(itemRule, sink.<BatchingSink<String>>flushOn("/items"))
+                    .parse(new StringReader(xml.toString()), sink);
+
+            // flushed by the rule of the root element, before close()
+            assertEquals(batches.size(), 3);
+            assertEquals(sink.getRecords(), 25);
+            assertEquals(sink.getBatches(), 3);
+        }
+
+        assertEquals(batches.get(0).size(), 10);
+        assertEquals(batches.get(1).size(), 10);
+        assertEquals(batches.get(2).size(), 5);
+        assertEquals(batches.get(0).get(0), "0");
+        assertEquals(batches.get(2).get(4), "24");
+    }
+
+    @Test
+    public void testMaxDelay() throws InterruptedException {
+        final CountDownLatch delivered = new CountDownLatch(1);
+
+        try (BatchingSink<String> sink = new BatchingSink<String>(batch -> delivered.countDown(), executor, 1000)
+                .maxDelay(20, TimeUnit.MILLISECONDS)) {
+            sink.accept("record");
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            assertEquals(sink.getBatches(), 1);
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean accepted = new AtomicBoolean();
+
+        final BatchingSink<String> sink = new BatchingSink<String>(batch -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, executor, 1).maxPending(1);
+
+        sink.accept("first");  // taken by the consumer, which waits for the latch
+
+        final Thread producer = new Thread(() -> {
+            sink.accept("second");
+            accepted.set(true);
+        });
+        producer.start();
+        producer.join(200);
+        assertFalse(accepted.get(), "accept should block while the consumer is busy");
+
+        release.countDown();
+        producer.join(5000);
+        assertTrue(accepted.get());
+        sink.close();
+        assertEquals(sink.getBatches(), 2);
+    }
+
+    @Test
+    public void testRejectedByTheTimer() throws InterruptedException {
+        final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch rejected = new CountDownLatch(1);
+        final AtomicBoolean reject = new AtomicBoolean(true);
+        final Executor rejecting = command -> {
+            if (reject.get()) {
+                rejected.countDown();
+                throw new RejectedExecutionException("queue is full");
+            }
+            executor.execute(command);
+        };
+
+        try (BatchingSink<String> sink = new BatchingSink<String>(batches::add, rejecting, 1000)
+                .maxDelay(10, TimeUnit.MILLISECONDS)) {
+            sink.accept("record");
+            assertTrue(rejected.await(5, TimeUnit.SECONDS));
+            reject.set(false);
+        }
+
+        // kept by the sink and delivered by the flush of close()
+        assertEquals(batches.size(), 1);
+        assertEquals(batches.get(0), Collections.singletonList("record"));
+    }
+
+    @Test
+    public void testRejectedByTheFlush() {
+        final BatchingSink<String> sink = new BatchingSink<>(batch -> {
+        }, command -> {
+            throw new RejectedExecutionException("shut down");
+        }, 1000);
+
+        sink.accept("record");
+        try {
+            sink.flush();
+            fail("the rejection should be thrown");
+        } catch (XmlParserException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(sink.getBatches(), 0);
+    }
+
+    @Test(expectedExceptions = XmlParserException.class)
+    public void testConsumerFailure() {
+        final BatchingSink<String> sink = new BatchingSink<>(batch -> {
+            throw new IllegalStateException("database is down");
+        }, executor, 1);
+
+        sink.accept("record");
+        sink.flush();
+    }
+
+    @Test(expectedExceptions = StackOverflowError.class)
+    public void testConsumerError() {
+        final BatchingSink<String> sink = new BatchingSink<>(batch -> {
+            throw new StackOverflowError();
+        }, executor, 1);
+
+        sink.accept("record");
+        sink.flush();
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.Reader;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class CancellationTokenTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    private final Rule<AtomicLong> countRule = Rule.element("/feed/item", (element, count, parser) -> count.incrementAndGet());
+
+    @Test
+    public void testCancelFromAnotherThread() throws InterruptedException {
+        final CancellationToken token = new CancellationToken();
+        final AtomicLong count = new AtomicLong();
+
+        final Thread canceller = new Thread(() -> {
+            while (count.get() < 1000) {
+                Thread.yield();
+            }
+            token.cancel();
+        });
+        canceller.start();
+
+        try {
+            factory.newParser(countRule).parse(new EndlessFeed(), count, token);
+            fail("the parse of an endless feed should have been cancelled");
+        } catch (ParseCancelledException e) {
+            assertEquals(e.getReason(), ParseCancelledException.Reason.CANCELLED);
+        }
+        canceller.join();
+        assertTrue(token.isCancelled());
+        assertFalse(token.isDeadlineExceeded());
+    }
+
+    @Test
+    public void testDeadline() {
+        final AtomicLong count = new AtomicLong();
+        final long start = System.nanoTime();
+        try {
+            factory.newParser(countRule).parse(new EndlessFeed(), count, Duration.ofMillis(50));
+            fail("the parse of an endless feed should have timed out");
+        } catch (ParseCancelledException e) {
+            assertEquals(e.getReason(), ParseCancelledException.Reason.DEADLINE_EXCEEDED);
+        }
+        assertTrue(count.get() > 0);
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(10).toNanos());
+    }
+
+    @Test
+    public void testCancelledBeforeParse() {
+        final CancellationToken token = new CancellationToken();
+        token.cancel();
+
+        final AtomicLong count = new AtomicLong();
+        try {
+            factory.newParser(countRule).parse(new StringReader("<feed><item/></feed>"), count, token);
+            fail("a cancelled token should abort the parse");
+        } catch (ParseCancelledException e) {
+            assertEquals(count.get(), 0);
+        }
+    }
+
+    @Test
+    public void testCompletesInTime() {
+        final AtomicLong count = new AtomicLong();
+        final StringBuilder xml = new StringBuilder("<feed>");
+        for (int i = 0; i < 1000; i++) {
+            xml.append("<item/>");
+        }
+        xml.append("</feed>");
+
+        factory.newParser(countRule).parse(new StringReader(xml.toString()), count, Duration.ofMinutes(1));
+        assertEquals(count.get(), 2000);
+    }
+
+    /**
+     * A feed whose items never end.
+     */
+    private static final class EndlessFeed extends Reader {
+        private static final String ITEM = "<item/>";
+
+        private boolean started;
+        private int position;
+
+        @Override
+        public int read(final char[] buffer, final int offset, final int length) {
+            int i = 0;
+            if (!started) {
+                started = true;
+                for (char c : "<feed>".toCharArray()) {
+                    buffer[offset + i++] = c;
+                }
+            }
+            for (; i < length; i++) {
+                buffer[offset + i] = ITEM.charAt(position);
+                position = (position + 1) % ITEM.length();
+            }
+            return length;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class ElementScopeTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    @Test
+    public void testRecordsAreRecycled() throws IOException {
+        final StackRecordPool<Movie> pool = new StackRecordPool<>(Movie::new, movie -> {
+            movie.setId(null);
+            movie.setName(null);
+            movie.setYear(null);
+        }, 4);
+        final Map<Movie, Boolean> instances = new IdentityHashMap<>();
+
+        final ElementScope<List<String>, Movie> movie = new ElementScope<>("/imdb/category/movie", pool,
+                (list, record) -> {
+                    instances.put(record, Boolean.TRUE);
+                    list.add(record.getId() + " " + record.getName() + " " + record.getYear());
+                });
+        final XmlParser<List<String>> parser = factory.newParser(movie.rule(),
+                movie.attribute("id", Movie::setId),
+                movie.text("/imdb/category/movie/name", Movie::setName),
+                movie.text("/imdb/category/movie/year", Movie::setYear));
+
+        final List<String> list = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+                parser.parse(in, list);
+            }
+        }
+
+        assertEquals(list.size(), 6);
+        assertEquals(list.get(0), "1234 Terminator 2 1991");
+        assertEquals(list.get(5), "5678 Tommy Boy 1995");
+        assertEquals(movie.getRecords(), 6);
+        assertNull(movie.current());
+        assertEquals(pool.getCreated(), 1);
+        assertEquals(instances.size(), 1);
+    }
+
+    @Test
+    public void testMissingValuesAreReset() throws IOException {
+        final ElementScope<List<String>, Movie> movie = new ElementScope<>("/imdb/category/movie",
+                RecordPool.of(Movie::new, record -> record.setName(null), 1),
+                (list, record) -> list.add(record.getName()));
+
+        // the name of the first movie must not leak into the second one, which has none here
+        final Rule<List<String>> nameRule = Rule.characters("/imdb/category/movie/name",
+                (chars, list, parser) -> {
+                    if (chars.startsWith("Terminator")) {
+                        movie.current().setName(chars);
+                    }
+                });
+
+        final List<String> list = new ArrayList<>();
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            factory.newParser(movie.rule(), nameRule).parse(in, list);
+        }
+        assertEquals(list.toString(), "[Terminator 2, null]");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOutsideScope() {
+        new ElementScope<List<String>, Movie>("/imdb/category/movie", RecordPool.of(Movie::new, m -> {
+        }, 1), (list, record) -> list.add(record.getId())).text("/imdb/category/name", Movie::setName);
+    }
+}
@@ -0,0 +1,232 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class ParseCacheTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    private final Rule<List<String>> codeRule = Rule.attributes("/currencies/currency",
+            (name, value, list, parser) -> list.add(value), "code");
+
+    private Path directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sxpj");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testHitAndReload() throws IOException {
+        final Path path = write("a.xml", "USD", "EUR");
+        final ParseCache<List<String>> cache = factory.newCache(ArrayList::new, codeRule);
+
+        final List<String> first = cache.get(path);
+        assertEquals(first.toString(), "[USD, EUR]");
+        assertSame(cache.get(path), first);
+        assertSame(cache.get(path.getParent().resolve("./a.xml")), first);
+
+        write("a.xml", "USD", "EUR", "JPY");
+        assertEquals(cache.get(path).toString(), "[USD, EUR, JPY]");
+        assertEquals(cache.size(), 1);
+
+        final ParseCacheStats stats = cache.getStats();
+        assertEquals(stats.getHits(), 2);
+        assertEquals(stats.getMisses(), 2);
+        assertEquals(stats.getLoads(), 2);
+        assertEquals(stats.getHitRate(), 0.5);
+    }
+
+    @Test
+    public void testContentDigest() throws IOException {
+        final Path path = write("a.xml", "USD");
+        final FileTime modified = Files.getLastModifiedTime(path);
+        final ParseCache<List<String>> byAttributes = factory.newCache(ArrayList::new, codeRule);
+        final ParseCache<List<String>> byDigest = factory.newCache(ArrayList::new, codeRule)
+                .identity(ParseCache.Identity.CONTENT_DIGEST);
+        byAttributes.get(path);
+        byDigest.get(path);
+
+        // same size and modification time, only the content tells them apart
+        write("a.xml", "EUR");
+        Files.setLastModifiedTime(path, modified);
+
+        assertEquals(byDigest.get(path).toString(), "[EUR]");
+        assertEquals(byDigest.getStats().getLoads(), 2);
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        final Path path = write("a.xml", "USD");
+        final Rule<List<String>> slowRule = Rule.element("/currencies", (element, list, parser) -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        final ParseCache<List<String>> cache = factory.newCache(ArrayList::new, codeRule, slowRule);
+
+        final int threads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    barrier.await();
+                    return cache.get(path);
+                }));
+            }
+
+            final List<String> first = results.get(0).get();
+            for (Future<List<String>> result : results) {
+                assertSame(result.get(), first);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(cache.getStats().getLoads(), 1);
+        assertEquals(cache.getStats().getMisses(), threads);
+        assertEquals(cache.getStats().getWaits(), threads - 1);
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        final ParseCache<List<String>> cache = factory.newCache(ArrayList::new, codeRule)
+                .maximumWeight(3, List::size);
+
+        final Path a = write("a.xml", "USD", "EUR");
+        final Path b = write("b.xml", "JPY");
+        final Path c = write("c.xml", "GBP");
+
+        cache.get(a);
+        cache.get(b);
+        assertEquals(cache.getWeight(), 3);
+
+        cache.get(c);
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.getWeight(), 2);
+        assertEquals(cache.getStats().getEvictions(), 1);
+
+        cache.get(b);
+        assertEquals(cache.getStats().getHits(), 1);
+        cache.invalidateAll();
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testFailureIsNotCached() throws IOException {
+        final Path path = directory.resolve("broken.xml");
+        Files.write(path, Collections.singletonList("<currencies><currency code=\"USD\">"), StandardCharsets.UTF_8);
+        final ParseCache<List<String>> cache = factory.newCache(ArrayList::new, codeRule);
+
+        try {
+            cache.get(path);
+            fail("a malformed file should not parse");
+        } catch (XmlParserException e) {
+            assertEquals(cache.getStats().getLoadFailures(), 1);
+        }
+
+        write("broken.xml", "USD");
+        assertEquals(cache.get(path).toString(), "[USD]");
+    }
+
+    @Test
+    public void testFailingWeigherIsOneFailedLoad() throws IOException {
+        final ParseCache<List<String>> cache = factory.newCache(ArrayList::new, codeRule)
+                .maximumWeight(10, list -> {
+                    throw new IllegalStateException("cannot weigh");
+                });
+        final Path path = write("a.xml", "USD");
+
+        try {
+            cache.get(path);
+            fail("the failure of the weigher should be thrown");
+        } catch (IllegalStateException e) {
+            assertEquals(cache.getStats().getLoads(), 1);
+            assertEquals(cache.getStats().getLoadFailures(), 1);
+            assertEquals(cache.size(), 0);
+        }
+    }
+
+    @Test
+    public void testSlowOlderLoadDoesNotReplaceNewer() throws Exception {
+        final CountDownLatch parsing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger states = new AtomicInteger();
+        final ParseCache<List<String>> cache = factory.newCache(() -> {
+            if (states.getAndIncrement() == 0) {
+                parsing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new ArrayList<>();
+        }, codeRule);
+
+        final Path path = write("a.xml", "USD");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<List<String>> older = executor.submit(() -> cache.get(path));
+            parsing.await();
+
+            write("a.xml", "USD", "EUR");
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+            assertEquals(cache.get(path).toString(), "[USD, EUR]");
+
+            release.countDown();
+            older.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(cache.get(path).toString(), "[USD, EUR]");
+        assertEquals(cache.getStats().getHits(), 1);
+    }
+
+    private Path write(final String name, final String... codes) throws IOException {
+        final StringBuilder xml = new StringBuilder("<currencies>");
+        for (String code : codes) {
+            xml.append("<currency code=\"").append(code).append("\"/>");
+        }
+        xml.append("</currencies>");
+        return Files.write(directory.resolve(name), xml.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class ParseLimitsTest {
+    private final Rule<List<String>> textRule = Rule.characters("/a/b", (text, list, parser) -> list.add(text));
+
+    @Test
+    public void testDefaults() {
+        final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+        assertSame(factory.getLimits(), ParseLimits.DEFAULT);
+        assertFalse(ParseLimits.DEFAULT.isDtdSupported());
+        assertFalse(ParseLimits.DEFAULT.isExternalEntitiesSupported());
+
+        final List<String> list = new ArrayList<>();
+        factory.newParser(textRule).parse(new StringReader("<a><b>text</b></a>"), list);
+        assertEquals(list.toString(), "[text]");
+    }
+
+    @Test
+    public void testDepth() {
+        final StringBuilder xml = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            xml.append("<a>");
+        }
+
+        assertLimit(ParseLimits.DEFAULT.withMaxDepth(9), xml.toString(), ParseLimits.Limit.DEPTH);
+
+        final XmlParserFactory factory = factory(ParseLimits.DEFAULT.withMaxDepth(9));
+        try {
+            factory.newProfiler().profile(new StringReader(xml.toString()));
+            fail("The profiler should enforce the limits");
+        } catch (ParseLimitExceededException e) {
+            assertEquals(e.getLimit(), ParseLimits.Limit.DEPTH);
+            assertEquals(e.getMax(), 9);
+        }
+    }
+
+    @Test
+    public void testAttributes() {
+        assertLimit(ParseLimits.DEFAULT.withMaxAttributes(2), "<a><b x='1' y='2' z='3'/></a>",
+                ParseLimits.Limit.ATTRIBUTES);
+    }
+
+    @Test
+    public void testNameLength() {
+        assertLimit(ParseLimits.DEFAULT.withMaxNameLength(4), "<a><b abcde='1'/></a>", ParseLimits.Limit.NAME_LENGTH);
+        assertLimit(ParseLimits.DEFAULT.withMaxNameLength(4), "<a><abcde/></a>", ParseLimits.Limit.NAME_LENGTH);
+    }
+
+    @Test
+    public void testTextLength() {
+        assertLimit(ParseLimits.DEFAULT.withMaxTextLength(4), "<a><b>abcde</b></a>", ParseLimits.Limit.TEXT_LENGTH);
+
+        final List<String> list = new ArrayList<>();
+        factory(ParseLimits.DEFAULT.withMaxTextLength(5)).newParser(textRule)
+                .parse(new StringReader("<a><b>abcde</b></a>"), list);
+        assertEquals(list.toString(), "[abcde]");
+    }
+
+    @Test
+    public void testInputBytes() {
+        final StringBuilder xml = new StringBuilder("<a>");
+        for (int i = 0; i < 10000; i++) {
+            xml.append("<b>").append(i).append("</b>");
+        }
+        xml.append("</a>");
+
+        final XmlParserFactory factory = factory(ParseLimits.DEFAULT.withMaxInputBytes(1000));
+        final List<String> list = new ArrayList<>();
+        try {
+            factory.newParser(textRule).parse(
+                    new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)), list);
+            fail("The input should be too large");
+        } catch (ParseLimitExceededException e) {
+            assertEquals(e.getLimit(), ParseLimits.Limit.INPUT_BYTES);
+        }
+
+        assertLimit(ParseLimits.DEFAULT.withMaxInputBytes(1000), xml.toString(), ParseLimits.Limit.INPUT_BYTES);
+    }
+
+    @Test
+    public void testInternalEntitiesNotExpanded() {
+        final String xml = "<!DOCTYPE a [<!ENTITY x 'expanded'>]><a><b>&x;</b></a>";
+
+        final List<String> list = new ArrayList<>();
+        factory(ParseLimits.UNLIMITED).newParser(textRule).parse(new StringReader(xml), list);
+        assertEquals(list.toString(), "[expanded]");
+
+        list.clear();
+        try {
+            factory(ParseLimits.DEFAULT).newParser(textRule).parse(new StringReader(xml), list);
+        } catch (XmlParserException e) {
+            // undeclared entity, depending on the StAX implementation
+        }
+        assertFalse(list.contains("expanded"));
+    }
+
+    @Test
+    public void testExternalEntitiesNotResolved() throws IOException {
+        final File secret = File.createTempFile("sxpj", ".txt");
+        try {
+            Files.write(secret.toPath(), "secret".getBytes(StandardCharsets.UTF_8));
+            final String xml = "<!DOCTYPE a [<!ENTITY x SYSTEM '" + secret.toURI() + "'>]><a><b>&x;</b></a>";
+
+            final List<String> list = new ArrayList<>();
+            try {
+                factory(ParseLimits.DEFAULT.withDtdSupported(true)).newParser(textRule)
+                        .parse(new StringReader(xml), list);
+            } catch (XmlParserException e) {
+                // unresolved entity, depending on the StAX implementation
+            }
+            assertFalse(list.toString().contains("secret"));
+        } finally {
+            assertTrue(secret.delete());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidLimit() {
+        ParseLimits.DEFAULT.withMaxDepth(0);
+    }
+
+    private static XmlParserFactory factory(final ParseLimits limits) {
+        return new XmlParserFactory(XMLInputFactory.newFactory(), limits);
+    }
+
+    private void assertLimit(final ParseLimits limits, final String xml, final ParseLimits.Limit expected) {
+        try {
+            factory(limits).newParser(textRule).parse(new StringReader(xml), new ArrayList<>());
+            fail("Expected the " + expected + " limit to be exceeded");
+        } catch (ParseLimitExceededException e) {
+            assertEquals(e.getLimit(), expected);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.github.codechapin.sxpj;
+
+import com.github.codechapin.sxpj.handler.Element;
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class PositionalRuleTest {
+    private static final String RSS = "<rss>"
+            + "<channel><title>A</title>"
+            + "<item><title>a1</title></item><item><title>a2</title></item><item><title>a3</title></item>"
+            + "<link>a</link></channel>"
+            + "<channel><title>B</title>"
+            + "<item><title>b1</title></item><item><title>b2</title></item>"
+            + "<link>b</link></channel>"
+            + "</rss>";
+
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    @Test
+    public void testFirstItemOfEachChannel() {
+        final List<String> titles = new ArrayList<>();
+        parse(RSS, titles, Rule.characters("/rss/channel/item[1]/title", (chars, state, parser) -> state.add(chars)));
+
+        // the position counts the items only, not the title before them
+        assertEquals(titles.toString(), "[a1, b1]");
+    }
+
+    @Test
+    public void testPositionWindow() {
+        final List<String> titles = new ArrayList<>();
+        parse(RSS, titles,
+                Rule.characters("/rss/channel/item[position()<=2]/title", (chars, state, parser) -> state.add(chars)),
+                Rule.characters("/rss/channel/item[position() > 2]/title", (chars, state, parser) -> state.add("late " + chars)),
+                Rule.characters("/rss/channel/link", (chars, state, parser) -> state.add(chars)));
+
+        assertEquals(titles.toString(), "[a1, a2, late a3, a, b1, b2, b]");
+    }
+
+    @Test
+    public void testPositionsExposedToHandlers() {
+        final List<String> positions = new ArrayList<>();
+        parse(RSS, positions, Rule.element("/rss/channel/item[position()>=2]", (element, state, parser) -> {
+            if (element == Element.START) {
+                state.add(parser.getPosition() + "/" + parser.getChildIndex());
+            }
+        }));
+
+        // the second item is the third child of its channel
+        assertEquals(positions.toString(), "[2/3, 3/4, 2/3]");
+    }
+
+    @Test
+    public void testRulesWithAndWithoutPredicate() {
+        final List<String> calls = new ArrayList<>();
+        parse(RSS, calls,
+                Rule.element("/rss/channel/item", (element, state, parser) -> {
+                    if (element == Element.END) {
+                        state.add("item");
+                    }
+                }),
+                Rule.element("/rss/channel/item[2]", (element, state, parser) -> {
+                    if (element == Element.END) {
+                        state.add("second");
+                    }
+                }));
+
+        assertEquals(calls.toString(), "[item, item, second, item, item, item, second]");
+    }
+
+    @Test
+    public void testNestedPredicates() {
+        final List<String> values = new ArrayList<>();
+        parse("<a><b><c>1</c><c>2</c></b><b><c>3</c><c>4</c></b><b><c>5</c></b></a>", values,
+                Rule.characters("/a/b[2]/c[position()=1]", (chars, state, parser) -> state.add(chars)));
+
+        assertEquals(values.toString(), "[3]");
+    }
+
+    @Test
+    public void testNamespacedStep() {
+        final List<String> values = new ArrayList<>();
+        parse("<f:feed xmlns:f=\"urn:f/1\"><f:entry>1</f:entry><f:entry>2</f:entry></f:feed>", values,
+                Rule.characters("/[urn:f/1]feed/[urn:f/1]entry[2]", (chars, state, parser) -> state.add(chars)));
+
+        assertEquals(values.toString(), "[2]");
+    }
+
+    @Test
+    public void testPositionsRestartOnEachParse() {
+        final List<String> titles = new ArrayList<>();
+        final XmlParser<List<String>> parser = factory.newParser(
+                Rule.characters("/rss/channel/item[1]/title", (chars, state, p) -> state.add(chars)));
+        parser.parse(new StringReader(RSS), titles);
+        parser.parse(new StringReader(RSS), titles);
+
+        assertEquals(titles.toString(), "[a1, b1, a1, b1]");
+    }
+
+    @Test
+    public void testWindowOfEachStep() {
+        final RuleTable<Object> table = table(
+                Rule.element("/rss/channel/item[position()<=10]", (element, state, parser) -> {
+                }),
+                Rule.characters("/rss/channel/item[3]/title", (chars, state, parser) -> {
+                }),
+                Rule.element("/rss/channel[1]/item[2]", (element, state, parser) -> {
+                }));
+
+        // the items after the 10th are skipped, not the channels: the first rule matches the items of any of them
+        assertEquals(table.positionWindow(table.positionSlot("/rss/channel/item".hashCode())), 10);
+        assertEquals(table.positionWindow(table.positionSlot("/rss/channel".hashCode())), Integer.MAX_VALUE);
+        assertEquals(table.positionSlot("/rss".hashCode()), -1);
+    }
+
+    @Test
+    public void testWindowOpenedByRuleBelow() {
+        final RuleTable<Object> table = table(
+                Rule.element("/rss/channel/item[1]", (element, state, parser) -> {
+                }),
+                Rule.characters("/rss/channel/item/title", (chars, state, parser) -> {
+                }));
+
+        assertEquals(table.positionWindow(table.positionSlot("/rss/channel/item".hashCode())), Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testSubtreeOfSkippedSiblings() {
+        final List<Integer> sizes = new ArrayList<>();
+        parse(RSS, sizes,
+                Rule.element("/rss/channel/item[1]", (element, state, parser) -> {
+                }),
+                Rule.subtree("/rss/channel", (subtree, state, parser) -> state.add(subtree.size())));
+
+        // the items past the window are still captured by the subtree of their channel
+        assertEquals(sizes.toString(), "[9, 7]");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnsupportedPredicate() {
+        Rule.element("/rss/channel/item[last()]", (element, state, parser) -> {
+        });
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmptyWindow() {
+        Rule.element("/rss/channel/item[position()<1]", (element, state, parser) -> {
+        });
+    }
+
+    @Test(expectedExceptions = XmlParserException.class)
+    public void testMultiplexerRejectsPositionalRules() {
+        new XmlMultiplexer(factory)
+                .add(new ArrayList<String>(), Rule.characters("/rss/channel/item[1]/title", (chars, state, parser) -> {
+                }))
+                .parse(new StringReader(RSS));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testNoPositionUnderMultiplexer() {
+        new XmlMultiplexer(factory)
+                .add(new ArrayList<String>(), Rule.element("/rss/channel/item", (element, state, parser) -> {
+                    parser.getChildIndex();
+                }))
+                .parse(new StringReader(RSS));
+    }
+
+    @Test
+    public void testPredicatesOnlyOnRules() {
+        final String path = "/rss/channel/item[1]";
+        final List<Runnable> calls = new ArrayList<>();
+        calls.add(() -> Sampler.every(path, 2));
+        calls.add(() -> new XmlSplitter(path, 10));
+        calls.add(() -> new XmlTransformer().drop(path));
+
+        for (Runnable call : calls) {
+            try {
+                call.run();
+                fail("a positional predicate was accepted");
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains(path));
+            }
+        }
+    }
+
+    @SafeVarargs
+    private final <S> RuleTable<S> table(final Rule<S>... rules) {
+        return new RuleTable<>(rules);
+    }
+
+    @SafeVarargs
+    private final <S> void parse(final String xml, final S state, final Rule<S>... rules) {
+        factory.newParser(rules).parse(new StringReader(xml), state);
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.codechapin.sxpj.Rule.*;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class RuleRegistryTest {
+    private static final String XML = "<feed><item><title>one</title><link>a</link></item>"
+            + "<item><title>two</title><link>b</link></item></feed>";
+
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    @Test
+    public void testAddAndRemoveBetweenParses() {
+        final Rule<List<String>> titleRule = characters("/feed/item/title", (chars, values, parser) -> values.add(chars));
+        final Rule<List<String>> linkRule = characters("/feed/item/link", (chars, values, parser) -> values.add(chars));
+
+        final RuleRegistry<List<String>> registry = new RuleRegistry<>(titleRule);
+        final XmlParser<List<String>> parser = factory.newParser(registry);
+
+        List<String> values = new ArrayList<>();
+        parser.parse(new StringReader(XML), values);
+        assertEquals(values.toString(), "[one, two]");
+
+        registry.add(linkRule);
+        values = new ArrayList<>();
+        parser.parse(new StringReader(XML), values);
+        assertEquals(values.toString(), "[one, a, two, b]");
+
+        assertTrue(registry.remove(titleRule));
+        assertFalse(registry.remove(titleRule));
+        values = new ArrayList<>();
+        parser.parse(new StringReader(XML), values);
+        assertEquals(values.toString(), "[a, b]");
+        assertEquals(registry.getRules().size(), 1);
+    }
+
+    @Test
+    public void testParseInFlightKeepsItsTable() {
+        final RuleRegistry<List<String>> registry = new RuleRegistry<>();
+        final Rule<List<String>> linkRule = characters("/feed/item/link", (chars, values, parser) -> values.add(chars));
+        final Rule<List<String>> titleRule = characters("/feed/item/title", (chars, values, parser) -> {
+            values.add(chars);
+            if (!registry.getRules().contains(linkRule)) {
+                registry.add(linkRule);
+            }
+        });
+        registry.add(titleRule);
+
+        final XmlParser<List<String>> parser = factory.newParser(registry);
+
+        List<String> values = new ArrayList<>();
+        parser.parse(new StringReader(XML), values);
+        assertEquals(values.toString(), "[one, two]");
+
+        registry.remove(titleRule);
+        values = new ArrayList<>();
+        parser.parse(new StringReader(XML), values);
+        assertEquals(values.toString(), "[a, b]");
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class SamplerTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    private final Rule<List<String>> idRule = Rule.attributes("/feed/item",
+            (name, value, list, parser) -> list.add(value), "id");
+    private final Rule<List<String>> valueRule = Rule.characters("/feed/item/value",
+            (chars, list, parser) -> list.add("v" + chars));
+
+    @Test
+    public void testEvery() {
+        final Sampler sampler = Sampler.every("/feed/item", 300);
+        final List<String> list = new ArrayList<>();
+        factory.newParser(idRule, valueRule).sampler(sampler).parse(new StringReader(feed(1000)), list);
+
+        assertEquals(list.toString(), "[0, v0, 300, v300, 600, v600, 900, v900]");
+        assertEquals(sampler.getSeen(), 1000);
+        assertEquals(sampler.getSelected(), 4);
+    }
+
+    @Test
+    public void testRangeStopsEarly() {
+        final Sampler sampler = Sampler.range("/feed/item", 10, 13);
+        final XmlParser<List<String>> parser = factory.newParser(idRule).sampler(sampler);
+
+        final List<String> list = new ArrayList<>();
+        parser.parse(new StringReader(feed(1000)), list);
+        assertEquals(list.toString(), "[10, 11, 12]");
+        assertEquals(sampler.getSeen(), 13);
+
+        // the counters start again with the next parse
+        list.clear();
+        parser.parse(new StringReader(feed(1000)), list);
+        assertEquals(list.toString(), "[10, 11, 12]");
+
+        list.clear();
+        parser.sampler(null).parse(new StringReader(feed(20)), list);
+        assertEquals(list.size(), 20);
+    }
+
+    @Test
+    public void testReservoir() {
+        final String xml = feed(10000);
+        final String[] first = reservoir(xml, 5, 42);
+        final String[] second = reservoir(xml, 5, 42);
+
+        assertEquals(first, second, "the same seed should select the same records");
+        assertEquals(new HashSet<>(Arrays.asList(first)).size(), 5);
+        for (String id : first) {
+            assertNotNull(id);
+        }
+    }
+
+    @Test
+    public void testReservoirSkipsMostRecords() {
+        final Sampler sampler = Sampler.reservoir("/feed/item", 10, 7);
+        final List<String> list = new ArrayList<>();
+        factory.newParser(idRule).sampler(sampler).parse(new StringReader(feed(10000)), list);
+
+        assertEquals(sampler.getSeen(), 10000);
+        assertTrue(sampler.getSelected() < 200, "selected " + sampler.getSelected());
+        assertEquals(list.size(), sampler.getSelected());
+    }
+
+    @Test
+    public void testReservoirIsUniform() {
+        final String xml = feed(100);
+        final int[] counts = new int[100];
+        for (int seed = 0; seed < 1000; seed++) {
+            for (String id : reservoir(xml, 10, seed)) {
+                counts[Integer.parseInt(id)]++;
+            }
+        }
+
+        // 100 expected per record, with a standard deviation of about 9.5
+        for (int i = 0; i < counts.length; i++) {
+            assertTrue(counts[i] > 50 && counts[i] < 150, "record " + i + " selected " + counts[i] + " times");
+        }
+    }
+
+    private String[] reservoir(final String xml, final int size, final long seed) {
+        final Sampler sampler = Sampler.reservoir("/feed/item", size, seed);
+        final String[] sample = new String[size];
+        final Rule<String[]> rule = Rule.attributes("/feed/item",
+                (name, value, slots, parser) -> slots[sampler.getSlot()] = value, "id");
+
+        factory.newParser(rule).sampler(sampler).parse(new StringReader(xml), sample);
+        return sample;
+    }
+
+    private static String feed(final int items) {
+        final StringBuilder xml = new StringBuilder("<feed>");
+        for (int i = 0; i < items; i++) {
+            xml.append("<item id=\"").append(i).append("\"><value>").append(i).append("</value></item>");
+        }
+        return xml.append("</feed>").toString();
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class ShardedRunnerTest {
+    private Path directory;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sxpj-shards");
+    }
+
+    @AfterClass
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testParseFile() throws IOException {
+        final Path file = directory.resolve("export.xml");
+        writeExport(file, 4, 500);
+
+        final Totals expected = new Totals();
+        new XmlParserFactory().newParser(new TotalsJob().rules()).parse(file, expected);
+
+        final Totals totals = new ShardedRunner<>(TotalsJob.class).workers(3).parseFile(file, "/export/group/item");
+        assertEquals(totals.items, 2000);
+        assertEquals(totals.sum, expected.sum);
+        // the group attribute comes from the ancestors copied in front of each range, the order is the document's
+        assertEquals(totals.ids, expected.ids);
+    }
+
+    @Test
+    public void testMoreWorkersThanRecords() throws IOException {
+        final Path file = directory.resolve("single.xml");
+        writeExport(file, 1, 1);
+
+        final Totals totals = new ShardedRunner<>(TotalsJob.class).workers(4).parseFile(file, "/export/group/item");
+        assertEquals(totals.ids, Arrays.asList("g0:0"));
+    }
+
+    @Test
+    public void testParseDirectory() throws IOException {
+        final Path files = Files.createDirectory(directory.resolve("files"));
+        for (int i = 0; i < 3; i++) {
+            writeExport(files.resolve("part-" + i + ".xml"), 1, 100 * (i + 1));
+        }
+
+        final Totals totals = new ShardedRunner<>(TotalsJob.class).workers(2).parseDirectory(files);
+        assertEquals(totals.items, 600);
+        assertEquals(totals.ids.get(0), "g0:0");
+        assertEquals(totals.ids.get(100), "g0:0");
+        assertEquals(totals.ids.get(300), "g0:0");
+    }
+
+    @Test
+    public void testWorkerFailure() throws IOException {
+        final Path good = directory.resolve("good.xml");
+        final Path bad = directory.resolve("bad.xml");
+        writeExport(good, 1, 10);
+        Files.write(bad, "<export><group name=\"g\"><item id=\"1\"></group></export>".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            new ShardedRunner<>(TotalsJob.class).workers(2).parseFiles(Arrays.asList(good, bad));
+            fail("a malformed file should fail its worker");
+        } catch (XmlParserException e) {
+            assertTrue(e.getMessage().startsWith("shard 1 failed"), e.getMessage());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testJobWithoutDefaultConstructor() {
+        new ShardedRunner<>(NoDefaultConstructorJob.class);
+    }
+
+    private static void writeExport(final Path file, final int groups, final int items) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<export>\n");
+            for (int g = 0; g < groups; g++) {
+                writer.write("  <group name=\"g" + g + "\">\n");
+                for (int i = 0; i < items; i++) {
+                    writer.write("    <item id=\"" + i + "\"><value>" + (g * 1000 + i) + "</value></item>\n");
+                }
+                writer.write("  </group>\n");
+            }
+            writer.write("</export>\n");
+        }
+    }
+
+    public static final class Totals implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String group;
+        private long items;
+        private long sum;
+        private final List<String> ids = new ArrayList<>();
+    }
+
+    public static final class TotalsJob implements ShardJob<Totals> {
+        @Override
+        @SuppressWarnings("unchecked")
+        public Rule<Totals>[] rules() {
+            return new Rule[]{
+                    Rule.<Totals>attributes("/export/group", (name, value, totals, parser) -> totals.group = value, "name"),
+                    Rule.<Totals>attributes("/export/group/item", (name, value, totals, parser) -> {
+                        totals.items++;
+                        totals.ids.add(totals.group + ":" + value);
+                    }, "id"),
+                    Rule.<Totals>characters("/export/group/item/value",
+                            (chars, totals, parser) -> totals.sum += Long.parseLong(chars))
+            };
+        }
+
+        @Override
+        public Totals newState() {
+            return new Totals();
+        }
+
+        @Override
+        public Totals merge(final Totals left, final Totals right) {
+            left.items += right.items;
+            left.sum += right.sum;
+            left.ids.addAll(right.ids);
+            return left;
+        }
+    }
+
+    public static final class NoDefaultConstructorJob implements ShardJob<Totals> {
+        public NoDefaultConstructorJob(final String name) {
+        }
+
+        @Override
+        public Rule<Totals>[] rules() {
+            return new TotalsJob().rules();
+        }
+
+        @Override
+        public Totals newState() {
+            return new Totals();
+        }
+
+        @Override
+        public Totals merge(final Totals left, final Totals right) {
+            return left;
+        }
+    }
+}
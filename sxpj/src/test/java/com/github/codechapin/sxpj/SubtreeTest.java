@@ -0,0 +1,73 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class SubtreeTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    @Test
+    public void testMovieCast() throws IOException {
+        final List<String> list = new ArrayList<>();
+        final List<Subtree> seen = new ArrayList<>();
+
+        final Rule<List<String>> movieRule = Rule.subtree("/imdb/category/movie", (movie, state, parser) -> {
+            final int root = movie.root();
+            final int cast = movie.firstChild(root, "cast");
+            state.add(movie.getAttribute(root, "id") + " " + movie.getChildText(root, "name")
+                    + " (" + movie.getChildText(root, "year") + ")");
+            for (int actor = movie.firstChild(cast, "actor"); actor != -1; actor = movie.nextSibling(actor, "actor")) {
+                assertEquals(movie.getParent(actor), cast);
+                state.add(movie.getAttribute(actor, "charName"));
+            }
+            assertEquals(movie.size(), 7);
+            seen.add(movie);
+        });
+        final Rule<List<String>> nameRule = Rule.characters("/imdb/category/movie/name",
+                (chars, state, parser) -> state.add(chars));
+
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            factory.newParser(movieRule, nameRule).parse(in, list);
+        }
+
+        assertEquals(list.toString(), "[Terminator 2, 1234 Terminator 2 (1991), The Terminator, Sarah Connor, John Connor, "
+                + "Tommy Boy, 5678 Tommy Boy (1995), Tommy, Richard, Big Tom]");
+        assertSame(seen.get(0), seen.get(1), "the subtree should be recycled");
+    }
+
+    @Test
+    public void testNestedSubtreesAndNamespaces() {
+        final List<String> list = new ArrayList<>();
+        final Rule<List<String>> outer = Rule.subtree("/a/b", (tree, state, parser) -> {
+            final int c = tree.firstChild(tree.root());
+            state.add("b:" + tree.size() + ":" + tree.getText(tree.root()) + ":" + tree.getNamespaceURI(c)
+                    + ":" + tree.getAttribute(c, "urn:x", "k") + ":" + tree.getAttribute(c, "k"));
+        });
+        final Rule<List<String>> inner = Rule.subtree("/a/b/[urn:x]c", (tree, state, parser) -> {
+            state.add("c:" + tree.size() + ":" + tree.getText(tree.root()) + ":" + tree.getAttributeCount(tree.root()));
+        });
+
+        factory.newParser(outer, inner).parse(new StringReader(
+                "<a xmlns:x=\"urn:x\"><b>one <x:c x:k=\"1\" k=\"2\">mixed <d/> text</x:c> two</b></a>"), list);
+
+        assertEquals(list.toString(), "[c:2:mixed  text:2, b:3:one  two:urn:x:1:2]");
+    }
+
+    @Test(expectedExceptions = XmlParserException.class)
+    public void testNotMultiplexed() {
+        factory.newMultiplexer()
+                .add(new ArrayList<String>(), Rule.<List<String>>subtree("/a", (tree, state, parser) -> state.add("a")))
+                .parse(new StringReader("<a/>"));
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.codechapin.sxpj;
+
+import java.io.Reader;
+import java.util.SplittableRandom;
+
+/**
+ * <p>
+ * Deterministic generator of large XML documents, streamed as a {@link Reader} so a document of any size is
+ * parsed without being stored. The same shape, size and seed always produce the same characters.
+ * </p>
+ * <p>
+ * The document is <code>&lt;corpus&gt;</code> followed by records until at least the requested number of
+ * characters was produced. Records are written into a reused buffer, reading the corpus allocates nothing
+ * beyond the buffer growing to the size of the largest record.
+ * </p>
+ */
+final class SyntheticCorpus extends Reader {
+    enum Shape {
+        /**
+         * <code>/corpus/record</code> with an attribute and three short text children.
+         */
+        FLAT,
+        /**
+         * Records nested {@link #DEPTH} levels deep, <code>/corpus/record/level/level/...</code>.
+         */
+        DEEP,
+        /**
+         * Records with {@link #ATTRIBUTES} attributes and no children.
+         */
+        WIDE_ATTRIBUTES,
+        /**
+         * Records with a text child of {@link #TEXT_LENGTH} characters.
+         */
+        LONG_TEXT,
+        /**
+         * Records whose elements and attributes are in three namespaces declared on every record.
+         */
+        NAMESPACES
+    }
+
+    static final int DEPTH = 32;
+    static final int ATTRIBUTES = 40;
+    static final int TEXT_LENGTH = 16 * 1024;
+
+    private static final String[] WORDS = {
+            "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliet",
+            "kilo", "lima", "mike", "november", "oscar", "papa", "quebec", "romeo", "sierra", "tango"
+    };
+
+    private final Shape shape;
+    private final long size;
+    private final SplittableRandom random;
+    private final StringBuilder buffer = new StringBuilder(TEXT_LENGTH + 1024);
+
+    private int position;
+    private long produced;
+    private long records;
+    private long elements;
+    private boolean ended;
+
+    /**
+     * @param shape the shape of the records.
+     * @param size  the minimum number of characters of the document.
+     * @param seed  seeds the random content.
+     */
+    SyntheticCorpus(final Shape shape, final long size, final long seed) {
+        this.shape = shape;
+        this.size = size;
+        this.random = new SplittableRandom(seed);
+
+        buffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<corpus>\n");
+        elements = 1;
+    }
+
+    /**
+     * @return the number of records produced so far, all of them once the reader is exhausted.
+     */
+    long getRecords() {
+        return records;
+    }
+
+    /**
+     * @return the number of elements produced so far, all of them once the reader is exhausted.
+     */
+    long getElements() {
+        return elements;
+    }
+
+    /**
+     * Reads the whole corpus without parsing it.
+     *
+     * @return the number of characters of the corpus.
+     */
+    long drain() {
+        final char[] chars = new char[8192];
+        long total = 0;
+        for (int n; (n = read(chars, 0, chars.length)) != -1; ) {
+            total += n;
+        }
+        return total;
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) {
+        if (position == buffer.length()) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+
+        final int n = Math.min(len, buffer.length() - position);
+        buffer.getChars(position, position + n, cbuf, off);
+        position += n;
+        produced += n;
+        return n;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private boolean fill() {
+        if (ended) {
+            return false;
+        }
+
+        buffer.setLength(0);
+        position = 0;
+        if (produced >= size) {
+            buffer.append("</corpus>\n");
+            ended = true;
+            return true;
+        }
+
+        switch (shape) {
+            case FLAT:
+                flat();
+                break;
+            case DEEP:
+                deep();
+                break;
+            case WIDE_ATTRIBUTES:
+                wideAttributes();
+                break;
+            case LONG_TEXT:
+                longText();
+                break;
+            default:
+                namespaces();
+        }
+        records++;
+        return true;
+    }
+
+    private void flat() {
+        buffer.append("  <record id=\"").append(records).append("\">");
+        buffer.append("<name>").append(word()).append(' ').append(word()).append("</name>");
+        buffer.append("<price>").append(random.nextInt(100000)).append('.').append(random.nextInt(100)).append("</price>");
+        buffer.append("<category>").append(word()).append("</category>");
+        buffer.append("</record>\n");
+        elements += 4;
+    }
+
+    private void deep() {
+        buffer.append("  <record id=\"").append(records).append("\">");
+        for (int i = 1; i < DEPTH; i++) {
+            buffer.append("<level n=\"").append(i).append("\">");
+        }
+        buffer.append(word());
+        for (int i = 1; i < DEPTH; i++) {
+            buffer.append("</level>");
+        }
+        buffer.append("</record>\n");
+        elements += DEPTH;
+    }
+
+    private void wideAttributes() {
+        buffer.append("  <record");
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            buffer.append(" a").append(i).append("=\"").append(word()).append(random.nextInt(1000)).append('"');
+        }
+        buffer.append("/>\n");
+        elements++;
+    }
+
+    private void longText() {
+        buffer.append("  <record id=\"").append(records).append("\"><text>");
+        final int start = buffer.length();
+        while (buffer.length() - start < TEXT_LENGTH) {
+            buffer.append(word()).append(' ');
+        }
+        buffer.append("</text></record>\n");
+        elements += 2;
+    }
+
+    private void namespaces() {
+        buffer.append("  <a:record xmlns:a=\"urn:sxpj:a\" xmlns:b=\"urn:sxpj:b\" xmlns=\"urn:sxpj:default\" b:id=\"")
+                .append(records).append("\">");
+        buffer.append("<b:name a:lang=\"en\">").append(word()).append("</b:name>");
+        buffer.append("<value>").append(random.nextInt(100000)).append("</value>");
+        buffer.append("<a:tag>").append(word()).append("</a:tag>");
+        buffer.append("</a:record>\n");
+        elements += 4;
+    }
+
+    private String word() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+}
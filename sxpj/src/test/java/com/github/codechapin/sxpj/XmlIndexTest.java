@@ -0,0 +1,127 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class XmlIndexTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    private Path movies;
+    private Path feed;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        movies = copy("/movies.xml");
+        feed = copy("/namespace.xml");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        Files.delete(movies);
+        Files.delete(feed);
+    }
+
+    @Test
+    public void testOffsets() throws IOException {
+        final XmlIndex index = XmlIndex.build(movies, "/imdb/category/movie");
+        assertEquals(index.size(), 2);
+
+        final String xml = new String(Files.readAllBytes(movies), StandardCharsets.UTF_8);
+        for (int i = 0; i < index.size(); i++) {
+            final String record = xml.substring((int) index.getStart(i), (int) index.getEnd(i));
+            assertTrue(record.startsWith("<movie id="), record);
+            assertTrue(record.endsWith("</movie>"), record);
+        }
+    }
+
+    @Test
+    public void testParseRecordWithAncestors() {
+        final XmlIndex index = XmlIndex.build(movies, "/imdb/category/movie");
+
+        final Rule<List<String>> categoryRule = Rule.attributes("/imdb/category",
+                (name, value, list, parser) -> list.add(value), "name");
+        final Rule<List<String>> nameRule = Rule.characters("/imdb/category/movie/name",
+                (chars, list, parser) -> list.add(chars));
+        final XmlParser<List<String>> parser = factory.newParser(categoryRule, nameRule);
+
+        final List<String> list = new ArrayList<>();
+        parser.parseRange(movies, index, 1, list);
+        assertEquals(list.toString(), "[Comedy, Tommy Boy]");
+
+        list.clear();
+        parser.parseRange(movies, index, 0, list);
+        assertEquals(list.toString(), "[Action, Terminator 2]");
+    }
+
+    @Test
+    public void testParseRangeWithoutAncestors() {
+        final XmlIndex index = XmlIndex.build(movies, "/imdb/category/movie");
+
+        final Rule<List<String>> nameRule = Rule.characters("/movie/name", (chars, list, parser) -> list.add(chars));
+        final List<String> list = new ArrayList<>();
+        factory.newParser(nameRule).parseRange(movies, index.getStart(0), index.getEnd(0) - index.getStart(0), list);
+        assertEquals(list.toString(), "[Terminator 2]");
+    }
+
+    @Test
+    public void testNamespacesInScope() {
+        final XmlIndex index = XmlIndex.build(feed, "/rss/channel/item");
+        assertEquals(index.size(), 3);
+
+        final Rule<List<String>> creatorRule = Rule.characters("/rss/channel/item/[http://purl.org/dc/elements/1.1/]creator",
+                (chars, list, parser) -> list.add(chars));
+        final List<String> list = new ArrayList<>();
+        factory.newParser(creatorRule).parseRange(feed, index, 2, list);
+        assertEquals(list.toString(), "[By HENRY FOUNTAIN]");
+    }
+
+    @Test
+    public void testSidecar() throws IOException {
+        final XmlIndex index = XmlIndex.build(feed, "/rss/channel/item");
+        final Path sidecar = Files.createTempFile("sxpj", ".idx");
+        try {
+            index.write(sidecar);
+            final XmlIndex read = XmlIndex.read(sidecar);
+
+            assertEquals(read.getRecordPath(), index.getRecordPath());
+            assertEquals(read.getCharset(), index.getCharset());
+            assertEquals(read.size(), index.size());
+            for (int i = 0; i < index.size(); i++) {
+                assertEquals(read.getStart(i), index.getStart(i));
+                assertEquals(read.getEnd(i), index.getEnd(i));
+                assertEquals(read.getAncestors(i), index.getAncestors(i));
+            }
+        } finally {
+            Files.delete(sidecar);
+        }
+    }
+
+    @Test(expectedExceptions = XmlParserException.class)
+    public void testNotAnIndex() throws IOException {
+        XmlIndex.read(movies);
+    }
+
+    private Path copy(final String resource) throws IOException {
+        final Path path = Files.createTempFile("sxpj", ".xml");
+        try (InputStream in = getClass().getResourceAsStream(resource)) {
+            Files.copy(in, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.codechapin.sxpj;
+
+import com.github.codechapin.sxpj.handler.Element;
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.codechapin.sxpj.Rule.*;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class XmlMultiplexerTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    @Test
+    public void testIndependentConsumers() throws IOException {
+        final Rule<MovieDatabase> categoryRule = element("/imdb/category",
+                (element, db, parser) -> {
+                    if (element == Element.START) {
+                        db.setCurrentCategory(new MovieCategory());
+                    } else {
+                        db.currentIsDone();
+                    }
+                }
+        );
+
+        final Rule<MovieDatabase> categoryAttributesRule = attributes("/imdb/category",
+                (name, value, db, parser) -> db.currentCategory().setName(value),
+                "name"
+        );
+
+        final Rule<List<String>> yearRule = characters("/imdb/category/movie/year",
+                (chars, years, parser) -> years.add(chars)
+        );
+
+        final Rule<List<String>> actorRule = attributes("/imdb/category/movie/cast/actor",
+                (name, value, actors, parser) -> actors.add(value),
+                "realName"
+        );
+
+        final Rule<List<String>> actorElementRule = element("/imdb/category/movie/cast/actor",
+                (element, actors, parser) -> {
+                }
+        );
+
+        final MovieDatabase db = new MovieDatabase();
+        final List<String> years = new ArrayList<>();
+        final List<String> actors = new ArrayList<>();
+
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            factory.newMultiplexer()
+                    .add(db, categoryRule, categoryAttributesRule)
+                    .add(years, yearRule)
+                    .add(actors, actorElementRule, actorRule)
+                    .parse(in);
+        }
+
+        assertEquals(db.size(), 2);
+        assertNotNull(db.getCategoryByName("Action"));
+        assertNotNull(db.getCategoryByName("Comedy"));
+
+        assertEquals(years.size(), 2);
+        assertEquals(years.get(0), "1991");
+        assertEquals(years.get(1), "1995");
+
+        assertEquals(actors.size(), 6);
+        assertEquals(actors.get(0), "Arnold Schwarzenegger");
+    }
+
+    @Test
+    public void testStopIsPerConsumer() throws IOException {
+        final Rule<List<String>> firstYearRule = characters("/imdb/category/movie/year",
+                (chars, years, parser) -> {
+                    years.add(chars);
+                    parser.stop();
+                }
+        );
+
+        final Rule<List<String>> allYearsRule = characters("/imdb/category/movie/year",
+                (chars, years, parser) -> years.add(chars)
+        );
+
+        final List<String> first = new ArrayList<>();
+        final List<String> all = new ArrayList<>();
+
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            factory.newMultiplexer()
+                    .add(first, firstYearRule)
+                    .add(all, allYearsRule)
+                    .parse(in);
+        }
+
+        assertEquals(first.size(), 1);
+        assertEquals(all.size(), 2);
+    }
+
+    @Test
+    public void testSamplerIsRejected() {
+        final XmlParser<List<String>> parser = factory.newParser(characters("/imdb/category/movie/year",
+                (chars, years, p) -> years.add(chars)));
+        parser.sampler(Sampler.every("/imdb/category/movie", 2));
+
+        try {
+            factory.newMultiplexer().add(parser, new ArrayList<>());
+            fail("a parser with a Sampler should be rejected");
+        } catch (XmlParserException e) {
+            assertTrue(e.getMessage().contains("Sampler"));
+        }
+    }
+}
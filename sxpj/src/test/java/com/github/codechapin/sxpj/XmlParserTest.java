@@ -4,9 +4,20 @@ import com.github.codechapin.sxpj.handler.Element;
 import org.testng.annotations.Test;
 
 import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static com.github.codechapin.sxpj.Rule.*;
 import static org.testng.Assert.*;
@@ -78,6 +89,41 @@ public class XmlParserTest {
         assertEquals(actual.getName(), "Terminator");
     }
 
+    @Test
+    public void attributesWithoutElementRuleTest() {
+        final Rule<Movie> movieAttributesRule = attributes("/movie",
+                (name, value, movie, parser) -> movie.setId(value),
+                "id"
+        );
+
+        final Movie movie = new Movie();
+        parse("<movie id=\"1234\" name=\"Terminator\"/>", movie, movieAttributesRule);
+
+        assertEquals(movie.getId(), "1234");
+    }
+
+    @Test
+    public void severalRulesOnOnePathTest() {
+        final StringBuilder calls = new StringBuilder();
+        parse("<a x=\"1\" y=\"2\">text</a>", calls,
+                element("/a", (element, state, parser) -> state.append("e1:").append(element).append(' ')),
+                characters("/a", (chars, state, parser) -> state.append("c1:").append(chars).append(' ')),
+                attributes("/a", (name, value, state, parser) -> state.append("a1:").append(name).append(' '), "y", "x"),
+                element("/a", (element, state, parser) -> state.append("e2:").append(element).append(' ')),
+                characters("/a", (chars, state, parser) -> state.append("c2:").append(chars).append(' ')),
+                attributes("/a", (name, value, state, parser) -> state.append("a2:").append(value).append(' '), "x")
+        );
+
+        assertEquals(calls.toString(), "e1:START e2:START a1:y a1:x a2:1 c1:text c2:text e1:END e2:END ");
+    }
+
+    @Test(expectedExceptions = XmlParserException.class)
+    public void invalidAttributeNameTest() {
+        // rejected when the rules are compiled, before any document is parsed
+        factory.newParser(attributes("/movie", (name, value, movie, parser) -> {
+        }, "[]id"));
+    }
+
     @Test
     public void charactersTest() {
         final Rule<MovieCategory> movieRule = element("/movie",
@@ -349,6 +395,142 @@ public class XmlParserTest {
 
     }
 
+    @Test
+    public void compressedPathTest() throws IOException {
+        final StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < 50000; i++) {
+            xml.append("<item id=\"").append(i).append("\"><name>item ").append(i).append("</name></item>");
+        }
+        final byte[] bytes = xml.append("</items>").toString().getBytes(StandardCharsets.UTF_8);
+
+        final Path plain = Files.createTempFile("sxpj", ".xml");
+        final Path gzip = Files.createTempFile("sxpj", ".xml.gz");
+        final Path zlib = Files.createTempFile("sxpj", ".xml.z");
+        try {
+            Files.write(plain, bytes);
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+                out.write(bytes);
+            }
+            try (OutputStream out = new DeflaterOutputStream(Files.newOutputStream(zlib))) {
+                out.write(bytes);
+            }
+
+            final Rule<long[]> nameRule = characters("/items/item/name", (chars, sum, parser) -> {
+                sum[0]++;
+                sum[1] += Long.parseLong(chars.substring(5));
+            });
+            final XmlParser<long[]> parser = factory.newParser(nameRule);
+
+            for (Path path : new Path[]{plain, gzip, zlib}) {
+                final long[] sum = new long[2];
+                parser.parse(path, sum);
+                assertEquals(sum[0], 50000, path.toString());
+                assertEquals(sum[1], 49999L * 50000 / 2, path.toString());
+            }
+
+            // stopping early must release the decompression thread
+            final Rule<long[]> stopRule = element("/items/item", (element, count, p) -> {
+                if (++count[0] == 10) {
+                    p.stop();
+                }
+            });
+            final long[] count = new long[1];
+            factory.newParser(stopRule).parse(gzip, count);
+            assertEquals(count[0], 10);
+
+            // a truncated archive fails instead of ending the document early
+            Files.write(gzip, Arrays.copyOf(Files.readAllBytes(gzip), (int) Files.size(gzip) / 2));
+            try {
+                parser.parse(gzip, new long[2]);
+                fail("A truncated gzip file should fail");
+            } catch (XmlParserException e) {
+                // expected
+            }
+        } finally {
+            Files.delete(plain);
+            Files.delete(gzip);
+            Files.delete(zlib);
+        }
+    }
+
+    @Test
+    public void readAheadTest() throws IOException {
+        final StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < 20000; i++) {
+            xml.append("<item><name>item ").append(i).append("</name></item>");
+        }
+        final byte[] bytes = xml.append("</items>").toString().getBytes(StandardCharsets.UTF_8);
+
+        final XmlParserFactory readAheadFactory = factory.withReadAhead(4096, 2);
+        assertTrue(readAheadFactory.isReadAhead());
+        assertFalse(factory.isReadAhead());
+
+        final Rule<long[]> nameRule = characters("/items/item/name", (chars, count, parser) -> count[0]++);
+        final XmlParser<long[]> parser = readAheadFactory.newParser(nameRule);
+
+        // a slow source, handing out a few bytes at a time
+        final long[] count = new long[1];
+        parser.parse(new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                return super.read(b, off, Math.min(len, 100));
+            }
+        }, count);
+        assertEquals(count[0], 20000);
+
+        final Path path = Files.createTempFile("sxpj", ".xml");
+        try {
+            Files.write(path, bytes);
+            count[0] = 0;
+            parser.parse(path, count);
+            assertEquals(count[0], 20000);
+        } finally {
+            Files.delete(path);
+        }
+
+        final ReadAheadStats stats = readAheadFactory.getReadAheadStats();
+        assertEquals(stats.getStreams(), 2);
+        assertEquals(stats.getBytes(), 2L * bytes.length);
+        assertTrue(stats.getBuffers() >= 2L * bytes.length / 4096);
+    }
+
+    @Test
+    public void readAheadStopsBeforeReturningTest() throws Exception {
+        final StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < 2000; i++) {
+            xml.append("<item>").append(i).append("</item>");
+        }
+        final byte[] bytes = xml.append("</items>").toString().getBytes(StandardCharsets.UTF_8);
+
+        final Rule<long[]> stopRule = element("/items/item", (element, count, parser) -> {
+            count[0]++;
+            parser.stop();
+        });
+        final XmlParser<long[]> parser = factory.withReadAhead(64, 4).newParser(stopRule);
+
+        // a slow stream that must be neither interrupted nor read once the parse has returned
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final long[] count = new long[1];
+        parser.parse(new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                reads.incrementAndGet();
+                return super.read(b, off, Math.min(len, 16));
+            }
+        }, count);
+
+        final int readsOnReturn = reads.get();
+        Thread.sleep(50);
+        assertEquals(count[0], 1);
+        assertEquals(reads.get(), readsOnReturn);
+        assertFalse(interrupted.get());
+    }
 
     @SafeVarargs
     private final <S> void parse(final String xml, final S state, final Rule<S>... rules) {
@@ -0,0 +1,86 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class XmlProfilerTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    @Test
+    public void testMoviesXml() throws IOException {
+        final DocumentProfile profile;
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            profile = factory.newProfiler().profile(in);
+        }
+
+        assertEquals(profile.getElementCount(), 17);
+        assertEquals(profile.getMaxDepth(), 5);
+        assertEquals(profile.getPaths().size(), 7);
+        assertFalse(profile.isTruncated());
+
+        final PathProfile root = profile.getPath("/imdb");
+        assertEquals(root.getCount(), 1);
+        assertEquals(root.getDepth(), 1);
+        assertEquals(root.getMaxSubtreeDepth(), 5);
+        assertEquals(root.getTotalTextLength(), 0);
+
+        final PathProfile actor = profile.getPath("/imdb/category/movie/cast/actor");
+        assertEquals(actor.getCount(), 6);
+        assertEquals(actor.getMaxSubtreeDepth(), 1);
+        assertEquals(actor.getAttributeNames().toString(), "[realName, charName]");
+
+        final PathProfile name = profile.getPath("/imdb/category/movie/name");
+        assertEquals(name.getCount(), 2);
+        assertEquals(name.getTotalTextLength(), "Terminator 2".length() + "Tommy Boy".length());
+        assertEquals(name.getMaxTextLength(), "Terminator 2".length());
+    }
+
+    @Test
+    public void testMaxPaths() throws IOException {
+        final DocumentProfile profile;
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            profile = factory.newProfiler(3).profile(in);
+        }
+
+        assertEquals(profile.getPaths().size(), 3);
+        assertTrue(profile.isTruncated());
+        assertEquals(profile.getUntrackedElements(), 17 - 1 - 2 - 2);
+    }
+
+    @Test
+    public void testCollidingPaths() {
+        // "Aa" and "BB" have the same hash code, so do the paths ending with them
+        assertEquals("/r/Aa".hashCode(), "/r/BB".hashCode());
+        final DocumentProfile profile = factory.newProfiler().profile(
+                new StringReader("<r><Aa x=\"1\"/><BB/><BB y=\"2\"/><C2/></r>"));
+
+        assertEquals(profile.getPaths().size(), 4);
+        assertEquals(profile.getPath("/r/Aa").getCount(), 1);
+        assertEquals(profile.getPath("/r/Aa").getAttributeNames().toString(), "[x]");
+        assertEquals(profile.getPath("/r/BB").getCount(), 2);
+        assertEquals(profile.getPath("/r/BB").getAttributeNames().toString(), "[y]");
+        assertEquals(profile.getPath("/r/C2").getCount(), 1);
+    }
+
+    @Test
+    public void testNamespaces() throws IOException {
+        final DocumentProfile profile;
+        try (InputStream in = getClass().getResourceAsStream("/namespace.xml")) {
+            profile = factory.newProfiler().profile(in);
+        }
+
+        final PathProfile link = profile.getPath("/rss/channel/[http://www.w3.org/2005/Atom]link");
+        assertNotNull(link);
+        assertEquals(link.getCount(), 2);
+        assertTrue(link.getAttributeNames().contains("href"));
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.codechapin.sxpj.Rule.*;
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class XmlSplitterTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    @Test
+    public void testSplit() throws IOException {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<export xmlns=\"urn:export\" xmlns:m=\"urn:meta\">\n<items region=\"eu\">\n");
+        for (int i = 0; i < 25; i++) {
+            xml.append("  <item m:id=\"").append(i).append("\"><name>Item ").append(i).append("</name></item>\n");
+            if (i == 12) {
+                xml.append("  <note>not a record</note>\n");
+            }
+        }
+        xml.append("</items>\n</export>\n");
+
+        final Path directory = Files.createTempDirectory("sxpj");
+        final Path in = directory.resolve("items.xml");
+        Files.write(in, xml.toString().getBytes(StandardCharsets.UTF_8));
+
+        final String itemPath = "/[urn:export]export/[urn:export]items/[urn:export]item";
+        final Rule<List<String>> itemRule = element(itemPath, (element, list, parser) -> {
+        });
+        final Rule<List<String>> idRule = attributes(itemPath, (name, value, list, parser) -> list.add(value),
+                "[urn:meta]id");
+
+        try {
+            final List<Path> shards = new XmlSplitter(itemPath, 10)
+                    .threads(2)
+                    .maxInFlight(1)
+                    .split(in, directory);
+
+            assertEquals(shards.size(), 3);
+
+            final List<String> ids = new ArrayList<>();
+            for (Path shard : shards) {
+                final String content = new String(Files.readAllBytes(shard), StandardCharsets.UTF_8);
+                assertTrue(content.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<export xmlns=\"urn:export\""));
+                assertFalse(content.contains("<note>"));
+
+                try (InputStream shardIn = Files.newInputStream(shard)) {
+                    factory.newParser(itemRule, idRule).parse(shardIn, ids);
+                }
+                Files.delete(shard);
+            }
+
+            assertEquals(ids.size(), 25);
+            for (int i = 0; i < 25; i++) {
+                assertEquals(ids.get(i), String.valueOf(i));
+            }
+        } finally {
+            Files.delete(in);
+            Files.delete(directory);
+        }
+    }
+}
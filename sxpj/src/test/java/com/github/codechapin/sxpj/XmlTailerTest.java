@@ -0,0 +1,123 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class XmlTailerTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    private Path log;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        log = Files.createTempFile("sxpj", ".xml");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        Files.delete(log);
+    }
+
+    @Test
+    public void testPollAppendedRecords() throws IOException {
+        final Rule<List<String>> messageRule = Rule.characters("/log/event/[urn:x]msg",
+                (chars, list, parser) -> list.add(chars));
+        final XmlTailer<List<String>> tailer = new XmlTailer<>(factory.newParser(messageRule), log, "/log/event");
+        final List<String> messages = new ArrayList<>();
+
+        append("<?xml version=\"1.0\"?>\n<log xmlns:x=\"urn:x\">\n"
+                + "<event id=\"1\"><x:msg>a</x:msg></event>\n<event id=\"2\"><x:m");
+        assertEquals(tailer.poll(messages), 1);
+        assertEquals(messages.toString(), "[a]");
+
+        append("sg>b</x:msg></event>\n<event id=\"3\"><x:msg>c</x:msg></event>\n<event");
+        assertEquals(tailer.poll(messages), 2);
+        assertEquals(messages.toString(), "[a, b, c]");
+
+        assertEquals(tailer.poll(messages), 0);
+        assertEquals(messages.toString(), "[a, b, c]");
+
+        append(" id=\"4\"><x:msg>d</x:msg></event>\n");
+        assertEquals(tailer.poll(messages), 1);
+        assertEquals(messages.toString(), "[a, b, c, d]");
+        assertEquals(tailer.getRecords(), 4);
+        assertEquals(tailer.getOffset(), Files.size(log) - 1);
+    }
+
+    @Test
+    public void testAncestorsChangeBetweenPolls() throws IOException {
+        final Rule<List<String>> eventRule = Rule.attributes("/log/batch/event",
+                (name, value, list, parser) -> list.add(value), "id");
+        final XmlTailer<List<String>> tailer = new XmlTailer<>(factory.newParser(eventRule), log, "/log/batch/event");
+        final List<String> ids = new ArrayList<>();
+
+        append("<log><batch n=\"1\"><event id=\"1\"/>");
+        assertEquals(tailer.poll(ids), 1);
+
+        append("<event id=\"2\"/></batch>\n<batch n=\"2\"><event id=\"3\"/><event id=");
+        assertEquals(tailer.poll(ids), 2);
+        assertEquals(ids.toString(), "[1, 2, 3]");
+
+        append("\"4\"/>");
+        assertEquals(tailer.poll(ids), 1);
+        assertEquals(ids.toString(), "[1, 2, 3, 4]");
+    }
+
+    @Test
+    public void testAncestorsDispatchedOnce() throws IOException {
+        final Rule<List<String>> logRule = Rule.element("/log",
+                (element, list, parser) -> list.add("log " + element));
+        final Rule<List<String>> batchRule = Rule.element("/log/batch",
+                (element, list, parser) -> list.add("batch " + element));
+        final Rule<List<String>> eventRule = Rule.attributes("/log/batch/event",
+                (name, value, list, parser) -> list.add(value), "id");
+        final XmlTailer<List<String>> tailer = new XmlTailer<>(factory.newParser(logRule, batchRule, eventRule),
+                log, "/log/batch/event");
+        final List<String> events = new ArrayList<>();
+
+        append("<log><batch><event id=\"1\"/>");
+        assertEquals(tailer.poll(events), 1);
+        append("<event id=\"2\"/>");
+        assertEquals(tailer.poll(events), 1);
+        append("</batch><batch><event id=\"3\"/>");
+        assertEquals(tailer.poll(events), 1);
+        append("<event id=\"4\"/>");
+        assertEquals(tailer.poll(events), 1);
+
+        assertEquals(events.toString(), "[log START, batch START, 1, 2, batch END, batch START, 3, 4]");
+    }
+
+    @Test
+    public void testRestartWhenTruncated() throws IOException {
+        final Rule<List<String>> eventRule = Rule.attributes("/log/event",
+                (name, value, list, parser) -> list.add(value), "id");
+        final XmlTailer<List<String>> tailer = new XmlTailer<>(factory.newParser(eventRule), log, "/log/event");
+        final List<String> ids = new ArrayList<>();
+
+        append("<log><event id=\"1\"/><event id=\"2\"/>");
+        assertEquals(tailer.poll(ids), 2);
+
+        Files.write(log, "<log><event id=\"3\"/>".getBytes(StandardCharsets.UTF_8));
+        assertEquals(tailer.poll(ids), 1);
+        assertEquals(ids.toString(), "[1, 2, 3]");
+    }
+
+    private void append(final String xml) throws IOException {
+        Files.write(log, xml.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.codechapin.sxpj;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class XmlTransformerTest {
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!-- <feed> in a comment -->\n"
+            + "<feed xmlns:x=\"urn:x\">\n"
+            + "  <item id=\"1\" secret='s&amp;1' x:ref=\"a\">\n"
+            + "    <title>Café <![CDATA[<one>]]></title>\n"
+            + "    <internal><deep>hidden</deep></internal>\n"
+            + "  </item>\n"
+            + "  <item id=\"2\" secret=\"s2\">\n"
+            + "    <title/>\n"
+            + "  </item>\n"
+            + "</feed>\n";
+
+    @Test
+    public void testUnchangedIsByteForByte() {
+        assertEquals(transform(new XmlTransformer().drop("/feed/missing"), XML), XML);
+    }
+
+    @Test
+    public void testDrop() {
+        final String actual = transform(new XmlTransformer().drop("/feed/item/internal"), XML);
+        assertEquals(actual, XML.replace("<internal><deep>hidden</deep></internal>", ""));
+    }
+
+    @Test
+    public void testReplaceText() {
+        final String actual = transform(new XmlTransformer().replaceText("/feed/item/title", "<new>"), XML);
+        assertEquals(actual, XML
+                .replace("<title>Café <![CDATA[<one>]]></title>", "<title>&lt;new&gt;</title>")
+                .replace("<title/>", "<title>&lt;new&gt;</title>"));
+    }
+
+    @Test
+    public void testAttributes() {
+        final XmlTransformer transformer = new XmlTransformer()
+                .replaceAttribute("/feed/item", "secret", value -> value.isEmpty() ? value : "***")
+                .removeAttribute("/feed/item", "[urn:x]ref");
+
+        final String actual = transform(transformer, XML);
+        assertEquals(actual, XML
+                .replace(" secret='s&amp;1' x:ref=\"a\"", " secret='***'")
+                .replace("secret=\"s2\"", "secret=\"***\""));
+    }
+
+    @Test
+    public void testFiles() throws IOException {
+        final Path in = Files.createTempFile("sxpj", ".xml");
+        final Path out = Files.createTempFile("sxpj", ".xml");
+        try {
+            Files.write(in, XML.getBytes(StandardCharsets.UTF_8));
+
+            new XmlTransformer()
+                    .drop("/feed/item/internal")
+                    .replaceAttribute("/feed/item", "id", value -> "n" + value)
+                    .transform(in, out);
+
+            final String actual = new String(Files.readAllBytes(out), StandardCharsets.UTF_8);
+            assertEquals(actual, XML
+                    .replace("<internal><deep>hidden</deep></internal>", "")
+                    .replace("id=\"1\"", "id=\"n1\"")
+                    .replace("id=\"2\"", "id=\"n2\""));
+        } finally {
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    @Test(expectedExceptions = XmlParserException.class)
+    public void testTruncated() {
+        transform(new XmlTransformer().drop("/feed/item"), "<feed><item>");
+    }
+
+    @Test
+    public void testInvalidCharacterReferences() {
+        final XmlTransformer transformer = new XmlTransformer().replaceAttribute("/feed", "a", value -> value);
+        assertEquals(transform(transformer, "<feed a=\"&#x41;&#66;\"/>"), "<feed a=\"AB\"/>");
+
+        for (String reference : new String[]{"&#xZZ;", "&#;", "&#x;", "&#x110000;", "&#99999999999;", "&#-1;",
+                "&#xD800;"}) {
+            try {
+                transform(transformer, "<feed a=\"" + reference + "\"/>");
+                fail(reference + " should be rejected");
+            } catch (XmlParserException e) {
+                assertTrue(e.getMessage().startsWith("invalid character reference " + reference), e.getMessage());
+            }
+        }
+    }
+
+    private static String transform(final XmlTransformer transformer, final String xml) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transformer.transform(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
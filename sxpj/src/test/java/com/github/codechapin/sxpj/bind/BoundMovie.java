@@ -0,0 +1,55 @@
+package com.github.codechapin.sxpj.bind;
+
+/**
+ *
+ */
+@XmlPath("/imdb/category/movie")
+public class BoundMovie {
+    @XmlPath("cast/actor/@charName")
+    private String lastCharacter;
+
+    private String id;
+    private String name;
+    private int year;
+    private long actors;
+
+    @XmlPath("@id")
+    public void setId(final String id) {
+        this.id = id;
+    }
+
+    @XmlPath("name")
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    @XmlPath("/imdb/category/movie/year")
+    public void setYear(final int year) {
+        this.year = year;
+    }
+
+    @XmlPath("cast/actor/@realName")
+    public void addActor(final String actor) {
+        actors++;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public long getActors() {
+        return actors;
+    }
+
+    public String getLastCharacter() {
+        return lastCharacter;
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.codechapin.sxpj.bind;
+
+/**
+ *
+ */
+@XmlPath("/imdb/category/movie")
+public class SequelMovie extends BoundMovie {
+    private int names;
+    private int released;
+
+    @Override
+    @XmlPath("name")
+    public void setName(final String name) {
+        names++;
+        super.setName(name + " II");
+    }
+
+    @XmlPath("year")
+    void setReleased(final int year) {
+        this.released = year + 1;
+    }
+
+    public int getNames() {
+        return names;
+    }
+
+    public int getReleased() {
+        return released;
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.codechapin.sxpj.bind;
+
+import com.github.codechapin.sxpj.RecordPool;
+import com.github.codechapin.sxpj.XmlParserFactory;
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class XmlBindingTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    @Test
+    public void testMoviesXml() throws IOException {
+        final List<BoundMovie> movies = new ArrayList<>();
+        final BindingContext<BoundMovie> context = new BindingContext<>(movies::add);
+
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            XmlBinding.of(BoundMovie.class).newParser(factory).parse(in, context);
+        }
+
+        assertEquals(context.getCount(), 2);
+        assertEquals(movies.size(), 2);
+
+        final BoundMovie terminator = movies.get(0);
+        assertEquals(terminator.getId(), "1234");
+        assertEquals(terminator.getName(), "Terminator 2");
+        assertEquals(terminator.getYear(), 1991);
+        assertEquals(terminator.getActors(), 3);
+        assertEquals(terminator.getLastCharacter(), "John Connor");
+
+        final BoundMovie tommyBoy = movies.get(1);
+        assertEquals(tommyBoy.getId(), "5678");
+        assertEquals(tommyBoy.getName(), "Tommy Boy");
+        assertEquals(tommyBoy.getYear(), 1995);
+        assertEquals(tommyBoy.getLastCharacter(), "Big Tom");
+    }
+
+    @Test
+    public void testPooledRecords() throws IOException {
+        final List<String> names = new ArrayList<>();
+        final List<BoundMovie> released = new ArrayList<>();
+        final BindingContext<BoundMovie> context = new BindingContext<>(movie -> names.add(movie.getName()));
+
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            factory.newParser(BindingContext.records("/imdb/category/movie", RecordPool.of(BoundMovie::new, released::add, 1)),
+                    BindingContext.<BoundMovie>text("/imdb/category/movie/name", BoundMovie::setName))
+                    .parse(in, context);
+        }
+
+        assertEquals(names.toString(), "[Terminator 2, Tommy Boy]");
+        assertEquals(released.size(), 2);
+        assertSame(released.get(0), released.get(1));
+    }
+
+    @Test
+    public void testSetterHierarchy() throws IOException {
+        final List<SequelMovie> movies = new ArrayList<>();
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            XmlBinding.of(SequelMovie.class).newParser(factory).parse(in, new BindingContext<>(movies::add));
+        }
+
+        assertEquals(XmlBinding.of(SequelMovie.class).getRules().length, 7);
+        final SequelMovie terminator = movies.get(0);
+        assertEquals(terminator.getNames(), 1);
+        assertEquals(terminator.getName(), "Terminator 2 II");
+        assertEquals(terminator.getReleased(), 1992);
+        assertEquals(terminator.getId(), "1234");
+        assertEquals(terminator.getYear(), 1991);
+        assertEquals(terminator.getLastCharacter(), "John Connor");
+    }
+
+    @Test
+    public void testClassNotVisibleFromLibrary() throws Exception {
+        final ClassLoader isolated = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+                if (!name.equals(BoundMovie.class.getName())) {
+                    return super.loadClass(name, resolve);
+                }
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> loaded = findLoadedClass(name);
+                    if (loaded == null) {
+                        final byte[] bytes;
+                        try {
+                            bytes = read(name.replace('.', '/') + ".class");
+                        } catch (IOException e) {
+                            throw new ClassNotFoundException(name, e);
+                        }
+                        loaded = defineClass(name, bytes, 0, bytes.length);
+                    }
+                    return loaded;
+                }
+            }
+        };
+        final Class<?> type = isolated.loadClass(BoundMovie.class.getName());
+        assertNotSame(type, BoundMovie.class);
+
+        final List<Object> movies = new ArrayList<>();
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            XmlBinding.of(type).newParser(factory).parse(in, new BindingContext<>(movies::add));
+        }
+
+        assertEquals(movies.size(), 2);
+        assertEquals(type.getMethod("getName").invoke(movies.get(0)), "Terminator 2");
+        assertEquals(type.getMethod("getYear").invoke(movies.get(1)), 1995);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testStaticSetter() {
+        XmlBinding.of(StaticSetter.class);
+    }
+
+    @Test
+    public void testCached() {
+        assertSame(XmlBinding.of(BoundMovie.class), XmlBinding.of(BoundMovie.class));
+        assertEquals(XmlBinding.of(BoundMovie.class).getRules().length, 6);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNotAnnotated() {
+        XmlBinding.of(String.class);
+    }
+
+    private static byte[] read(final String resource) throws IOException {
+        try (InputStream in = XmlBindingTest.class.getClassLoader().getResourceAsStream(resource)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    @XmlPath("/imdb/category/movie")
+    public static class StaticSetter {
+        @XmlPath("name")
+        static void setName(final String name) {
+        }
+    }
+}
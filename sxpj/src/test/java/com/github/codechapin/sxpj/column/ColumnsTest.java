@@ -0,0 +1,91 @@
+package com.github.codechapin.sxpj.column;
+
+import com.github.codechapin.sxpj.XmlParser;
+import com.github.codechapin.sxpj.XmlParserException;
+import com.github.codechapin.sxpj.XmlParserFactory;
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class ColumnsTest {
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    @Test
+    public void testColumns() {
+        final Columns columns = new Columns("/rows/row");
+        final LongColumn id = columns.longColumn("/rows/row/@id");
+        final DoubleColumn price = columns.doubleColumn("/rows/row/price");
+        final StringColumn category = columns.stringColumn("/rows/row/category");
+
+        factory.newParser(columns.rules()).parse(new StringReader("<rows>"
+                + "<row id=\"1\"><price>9.5</price><category>books</category></row>"
+                + "<row id=\"2\"><category>games</category></row>"
+                + "<row><price> 3 </price><category>books</category></row>"
+                + "</rows>"), columns);
+
+        assertEquals(columns.size(), 3);
+        assertEquals(id.toArray(), new long[]{1, 2, 0});
+        assertEquals(price.toArray(), new double[]{9.5, 0, 3});
+        assertEquals(category.toArray(), new int[]{0, 1, 0});
+        assertEquals(category.getDictionary(), Arrays.asList("books", "games"));
+        assertEquals(category.get(1), "games");
+
+        assertTrue(id.isMissing(2));
+        assertFalse(id.isMissing(1));
+        assertTrue(price.isMissing(1));
+        assertEquals(price.getMissing(), new long[]{0b010});
+        assertEquals(price.getMissingCount(), 1);
+        assertEquals(category.getMissingCount(), 0);
+    }
+
+    @Test
+    public void testGrowAndClear() {
+        final Columns columns = new Columns("/rows/row");
+        final LongColumn id = columns.longColumn("/rows/row/@id");
+        final StringColumn name = columns.stringColumn("/rows/row/name");
+        final XmlParser<Columns> parser = factory.newParser(columns.rules());
+
+        final StringBuilder xml = new StringBuilder("<rows>");
+        for (int i = 0; i < 5000; i++) {
+            xml.append("<row id=\"").append(i).append("\">");
+            if (i % 3 == 0) {
+                xml.append("<name>n").append(i % 10).append("</name>");
+            }
+            xml.append("</row>");
+        }
+        xml.append("</rows>");
+
+        for (int pass = 0; pass < 2; pass++) {
+            columns.clear();
+            parser.parse(new StringReader(xml.toString()), columns);
+
+            assertEquals(columns.size(), 5000);
+            assertEquals(id.get(4999), 4999);
+            assertEquals(name.getMissingCount(), 5000 - 1667);
+            assertTrue(name.isMissing(4999));
+            assertEquals(name.getCode(4999), -1);
+            assertNull(name.get(4999));
+            assertEquals(name.get(4998), "n8");
+            assertEquals(name.getDictionary().size(), 10);
+        }
+    }
+
+    @Test(expectedExceptions = XmlParserException.class)
+    public void testNotANumber() {
+        final Columns columns = new Columns("/rows/row");
+        columns.longColumn("/rows/row/@id");
+        factory.newParser(columns.rules()).parse(new StringReader("<rows><row id=\"x\"/></rows>"), columns);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOutsideRecord() {
+        new Columns("/rows/row").longColumn("/rows/count");
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.codechapin.sxpj.convert;
+
+import com.github.codechapin.sxpj.XmlParserFactory;
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.testng.Assert.*;
+
+/**
+ *
+ */
+public class RecordWriterTest {
+    private static final String ROWS = "<rows>"
+            + "<row id=\"1\"><name>plain</name><price>9.50</price></row>"
+            + "<row id=\"2\"><name>say \"hi\", then\nleave</name><price>n/a</price></row>"
+            + "<row id=\"3\"><name>back\\slash\ttab</name></row>"
+            + "</rows>";
+
+    private final XmlParserFactory factory = new XmlParserFactory(XMLInputFactory.newFactory());
+
+    @Test
+    public void testCsv() {
+        final StringWriter out = new StringWriter();
+        final CsvWriter csv = new CsvWriter(out, "/rows/row")
+                .field("id", "/rows/row/@id")
+                .field("name", "/rows/row/name")
+                .numberField("price", "/rows/row/price");
+
+        factory.newParser(csv.rules()).parse(new StringReader(ROWS), csv);
+        csv.flush();
+
+        assertEquals(csv.getRecords(), 3);
+        assertEquals(out.toString(), "id,name,price\n"
+                + "1,plain,9.50\n"
+                + "2,\"say \"\"hi\"\", then\nleave\",n/a\n"
+                + "3,back\\slash\ttab,\n");
+    }
+
+    @Test
+    public void testJsonLines() {
+        final StringWriter out = new StringWriter();
+        final JsonLinesWriter json = new JsonLinesWriter(out, "/rows/row")
+                .numberField("id", "/rows/row/@id")
+                .field("name", "/rows/row/name")
+                .numberField("price", "/rows/row/price");
+
+        factory.newParser(json.rules()).parse(new StringReader(ROWS), json);
+
+        assertEquals(out.toString(), "{\"id\":1,\"name\":\"plain\",\"price\":9.50}\n"
+                + "{\"id\":2,\"name\":\"say \\\"hi\\\", then\\nleave\",\"price\":\"n/a\"}\n"
+                + "{\"id\":3,\"name\":\"back\\\\slash\\ttab\"}\n");
+    }
+
+    @Test
+    public void testMovies() throws IOException {
+        final StringWriter out = new StringWriter();
+        final CsvWriter csv = new CsvWriter(out, "/imdb/category/movie", ';', false)
+                .field("id", "/imdb/category/movie/@id")
+                .field("name", "/imdb/category/movie/name");
+
+        try (InputStream in = getClass().getResourceAsStream("/movies.xml")) {
+            factory.newParser(csv.rules()).parse(in, csv);
+        }
+        assertEquals(out.toString(), "1234;Terminator 2\n5678;Tommy Boy\n");
+    }
+
+    @Test
+    public void testJsonNumber() {
+        assertTrue(JsonLinesWriter.isJsonNumber("0"));
+        assertTrue(JsonLinesWriter.isJsonNumber("-12.5e+3"));
+        assertFalse(JsonLinesWriter.isJsonNumber("012"));
+        assertFalse(JsonLinesWriter.isJsonNumber("1."));
+        assertFalse(JsonLinesWriter.isJsonNumber("NaN"));
+        assertFalse(JsonLinesWriter.isJsonNumber("-"));
+    }
+}